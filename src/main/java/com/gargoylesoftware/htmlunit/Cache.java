@@ -16,17 +16,28 @@ package com.gargoylesoftware.htmlunit;
 
 import java.io.Serializable;
 import java.net.URL;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.http.client.utils.DateUtils;
 
 import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
 import com.gargoylesoftware.htmlunit.util.HeaderUtils;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
 
 /**
@@ -34,6 +45,17 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
  * compiled JavaScript files avoids unnecessary web requests and additional compilation overhead, while
  * caching parsed CSS snippets avoids very expensive CSS parsing.</p>
  *
+ * <p>The cache is bounded by the number of entries (see {@link #setMaxSize(int)}) and by the estimated
+ * memory used for every {@link EntryType} (see {@link #setMaxWeight(EntryType, long)}). Entries are
+ * evicted following the W-TinyLFU policy: new entries are kept in a small LRU window; when leaving the window
+ * they are only admitted to the main space if they were used more often than the entry that would have
+ * to make room for them. Lookups are lock free.</p>
+ *
+ * <p>Responses that are no longer fresh but have an <code>ETag</code> or <code>Last-Modified</code>
+ * header are kept; the {@link WebClient} revalidates them with a conditional request
+ * (see {@link #getStaleResponse(WebRequest)}). Optionally, responses are also stored in a
+ * {@link DiskCache}.</p>
+ *
  * @author Marc Guillemot
  * @author Daniel Gredler
  * @author Ahmed Ashour
@@ -43,8 +65,36 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
  */
 public class Cache implements Serializable {
 
+    /**
+     * The kind of the cached entries; every kind has its own memory budget.
+     */
+    public enum EntryType {
+        /** Plain responses. */
+        RESPONSE,
+        /** Responses together with the compiled script. */
+        SCRIPT,
+        /** Parsed style sheets. */
+        STYLESHEET
+    }
+
+    /** The default memory budget of every {@link EntryType} in bytes. */
+    public static final long DEFAULT_MAX_WEIGHT = 64 * 1024 * 1024;
+
+    /** The estimated memory used by an entry itself. */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * Compiled scripts and parsed style sheets are estimated as this multiple of their source size;
+     * the source is counted in addition.
+     */
+    private static final int PARSED_FACTOR = 2;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
     /** The maximum size of the cache. */
-    private int maxSize_ = 40;
+    private volatile int maxSize_ = 40;
 
     private static final Pattern DATE_HEADER_PATTERN = Pattern.compile("-?\\d+");
     static final long DELAY = 10 * org.apache.commons.lang3.time.DateUtils.MILLIS_PER_MINUTE;
@@ -58,66 +108,250 @@ public class Cache implements Serializable {
      * {@link java.net.URL#hashCode()} method is synchronized, and b) the {@link java.net.URL#hashCode()}
      * method triggers DNS lookups of the URL hostnames' IPs. As of this writing, the HtmlUnit unit tests
      * run ~20% faster whey keying on strings rather than on {@link java.net.URL} instances.
+     * Reads are done without locking; all modifications are guarded by {@link #evictionLock_}.
      */
-    private final Map<String, Entry> entries_ = Collections.synchronizedMap(new HashMap<>(maxSize_));
+    private final Map<String, Entry> entries_ = new ConcurrentHashMap<>();
+
+    private final ReentrantLock evictionLock_ = new ReentrantLock();
+    private final Region[] regions_ = {new Region(), new Region(), new Region()};
+    private final FrequencySketch sketch_ = new FrequencySketch();
+
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+    private final AtomicLong evictions_ = new AtomicLong();
+
+    private transient volatile DiskCache diskCache_;
 
     /**
      * A cache entry.
      */
-    private static class Entry implements Comparable<Entry>, Serializable {
+    private static class Entry implements Serializable {
         private final String key_;
         private final WebResponse response_;
         private final Object value_;
-        private long lastAccess_;
         private final long createdAt_;
+        private final EntryType type_;
+        private long weight_;
+        private int segment_;
+
+        Entry(final String key, final WebResponse response, final Object value,
+                final EntryType type, final long weight) {
+            this(key, response, value, type, weight, System.currentTimeMillis());
+        }
 
-        Entry(final String key, final WebResponse response, final Object value) {
+        Entry(final String key, final WebResponse response, final Object value,
+                final EntryType type, final long weight, final long createdAt) {
             key_ = key;
             response_ = response;
             value_ = value;
-            createdAt_ = System.currentTimeMillis();
-            lastAccess_ = createdAt_;
+            createdAt_ = createdAt;
+            type_ = type;
+            weight_ = weight;
         }
 
         /**
-         * {@inheritDoc}
+         * Is this cached entry still fresh?
+         * @param now the current time
+         * @return <code>true</code> if can keep in the cache
+         * @see {@link #isWithinCacheWindow(WebResponse, long, long)}
          */
-        @Override
-        public int compareTo(final Entry other) {
-            return Long.compare(lastAccess_, other.lastAccess_);
+        boolean isStillFresh(final long now) {
+            return Cache.isWithinCacheWindow(response_, now, createdAt_);
         }
 
         /**
-         * {@inheritDoc}
+         * Can this cached entry be used without revalidation?
+         * @param now the current time
+         * @return <code>true</code> if the entry can be used
          */
-        @Override
-        public boolean equals(final Object obj) {
-            return obj instanceof Entry && lastAccess_ == ((Entry) obj).lastAccess_;
+        boolean isUsable(final long now) {
+            return !HeaderUtils.containsNoCache(response_) && isStillFresh(now);
         }
 
         /**
-         * {@inheritDoc}
+         * @return <code>true</code> if the response has a validator for a conditional request
          */
-        @Override
-        public int hashCode() {
-            return ((Long) lastAccess_).hashCode();
+        boolean isRevalidatable() {
+            return response_ != null && response_.getResponseData() != null && hasValidator(response_);
+        }
+    }
+
+    /**
+     * The entries of one {@link EntryType}, split into the segments of the W-TinyLFU policy.
+     * New entries start in the window; the least recently used entries of the window are moved
+     * to the probation segment, entries used again while on probation are moved to the protected segment.
+     * Guarded by the eviction lock.
+     */
+    private static final class Region implements Serializable {
+        private long maxWeight_ = DEFAULT_MAX_WEIGHT;
+        private final Map<String, Entry> window_ = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<String, Entry> probation_ = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<String, Entry> protected_ = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight_;
+        private long windowWeight_;
+        private long protectedWeight_;
+
+        long getWindowMaxWeight() {
+            return maxWeight_ / 100;
+        }
+
+        long getProtectedMaxWeight() {
+            return (maxWeight_ - getWindowMaxWeight()) * 4 / 5;
+        }
+
+        int size() {
+            return window_.size() + probation_.size() + protected_.size();
+        }
+
+        Map<String, Entry> getSegment(final Entry entry) {
+            switch (entry.segment_) {
+                case WINDOW:
+                    return window_;
+                case PROBATION:
+                    return probation_;
+                default:
+                    return protected_;
+            }
+        }
+
+        void add(final Entry entry) {
+            entry.segment_ = WINDOW;
+            window_.put(entry.key_, entry);
+            weight_ += entry.weight_;
+            windowWeight_ += entry.weight_;
+        }
+
+        void remove(final Entry entry) {
+            getSegment(entry).remove(entry.key_);
+            weight_ -= entry.weight_;
+            if (entry.segment_ == WINDOW) {
+                windowWeight_ -= entry.weight_;
+            }
+            else if (entry.segment_ == PROTECTED) {
+                protectedWeight_ -= entry.weight_;
+            }
         }
 
         /**
-         * Updates the last access date.
+         * Changes the weight of the given entry.
          */
-        public void touch() {
-            lastAccess_ = System.currentTimeMillis();
+        void reweigh(final Entry entry, final long weight) {
+            final long delta = weight - entry.weight_;
+            entry.weight_ = weight;
+            weight_ += delta;
+            if (entry.segment_ == WINDOW) {
+                windowWeight_ += delta;
+            }
+            else if (entry.segment_ == PROTECTED) {
+                protectedWeight_ += delta;
+            }
         }
 
         /**
-         * Is this cached entry still fresh?
-         * @param now the current time
-         * @return <code>true</code> if can keep in the cache
-         * @see {@link #isWithinCacheWindow(WebResponse, long, long)}
+         * Marks the entry as recently used; entries on probation are promoted to the protected segment.
          */
-        boolean isStillFresh(final long now) {
-            return Cache.isWithinCacheWindow(response_, now, createdAt_);
+        void onAccess(final Entry entry) {
+            // the get() also updates the access order
+            if (getSegment(entry).get(entry.key_) != entry || entry.segment_ != PROBATION) {
+                return;
+            }
+            probation_.remove(entry.key_);
+            entry.segment_ = PROTECTED;
+            protected_.put(entry.key_, entry);
+            protectedWeight_ += entry.weight_;
+
+            while (protectedWeight_ > getProtectedMaxWeight() && protected_.size() > 1) {
+                final Entry demoted = first(protected_);
+                protected_.remove(demoted.key_);
+                protectedWeight_ -= demoted.weight_;
+                demoted.segment_ = PROBATION;
+                probation_.put(demoted.key_, demoted);
+            }
+        }
+
+        /**
+         * Moves the least recently used entry of the window to the probation segment.
+         * @return the moved entry
+         */
+        Entry moveWindowToProbation() {
+            final Entry entry = first(window_);
+            window_.remove(entry.key_);
+            windowWeight_ -= entry.weight_;
+            entry.segment_ = PROBATION;
+            probation_.put(entry.key_, entry);
+            return entry;
+        }
+
+        void clear() {
+            window_.clear();
+            probation_.clear();
+            protected_.clear();
+            weight_ = 0;
+            windowWeight_ = 0;
+            protectedWeight_ = 0;
+        }
+
+        private static Entry first(final Map<String, Entry> segment) {
+            final Iterator<Entry> iterator = segment.values().iterator();
+            if (iterator.hasNext()) {
+                return iterator.next();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A count-min sketch with 4 bit counters, estimating how often a key was used recently.
+     * The counters are halved periodically to forget old usages. Guarded by the eviction lock.
+     */
+    private static final class FrequencySketch implements Serializable {
+        private static final int WIDTH = 1024;
+        private static final int MAX_COUNT = 15;
+        private static final int SAMPLE_SIZE = 10 * WIDTH;
+        private static final int[] SEEDS = {0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xc2b2ae35};
+
+        private final byte[][] table_ = new byte[SEEDS.length][WIDTH];
+        private int additions_;
+
+        void increment(final String key) {
+            final int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = indexOf(hash, i);
+                if (table_[i][index] < MAX_COUNT) {
+                    table_[i][index]++;
+                    added = true;
+                }
+            }
+            if (added) {
+                additions_++;
+                if (additions_ >= SAMPLE_SIZE) {
+                    reset();
+                }
+            }
+        }
+
+        int frequency(final String key) {
+            final int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, table_[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private static int indexOf(final int hash, final int i) {
+            final int h = (hash + SEEDS[i]) * SEEDS[i];
+            return (h ^ (h >>> 16)) & (WIDTH - 1);
+        }
+
+        private void reset() {
+            for (final byte[] row : table_) {
+                for (int j = 0; j < WIDTH; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            additions_ /= 2;
         }
     }
 
@@ -174,21 +408,102 @@ public class Cache implements Serializable {
      * @return whether the response was cached or not
      */
     public boolean cacheIfPossible(final WebRequest request, final WebResponse response, final Object toCache) {
-        if (isCacheable(request, response)) {
+        if (isCacheable(request, response) || isRevalidatable(request, response)) {
             final URL url = request.getUrl();
             if (url == null) {
                 return false;
             }
 
-            final Entry entry = new Entry(UrlUtils.normalize(url), response, toCache);
-            entries_.put(entry.key_, entry);
-            deleteOverflow();
-            return true;
+            final String key = UrlUtils.normalize(url);
+            final Entry previous = entries_.get(key);
+            final Entry entry = createEntry(key, response, toCache, System.currentTimeMillis());
+            final boolean cached = put(entry);
+            if (cached) {
+                reweighWhenComplete(entry);
+            }
+
+            final DiskCache diskCache = diskCache_;
+            if (diskCache != null && (previous == null || previous.response_ != response)) {
+                final WebResponseData responseData = response.getResponseData();
+                if (responseData != null && DiskCache.isStorable(request, response)) {
+                    diskCache.store(key, responseData, entry.createdAt_);
+                }
+            }
+            return cached;
         }
 
         return false;
     }
 
+    private static Entry createEntry(final String key, final WebResponse response, final Object toCache,
+            final long createdAt) {
+        final EntryType type = toCache instanceof CSSStyleSheetImpl ? EntryType.STYLESHEET
+                : toCache == null ? EntryType.RESPONSE : EntryType.SCRIPT;
+        return new Entry(key, response, toCache, type, weigh(response, toCache), createdAt);
+    }
+
+    /**
+     * Estimates the memory used by an entry. The length of a body that is still downloading is taken
+     * from the <code>Content-Length</code> header, the entry is weighed again once the download is complete
+     * (see {@link #reweighWhenComplete(Entry)}).
+     * @param response the response
+     * @param toCache the cached object or {@code null}
+     * @return the weight
+     */
+    private static long weigh(final WebResponse response, final Object toCache) {
+        final long length;
+        if (isDownloading(response)) {
+            length = Math.max(0, NumberUtils.toLong(response.getResponseHeaderValue(HttpHeader.CONTENT_LENGTH)));
+        }
+        else {
+            length = response.getContentLength();
+        }
+
+        long weight = ENTRY_OVERHEAD + length;
+        if (toCache != null) {
+            weight += length * PARSED_FACTOR;
+        }
+        return weight;
+    }
+
+    private static boolean isDownloading(final WebResponse response) {
+        final WebResponseData responseData = response.getResponseData();
+        return responseData != null && responseData.isStreaming()
+                && !((StreamingDownloadedContent) responseData.getDownloadedContent()).isComplete();
+    }
+
+    /**
+     * Weighs the entry again once the body of its response is downloaded completely.
+     * @param entry the entry
+     */
+    private void reweighWhenComplete(final Entry entry) {
+        if (!isDownloading(entry.response_)) {
+            return;
+        }
+
+        final StreamingDownloadedContent content =
+                (StreamingDownloadedContent) entry.response_.getResponseData().getDownloadedContent();
+        content.whenComplete(() -> {
+            evictionLock_.lock();
+            try {
+                if (entries_.get(entry.key_) != entry) {
+                    return;
+                }
+                final Region region = regions_[entry.type_.ordinal()];
+                region.reweigh(entry, weigh(entry.response_, entry.value_));
+                if (entry.weight_ > region.maxWeight_) {
+                    // too large for the memory budget; like in put(), the response is still owned by the caller
+                    remove(entry);
+                    return;
+                }
+                deleteOverflow();
+            }
+            finally {
+                evictionLock_.unlock();
+            }
+        });
+    }
+
     /**
      * Caches the parsed version of the specified CSS snippet. We key the cache based on CSS snippets (rather
      * than requests and responses as is done above) because a) this allows us to cache inline CSS, b) CSS is
@@ -201,23 +516,144 @@ public class Cache implements Serializable {
      * @param styleSheet the parsed version of <code>css</code>
      */
     public void cache(final String css, final CSSStyleSheetImpl styleSheet) {
-        final Entry entry = new Entry(css, null, styleSheet);
-        entries_.put(entry.key_, entry);
-        deleteOverflow();
+        // two bytes per char for the source, plus the parsed rules
+        final long weight = ENTRY_OVERHEAD + css.length() * 2L * (1 + PARSED_FACTOR);
+        put(new Entry(css, null, styleSheet, EntryType.STYLESHEET, weight));
+    }
+
+    /**
+     * Adds the entry and evicts other entries if needed.
+     * @param entry the new entry
+     * @return {@code false} if the entry is too large for the memory budget of its type
+     */
+    private boolean put(final Entry entry) {
+        final Region region = regions_[entry.type_.ordinal()];
+        evictionLock_.lock();
+        try {
+            final Entry replaced = entries_.remove(entry.key_);
+            if (replaced != null) {
+                regions_[replaced.type_.ordinal()].remove(replaced);
+            }
+            if (entry.weight_ > region.maxWeight_) {
+                return false;
+            }
+
+            entries_.put(entry.key_, entry);
+            region.add(entry);
+            sketch_.increment(entry.key_);
+            deleteOverflow();
+            return true;
+        }
+        finally {
+            evictionLock_.unlock();
+        }
     }
 
     /**
-     * Truncates the cache to the maximal number of entries.
+     * Truncates the cache to the maximal number of entries and to the memory budget of every entry type.
      */
     protected void deleteOverflow() {
-        synchronized (entries_) {
+        evictionLock_.lock();
+        try {
+            // the window holds about one percent of the entries
+            final int windowMaxSize = Math.max(1, maxSize_ / 100);
+            final Entry[] candidates = new Entry[regions_.length];
+            for (int i = 0; i < regions_.length; i++) {
+                final Region region = regions_[i];
+                while (region.window_.size() > 1 && (region.window_.size() > windowMaxSize
+                        || region.windowWeight_ > region.getWindowMaxWeight())) {
+                    candidates[i] = region.moveWindowToProbation();
+                }
+                while (region.weight_ > region.maxWeight_) {
+                    candidates[i] = evictOne(region, candidates[i]);
+                }
+            }
+
             while (entries_.size() > maxSize_) {
-                final Entry oldestEntry = Collections.min(entries_.values());
-                entries_.remove(oldestEntry.key_);
-                if (oldestEntry.response_ != null) {
-                    oldestEntry.response_.cleanUp();
+                int largest = 0;
+                for (int i = 1; i < regions_.length; i++) {
+                    if (regions_[i].size() > regions_[largest].size()) {
+                        largest = i;
+                    }
+                }
+                candidates[largest] = evictOne(regions_[largest], candidates[largest]);
+            }
+        }
+        finally {
+            evictionLock_.unlock();
+        }
+    }
+
+    /**
+     * Evicts one entry of the given region. The candidate, the entry that left the window most recently,
+     * competes with the least recently used entry on probation; the one used less frequently is evicted.
+     * @param region the region
+     * @param candidate the candidate or {@code null}
+     * @return the candidate, if it is still cached
+     */
+    private Entry evictOne(final Region region, final Entry candidate) {
+        final Entry victim = Region.first(region.probation_);
+        if (victim == null) {
+            evict(Region.first(region.protected_.isEmpty() ? region.window_ : region.protected_));
+            return null;
+        }
+        if (candidate == null || candidate == victim) {
+            evict(victim);
+            return null;
+        }
+        if (sketch_.frequency(candidate.key_) > sketch_.frequency(victim.key_)) {
+            evict(victim);
+            return candidate;
+        }
+        evict(candidate);
+        return null;
+    }
+
+    private void evict(final Entry entry) {
+        remove(entry);
+        evictions_.incrementAndGet();
+        if (entry.response_ != null) {
+            entry.response_.cleanUp();
+        }
+    }
+
+    private void remove(final Entry entry) {
+        evictionLock_.lock();
+        try {
+            if (entries_.remove(entry.key_, entry)) {
+                regions_[entry.type_.ordinal()].remove(entry);
+            }
+        }
+        finally {
+            evictionLock_.unlock();
+        }
+    }
+
+    /**
+     * Records the usage of the given key. Lookups never wait for the lock; if it is
+     * held by another thread, the usage is not recorded.
+     * @param key the key
+     * @param entry the cached entry or {@code null}
+     */
+    private void recordAccess(final String key, final Entry entry) {
+        if (entry == null) {
+            misses_.incrementAndGet();
+        }
+        else {
+            hits_.incrementAndGet();
+        }
+        HtmlUnitEvents.cacheLookup(key, entry != null);
+
+        if (evictionLock_.tryLock()) {
+            try {
+                sketch_.increment(key);
+                if (entry != null) {
+                    regions_[entry.type_.ordinal()].onAccess(entry);
                 }
             }
+            finally {
+                evictionLock_.unlock();
+            }
         }
     }
 
@@ -261,6 +697,27 @@ public class Cache implements Serializable {
         return isWithinCacheWindow(response, now, now);
     }
 
+    /**
+     * Determines if the specified response can be cached for revalidation, even if it is not fresh.
+     * This is the case for responses having an <code>ETag</code> or a <code>Last-Modified</code> header
+     * but no 'no-store' directive.
+     *
+     * @param request the performed request
+     * @param response the received response
+     * @return {@code true} if the response can be cached for revalidation
+     */
+    protected boolean isRevalidatable(final WebRequest request, final WebResponse response) {
+        return HttpMethod.GET == response.getWebRequest().getHttpMethod()
+            && UrlUtils.URL_ABOUT_BLANK != request.getUrl()
+            && !HeaderUtils.containsNoStore(response)
+            && hasValidator(response);
+    }
+
+    private static boolean hasValidator(final WebResponse response) {
+        return response.getResponseHeaderValue(HttpHeader.ETAG) != null
+                || response.getResponseHeaderValue(HttpHeader.LAST_MODIFIED) != null;
+    }
+
     /**
      * Gets the current time stamp. As method to allow overriding it, when simulating another time.
      * @return the current time stamp
@@ -336,21 +793,132 @@ public class Cache implements Serializable {
         }
 
         final String normalizedUrl = UrlUtils.normalize(url);
-        final Entry cachedEntry = entries_.get(normalizedUrl);
+        final Entry cachedEntry = getEntry(normalizedUrl, request);
         if (cachedEntry == null) {
+            recordAccess(normalizedUrl, null);
             return null;
         }
 
-        if (cachedEntry.isStillFresh(getCurrentTimestamp())) {
-            synchronized (entries_) {
-                cachedEntry.touch();
-            }
+        if (cachedEntry.isUsable(getCurrentTimestamp())) {
+            recordAccess(normalizedUrl, cachedEntry);
             return cachedEntry;
         }
-        entries_.remove(UrlUtils.normalize(url));
+        // keep the entry for revalidation, if possible
+        if (!cachedEntry.isRevalidatable()) {
+            remove(cachedEntry);
+        }
+        recordAccess(normalizedUrl, null);
         return null;
     }
 
+    /**
+     * Returns the entry from memory; falls back to the disk cache.
+     */
+    private Entry getEntry(final String key, final WebRequest request) {
+        final Entry cachedEntry = entries_.get(key);
+        final DiskCache diskCache = diskCache_;
+        if (cachedEntry != null || diskCache == null) {
+            return cachedEntry;
+        }
+
+        final DiskCache.StoredResponse stored = diskCache.get(key);
+        if (stored == null) {
+            return null;
+        }
+        final WebResponse response = new WebResponse(stored.getResponseData(), request, 0);
+        final Entry entry = createEntry(key, response, null, stored.getCreatedAt());
+        put(entry);
+        return entry;
+    }
+
+    /**
+     * Returns the cached response corresponding to the specified request that is no longer fresh
+     * but can be revalidated using a conditional request based on its <code>ETag</code> or
+     * <code>Last-Modified</code> header. If there is no such response, this method returns {@code null}.
+     *
+     * @param request the request whose corresponding response is sought
+     * @return the stale response corresponding to the specified request if any
+     */
+    public WebResponse getStaleResponse(final WebRequest request) {
+        if (HttpMethod.GET != request.getHttpMethod()) {
+            return null;
+        }
+
+        final URL url = request.getUrl();
+        if (url == null) {
+            return null;
+        }
+
+        final Entry cachedEntry = getEntry(UrlUtils.normalize(url), request);
+        if (cachedEntry == null
+                || !cachedEntry.isRevalidatable()
+                || cachedEntry.isUsable(getCurrentTimestamp())) {
+            return null;
+        }
+        return cachedEntry.response_;
+    }
+
+    /**
+     * Updates the stale response after the server confirmed it is still valid by
+     * answering the conditional request with <code>304 Not Modified</code>. The headers of the
+     * 304 response replace the cached ones; the updated response is cached again.
+     *
+     * @param request the request
+     * @param staleResponse the response returned by {@link #getStaleResponse(WebRequest)}
+     * @param notModifiedResponse the 304 response
+     * @return the updated response
+     */
+    public WebResponse revalidated(final WebRequest request, final WebResponse staleResponse,
+            final WebResponse notModifiedResponse) {
+        final Set<String> updatedHeaders = new HashSet<>();
+        final List<NameValuePair> headers = new ArrayList<>();
+        for (final NameValuePair header : notModifiedResponse.getResponseHeaders()) {
+            if (!HttpHeader.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+                updatedHeaders.add(header.getName().toLowerCase(Locale.ROOT));
+                headers.add(header);
+            }
+        }
+        for (final NameValuePair header : staleResponse.getResponseHeaders()) {
+            if (!updatedHeaders.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                headers.add(header);
+            }
+        }
+
+        // both responses own the content, the stale one might still be used by a page
+        final WebResponseData responseData = new WebResponseData(
+                DownloadedContent.retain(staleResponse.getResponseData().getDownloadedContent()),
+                staleResponse.getStatusCode(), staleResponse.getStatusMessage(), headers);
+        final WebResponse response = new WebResponse(responseData, request, notModifiedResponse.getLoadTime());
+
+        final String key = UrlUtils.normalize(request.getUrl());
+        final Entry previous = entries_.get(key);
+        final Object value = previous != null && previous.response_ == staleResponse ? previous.value_ : null;
+        final Entry entry = createEntry(key, response, value, System.currentTimeMillis());
+        put(entry);
+
+        final DiskCache diskCache = diskCache_;
+        if (diskCache != null && DiskCache.isStorable(request, response)) {
+            diskCache.store(key, responseData, entry.createdAt_);
+        }
+        return response;
+    }
+
+    /**
+     * Returns whether there is a cached response for the specified request, regardless of its freshness;
+     * a response found in the cache must not be cleaned up.
+     *
+     * @param request the request
+     * @return {@code true} if there is a cached response for the request
+     */
+    public boolean containsResponse(final WebRequest request) {
+        final URL url = request.getUrl();
+        if (url == null || HttpMethod.GET != request.getHttpMethod()) {
+            return false;
+        }
+        final Entry cachedEntry = entries_.get(UrlUtils.normalize(url));
+        return cachedEntry != null && cachedEntry.response_ != null;
+    }
+
     /**
      * Returns the cached parsed version of the specified CSS snippet. If there is no
      * corresponding cached stylesheet, this method returns {@code null}.
@@ -360,18 +928,16 @@ public class Cache implements Serializable {
      */
     public CSSStyleSheetImpl getCachedStyleSheet(final String css) {
         final Entry cachedEntry = entries_.get(css);
+        recordAccess(css, cachedEntry);
         if (cachedEntry == null) {
             return null;
         }
-        synchronized (entries_) {
-            cachedEntry.touch();
-        }
         return (CSSStyleSheetImpl) cachedEntry.value_;
     }
 
     /**
      * Returns the cache's maximum size. This is the maximum number of files that will
-     * be cached. The default is <code>25</code>.
+     * be cached. The default is <code>40</code>.
      *
      * @return the cache's maximum size
      */
@@ -381,7 +947,7 @@ public class Cache implements Serializable {
 
     /**
      * Sets the cache's maximum size. This is the maximum number of files that will
-     * be cached. The default is <code>25</code>.
+     * be cached. The default is <code>40</code>.
      *
      * @param maxSize the cache's maximum size (must be &gt;= 0)
      */
@@ -393,6 +959,103 @@ public class Cache implements Serializable {
         deleteOverflow();
     }
 
+    /**
+     * Returns the memory budget for the entries of the given type. This is the estimated
+     * number of bytes used by the cached responses, compiled scripts or parsed style sheets.
+     * The default is {@link #DEFAULT_MAX_WEIGHT}.
+     *
+     * @param type the entry type
+     * @return the memory budget in bytes
+     */
+    public long getMaxWeight(final EntryType type) {
+        return regions_[type.ordinal()].maxWeight_;
+    }
+
+    /**
+     * Sets the memory budget for the entries of the given type. This is the estimated
+     * number of bytes used by the cached responses, compiled scripts or parsed style sheets.
+     * The default is {@link #DEFAULT_MAX_WEIGHT}.
+     *
+     * @param type the entry type
+     * @param maxWeight the memory budget in bytes (must be &gt;= 0)
+     */
+    public void setMaxWeight(final EntryType type, final long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Illegal value for maxWeight: " + maxWeight);
+        }
+        evictionLock_.lock();
+        try {
+            regions_[type.ordinal()].maxWeight_ = maxWeight;
+            deleteOverflow();
+        }
+        finally {
+            evictionLock_.unlock();
+        }
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the cached entries of the given type.
+     *
+     * @param type the entry type
+     * @return the estimated number of bytes
+     */
+    public long getWeight(final EntryType type) {
+        evictionLock_.lock();
+        try {
+            return regions_[type.ordinal()].weight_;
+        }
+        finally {
+            evictionLock_.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a (fresh) cached entry since the last {@link #clear()}.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * Returns the number of lookups that found no (fresh) cached entry since the last {@link #clear()}.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the size limits since the last {@link #clear()}.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions_.get();
+    }
+
+    /**
+     * Returns the persistent cache tier or {@code null}.
+     *
+     * @return the disk cache
+     */
+    public DiskCache getDiskCache() {
+        return diskCache_;
+    }
+
+    /**
+     * Sets the persistent cache tier; the responses cached from now on are also stored in the
+     * given {@link DiskCache}, lookups fall back to it. Use {@code null} to disable the disk cache.
+     * The disk cache is not closed by this cache.
+     *
+     * @param diskCache the disk cache or {@code null}
+     */
+    public void setDiskCache(final DiskCache diskCache) {
+        diskCache_ = diskCache;
+    }
+
     /**
      * Returns the number of entries in the cache.
      *
@@ -406,25 +1069,42 @@ public class Cache implements Serializable {
      * Clears the cache.
      */
     public void clear() {
-        synchronized (entries_) {
+        evictionLock_.lock();
+        try {
             for (final Entry entry : entries_.values()) {
                 if (entry.response_ != null) {
                     entry.response_.cleanUp();
                 }
             }
             entries_.clear();
+            for (final Region region : regions_) {
+                region.clear();
+            }
+        }
+        finally {
+            evictionLock_.unlock();
         }
+        hits_.set(0);
+        misses_.set(0);
+        evictions_.set(0);
     }
 
     /**
      * Removes outdated entries from the cache.
      */
     public void clearOutdated() {
-        synchronized (entries_) {
+        evictionLock_.lock();
+        try {
             final long now = getCurrentTimestamp();
 
-            entries_.entrySet().removeIf(entry -> entry.getValue().response_ == null
-                    || !entry.getValue().isStillFresh(now));
+            for (final Entry entry : entries_.values()) {
+                if (entry.response_ == null || !entry.isStillFresh(now)) {
+                    remove(entry);
+                }
+            }
+        }
+        finally {
+            evictionLock_.unlock();
         }
     }
 }
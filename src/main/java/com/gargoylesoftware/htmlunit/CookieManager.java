@@ -17,13 +17,22 @@ package com.gargoylesoftware.htmlunit;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.conn.util.InetAddressUtils;
+import org.apache.http.conn.util.PublicSuffixMatcherLoader;
 import org.apache.http.cookie.CookieOrigin;
 
 import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitBrowserCompatCookieSpec;
@@ -36,6 +45,14 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
  * CookieManager itself takes care of this and ignores all cookie request if
  * disabled. If you override this your methods have to do the same.
  *
+ * <p>The cookies are indexed by the registrable domain of their domain (see the
+ * <a href="https://publicsuffix.org/">public suffix list</a>). Adding or removing a cookie only
+ * replaces the set of its domain, the index is read without locking. The cookies with an expiration
+ * date are kept in a priority queue, checking for expired cookies before every request only has
+ * to look at the first one.
+ * If a subclass overrides {@link #getCookies()}, {@link #getCookiesForHost(String)} filters the
+ * cookies returned by it instead of using the index.</p>
+ *
  * @author Daniel Gredler
  * @author Ahmed Ashour
  * @author Nicolas Belisle
@@ -43,17 +60,50 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
  */
 public class CookieManager implements Serializable {
 
+    private static final Comparator<Cookie> EXPIRES_COMPARATOR = Comparator.comparing(Cookie::getExpires);
+
     /** Whether or not cookies are enabled. */
-    private boolean cookiesEnabled_;
+    private volatile boolean cookiesEnabled_;
 
     /** The cookies added to this cookie manager. */
     private final Set<Cookie> cookies_ = new LinkedHashSet<>();
 
+    /** The read only copy of the cookies, {@code null} if the cookies have been changed since. */
+    private transient volatile Set<Cookie> cookiesCopy_;
+
+    /**
+     * The cookies per key of their domain (see {@link #getDomainKey(String)}), {@code null} if not built yet.
+     * The sets are read only and replaced on every change.
+     */
+    private transient volatile Map<String, Set<Cookie>> cookiesPerDomain_;
+
+    /** The key of the domain of every cookie in {@link #cookiesPerDomain_}. */
+    private transient Map<Cookie, String> domainKeys_;
+
+    /** The cookies having an expiration date, the next one to expire first. */
+    private transient PriorityQueue<Cookie> expirations_;
+
+    /** The time of the next expiration, 0 if unknown. */
+    private transient volatile long nextExpiration_;
+
+    /** Whether {@link #getCookies()} is overridden by a subclass. */
+    private final boolean getCookiesOverridden_;
+
     /**
      * Creates a new instance.
      */
     public CookieManager() {
         cookiesEnabled_ = true;
+        getCookiesOverridden_ = isGetCookiesOverridden(getClass());
+    }
+
+    private static boolean isGetCookiesOverridden(final Class<?> clazz) {
+        try {
+            return clazz.getMethod("getCookies").getDeclaringClass() != CookieManager.class;
+        }
+        catch (final NoSuchMethodException e) {
+            return false;
+        }
     }
 
     /**
@@ -68,7 +118,7 @@ public class CookieManager implements Serializable {
      * Returns {@code true} if cookies are enabled. Cookies are enabled by default.
      * @return {@code true} if cookies are enabled, {@code false} otherwise
      */
-    public synchronized boolean isCookiesEnabled() {
+    public boolean isCookiesEnabled() {
         return cookiesEnabled_;
     }
 
@@ -77,13 +127,206 @@ public class CookieManager implements Serializable {
      * If disabled, this returns an empty set.
      * @return the currently configured cookies, in an unmodifiable set
      */
-    public synchronized Set<Cookie> getCookies() {
+    public Set<Cookie> getCookies() {
+        if (!isCookiesEnabled()) {
+            return Collections.emptySet();
+        }
+
+        return getCookiesCopy();
+    }
+
+    /**
+     * Returns the currently configured cookies whose domain is the given host or one of its
+     * parent domains, in an unmodifiable set. This is only a preselection; the cookies still
+     * have to be matched against the request (e.g. the path and the secure flag).
+     * If disabled, this returns an empty set.
+     * @param host the host
+     * @return the currently configured cookies that may be sent to the given host
+     */
+    public Set<Cookie> getCookiesForHost(final String host) {
         if (!isCookiesEnabled()) {
             return Collections.emptySet();
         }
 
-        final Set<Cookie> copy = new LinkedHashSet<>(cookies_);
-        return Collections.unmodifiableSet(copy);
+        // the index only knows the cookies of this manager
+        final Set<Cookie> overriddenCookies = getCookiesOverridden_ ? getCookies() : null;
+        final Map<String, Set<Cookie>> cookiesPerDomain = overriddenCookies == null
+                ? getCookiesPerDomain() : buildIndex(overriddenCookies, new HashMap<>());
+        final String lowerCaseHost = host.toLowerCase(Locale.ROOT);
+        final String domainKey = getDomainKey(lowerCaseHost);
+
+        // cookies of the registrable domain and of the parent domains (public suffixes
+        // or single labels like 'localhost') of it
+        final List<Set<Cookie>> buckets = new ArrayList<>();
+        addBucket(cookiesPerDomain, domainKey, buckets);
+        if (!isIpAddress(domainKey)) {
+            int dot = domainKey.indexOf('.');
+            while (dot != -1) {
+                addBucket(cookiesPerDomain, domainKey.substring(dot + 1), buckets);
+                dot = domainKey.indexOf('.', dot + 1);
+            }
+        }
+
+        if (buckets.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (buckets.size() == 1) {
+            return buckets.get(0);
+        }
+
+        // keep the order of all cookies
+        final Set<Cookie> merged = new LinkedHashSet<>();
+        for (final Cookie cookie : overriddenCookies == null ? getCookiesCopy() : overriddenCookies) {
+            for (final Set<Cookie> bucket : buckets) {
+                if (bucket.contains(cookie)) {
+                    merged.add(cookie);
+                    break;
+                }
+            }
+        }
+        return Collections.unmodifiableSet(merged);
+    }
+
+    private static void addBucket(final Map<String, Set<Cookie>> cookiesPerDomain, final String key,
+            final List<Set<Cookie>> buckets) {
+        final Set<Cookie> cookies = cookiesPerDomain.get(key);
+        if (cookies != null) {
+            buckets.add(cookies);
+        }
+    }
+
+    /**
+     * Returns the key of the index for the given domain; the registrable domain according to the
+     * public suffix list, or the domain itself for IP addresses, single label domains and public suffixes.
+     * The key of a cookie's domain is the key of every host the cookie domain matches or a parent domain of it.
+     * @param domain the domain in lower case, without leading dots
+     * @return the key
+     */
+    private static String getDomainKey(final String domain) {
+        if (domain.indexOf('.') == -1 || isIpAddress(domain)) {
+            return domain;
+        }
+        final String root = PublicSuffixMatcherLoader.getDefault().getDomainRoot(domain);
+        if (root == null) {
+            return domain;
+        }
+        return root;
+    }
+
+    /**
+     * Returns the key of the index for the domain of the given cookie.
+     * @param cookie the cookie
+     * @return the key or {@code null} if the cookie has no domain
+     */
+    private static String getDomainKey(final Cookie cookie) {
+        final String domain = cookie.getDomain();
+        if (domain == null) {
+            return null;
+        }
+        final String key = domain.toLowerCase(Locale.ROOT);
+        int start = 0;
+        while (start < key.length() && key.charAt(start) == '.') {
+            start++;
+        }
+        return getDomainKey(key.substring(start));
+    }
+
+    private static boolean isIpAddress(final String domain) {
+        return InetAddressUtils.isIPv4Address(domain) || domain.indexOf(':') != -1;
+    }
+
+    /**
+     * Builds the index of the given cookies.
+     * @param cookies the cookies
+     * @param domainKeys the map to store the key of every indexed cookie in
+     * @return the read only sets of cookies per key of their domain
+     */
+    private static Map<String, Set<Cookie>> buildIndex(final Set<Cookie> cookies,
+            final Map<Cookie, String> domainKeys) {
+        final Map<String, Set<Cookie>> cookiesPerDomain = new HashMap<>();
+        for (final Cookie cookie : cookies) {
+            final String key = getDomainKey(cookie);
+            if (key != null) {
+                domainKeys.put(cookie, key);
+                cookiesPerDomain.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(cookie);
+            }
+        }
+        for (final Map.Entry<String, Set<Cookie>> entry : cookiesPerDomain.entrySet()) {
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+        }
+        return cookiesPerDomain;
+    }
+
+    private Set<Cookie> getCookiesCopy() {
+        Set<Cookie> cookiesCopy = cookiesCopy_;
+        if (cookiesCopy == null) {
+            synchronized (this) {
+                cookiesCopy = cookiesCopy_;
+                if (cookiesCopy == null) {
+                    cookiesCopy = Collections.unmodifiableSet(new LinkedHashSet<>(cookies_));
+                    cookiesCopy_ = cookiesCopy;
+                }
+            }
+        }
+        return cookiesCopy;
+    }
+
+    private Map<String, Set<Cookie>> getCookiesPerDomain() {
+        Map<String, Set<Cookie>> cookiesPerDomain = cookiesPerDomain_;
+        if (cookiesPerDomain == null) {
+            synchronized (this) {
+                cookiesPerDomain = cookiesPerDomain_;
+                if (cookiesPerDomain == null) {
+                    domainKeys_ = new HashMap<>();
+                    cookiesPerDomain = new ConcurrentHashMap<>(buildIndex(cookies_, domainKeys_));
+                    cookiesPerDomain_ = cookiesPerDomain;
+                }
+            }
+        }
+        return cookiesPerDomain;
+    }
+
+    /**
+     * Adds the given cookie to the index, if the index is already built.
+     * The caller has to hold the lock of this manager.
+     * @param cookie the cookie
+     */
+    private void index(final Cookie cookie) {
+        final Map<String, Set<Cookie>> cookiesPerDomain = cookiesPerDomain_;
+        if (cookiesPerDomain == null) {
+            return;
+        }
+        final String key = getDomainKey(cookie);
+        if (key != null) {
+            domainKeys_.put(cookie, key);
+            final Set<Cookie> bucket = cookiesPerDomain.get(key);
+            final Set<Cookie> updated = bucket == null ? new LinkedHashSet<>() : new LinkedHashSet<>(bucket);
+            updated.add(cookie);
+            cookiesPerDomain.put(key, Collections.unmodifiableSet(updated));
+        }
+    }
+
+    /**
+     * Removes the given cookie from the index, if the index is already built.
+     * The caller has to hold the lock of this manager.
+     * @param cookie the cookie
+     */
+    private void unindex(final Cookie cookie) {
+        final Map<String, Set<Cookie>> cookiesPerDomain = cookiesPerDomain_;
+        if (cookiesPerDomain == null) {
+            return;
+        }
+        final String key = domainKeys_.remove(cookie);
+        if (key != null) {
+            final Set<Cookie> updated = new LinkedHashSet<>(cookiesPerDomain.get(key));
+            updated.remove(cookie);
+            if (updated.isEmpty()) {
+                cookiesPerDomain.remove(key);
+            }
+            else {
+                cookiesPerDomain.put(key, Collections.unmodifiableSet(updated));
+            }
+        }
     }
 
     /**
@@ -107,7 +350,7 @@ public class CookieManager implements Serializable {
      * @param date the date to use for comparison when clearing expired cookies
      * @return whether any cookies were found expired, and were cleared
      */
-    public synchronized boolean clearExpired(final Date date) {
+    public boolean clearExpired(final Date date) {
         if (!isCookiesEnabled()) {
             return false;
         }
@@ -116,15 +359,48 @@ public class CookieManager implements Serializable {
             return false;
         }
 
-        boolean foundExpired = false;
-        for (final Iterator<Cookie> iter = cookies_.iterator(); iter.hasNext();) {
-            final Cookie cookie = iter.next();
-            if (cookie.getExpires() != null && date.after(cookie.getExpires())) {
-                iter.remove();
+        // fast path without locking, nothing has expired
+        if (date.getTime() <= nextExpiration_) {
+            return false;
+        }
+
+        synchronized (this) {
+            final PriorityQueue<Cookie> expirations = getExpirations();
+            boolean foundExpired = false;
+            while (!expirations.isEmpty() && date.after(expirations.peek().getExpires())) {
+                final Cookie cookie = expirations.poll();
+                cookies_.remove(cookie);
+                unindex(cookie);
                 foundExpired = true;
             }
+            if (foundExpired) {
+                cookiesCopy_ = null;
+            }
+            updateNextExpiration();
+            return foundExpired;
+        }
+    }
+
+    private PriorityQueue<Cookie> getExpirations() {
+        if (expirations_ == null) {
+            expirations_ = new PriorityQueue<>(EXPIRES_COMPARATOR);
+            for (final Cookie cookie : cookies_) {
+                if (cookie.getExpires() != null) {
+                    expirations_.add(cookie);
+                }
+            }
+        }
+        return expirations_;
+    }
+
+    private void updateNextExpiration() {
+        final Cookie next = getExpirations().peek();
+        if (next == null) {
+            nextExpiration_ = Long.MAX_VALUE;
+        }
+        else {
+            nextExpiration_ = next.getExpires().getTime();
         }
-        return foundExpired;
     }
 
     /**
@@ -171,12 +447,12 @@ public class CookieManager implements Serializable {
      * @param name the name of the cookie to return
      * @return the currently configured cookie with the specified name, or {@code null} if one does not exist
      */
-    public synchronized Cookie getCookie(final String name) {
+    public Cookie getCookie(final String name) {
         if (!isCookiesEnabled()) {
             return null;
         }
 
-        for (final Cookie cookie : cookies_) {
+        for (final Cookie cookie : getCookiesCopy()) {
             if (StringUtils.equals(cookie.getName(), name)) {
                 return cookie;
             }
@@ -194,12 +470,22 @@ public class CookieManager implements Serializable {
             return;
         }
 
-        cookies_.remove(cookie);
+        final PriorityQueue<Cookie> expirations = getExpirations();
+        if (cookies_.remove(cookie)) {
+            expirations.remove(cookie);
+            unindex(cookie);
+        }
 
         // don't add expired cookie
         if (cookie.getExpires() == null || cookie.getExpires().after(new Date())) {
             cookies_.add(cookie);
+            index(cookie);
+            if (cookie.getExpires() != null) {
+                expirations.add(cookie);
+            }
         }
+        cookiesCopy_ = null;
+        updateNextExpiration();
     }
 
     /**
@@ -212,7 +498,13 @@ public class CookieManager implements Serializable {
             return;
         }
 
-        cookies_.remove(cookie);
+        if (cookies_.remove(cookie)) {
+            if (expirations_ != null) {
+                expirations_.remove(cookie);
+            }
+            unindex(cookie);
+            cookiesCopy_ = null;
+        }
     }
 
     /**
@@ -225,5 +517,10 @@ public class CookieManager implements Serializable {
         }
 
         cookies_.clear();
+        expirations_ = null;
+        cookiesCopy_ = null;
+        cookiesPerDomain_ = null;
+        domainKeys_ = null;
+        nextExpiration_ = 0;
     }
 }
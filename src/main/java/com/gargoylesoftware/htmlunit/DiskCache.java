@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpStatus;
+
+import com.gargoylesoftware.htmlunit.util.HeaderUtils;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * A persistent cache tier for {@link Cache}, storing the headers and the bodies of cacheable
+ * responses in a directory. This allows to reuse the downloaded static resources after a restart.
+ *
+ * <p>The responses are appended to segment files; an index file maps the urls to the
+ * position of the latest response. Writes are done in the background and are serialized by a file lock,
+ * therefore the same directory can be used by several processes at the same time. Every process picks up
+ * the responses written by the others in the background (see {@link #refresh()}); lookups only use
+ * the index in memory.</p>
+ *
+ * <p>If the size of all segments exceeds {@link #getMaxSize()}, the oldest segments are deleted and the index
+ * is rewritten without their entries. Responses marked as {@code Cache-Control: private} and responses
+ * to requests with credentials are not stored.
+ * The instance is not closed by the {@link WebClient}; it may be shared by several clients and has to be
+ * closed by the owner.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @see Cache#setDiskCache(DiskCache)
+ */
+public class DiskCache implements AutoCloseable {
+
+    /** The default maximum size of all segments in bytes. */
+    public static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
+
+    /** The default size of a segment file in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final Log LOG = LogFactory.getLog(DiskCache.class);
+
+    private static final int MAGIC = 0x48554443;
+    private static final String INDEX_FILE = "index";
+    private static final String INDEX_TEMP_FILE = "index.tmp";
+    private static final int INDEX_HEADER_LENGTH = 8;
+    private static final long NO_GENERATION = Long.MIN_VALUE;
+    private static final long REFRESH_INTERVAL = 1000;
+    private static final String LOCK_FILE = "lock";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * File locks are held per process; the threads of this process are serialized using these monitors.
+     * Guarded by itself; a monitor is removed when the last instance using its directory is closed.
+     */
+    private static final Map<File, DirectoryMonitor> DIRECTORY_MONITORS = new HashMap<>();
+
+    private final File directory_;
+    private final DirectoryMonitor directoryMonitor_;
+    private boolean closed_;
+    private volatile long maxSize_ = DEFAULT_MAX_SIZE;
+    private volatile long segmentSize_ = DEFAULT_SEGMENT_SIZE;
+
+    private final Map<String, Location> index_ = new ConcurrentHashMap<>();
+    /** Every rewrite of the index file starts a new generation; the positions of the old one are invalid. */
+    private long indexGeneration_ = NO_GENERATION;
+    private long indexPosition_;
+
+    private final ScheduledExecutorService writer_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HtmlUnit DiskCache writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The monitor of a directory and the number of open instances using it.
+     */
+    private static final class DirectoryMonitor {
+        private int users_;
+    }
+
+    /**
+     * The position of a response inside the segments.
+     */
+    private static final class Location {
+        private final int segment_;
+        private final long offset_;
+        private final int length_;
+
+        Location(final int segment, final long offset, final int length) {
+            segment_ = segment;
+            offset_ = offset;
+            length_ = length;
+        }
+    }
+
+    /**
+     * A response read from the disk.
+     */
+    static final class StoredResponse {
+        private final WebResponseData responseData_;
+        private final long createdAt_;
+
+        StoredResponse(final WebResponseData responseData, final long createdAt) {
+            responseData_ = responseData;
+            createdAt_ = createdAt;
+        }
+
+        WebResponseData getResponseData() {
+            return responseData_;
+        }
+
+        long getCreatedAt() {
+            return createdAt_;
+        }
+    }
+
+    /**
+     * Creates a new instance using the given directory; the directory is created if needed.
+     * @param directory the directory
+     * @throws IOException if the directory is not usable
+     */
+    public DiskCache(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the cache directory '" + directory + "'.");
+        }
+        directory_ = directory.getCanonicalFile();
+        synchronized (DIRECTORY_MONITORS) {
+            directoryMonitor_ = DIRECTORY_MONITORS.computeIfAbsent(directory_, k -> new DirectoryMonitor());
+            directoryMonitor_.users_++;
+        }
+        refreshIndex();
+        writer_.scheduleWithFixedDelay(this::refreshIndex, REFRESH_INTERVAL, REFRESH_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the maximum size of all segment files in bytes. The default is {@link #DEFAULT_MAX_SIZE}.
+     * @return the maximum size
+     */
+    public long getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Sets the maximum size of all segment files in bytes. The default is {@link #DEFAULT_MAX_SIZE}.
+     * The limit is checked when responses are written.
+     * @param maxSize the maximum size (must be &gt;= 0)
+     */
+    public void setMaxSize(final long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal value for maxSize: " + maxSize);
+        }
+        maxSize_ = maxSize;
+    }
+
+    /**
+     * Returns the size of a segment file in bytes. The default is {@link #DEFAULT_SEGMENT_SIZE}.
+     * @return the segment size
+     */
+    public long getSegmentSize() {
+        return segmentSize_;
+    }
+
+    /**
+     * Sets the size of a segment file in bytes. When a segment reaches this size, a new one is started.
+     * Responses larger than a segment are not stored.
+     * The default is {@link #DEFAULT_SEGMENT_SIZE}.
+     * @param segmentSize the segment size (must be &gt; 0)
+     */
+    public void setSegmentSize(final long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Illegal value for segmentSize: " + segmentSize);
+        }
+        segmentSize_ = segmentSize;
+    }
+
+    /**
+     * Returns the directory used by this cache.
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory_;
+    }
+
+    /**
+     * Returns the size of all segment files in bytes.
+     * @return the size
+     */
+    public long getSize() {
+        long size = 0;
+        for (final File segment : getSegments().values()) {
+            size += segment.length();
+        }
+        return size;
+    }
+
+    /**
+     * Reads the entries written by other instances using the same directory since the last refresh.
+     * This is done in the background every second.
+     */
+    public void refresh() {
+        refreshIndex();
+    }
+
+    /**
+     * Returns whether the given response may be stored on the disk.
+     * @param request the request
+     * @param response the response
+     * @return {@code false} for private responses and requests with credentials
+     */
+    static boolean isStorable(final WebRequest request, final WebResponse response) {
+        return response.getStatusCode() == HttpStatus.SC_OK
+                && !HeaderUtils.containsPrivate(response)
+                && !request.isAdditionalHeader(HttpHeader.AUTHORIZATION)
+                && request.getCredentials() == null
+                && request.getUrlCredentials() == null;
+    }
+
+    /**
+     * Returns the stored response for the given key or {@code null}.
+     * @param key the normalized url
+     * @return the stored response or {@code null}
+     */
+    StoredResponse get(final String key) {
+        final Location location = index_.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        final byte[] record = new byte[location.length_];
+        try (RandomAccessFile file = new RandomAccessFile(getSegment(location.segment_), "r")) {
+            file.seek(location.offset_);
+            file.readFully(record);
+        }
+        catch (final FileNotFoundException | EOFException e) {
+            // the segment was deleted
+            index_.remove(key, location);
+            return null;
+        }
+        catch (final IOException e) {
+            LOG.warn("Reading the cached response for '" + key + "' failed.", e);
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            if (in.readInt() != MAGIC || !key.equals(readString(in))) {
+                index_.remove(key, location);
+                return null;
+            }
+            final long createdAt = in.readLong();
+            final int statusCode = in.readInt();
+            final String statusMessage = readString(in);
+            final int headerCount = in.readInt();
+            final List<NameValuePair> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new NameValuePair(readString(in), readString(in)));
+            }
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new StoredResponse(new WebResponseData(body, statusCode, statusMessage, headers), createdAt);
+        }
+        catch (final IOException e) {
+            LOG.warn("Parsing the cached response for '" + key + "' failed.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given response in the background.
+     * @param key the normalized url
+     * @param responseData the response data
+     * @param createdAt the download time of the response
+     */
+    void store(final String key, final WebResponseData responseData, final long createdAt) {
+        // the owner of the response may clean it up before it is written
+        final DownloadedContent content;
+        try {
+            content = share(responseData.getDownloadedContent());
+        }
+        catch (final IOException e) {
+            LOG.warn("Storing the response for '" + key + "' failed.", e);
+            return;
+        }
+
+        try {
+            writer_.execute(() -> {
+                try {
+                    write(key, responseData, content, createdAt);
+                }
+                catch (final IOException e) {
+                    LOG.warn("Storing the response for '" + key + "' failed.", e);
+                }
+                finally {
+                    content.cleanUp();
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            // already closed
+            content.cleanUp();
+        }
+    }
+
+    /**
+     * Returns a content that stays readable until it is cleaned up, even if the given one is cleaned
+     * up by its owner.
+     */
+    private static DownloadedContent share(final DownloadedContent content) throws IOException {
+        if (content instanceof DownloadedContent.InMemory) {
+            return content;
+        }
+        if (content instanceof DownloadedContent.MemoryMapped || content instanceof StreamingDownloadedContent) {
+            return DownloadedContent.retain(content);
+        }
+
+        final File copy = File.createTempFile("htmlunit", ".tmp");
+        try (InputStream is = content.getInputStream()) {
+            FileUtils.copyInputStreamToFile(is, copy);
+        }
+        catch (final IOException e) {
+            FileUtils.deleteQuietly(copy);
+            throw e;
+        }
+        return new DownloadedContent.OnFile(copy, true);
+    }
+
+    private void write(final String key, final WebResponseData responseData, final DownloadedContent content,
+            final long createdAt) throws IOException {
+        // only the head of the record is built in memory, the body is copied from the content
+        final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        final long bodyLength = content.length();
+        try (DataOutputStream out = new DataOutputStream(head)) {
+            out.writeInt(MAGIC);
+            writeString(out, key);
+            out.writeLong(createdAt);
+            out.writeInt(responseData.getStatusCode());
+            writeString(out, responseData.getStatusMessage());
+            out.writeInt(responseData.getResponseHeaders().size());
+            for (final NameValuePair header : responseData.getResponseHeaders()) {
+                writeString(out, header.getName());
+                writeString(out, header.getValue());
+            }
+            out.writeInt((int) bodyLength);
+        }
+
+        // the record is read into memory by get()
+        final long recordLength = head.size() + bodyLength;
+        if (bodyLength > segmentSize_ || recordLength > Integer.MAX_VALUE) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("The response for '" + key + "' is too large to be stored (" + bodyLength + " bytes).");
+            }
+            return;
+        }
+
+        synchronized (directoryMonitor_) {
+            try (FileChannel lockChannel = FileChannel.open(new File(directory_, LOCK_FILE).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                final File indexFile = new File(directory_, INDEX_FILE);
+                if (indexFile.length() < INDEX_HEADER_LENGTH) {
+                    writeIndex(indexFile, System.currentTimeMillis(), new TreeMap<>());
+                }
+
+                final TreeMap<Integer, File> segments = getSegments();
+                int segmentNumber = segments.isEmpty() ? 0 : segments.lastKey();
+                File segment = getSegment(segmentNumber);
+                if (segment.length() >= segmentSize_) {
+                    segmentNumber++;
+                    segment = getSegment(segmentNumber);
+                    segments.put(segmentNumber, segment);
+                }
+
+                final long offset = segment.length();
+                try (FileOutputStream out = new FileOutputStream(segment, true);
+                        InputStream body = content.getInputStream()) {
+                    head.writeTo(out);
+                    if (IOUtils.copyLarge(body, out, 0, bodyLength) != bodyLength) {
+                        // truncate the incomplete record, it is not part of the index
+                        out.getChannel().truncate(offset);
+                        throw new EOFException("The body of '" + key + "' is shorter than " + bodyLength + " bytes.");
+                    }
+                }
+
+                // the index entry is written after the data, readers never see incomplete responses
+                final ByteArrayOutputStream indexRecord = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(indexRecord)) {
+                    writeIndexEntry(out, key, new Location(segmentNumber, offset, (int) recordLength));
+                }
+                try (FileOutputStream out = new FileOutputStream(indexFile, true)) {
+                    indexRecord.writeTo(out);
+                }
+
+                if (deleteOldestSegments(segments)) {
+                    compactIndex(indexFile, segments);
+                }
+            }
+        }
+        refreshIndex();
+    }
+
+    /**
+     * Deletes the oldest segments until the size limit is met; the current segment is never deleted.
+     * @return whether segments were deleted
+     */
+    private boolean deleteOldestSegments(final TreeMap<Integer, File> segments) {
+        long size = 0;
+        for (final File segment : segments.values()) {
+            size += segment.length();
+        }
+        boolean deleted = false;
+        while (size > maxSize_ && segments.size() > 1) {
+            final File oldest = segments.pollFirstEntry().getValue();
+            size -= oldest.length();
+            if (!oldest.delete()) {
+                LOG.warn("Unable to delete the cache segment '" + oldest + "'.");
+            }
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    /**
+     * Rewrites the index without the entries of the deleted segments; has to be called holding the file lock.
+     */
+    private void compactIndex(final File indexFile, final TreeMap<Integer, File> segments) throws IOException {
+        final long generation;
+        final TreeMap<String, Location> entries = new TreeMap<>();
+        synchronized (this) {
+            // all entries, the other processes are waiting for the lock
+            refreshIndex();
+            generation = indexGeneration_ + 1;
+            for (final Map.Entry<String, Location> entry : index_.entrySet()) {
+                if (segments.containsKey(entry.getValue().segment_)) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        writeIndex(indexFile, generation, entries);
+    }
+
+    /**
+     * Replaces the index file with a new generation containing the given entries.
+     */
+    private void writeIndex(final File indexFile, final long generation, final Map<String, Location> entries)
+            throws IOException {
+        final File tempFile = new File(directory_, INDEX_TEMP_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeLong(generation);
+            for (final Map.Entry<String, Location> entry : entries.entrySet()) {
+                writeIndexEntry(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeIndexEntry(final DataOutputStream out, final String key, final Location location)
+            throws IOException {
+        writeString(out, key);
+        out.writeInt(location.segment_);
+        out.writeLong(location.offset_);
+        out.writeInt(location.length_);
+    }
+
+    /**
+     * Reads the index entries written since the last call.
+     */
+    private synchronized void refreshIndex() {
+        final byte[] bytes;
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory_, INDEX_FILE), "r")) {
+            final long length = file.length();
+            final long generation = length < INDEX_HEADER_LENGTH ? NO_GENERATION : file.readLong();
+            if (generation != indexGeneration_) {
+                // the index was rewritten or the cache was cleared
+                index_.clear();
+                indexGeneration_ = generation;
+                indexPosition_ = INDEX_HEADER_LENGTH;
+            }
+            if (generation == NO_GENERATION || length <= indexPosition_) {
+                return;
+            }
+
+            file.seek(indexPosition_);
+            bytes = new byte[(int) (length - indexPosition_)];
+            file.readFully(bytes);
+        }
+        catch (final FileNotFoundException e) {
+            // nothing written so far
+            index_.clear();
+            indexGeneration_ = NO_GENERATION;
+            return;
+        }
+        catch (final IOException e) {
+            LOG.warn("Reading the cache index failed.", e);
+            return;
+        }
+
+        int consumed = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            while (consumed < bytes.length) {
+                final String key = readString(in);
+                final Location location = new Location(in.readInt(), in.readLong(), in.readInt());
+                index_.put(key, location);
+                consumed = bytes.length - in.available();
+            }
+        }
+        catch (final IOException e) {
+            // the last entry is still written by another process
+        }
+        indexPosition_ += consumed;
+    }
+
+    /**
+     * Writes the string with its length; unlike {@link DataOutputStream#writeUTF(String)} this
+     * supports strings of any length.
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private File getSegment(final int number) {
+        return new File(directory_, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private TreeMap<Integer, File> getSegments() {
+        final TreeMap<Integer, File> segments = new TreeMap<>();
+        final File[] files = directory_.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.put(Integer.valueOf(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())), file);
+                    }
+                    catch (final NumberFormatException e) {
+                        // not one of our files
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Deletes all stored responses.
+     * @throws IOException in case of problems
+     */
+    public void clear() throws IOException {
+        synchronized (directoryMonitor_) {
+            try (FileChannel lockChannel = FileChannel.open(new File(directory_, LOCK_FILE).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                final File indexFile = new File(directory_, INDEX_FILE);
+                long generation = System.currentTimeMillis();
+                synchronized (this) {
+                    refreshIndex();
+                    if (indexGeneration_ != NO_GENERATION) {
+                        generation = indexGeneration_ + 1;
+                    }
+                }
+                writeIndex(indexFile, generation, new TreeMap<>());
+                for (final File segment : getSegments().values()) {
+                    if (!segment.delete()) {
+                        LOG.warn("Unable to delete the cache segment '" + segment + "'.");
+                    }
+                }
+            }
+        }
+        refreshIndex();
+    }
+
+    /**
+     * Waits for the pending writes and stops the background writer; responses stored after
+     * closing are ignored.
+     */
+    @Override
+    public void close() {
+        writer_.shutdown();
+        try {
+            if (!writer_.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Pending writes of the disk cache not finished.");
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (DIRECTORY_MONITORS) {
+            if (!closed_) {
+                closed_ = true;
+                if (--directoryMonitor_.users_ == 0) {
+                    DIRECTORY_MONITORS.remove(directory_);
+                }
+            }
+        }
+    }
+}
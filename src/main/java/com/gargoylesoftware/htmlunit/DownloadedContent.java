@@ -19,7 +19,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
@@ -37,19 +44,30 @@ public interface DownloadedContent extends Serializable {
      */
     class InMemory implements DownloadedContent {
         private final byte[] bytes_;
+        private final int length_;
 
         InMemory(final byte[] byteArray) {
+            this(byteArray, byteArray == null ? 0 : byteArray.length);
+        }
+
+        /**
+         * @param byteArray the content; not copied
+         * @param length the number of valid bytes at the beginning of the array
+         */
+        InMemory(final byte[] byteArray, final int length) {
             if (byteArray == null) {
                 bytes_ = ArrayUtils.EMPTY_BYTE_ARRAY;
+                length_ = 0;
             }
             else {
                 bytes_ = byteArray;
+                length_ = length;
             }
         }
 
         @Override
         public InputStream getInputStream() {
-            return new ByteArrayInputStream(bytes_);
+            return new ByteArrayInputStream(bytes_, 0, length_);
         }
 
         @Override
@@ -64,7 +82,7 @@ public interface DownloadedContent extends Serializable {
 
         @Override
         public long length() {
-            return bytes_.length;
+            return length_;
         }
     }
 
@@ -116,6 +134,159 @@ public interface DownloadedContent extends Serializable {
         }
     }
 
+    /**
+     * Implementation keeping content in a temporary file that is memory-mapped for reading.
+     * The file is deleted when the last reference is released by {@link #cleanUp()}; every
+     * additional owner (e.g. a second response sharing the content) has to {@link #retain()} it.
+     * Not every platform is able to delete a file while it is still mapped; such files are
+     * remembered (up to {@link #MAX_LEFTOVERS}) and deleted by the next {@link #cleanUp()}
+     * or by {@link WebClient#close()}.
+     */
+    class MemoryMapped implements DownloadedContent {
+        /** The maximum number of files remembered because they could not be deleted. */
+        static final int MAX_LEFTOVERS = 1000;
+
+        private static final Set<File> LEFTOVERS = new LinkedHashSet<>();
+
+        private final File file_;
+        private final long length_;
+        private final AtomicInteger references_ = new AtomicInteger(1);
+        private transient MappedByteBuffer buffer_;
+
+        /**
+         * @param file the temporary file; deleted when the last reference is released
+         */
+        MemoryMapped(final File file) {
+            file_ = file;
+            length_ = file.length();
+        }
+
+        /**
+         * Adds a reference to this content; every reference has to be released by calling {@link #cleanUp()}.
+         * @return this
+         */
+        public MemoryMapped retain() {
+            if (references_.getAndIncrement() < 1) {
+                references_.decrementAndGet();
+                throw new IllegalStateException("Content '" + file_ + "' was already cleaned up.");
+            }
+            return this;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (references_.get() < 1) {
+                throw new IOException("Content '" + file_ + "' was already cleaned up.");
+            }
+            if (length_ > Integer.MAX_VALUE) {
+                return Files.newInputStream(file_.toPath());
+            }
+            return new ByteBufferInputStream(getBuffer().duplicate());
+        }
+
+        private synchronized ByteBuffer getBuffer() throws IOException {
+            if (buffer_ == null) {
+                try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.READ)) {
+                    buffer_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, length_);
+                }
+            }
+            return buffer_;
+        }
+
+        /**
+         * Releases one reference; the file is deleted if there are no references left.
+         */
+        @Override
+        public void cleanUp() {
+            if (references_.decrementAndGet() == 0) {
+                synchronized (this) {
+                    buffer_ = null;
+                }
+                delete(file_);
+            }
+        }
+
+        /**
+         * Deletes the given temporary file; if this is not possible (yet), the file is remembered
+         * and deleted by a later call or by {@link WebClient#close()}.
+         * @param file the file to delete
+         */
+        static void delete(final File file) {
+            if (!FileUtils.deleteQuietly(file)) {
+                synchronized (LEFTOVERS) {
+                    // beyond the limit the file is left in the temp directory
+                    if (LEFTOVERS.size() < MAX_LEFTOVERS) {
+                        LEFTOVERS.add(file);
+                    }
+                }
+            }
+            deleteLeftovers();
+        }
+
+        /**
+         * Retries to delete the files of the released contents that could not be deleted so far.
+         */
+        static void deleteLeftovers() {
+            synchronized (LEFTOVERS) {
+                LEFTOVERS.removeIf(file -> FileUtils.deleteQuietly(file) || !file.exists());
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return length_ == 0;
+        }
+
+        @Override
+        public long length() {
+            return length_;
+        }
+
+        /**
+         * Reads the content of a buffer.
+         */
+        private static final class ByteBufferInputStream extends InputStream {
+            private final ByteBuffer buffer_;
+
+            ByteBufferInputStream(final ByteBuffer buffer) {
+                buffer_ = buffer;
+            }
+
+            @Override
+            public int read() {
+                if (!buffer_.hasRemaining()) {
+                    return -1;
+                }
+                return buffer_.get() & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer_.hasRemaining()) {
+                    return -1;
+                }
+                final int count = Math.min(len, buffer_.remaining());
+                buffer_.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(final long n) {
+                final int count = (int) Math.max(0, Math.min(n, buffer_.remaining()));
+                buffer_.position(buffer_.position() + count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return buffer_.remaining();
+            }
+        }
+    }
+
     /**
      * Returns a new {@link InputStream} allowing to read the downloaded content.
      * @return the InputStream
@@ -139,4 +310,21 @@ public interface DownloadedContent extends Serializable {
      * @return the length
      */
     long length();
+
+    /**
+     * Adds a reference to the given content if it is reference counted (see {@link MemoryMapped#retain()}
+     * and {@link StreamingDownloadedContent#retain()});
+     * has to be called by every additional owner of the content, which releases it by calling {@link #cleanUp()}.
+     * @param content the content
+     * @return the content
+     */
+    static DownloadedContent retain(final DownloadedContent content) {
+        if (content instanceof MemoryMapped) {
+            ((MemoryMapped) content).retain();
+        }
+        else if (content instanceof StreamingDownloadedContent) {
+            ((StreamingDownloadedContent) content).retain();
+        }
+        return content;
+    }
 }
@@ -32,6 +32,9 @@ public final class HttpHeader {
     /** origin. */
     public static final String ORIGIN_LC = "origin";
 
+    /** Authorization. */
+    public static final String AUTHORIZATION = "Authorization";
+
     /** Cache-Control. */
     public static final String CACHE_CONTROL = "Cache-Control";
 
@@ -41,6 +44,15 @@ public final class HttpHeader {
     /** Expires. */
     public static final String EXPIRES = "Expires";
 
+    /** ETag. */
+    public static final String ETAG = "ETag";
+
+    /** If-None-Match. */
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    /** If-Modified-Since. */
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
     /** Accept. */
     public static final String ACCEPT = "Accept";
     /** Accept-LC. */
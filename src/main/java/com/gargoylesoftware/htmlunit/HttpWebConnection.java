@@ -17,7 +17,6 @@ package com.gargoylesoftware.htmlunit;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.URL_AUTH_CREDENTIALS;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
@@ -30,10 +29,11 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
@@ -41,7 +41,9 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSocketFactory;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.commons.logging.Log;
@@ -55,10 +57,12 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.AuthCache;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpDelete;
@@ -83,7 +87,9 @@ import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
@@ -97,8 +103,11 @@ import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpProcessorBuilder;
 import org.apache.http.protocol.RequestContent;
@@ -106,6 +115,7 @@ import org.apache.http.protocol.RequestTargetHost;
 import org.apache.http.ssl.SSLContexts;
 import org.apache.http.util.TextUtils;
 
+import com.gargoylesoftware.htmlunit.DefaultPageCreator.PageType;
 import com.gargoylesoftware.htmlunit.WebRequest.HttpHint;
 import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitCookieSpecProvider;
 import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitCookieStore;
@@ -113,6 +123,10 @@ import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitRedirectStrategie;
 import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitSSLConnectionSocketFactory;
 import com.gargoylesoftware.htmlunit.httpclient.HttpClientConverter;
 import com.gargoylesoftware.htmlunit.httpclient.SocksConnectionSocketFactory;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 import com.gargoylesoftware.htmlunit.util.KeyDataPair;
 import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
@@ -139,22 +153,30 @@ public class HttpWebConnection implements WebConnection {
 
     private static final String HACKED_COOKIE_POLICY = "mine";
 
-    // have one per thread because this is (re)configured for every call (see configureHttpProcessorBuilder)
-    // do not use a ThreadLocal because this in only accessed form this class
-    private final Map<Thread, HttpClientBuilder> httpClientBuilder_ = new WeakHashMap<>();
+    /** The size of the buffer used to read a response of unknown length. */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** The context attribute holding the request specific interceptors. */
+    private static final String REQUEST_INTERCEPTORS = "htmlunit.request-interceptors";
+
+    private HttpClientBuilder httpClientBuilder_;
     private final WebClient webClient_;
 
     private String virtualHost_;
     private final CookieSpecProvider htmlUnitCookieSpecProvider_;
     private final WebClientOptions usedOptions_;
     private PoolingHttpClientConnectionManager connectionManager_;
+    private IdleConnectionEvictor idleConnectionEvictor_;
+
+    /**
+     * The client shared by all threads; the request specific configuration is placed
+     * in the {@link HttpClientContext} of every request.
+     */
+    private volatile CloseableHttpClient httpClient_;
 
     /** Authentication cache shared among all threads of a web client. */
     private final AuthCache sharedAuthCache_ = new SynchronizedAuthCache();
 
-    /** Maintains a separate {@link HttpClientContext} object per HttpWebConnection and thread. */
-    private final Map<Thread, HttpClientContext> httpClientContextByThread_ = new WeakHashMap<>();
-
     /**
      * Creates a new HTTP web connection instance.
      * @param webClient the WebClient that is using this connection
@@ -170,12 +192,20 @@ public class HttpWebConnection implements WebConnection {
      */
     @Override
     public WebResponse getResponse(final WebRequest webRequest) throws IOException {
-        final HttpClientBuilder builder = reconfigureHttpClientIfNeeded(getHttpClientBuilder(), webRequest);
+        final LoadTimelineListener loadTimelineListener = webClient_.getLoadTimelineListener();
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        final Object jfrEvent = HtmlUnitEvents.beginHttpRequest();
+
+        final CloseableHttpClient httpClient = getHttpClient();
+        final HttpClientContext httpContext = createHttpContext();
 
         HttpUriRequest httpMethod = null;
+        // the status code and the body length of the event; a failed request is reported with status 0
+        int statusCode = 0;
+        long bodyLength = -1;
         try {
             try {
-                httpMethod = makeHttpMethod(webRequest, builder);
+                httpMethod = makeHttpMethod(webRequest, httpContext);
             }
             catch (final URISyntaxException e) {
                 throw new IOException("Unable to create URI from URL: " + webRequest.getUrl().toExternalForm()
@@ -186,20 +216,15 @@ public class HttpWebConnection implements WebConnection {
             final HttpHost httpHost = new HttpHost(url.getHost(), url.getPort(), url.getProtocol());
             final long startTime = System.currentTimeMillis();
 
-            final HttpContext httpContext = getHttpContext();
             HttpResponse httpResponse;
             try {
-                try (CloseableHttpClient closeableHttpClient = builder.build()) {
-                    httpResponse = closeableHttpClient.execute(httpHost, httpMethod, httpContext);
-                }
+                httpResponse = httpClient.execute(httpHost, httpMethod, httpContext);
             }
             catch (final SSLPeerUnverifiedException s) {
                 // Try to use only SSLv3 instead
                 if (webClient_.getOptions().isUseInsecureSSL()) {
                     HtmlUnitSSLConnectionSocketFactory.setUseSSL3Only(httpContext, true);
-                    try (CloseableHttpClient closeableHttpClient = builder.build()) {
-                        httpResponse = closeableHttpClient.execute(httpHost, httpMethod, httpContext);
-                    }
+                    httpResponse = httpClient.execute(httpHost, httpMethod, httpContext);
                 }
                 else {
                     throw s;
@@ -207,24 +232,51 @@ public class HttpWebConnection implements WebConnection {
             }
             catch (final Error e) {
                 // in case a StackOverflowError occurs while the connection is leased, it won't get released.
-                // Calling code may catch the StackOverflowError, but due to the leak, the httpClient_ may
+                // Calling code may catch the StackOverflowError, but due to the leak, the pool may
                 // come out of connections and throw a ConnectionPoolTimeoutException.
-                // => best solution, discard the HttpClient instance.
-                httpClientBuilder_.remove(Thread.currentThread());
+                // => abort the request to release the connection.
+                httpMethod.abort();
                 throw e;
             }
 
             final DownloadedContent downloadedBody = downloadResponseBody(httpResponse);
             final long endTime = System.currentTimeMillis();
-            return makeWebResponse(httpResponse, webRequest, downloadedBody, endTime - startTime);
+            final WebResponse webResponse =
+                    makeWebResponse(httpResponse, webRequest, downloadedBody, endTime - startTime);
+            statusCode = webResponse.getStatusCode();
+            bodyLength = getBodyLength(httpResponse, downloadedBody);
+            if (loadTimelineListener != null) {
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.NETWORK, url.toExternalForm(), null,
+                        bodyLength, start);
+            }
+            return webResponse;
         }
         finally {
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitHttpRequest(jfrEvent, webRequest.getUrl().toExternalForm(),
+                        webRequest.getHttpMethod().name(), statusCode, bodyLength);
+            }
             if (httpMethod != null) {
                 onResponseGenerated(httpMethod);
             }
         }
     }
 
+    /**
+     * Returns the length of the downloaded body without waiting for streamed content;
+     * for streamed content this is the declared length.
+     * @param httpResponse the response
+     * @param downloadedBody the downloaded body
+     * @return the length or {@code -1} if not known
+     */
+    private static long getBodyLength(final HttpResponse httpResponse, final DownloadedContent downloadedBody) {
+        if (downloadedBody instanceof StreamingDownloadedContent) {
+            final HttpEntity entity = httpResponse.getEntity();
+            return entity == null ? -1 : entity.getContentLength();
+        }
+        return downloadedBody.length();
+    }
+
     /**
      * Called when the response has been generated. Default action is to release
      * the HttpMethod's connection. Subclasses may override.
@@ -234,22 +286,18 @@ public class HttpWebConnection implements WebConnection {
     }
 
     /**
-     * Returns the {@link HttpClientContext} for the current thread. Creates a new one if necessary.
+     * Creates a new {@link HttpClientContext} for a request.
      */
-    private synchronized HttpContext getHttpContext() {
-        HttpClientContext httpClientContext = httpClientContextByThread_.get(Thread.currentThread());
-        if (httpClientContext == null) {
-            httpClientContext = new HttpClientContext();
-
-            // set the shared authentication cache
-            httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
+    private HttpClientContext createHttpContext() {
+        final HttpClientContext httpClientContext = HttpClientContext.create();
 
-            httpClientContextByThread_.put(Thread.currentThread(), httpClientContext);
-        }
+        // set the shared authentication cache
+        httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
         return httpClientContext;
     }
 
-    private void setProxy(final HttpRequestBase httpRequest, final WebRequest webRequest) {
+    private void setProxy(final HttpRequestBase httpRequest, final WebRequest webRequest,
+            final HttpContext httpContext) {
         final InetAddress localAddress = webClient_.getOptions().getLocalAddress();
         final RequestConfig.Builder requestBuilder = createRequestConfigBuilder(getTimeout(webRequest), localAddress);
 
@@ -262,25 +310,25 @@ public class HttpWebConnection implements WebConnection {
         final HttpHost proxy = new HttpHost(webRequest.getProxyHost(),
                                     webRequest.getProxyPort(), webRequest.getProxyScheme());
         if (webRequest.isSocksProxy()) {
-            SocksConnectionSocketFactory.setSocksProxy(getHttpContext(), proxy);
+            SocksConnectionSocketFactory.setSocksProxy(httpContext, proxy);
+            requestBuilder.setProxy(null);
         }
         else {
             requestBuilder.setProxy(proxy);
-            httpRequest.setConfig(requestBuilder.build());
         }
+        httpRequest.setConfig(requestBuilder.build());
     }
 
     /**
      * Creates an <code>HttpMethod</code> instance according to the specified parameters.
      * @param webRequest the request
-     * @param httpClientBuilder the httpClientBuilder that will be configured
+     * @param httpContext the context of the request that will be configured
      * @return the <code>HttpMethod</code> instance constructed according to the specified parameters
      * @throws URISyntaxException in case of syntax problems
      */
-    private HttpUriRequest makeHttpMethod(final WebRequest webRequest, final HttpClientBuilder httpClientBuilder)
+    private HttpUriRequest makeHttpMethod(final WebRequest webRequest, final HttpClientContext httpContext)
         throws URISyntaxException {
 
-        final HttpContext httpContext = getHttpContext();
         final Charset charset = webRequest.getCharset();
         // Make sure that the URL is fully encoded. IE actually sends some Unicode chars in request
         // URLs; because of this we allow some Unicode chars in URLs. However, at this point we're
@@ -293,7 +341,7 @@ public class HttpWebConnection implements WebConnection {
             uri = URI.create(getVirtualHost());
         }
         final HttpRequestBase httpMethod = buildHttpMethod(webRequest.getHttpMethod(), uri);
-        setProxy(httpMethod, webRequest);
+        setProxy(httpMethod, webRequest, httpContext);
 
         // POST, PUT and PATCH
         if (httpMethod instanceof HttpEntityEnclosingRequest) {
@@ -384,7 +432,7 @@ public class HttpWebConnection implements WebConnection {
             }
         }
 
-        configureHttpProcessorBuilder(httpClientBuilder, webRequest);
+        httpContext.setAttribute(REQUEST_INTERCEPTORS, getHttpRequestInterceptors(webRequest));
 
         // Tell the client where to get its credentials from
         // (it may have changed on the webClient since last call to getHttpClientFor(...))
@@ -408,9 +456,7 @@ public class HttpWebConnection implements WebConnection {
             // updating our client to keep the credentials for the next request
             credentialsProvider.setCredentials(authScope, requestCredentials);
         }
-        httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-        httpContext.removeAttribute(HttpClientContext.CREDS_PROVIDER);
-        httpContext.removeAttribute(HttpClientContext.TARGET_AUTH_STATE);
+        httpContext.setCredentialsProvider(credentialsProvider);
         return httpMethod;
     }
 
@@ -537,13 +583,18 @@ public class HttpWebConnection implements WebConnection {
     }
 
     /**
-     * Lazily initializes the internal HTTP client.
+     * Lazily initializes the builder of the internal HTTP client.
+     *
+     * <p>The HTTP client built from it is shared by all requests of this connection; this method is
+     * not called for every request but only if the client is (re)built: for the first request, after
+     * {@link #close()} and if one of the SSL settings, the {@link ProxyConfig}, the timeout or the
+     * connection pool settings of the {@link WebClientOptions} were changed. Overriding methods
+     * have to return the same builder as long as it is in use.</p>
      *
-     * @return the initialized HTTP client
+     * @return the initialized HTTP client builder
      */
-    protected HttpClientBuilder getHttpClientBuilder() {
-        final Thread currentThread = Thread.currentThread();
-        HttpClientBuilder builder = httpClientBuilder_.get(currentThread);
+    protected synchronized HttpClientBuilder getHttpClientBuilder() {
+        HttpClientBuilder builder = httpClientBuilder_;
         if (builder == null) {
             builder = createHttpClientBuilder();
 
@@ -556,7 +607,9 @@ public class HttpWebConnection implements WebConnection {
 
             builder.setDefaultCookieStore(new HtmlUnitCookieStore(webClient_.getCookieManager()));
             builder.setUserAgent(webClient_.getBrowserVersion().getUserAgent());
-            httpClientBuilder_.put(currentThread, builder);
+            builder.setKeepAliveStrategy(new HtmlUnitKeepAliveStrategy());
+            configureHttpProcessorBuilder(builder);
+            httpClientBuilder_ = builder;
         }
 
         return builder;
@@ -583,6 +636,7 @@ public class HttpWebConnection implements WebConnection {
      * <code>HttpClientBuilder</code> instance (e.g. with a custom
      * {@link org.apache.http.conn.ClientConnectionManager} to perform
      * some tracking; see feature request 1438216).
+     * The builder is created once and reused, see {@link #getHttpClientBuilder()}.
      * @return the <code>HttpClientBuilder</code> that will be used by this WebConnection
      */
     protected HttpClientBuilder createHttpClientBuilder() {
@@ -590,7 +644,6 @@ public class HttpWebConnection implements WebConnection {
         builder.setRedirectStrategy(new HtmlUnitRedirectStrategie());
         configureTimeout(builder, getTimeout(null));
         configureHttpsScheme(builder);
-        builder.setMaxConnPerRoute(6);
 
         builder.setConnectionManagerShared(true);
         return builder;
@@ -603,7 +656,6 @@ public class HttpWebConnection implements WebConnection {
 
         builder.setDefaultSocketConfig(createSocketConfigBuilder(timeout).build());
 
-        getHttpContext().removeAttribute(HttpClientContext.REQUEST_CONFIG);
         usedOptions_.setTimeout(timeout);
     }
 
@@ -626,45 +678,142 @@ public class HttpWebConnection implements WebConnection {
     }
 
     /**
-     * React on changes that may have occurred on the WebClient settings.
-     * Registering as a listener would be probably better.
+     * Returns the client shared by all threads; creates or reconfigures it,
+     * if the WebClient settings have changed.
      */
-    private HttpClientBuilder reconfigureHttpClientIfNeeded(final HttpClientBuilder httpClientBuilder,
-            final WebRequest webRequest) {
+    private CloseableHttpClient getHttpClient() {
+        final CloseableHttpClient httpClient = httpClient_;
+        if (httpClient != null && !isReconfigurationNeeded()) {
+            return httpClient;
+        }
+        return reconfigureHttpClientIfNeeded();
+    }
+
+    private boolean isReconfigurationNeeded() {
         final WebClientOptions options = webClient_.getOptions();
+        return isHttpsSchemeChanged(options)
+                || options.getTimeout() != usedOptions_.getTimeout()
+                || options.getConnectionTimeToLive() != usedOptions_.getConnectionTimeToLive()
+                || options.getMaxConnectionsTotal() != usedOptions_.getMaxConnectionsTotal()
+                || options.getMaxConnectionsPerRoute() != usedOptions_.getMaxConnectionsPerRoute()
+                || options.getConnectionIdleTimeout() != usedOptions_.getConnectionIdleTimeout();
+    }
 
-        // register new SSL factory only if settings have changed
-        if (options.isUseInsecureSSL() != usedOptions_.isUseInsecureSSL()
+    private boolean isHttpsSchemeChanged(final WebClientOptions options) {
+        return options.isUseInsecureSSL() != usedOptions_.isUseInsecureSSL()
                 || options.getSSLClientCertificateStore() != usedOptions_.getSSLClientCertificateStore()
                 || options.getSSLTrustStore() != usedOptions_.getSSLTrustStore()
                 || options.getSSLClientCipherSuites() != usedOptions_.getSSLClientCipherSuites()
                 || options.getSSLClientProtocols() != usedOptions_.getSSLClientProtocols()
-                || options.getProxyConfig() != usedOptions_.getProxyConfig()) {
-            configureHttpsScheme(httpClientBuilder);
+                || options.getProxyConfig() != usedOptions_.getProxyConfig();
+    }
 
-            if (connectionManager_ != null) {
-                connectionManager_.shutdown();
-                connectionManager_ = null;
-            }
+    /**
+     * React on changes that may have occurred on the WebClient settings.
+     * Registering as a listener would be probably better.
+     */
+    private synchronized CloseableHttpClient reconfigureHttpClientIfNeeded() {
+        final HttpClientBuilder httpClientBuilder = getHttpClientBuilder();
+        final WebClientOptions options = webClient_.getOptions();
+        boolean rebuild = httpClient_ == null;
+
+        // register new SSL factory only if settings have changed
+        if (isHttpsSchemeChanged(options)) {
+            configureHttpsScheme(httpClientBuilder);
+            shutdownConnectionManager();
         }
 
-        final int timeout = getTimeout(webRequest);
+        final int timeout = options.getTimeout();
         if (timeout != usedOptions_.getTimeout()) {
             configureTimeout(httpClientBuilder, timeout);
+            if (connectionManager_ != null) {
+                connectionManager_.setDefaultSocketConfig(createSocketConfigBuilder(timeout).build());
+            }
+            rebuild = true;
         }
 
-        final long connectionTimeToLive = webClient_.getOptions().getConnectionTimeToLive();
+        final long connectionTimeToLive = options.getConnectionTimeToLive();
         if (connectionTimeToLive != usedOptions_.getConnectionTimeToLive()) {
             httpClientBuilder.setConnectionTimeToLive(connectionTimeToLive, TimeUnit.MILLISECONDS);
             usedOptions_.setConnectionTimeToLive(connectionTimeToLive);
+            shutdownConnectionManager();
         }
 
         if (connectionManager_ == null) {
             connectionManager_ = createConnectionManager(httpClientBuilder);
+            httpClientBuilder.setConnectionManager(connectionManager_);
+            usedOptions_.setMaxConnectionsTotal(-1);
+            usedOptions_.setConnectionIdleTimeout(-1);
+            rebuild = true;
+        }
+
+        final int maxTotal = options.getMaxConnectionsTotal();
+        final int maxPerRoute = options.getMaxConnectionsPerRoute();
+        if (maxTotal != usedOptions_.getMaxConnectionsTotal()
+                || maxPerRoute != usedOptions_.getMaxConnectionsPerRoute()) {
+            connectionManager_.setMaxTotal(maxTotal);
+            connectionManager_.setDefaultMaxPerRoute(maxPerRoute);
+            usedOptions_.setMaxConnectionsTotal(maxTotal);
+            usedOptions_.setMaxConnectionsPerRoute(maxPerRoute);
+        }
+
+        final long idleTimeout = options.getConnectionIdleTimeout();
+        if (idleTimeout != usedOptions_.getConnectionIdleTimeout()) {
+            stopIdleConnectionEvictor();
+            if (idleTimeout > 0) {
+                idleConnectionEvictor_ = new IdleConnectionEvictor(connectionManager_,
+                        Math.max(idleTimeout / 2, 10), TimeUnit.MILLISECONDS, idleTimeout, TimeUnit.MILLISECONDS);
+                idleConnectionEvictor_.start();
+            }
+            usedOptions_.setConnectionIdleTimeout(idleTimeout);
+        }
+
+        if (rebuild) {
+            // the connection manager is shared, closing the old client does not affect running requests
+            IOUtils.closeQuietly(httpClient_);
+            httpClient_ = httpClientBuilder.build();
+        }
+        return httpClient_;
+    }
+
+    private void shutdownConnectionManager() {
+        stopIdleConnectionEvictor();
+        if (connectionManager_ != null) {
+            connectionManager_.shutdown();
+            connectionManager_ = null;
+        }
+    }
+
+    private void stopIdleConnectionEvictor() {
+        if (idleConnectionEvictor_ != null) {
+            idleConnectionEvictor_.shutdown();
+            idleConnectionEvictor_ = null;
+        }
+    }
+
+    /**
+     * Returns the statistics of the connection pool.
+     * @return the total statistics of the connection pool
+     */
+    public synchronized PoolStats getConnectionPoolStats() {
+        if (connectionManager_ == null) {
+            return new PoolStats(0, 0, 0, webClient_.getOptions().getMaxConnectionsTotal());
         }
-        httpClientBuilder.setConnectionManager(connectionManager_);
+        return connectionManager_.getTotalStats();
+    }
 
-        return httpClientBuilder;
+    /**
+     * Returns the statistics of the connection pool for all routes that were used so far.
+     * @return the statistics per route
+     */
+    public synchronized Map<HttpRoute, PoolStats> getConnectionPoolStatsPerRoute() {
+        final Map<HttpRoute, PoolStats> stats = new HashMap<>();
+        if (connectionManager_ != null) {
+            for (final HttpRoute route : connectionManager_.getRoutes()) {
+                stats.put(route, connectionManager_.getStats(route));
+            }
+        }
+        return stats;
     }
 
     private void configureHttpsScheme(final HttpClientBuilder builder) {
@@ -683,11 +832,10 @@ public class HttpWebConnection implements WebConnection {
         usedOptions_.setProxyConfig(options.getProxyConfig());
     }
 
-    private void configureHttpProcessorBuilder(final HttpClientBuilder builder, final WebRequest webRequest) {
+    private static void configureHttpProcessorBuilder(final HttpClientBuilder builder) {
         final HttpProcessorBuilder b = HttpProcessorBuilder.create();
-        for (final HttpRequestInterceptor i : getHttpRequestInterceptors(webRequest)) {
-            b.add(i);
-        }
+        // the headers of the request, in the order of the browser
+        b.add(new RequestInterceptorsFromContext());
 
         // These are the headers used in HttpClientBuilder, excluding the already added ones
         // (RequestClientConnControl and RequestAddCookies)
@@ -748,9 +896,57 @@ public class HttpWebConnection implements WebConnection {
             return new DownloadedContent.InMemory(null);
         }
 
+        if (isStreamable(httpResponse)) {
+            final InputStream is = httpEntity.getContent();
+            if (is != null) {
+                final StreamingDownloadedContent content =
+                        new StreamingDownloadedContent(webClient_.getOptions().getMaxInMemory());
+                try {
+                    webClient_.getExecutor().execute(() -> content.download(is));
+                    return content;
+                }
+                catch (final RejectedExecutionException e) {
+                    // the client is closing; read the content now
+                    try (InputStream in = is) {
+                        return downloadContent(in, webClient_.getOptions().getMaxInMemory(),
+                                httpEntity.getContentLength());
+                    }
+                }
+            }
+        }
+
         try (InputStream is = httpEntity.getContent()) {
-            return downloadContent(is, webClient_.getOptions().getMaxInMemory());
+            return downloadContent(is, webClient_.getOptions().getMaxInMemory(), httpEntity.getContentLength());
+        }
+    }
+
+    /**
+     * Returns {@code true} if the body of the given response should be read in the background
+     * while the page is parsed (see {@link WebClientOptions#setStreamingParseEnabled(boolean)}).
+     * @param httpResponse the web server's response
+     * @return whether the body should be streamed
+     */
+    private boolean isStreamable(final HttpResponse httpResponse) {
+        final WebClientOptions options = webClient_.getOptions();
+        if (!options.isStreamingParseEnabled()) {
+            return false;
+        }
+
+        final int statusCode = httpResponse.getStatusLine().getStatusCode();
+        if (statusCode < HttpStatus.SC_OK || statusCode >= HttpStatus.SC_MULTIPLE_CHOICES) {
+            return false;
+        }
+
+        // large content is stored on the file system
+        final long contentLength = httpResponse.getEntity().getContentLength();
+        if (contentLength > options.getMaxInMemory()) {
+            return false;
         }
+
+        final Header contentType = httpResponse.getFirstHeader(HttpHeader.CONTENT_TYPE);
+        return contentType != null
+                && PageType.HTML == DefaultPageCreator.determinePageType(
+                        StringUtils.substringBefore(contentType.getValue(), ";").trim());
     }
 
     /**
@@ -761,40 +957,99 @@ public class HttpWebConnection implements WebConnection {
      * @throws IOException in case of read issues
      */
     public static DownloadedContent downloadContent(final InputStream is, final int maxInMemory) throws IOException {
+        return downloadContent(is, maxInMemory, -1);
+    }
+
+    /**
+     * Reads the content of the stream and saves it in memory or on the file system.
+     * The content is read directly into the array that backs the returned content; if the content length
+     * is known, this array is allocated with the correct size at once.
+     * @param is the stream to read
+     * @param maxInMemory the maximumBytes to store in memory, after which save to a local file
+     * @param contentLength the expected length of the content or -1 if unknown
+     * @return a wrapper around the downloaded content
+     * @throws IOException in case of read issues
+     */
+    public static DownloadedContent downloadContent(final InputStream is, final int maxInMemory,
+            final long contentLength) throws IOException {
         if (is == null) {
             return new DownloadedContent.InMemory(null);
         }
 
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            final byte[] buffer = new byte[1024];
-            int nbRead;
-            try {
-                while ((nbRead = is.read(buffer)) != -1) {
-                    bos.write(buffer, 0, nbRead);
-                    if (bos.size() > maxInMemory) {
-                        // we have exceeded the max for memory, let's write everything to a temporary file
-                        final File file = File.createTempFile("htmlunit", ".tmp");
-                        file.deleteOnExit();
-                        try (OutputStream fos = Files.newOutputStream(file.toPath())) {
-                            bos.writeTo(fos); // what we have already read
-                            IOUtils.copyLarge(is, fos); // what remains from the server response
-                        }
-                        return new DownloadedContent.OnFile(file, true);
+        if (contentLength > maxInMemory) {
+            return downloadContentToFile(is, ArrayUtils.EMPTY_BYTE_ARRAY, 0);
+        }
+
+        final long maxBufferSize = Math.min(maxInMemory + 1L, Integer.MAX_VALUE - 8);
+        byte[] buffer = new byte[contentLength < 0 ? (int) Math.min(BUFFER_SIZE, maxBufferSize) : (int) contentLength];
+        int count = 0;
+        try {
+            while (true) {
+                if (count == buffer.length) {
+                    // check for the end of the stream before growing the buffer
+                    final int b = is.read();
+                    if (b == -1) {
+                        break;
                     }
+                    buffer = Arrays.copyOf(buffer,
+                            (int) Math.min(Math.max(2L * buffer.length, BUFFER_SIZE), maxBufferSize));
+                    buffer[count++] = (byte) b;
                 }
+                else {
+                    final int nbRead = is.read(buffer, count, buffer.length - count);
+                    if (nbRead == -1) {
+                        break;
+                    }
+                    count += nbRead;
+                }
+
+                if (count > maxInMemory || count == maxBufferSize) {
+                    // we have exceeded the max for memory, let's write everything to a temporary file
+                    return downloadContentToFile(is, buffer, count);
+                }
+            }
+        }
+        catch (final ConnectionClosedException e) {
+            LOG.warn("Connection was closed while reading from stream.", e);
+        }
+        catch (final EOFException e) {
+            // this might happen with broken gzip content
+            LOG.warn("EOFException while reading from stream.", e);
+        }
+
+        // do not keep a buffer that is much too large
+        if (buffer.length - count > count / 4) {
+            buffer = Arrays.copyOf(buffer, count);
+        }
+        return new DownloadedContent.InMemory(buffer, count);
+    }
+
+    /**
+     * Writes the already read part and the remaining content of the stream to a temporary file.
+     * The buffer is reused for copying the remaining content.
+     */
+    private static DownloadedContent downloadContentToFile(final InputStream is, final byte[] buffer,
+            final int count) throws IOException {
+        final File file = File.createTempFile("htmlunit", ".tmp");
+        try {
+            try (OutputStream fos = Files.newOutputStream(file.toPath())) {
+                fos.write(buffer, 0, count); // what we have already read
+                // what remains from the server response
+                IOUtils.copyLarge(is, fos, buffer.length < BUFFER_SIZE ? new byte[BUFFER_SIZE] : buffer);
             }
             catch (final ConnectionClosedException e) {
                 LOG.warn("Connection was closed while reading from stream.", e);
-                return new DownloadedContent.InMemory(bos.toByteArray());
             }
             catch (final EOFException e) {
                 // this might happen with broken gzip content
                 LOG.warn("EOFException while reading from stream.", e);
-                return new DownloadedContent.InMemory(bos.toByteArray());
             }
-
-            return new DownloadedContent.InMemory(bos.toByteArray());
         }
+        catch (final IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+        return new DownloadedContent.MemoryMapped(file);
     }
 
     /**
@@ -913,7 +1168,7 @@ public class HttpWebConnection implements WebConnection {
                 list.add(new RequestClientConnControl());
             }
             else if (HttpHeader.COOKIE.equals(header)) {
-                list.add(new RequestAddCookies());
+                list.add(new RequestAddHostCookies());
             }
             else if (HttpHeader.DNT.equals(header) && webClient_.getOptions().isDoNotTrackEnabled()) {
                 list.add(new DntHeaderHttpRequestInterceptor("1"));
@@ -932,6 +1187,65 @@ public class HttpWebConnection implements WebConnection {
         return list;
     }
 
+    /**
+     * Applies the request specific interceptors placed in the context by {@link #makeHttpMethod}.
+     */
+    private static final class RequestInterceptorsFromContext implements HttpRequestInterceptor {
+        @Override
+        public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
+            @SuppressWarnings("unchecked")
+            final List<HttpRequestInterceptor> interceptors =
+                    (List<HttpRequestInterceptor>) context.getAttribute(REQUEST_INTERCEPTORS);
+            if (interceptors != null) {
+                for (final HttpRequestInterceptor interceptor : interceptors) {
+                    interceptor.process(request, context);
+                }
+            }
+        }
+    }
+
+    /**
+     * Limits the keep alive duration of the connections to
+     * {@link WebClientOptions#getConnectionKeepAlive()}.
+     */
+    private final class HtmlUnitKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+            final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            final long max = webClient_.getOptions().getConnectionKeepAlive();
+            if (max > 0 && (duration <= 0 || duration > max)) {
+                return max;
+            }
+            return duration;
+        }
+    }
+
+    /**
+     * Works like {@link RequestAddCookies} but only looks at the cookies that may be sent to the target host.
+     */
+    private static final class RequestAddHostCookies implements HttpRequestInterceptor {
+        private final RequestAddCookies requestAddCookies_ = new RequestAddCookies();
+
+        @Override
+        public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
+            final HttpClientContext clientContext = HttpClientContext.adapt(context);
+            final CookieStore cookieStore = clientContext.getCookieStore();
+            final HttpHost targetHost = clientContext.getTargetHost();
+            if (!(cookieStore instanceof HtmlUnitCookieStore) || targetHost == null) {
+                requestAddCookies_.process(request, context);
+                return;
+            }
+
+            clientContext.setCookieStore(((HtmlUnitCookieStore) cookieStore).forHost(targetHost.getHostName()));
+            try {
+                requestAddCookies_.process(request, context);
+            }
+            finally {
+                clientContext.setCookieStore(cookieStore);
+            }
+        }
+    }
+
     /** We must have a separate class per header, because of org.apache.http.protocol.ChainBuilder. */
     private static final class HostHeaderHttpRequestInterceptor implements HttpRequestInterceptor {
         private final String value_;
@@ -1184,13 +1498,13 @@ public class HttpWebConnection implements WebConnection {
      * {@inheritDoc}
      */
     @Override
-    public void close() {
-        httpClientBuilder_.clear();
+    public synchronized void close() {
+        IOUtils.closeQuietly(httpClient_);
+        httpClient_ = null;
+        httpClientBuilder_ = null;
+        sharedAuthCache_.clear();
 
-        if (connectionManager_ != null) {
-            connectionManager_.shutdown();
-            connectionManager_ = null;
-        }
+        shutdownConnectionManager();
     }
 
     /**
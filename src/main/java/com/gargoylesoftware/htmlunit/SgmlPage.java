@@ -44,6 +44,8 @@ import com.gargoylesoftware.htmlunit.html.DomText;
 import com.gargoylesoftware.htmlunit.html.DomTreeWalker;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
 
+import net.sourceforge.htmlunit.xpath.XPathContext;
+
 /**
  * A basic class of Standard Generalized Markup Language (SGML), e.g. HTML and XML.
  *
@@ -57,6 +59,7 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     private WebWindow enclosingWindow_;
     private final WebClient webClient_;
     private boolean printing_;
+    private transient volatile XPathContext xpathContext_;
 
     /**
      * Creates an instance of SgmlPage.
@@ -76,7 +79,7 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
      */
     @Override
     public void cleanUp() {
-        if (getWebClient().getCache().getCachedResponse(webResponse_.getWebRequest()) == null) {
+        if (!getWebClient().getCache().containsResponse(webResponse_.getWebRequest())) {
             webResponse_.cleanUp();
         }
     }
@@ -195,7 +198,9 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     @Override
     protected SgmlPage clone() {
         try {
-            return (SgmlPage) super.clone();
+            final SgmlPage result = (SgmlPage) super.clone();
+            result.xpathContext_ = null;
+            return result;
         }
         catch (final CloneNotSupportedException e) {
             throw new IllegalStateException("Clone not supported");
@@ -414,4 +419,37 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
         printing_ = printing;
         clearComputedStyles();
     }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Notifies the page that the structure of the DOM tree, an attribute or some character data
+     * has been changed. All the information derived from the tree (e.g. the DTM used for
+     * XPath evaluation) is discarded.
+     */
+    public void domChanged() {
+        xpathContext_ = null;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the {@link XPathContext} used to evaluate XPath expressions against this page.
+     * The context (and the DTM built by it) is reused until the DOM is changed; it is not thread safe,
+     * the callers have to synchronize on it.
+     * @return the XPath context
+     */
+    public XPathContext getXPathContext() {
+        XPathContext xpathContext = xpathContext_;
+        if (xpathContext == null) {
+            synchronized (this) {
+                xpathContext = xpathContext_;
+                if (xpathContext == null) {
+                    xpathContext = new XPathContext();
+                    xpathContext_ = xpathContext;
+                }
+            }
+        }
+        return xpathContext;
+    }
 }
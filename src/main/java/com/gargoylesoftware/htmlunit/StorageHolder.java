@@ -86,6 +86,18 @@ public class StorageHolder implements Serializable {
         }
     }
 
+    /**
+     * Removes the content of all stores.
+     */
+    public void clear() {
+        for (final Type type : Type.values()) {
+            final Map<String, Map<String, String>> storage = getStorage(type);
+            synchronized (storage) {
+                storage.clear();
+            }
+        }
+    }
+
     private Map<String, Map<String, String>> getStorage(final Type type) {
         switch (type) {
             case GLOBAL_STORAGE:
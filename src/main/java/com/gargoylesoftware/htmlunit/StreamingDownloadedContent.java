@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+/**
+ * Content that is still downloading while it is read.
+ * The content is collected by {@link #download(InputStream)}, in memory up to the given maximum and
+ * in a temporary file beyond; the streams returned by {@link #getInputStream()} block until the requested
+ * bytes are available. This allows to parse a page while it is still loading; every stream starts reading
+ * at the beginning of the content.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class StreamingDownloadedContent implements DownloadedContent {
+
+    private static final Log LOG = LogFactory.getLog(StreamingDownloadedContent.class);
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final int maxInMemory_;
+    private final List<byte[]> chunks_ = new ArrayList<>();
+    private File file_;
+    private FileChannel fileChannel_;
+    private long length_;
+    private boolean complete_;
+    private boolean cancelled_;
+    private int references_ = 1;
+    private InputStream source_;
+    private IOException failure_;
+    private List<Runnable> completionCallbacks_ = new ArrayList<>();
+
+    /**
+     * Creates a new instance.
+     * @param maxInMemory the maximum number of bytes to keep in memory, the content is moved
+     *        to a temporary file if it gets larger
+     */
+    StreamingDownloadedContent(final int maxInMemory) {
+        maxInMemory_ = maxInMemory;
+    }
+
+    /**
+     * Reads the whole stream; meant to be called from a background thread.
+     * The stream is closed at the end.
+     * @param is the stream to read
+     */
+    void download(final InputStream is) {
+        final boolean cancelled;
+        synchronized (this) {
+            cancelled = cancelled_;
+            if (!cancelled) {
+                source_ = is;
+            }
+        }
+        if (cancelled) {
+            IOUtils.closeQuietly(is, e -> { });
+            complete();
+            return;
+        }
+
+        try (InputStream in = is) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int count = 0;
+            int nbRead;
+            // publish every read as soon as possible
+            while ((nbRead = in.read(chunk, count, CHUNK_SIZE - count)) != -1) {
+                if (!append(chunk, count, nbRead)) {
+                    return;
+                }
+                count += nbRead;
+                if (count == CHUNK_SIZE) {
+                    chunk = new byte[CHUNK_SIZE];
+                    count = 0;
+                }
+            }
+        }
+        catch (final ConnectionClosedException e) {
+            LOG.warn("Connection was closed while reading from stream.", e);
+        }
+        catch (final EOFException e) {
+            // this might happen with broken gzip content
+            LOG.warn("EOFException while reading from stream.", e);
+        }
+        catch (final IOException e) {
+            synchronized (this) {
+                if (!cancelled_) {
+                    failure_ = e;
+                }
+            }
+        }
+        finally {
+            complete();
+        }
+    }
+
+    /**
+     * Marks the download as complete and runs the callbacks registered by {@link #whenComplete(Runnable)}.
+     */
+    private void complete() {
+        final List<Runnable> callbacks;
+        synchronized (this) {
+            source_ = null;
+            complete_ = true;
+            callbacks = completionCallbacks_;
+            completionCallbacks_ = null;
+            notifyAll();
+        }
+        for (final Runnable callback : callbacks) {
+            try {
+                callback.run();
+            }
+            catch (final RuntimeException e) {
+                LOG.error("Completion callback failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the given callback once the download is complete; immediately if it is already complete.
+     * The callback runs on the thread doing the download and must not block.
+     * @param callback the callback
+     */
+    void whenComplete(final Runnable callback) {
+        synchronized (this) {
+            if (!complete_) {
+                completionCallbacks_.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Returns {@code true} if the download is complete, {@link #length()} doesn't block in this case.
+     * @return whether the download is complete
+     */
+    synchronized boolean isComplete() {
+        return complete_;
+    }
+
+    /**
+     * Publishes the bytes read into the given chunk.
+     * @param chunk the chunk
+     * @param offset the position of the bytes in the chunk
+     * @param count the number of bytes
+     * @return {@code false} if the download was cancelled
+     */
+    private synchronized boolean append(final byte[] chunk, final int offset, final int count) throws IOException {
+        if (cancelled_) {
+            return false;
+        }
+
+        if (fileChannel_ == null && length_ + count > maxInMemory_) {
+            moveToFile();
+        }
+        if (fileChannel_ == null) {
+            if (offset == 0) {
+                chunks_.add(chunk);
+            }
+        }
+        else {
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk, offset, count);
+            long position = length_;
+            while (buffer.hasRemaining()) {
+                position += fileChannel_.write(buffer, position);
+            }
+        }
+        length_ += count;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Writes the bytes collected so far to a temporary file, which receives the rest of the content.
+     */
+    private void moveToFile() throws IOException {
+        file_ = File.createTempFile("htmlunit", ".tmp");
+        fileChannel_ = FileChannel.open(file_.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        for (int i = 0; i < chunks_.size(); i++) {
+            final int count = (int) Math.min(CHUNK_SIZE, length_ - (long) i * CHUNK_SIZE);
+            final ByteBuffer buffer = ByteBuffer.wrap(chunks_.get(i), 0, count);
+            while (buffer.hasRemaining()) {
+                fileChannel_.write(buffer);
+            }
+        }
+        chunks_.clear();
+    }
+
+    /**
+     * Waits until more than the given number of bytes are available or the download is complete.
+     * @return the number of available bytes
+     */
+    synchronized long awaitLength(final long position) throws IOException {
+        while (length_ <= position && !complete_) {
+            try {
+                wait();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the content.");
+            }
+        }
+        if (length_ <= position && failure_ != null) {
+            throw new IOException("Downloading the content failed.", failure_);
+        }
+        return length_;
+    }
+
+    private synchronized int copy(final long position, final byte[] b, final int off, final int len)
+            throws IOException {
+        if (cancelled_) {
+            throw new IOException("The content was already cleaned up.");
+        }
+
+        final int count = (int) Math.min(len, length_ - position);
+        if (fileChannel_ != null) {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, count);
+            long filePosition = position;
+            while (buffer.hasRemaining()) {
+                final int read = fileChannel_.read(buffer, filePosition);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                filePosition += read;
+            }
+            return count;
+        }
+
+        // the content is in memory only as long as it does not exceed maxInMemory_
+        int copied = 0;
+        while (copied < count) {
+            final int pos = (int) position + copied;
+            final int inChunk = Math.min(CHUNK_SIZE - pos % CHUNK_SIZE, count - copied);
+            System.arraycopy(chunks_.get(pos / CHUNK_SIZE), pos % CHUNK_SIZE, b, off + copied, inChunk);
+            copied += inChunk;
+        }
+        return count;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ContentInputStream();
+    }
+
+    /**
+     * Adds a reference to this content; every reference has to be released by calling {@link #cleanUp()}.
+     * @return this
+     */
+    synchronized StreamingDownloadedContent retain() {
+        references_++;
+        return this;
+    }
+
+    /**
+     * Releases a reference; the last one aborts the download, if it is still running,
+     * and releases the content.
+     */
+    @Override
+    public void cleanUp() {
+        final InputStream source;
+        final FileChannel fileChannel;
+        synchronized (this) {
+            if (cancelled_ || --references_ > 0) {
+                return;
+            }
+            cancelled_ = true;
+            source = source_;
+            fileChannel = fileChannel_;
+            chunks_.clear();
+            notifyAll();
+        }
+
+        if (source != null) {
+            // don't download the rest of the body
+            try {
+                if (source instanceof ConnectionReleaseTrigger) {
+                    ((ConnectionReleaseTrigger) source).abortConnection();
+                }
+                else {
+                    source.close();
+                }
+            }
+            catch (final IOException e) {
+                LOG.debug("Aborting the download failed.", e);
+            }
+        }
+        if (fileChannel != null) {
+            IOUtils.closeQuietly(fileChannel, e -> { });
+            DownloadedContent.MemoryMapped.delete(file_);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try {
+            return awaitLength(0) == 0;
+        }
+        catch (final IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of bytes; waits for the end of the download.
+     * @return the length
+     */
+    @Override
+    public long length() {
+        try {
+            return awaitLength(Long.MAX_VALUE);
+        }
+        catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Only the complete content can be serialized; it is written as {@link DownloadedContent.InMemory}.
+     * @return the replacement
+     * @throws ObjectStreamException if the content is not available
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        try (InputStream is = getInputStream()) {
+            return new DownloadedContent.InMemory(IOUtils.toByteArray(is));
+        }
+        catch (final IOException e) {
+            final InvalidObjectException exception =
+                    new InvalidObjectException("The content is not available.");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * A stream reading the content from the beginning; blocks until the bytes are available.
+     */
+    private final class ContentInputStream extends InputStream {
+        private long position_;
+        private long mark_;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            if (read(b, 0, 1) == -1) {
+                return -1;
+            }
+            return b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (awaitLength(position_) <= position_) {
+                return -1;
+            }
+            final int count = copy(position_, b, off, len);
+            position_ += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            final long available = awaitLength(position_);
+            final long count = Math.min(n, available - position_);
+            position_ += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            synchronized (StreamingDownloadedContent.this) {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length_ - position_));
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit) {
+            mark_ = position_;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position_ = mark_;
+        }
+    }
+}
@@ -103,6 +103,9 @@ import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLIFrameElement;
 import com.gargoylesoftware.htmlunit.protocol.data.DataURLConnection;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 import com.gargoylesoftware.htmlunit.util.Cookie;
 import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
@@ -169,6 +172,7 @@ public class WebClient implements Serializable, AutoCloseable {
     private transient WebConnection webConnection_;
     private CredentialsProvider credentialsProvider_ = new DefaultCredentialsProvider();
     private CookieManager cookieManager_ = new CookieManager();
+    private transient CookieSpec cookieSpec_;
     private transient AbstractJavaScriptEngine<?> scriptEngine_;
     private transient List<LoadJob> loadQueue_;
     private final Map<String, String> requestHeaders_ = Collections.synchronizedMap(new HashMap<>(89));
@@ -222,6 +226,7 @@ public class WebClient implements Serializable, AutoCloseable {
     private transient MSXMLActiveXObjectFactory msxmlActiveXObjectFactory_;
     private RefreshHandler refreshHandler_ = new NiceRefreshHandler(2);
     private JavaScriptErrorListener javaScriptErrorListener_ = new DefaultJavaScriptErrorListener();
+    private LoadTimelineListener loadTimelineListener_;
 
     private final WebClientOptions options_ = new WebClientOptions();
     private final boolean javaScriptEngineEnabled_;
@@ -425,6 +430,27 @@ public class WebClient implements Serializable, AutoCloseable {
             final boolean addToHistory)
         throws IOException, FailingHttpStatusCodeException {
 
+        final LoadTimelineListener loadTimelineListener = loadTimelineListener_;
+        if (loadTimelineListener == null) {
+            return loadPage(webWindow, webRequest, addToHistory);
+        }
+
+        final URL url = webRequest.getUrl();
+        final URL previousPage = LoadTimeline.enterPage(url);
+        final long start = System.nanoTime();
+        try {
+            return loadPage(webWindow, webRequest, addToHistory);
+        }
+        finally {
+            LoadTimeline.exitPage(previousPage);
+            LoadTimeline.fire(loadTimelineListener, LoadPhase.PAGE, url.toExternalForm(), url, -1, start);
+        }
+    }
+
+    private <P extends Page> P loadPage(final WebWindow webWindow, final WebRequest webRequest,
+            final boolean addToHistory)
+        throws IOException, FailingHttpStatusCodeException {
+
         final Page page = webWindow.getEnclosedPage();
 
         if (page != null) {
@@ -946,6 +972,25 @@ public class WebClient implements Serializable, AutoCloseable {
         return javaScriptErrorListener_;
     }
 
+    /**
+     * Sets the listener informed about the time spent in the network, the HTML parser, the JavaScript engine,
+     * the CSS parser and the background jobs while loading pages; see
+     * {@link com.gargoylesoftware.htmlunit.timeline.LoadTimelineAggregator} for a listener collecting the
+     * timelines per page. Without listener, the time is not measured at all.
+     * @param loadTimelineListener the listener or {@code null}
+     */
+    public void setLoadTimelineListener(final LoadTimelineListener loadTimelineListener) {
+        loadTimelineListener_ = loadTimelineListener;
+    }
+
+    /**
+     * Returns the listener informed about the phases of loading pages.
+     * @return the listener or {@code null} if none has been set
+     */
+    public LoadTimelineListener getLoadTimelineListener() {
+        return loadTimelineListener_;
+    }
+
     /**
      * Returns the current browser version.
      * @return the current browser version
@@ -1582,10 +1627,19 @@ public class WebClient implements Serializable, AutoCloseable {
         addDefaultHeaders(webRequest);
 
         // Retrieve the response, either from the cache or from the server.
-        final WebResponse fromCache = getCache().getCachedResponse(webRequest);
+        WebResponse fromCache = getCache().getCachedResponse(webRequest);
         final WebResponse webResponse;
         if (fromCache == null) {
-            webResponse = getWebConnection().getResponse(webRequest);
+            final WebResponse staleResponse = getCache().getStaleResponse(webRequest);
+            if (staleResponse == null) {
+                webResponse = getWebConnection().getResponse(webRequest);
+            }
+            else {
+                webResponse = revalidate(webRequest, staleResponse);
+                if (webResponse instanceof WebResponseFromCache) {
+                    fromCache = webResponse;
+                }
+            }
         }
         else {
             webResponse = new WebResponseFromCache(fromCache, webRequest);
@@ -1681,6 +1735,46 @@ public class WebClient implements Serializable, AutoCloseable {
         return webResponse;
     }
 
+    /**
+     * Asks the server if the stale response from the cache is still valid, using a conditional request.
+     * @param webRequest the request
+     * @param staleResponse the stale response
+     * @return the updated response from the cache or the new response sent by the server
+     * @throws IOException if an IO problem occurs
+     */
+    private WebResponse revalidate(final WebRequest webRequest, final WebResponse staleResponse) throws IOException {
+        // don't interfere with conditional requests made by the page itself
+        if (webRequest.isAdditionalHeader(HttpHeader.IF_NONE_MATCH)
+                || webRequest.isAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE)) {
+            return getWebConnection().getResponse(webRequest);
+        }
+
+        final String etag = staleResponse.getResponseHeaderValue(HttpHeader.ETAG);
+        if (etag != null) {
+            webRequest.setAdditionalHeader(HttpHeader.IF_NONE_MATCH, etag);
+        }
+        final String lastModified = staleResponse.getResponseHeaderValue(HttpHeader.LAST_MODIFIED);
+        if (lastModified != null) {
+            webRequest.setAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        final WebResponse response;
+        try {
+            response = getWebConnection().getResponse(webRequest);
+        }
+        finally {
+            webRequest.removeAdditionalHeader(HttpHeader.IF_NONE_MATCH);
+            webRequest.removeAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE);
+        }
+
+        if (response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            final WebResponse revalidated = getCache().revalidated(webRequest, staleResponse, response);
+            response.cleanUp();
+            return new WebResponseFromCache(revalidated, webRequest);
+        }
+        return response;
+    }
+
     /**
      * Adds the headers that are sent with every request to the specified {@link WebRequest} instance.
      * @param wrs the <code>WebRequestSettings</code> instance to modify
@@ -2239,11 +2333,78 @@ public class WebClient implements Serializable, AutoCloseable {
         }
 
         cache_.clear();
+        DownloadedContent.MemoryMapped.deleteLeftovers();
         if (toThrow != null) {
             throw toThrow;
         }
     }
 
+    /**
+     * Restores the state of a new client, used by the {@link WebClientPool}.
+     * All windows are closed (stopping all background JavaScript processing) and a new empty window
+     * is opened; the cookies, the web storage, the additional request headers, the credentials,
+     * the window listeners and the handlers are removed. The connection is closed, this drops the cookie
+     * store and the authentication state of the underlying http client; the connection is reopened
+     * by the next request. A connection installed with {@link #setWebConnection(WebConnection)} since
+     * is closed as well and replaced by the given one. The JavaScript engine, the options and the cache are kept.
+     * @param webConnection the connection the client had when it was created
+     */
+    void reset(final WebConnection webConnection) {
+        final List<TopLevelWindow> topWindows = new ArrayList<>(topLevelWindows_);
+        for (final TopLevelWindow topWindow : topWindows) {
+            if (topLevelWindows_.contains(topWindow)) {
+                topWindow.close(true);
+            }
+        }
+        synchronized (loadQueue_) {
+            loadQueue_.clear();
+        }
+
+        closeWebConnection(webConnection_);
+        if (webConnection_ != webConnection) {
+            closeWebConnection(webConnection);
+            webConnection_ = webConnection;
+        }
+
+        cookieManager_ = new CookieManager();
+        storageHolder_.clear();
+        requestHeaders_.clear();
+        credentialsProvider_ = new DefaultCredentialsProvider();
+        webWindowListeners_.removeIf(listener -> !(listener instanceof CurrentWindowTracker));
+
+        alertHandler_ = null;
+        confirmHandler_ = null;
+        promptHandler_ = null;
+        statusHandler_ = null;
+        attachmentHandler_ = null;
+        clipboardHandler_ = null;
+        printHandler_ = null;
+        webStartHandler_ = null;
+        frameContentHandler_ = null;
+        appletConfirmHandler_ = null;
+        onbeforeunloadHandler_ = null;
+        htmlParserListener_ = null;
+        scriptPreProcessor_ = null;
+        webConsole_ = null;
+        incorrectnessListener_ = new IncorrectnessListenerImpl();
+        cssErrorHandler_ = new DefaultCssErrorHandler();
+        ajaxController_ = new AjaxController();
+        pageCreator_ = new DefaultPageCreator();
+        refreshHandler_ = new NiceRefreshHandler(2);
+        javaScriptErrorListener_ = new DefaultJavaScriptErrorListener();
+        loadTimelineListener_ = null;
+        activeXObjectMap_ = Collections.emptyMap();
+    }
+
+    private static void closeWebConnection(final WebConnection webConnection) {
+        try {
+            webConnection.close();
+        }
+        catch (final Exception e) {
+            LOG.error("Exception while closing the connection", e);
+        }
+    }
+
     /**
      * <p><span style="color:red">Experimental API: May be changed in next release
      * and may not yet work perfectly!</span></p>
@@ -2625,7 +2786,7 @@ public class WebClient implements Serializable, AutoCloseable {
      * @param url the URL on which to filter the returned cookies
      * @return the currently configured cookies applicable to the specified URL, in an unmodifiable set
      */
-    public synchronized Set<Cookie> getCookies(final URL url) {
+    public Set<Cookie> getCookies(final URL url) {
         final CookieManager cookieManager = getCookieManager();
 
         if (!cookieManager.isCookiesEnabled()) {
@@ -2650,23 +2811,32 @@ public class WebClient implements Serializable, AutoCloseable {
         // discard expired cookies
         cookieManager.clearExpired(new Date());
 
-        final List<org.apache.http.cookie.Cookie> all = Cookie.toHttpClient(cookieManager.getCookies());
-        final List<org.apache.http.cookie.Cookie> matches = new ArrayList<>();
+        final Set<Cookie> candidates = cookieManager.getCookiesForHost(host);
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
 
-        if (all.size() > 0) {
-            final CookieOrigin cookieOrigin = new CookieOrigin(host, port, path, secure);
-            final CookieSpec cookieSpec = new HtmlUnitBrowserCompatCookieSpec(getBrowserVersion());
-            for (final org.apache.http.cookie.Cookie cookie : all) {
-                if (cookieSpec.match(cookie, cookieOrigin)) {
-                    matches.add(cookie);
-                }
+        final CookieOrigin cookieOrigin = new CookieOrigin(host, port, path, secure);
+        final CookieSpec cookieSpec = getCookieSpec();
+        final Set<Cookie> cookies = new LinkedHashSet<>();
+        for (final Cookie cookie : candidates) {
+            if (cookieSpec.match(cookie.toHttpClient(), cookieOrigin)) {
+                cookies.add(cookie);
             }
         }
-
-        final Set<Cookie> cookies = new LinkedHashSet<>(Cookie.fromHttpClient(matches));
         return Collections.unmodifiableSet(cookies);
     }
 
+    private CookieSpec getCookieSpec() {
+        // the cookie spec is stateless, it is only created once
+        CookieSpec cookieSpec = cookieSpec_;
+        if (cookieSpec == null) {
+            cookieSpec = new HtmlUnitBrowserCompatCookieSpec(getBrowserVersion());
+            cookieSpec_ = cookieSpec;
+        }
+        return cookieSpec;
+    }
+
     /**
      * Parses the given cookie and adds this to our cookie store.
      * @param cookieString the string to parse
@@ -2687,7 +2857,7 @@ public class WebClient implements Serializable, AutoCloseable {
         buffer.append("Set-Cookie: ");
         buffer.append(cookieString);
 
-        final CookieSpec cookieSpec = new HtmlUnitBrowserCompatCookieSpec(getBrowserVersion());
+        final CookieSpec cookieSpec = getCookieSpec();
 
         try {
             final List<org.apache.http.cookie.Cookie> cookies =
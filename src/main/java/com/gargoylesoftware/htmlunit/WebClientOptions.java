@@ -61,6 +61,10 @@ public class WebClientOptions implements Serializable {
     private ProxyConfig proxyConfig_;
     private int timeout_ = 90_000; // like Firefox 16 default's value for network.http.connection-timeout
     private long connectionTimeToLive_ = -1; // HttpClient default
+    private int maxConnectionsTotal_ = 20; // HttpClient default
+    private int maxConnectionsPerRoute_ = 6; // like most browsers
+    private long connectionIdleTimeout_ = -1;
+    private long connectionKeepAlive_ = -1;
 
     private boolean useInsecureSSL_; // default is secure SSL
     private String sslInsecureProtocol_;
@@ -81,6 +85,13 @@ public class WebClientOptions implements Serializable {
     private boolean isFetchPolyfillEnabled_;
     private boolean isProxyPolyfillEnabled_;
 
+    private boolean virtualTimeEnabled_;
+    private boolean streamingParseEnabled_;
+    private boolean preloadScannerEnabled_;
+    private boolean compiledScriptCacheEnabled_;
+    private boolean javaScriptCompilationEnabled_;
+    private boolean lazyHostClassesEnabled_;
+
     /**
      * If set to {@code true}, the client will accept connections to any host, regardless of
      * whether they have valid certificates or not. This is especially useful when you are trying to
@@ -501,6 +512,84 @@ public class WebClientOptions implements Serializable {
         connectionTimeToLive_ = connectionTimeToLive;
     }
 
+    /**
+     * Gets the maximum number of connections of the HttpClient connection pool.
+     *
+     * @return the maximum number of connections
+     */
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal_;
+    }
+
+    /**
+     * Sets the maximum number of connections of the HttpClient connection pool.
+     * The default is 20.
+     *
+     * @param maxConnectionsTotal the maximum number of connections
+     */
+    public void setMaxConnectionsTotal(final int maxConnectionsTotal) {
+        maxConnectionsTotal_ = maxConnectionsTotal;
+    }
+
+    /**
+     * Gets the maximum number of connections per route (host) of the HttpClient connection pool.
+     *
+     * @return the maximum number of connections per route
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute_;
+    }
+
+    /**
+     * Sets the maximum number of connections per route (host) of the HttpClient connection pool.
+     * The default is 6, like most browsers.
+     *
+     * @param maxConnectionsPerRoute the maximum number of connections per route
+     */
+    public void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+        maxConnectionsPerRoute_ = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Gets the time after which idle connections are evicted from the HttpClient connection pool.
+     *
+     * @return the timeout value in milliseconds
+     */
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout_;
+    }
+
+    /**
+     * Sets the time after which idle connections are evicted from the HttpClient connection pool
+     * by a background thread.
+     * Set to -1 (default) for disabling the eviction.
+     *
+     * @param connectionIdleTimeout the value of the timeout in milliseconds
+     */
+    public void setConnectionIdleTimeout(final long connectionIdleTimeout) {
+        connectionIdleTimeout_ = connectionIdleTimeout;
+    }
+
+    /**
+     * Gets the maximum time a connection of the HttpClient connection pool is kept alive.
+     *
+     * @return the keep alive time in milliseconds
+     */
+    public long getConnectionKeepAlive() {
+        return connectionKeepAlive_;
+    }
+
+    /**
+     * Sets the maximum time a connection of the HttpClient connection pool is kept alive
+     * between two requests; the keep alive time sent by the server is used if it is shorter.
+     * Set to -1 (default) for using the keep alive time of the server.
+     *
+     * @param connectionKeepAlive the keep alive time in milliseconds
+     */
+    public void setConnectionKeepAlive(final long connectionKeepAlive) {
+        connectionKeepAlive_ = connectionKeepAlive;
+    }
+
     /**
      * Sets the SSL protocol, used only when {@link #setUseInsecureSSL(boolean)} is set to {@code true}.
      * @param sslInsecureProtocol the SSL protocol for insecure SSL connections,
@@ -812,4 +901,198 @@ public class WebClientOptions implements Serializable {
     public boolean isProxyPolyfillEnabled() {
         return isProxyPolyfillEnabled_;
     }
+
+    /**
+     * Enables/disables virtual time. If enabled, the time does not pass while
+     * {@link WebClient#waitForBackgroundJavaScript(long)} or
+     * {@link WebClient#waitForBackgroundJavaScriptStartingBefore(long)} wait for the next JavaScript job
+     * (e.g. a timeout); the clock is advanced to the target execution time of the job and the
+     * job is executed immediately, up to the end of the wait. Without a waiting caller the jobs are
+     * executed in real time. {@code Date.now()}, {@code new Date()}, {@code Date()},
+     * {@code performance.now()}, {@code setTimeout()} and {@code setInterval()} are based on this clock.
+     * By default, this property is disabled.
+     *
+     * @param enabled {@code true} to enable virtual time
+     */
+    public void setVirtualTimeEnabled(final boolean enabled) {
+        virtualTimeEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if virtual time is enabled.
+     *
+     * @return {@code true} if virtual time is enabled
+     */
+    public boolean isVirtualTimeEnabled() {
+        return virtualTimeEnabled_;
+    }
+
+    /**
+     * Enables/disables parsing of HTML pages while they are downloading.
+     * If enabled, the body of an HTML response is read in the background and the parser
+     * consumes it as soon as the bytes arrive, instead of waiting for the complete download.
+     * The body is kept in memory up to {@link #getMaxInMemory()} bytes and in a temporary file beyond.
+     * By default this is disabled.
+     *
+     * @param enabled {@code true} to enable streaming parsing
+     */
+    public void setStreamingParseEnabled(final boolean enabled) {
+        streamingParseEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if HTML pages are parsed while they are downloading.
+     *
+     * @return {@code true} if streaming parsing is enabled
+     */
+    public boolean isStreamingParseEnabled() {
+        return streamingParseEnabled_;
+    }
+
+    /**
+     * Enables/disables the preload scanner.
+     * If enabled, the source of an HTML page is scanned for external scripts and style sheets
+     * while the page is parsed; these resources are loaded in parallel in the background
+     * and the page uses the responses when the parser reaches them.
+     * By default this is disabled.
+     *
+     * @param enabled {@code true} to enable the preload scanner
+     */
+    public void setPreloadScannerEnabled(final boolean enabled) {
+        preloadScannerEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if the preload scanner is enabled.
+     *
+     * @return {@code true} if the preload scanner is enabled
+     */
+    public boolean isPreloadScannerEnabled() {
+        return preloadScannerEnabled_;
+    }
+
+    /**
+     * Enables/disables the process wide cache of compiled scripts
+     * (see {@link com.gargoylesoftware.htmlunit.javascript.CompiledScriptCache}).
+     * If enabled, scripts with the same source are compiled only once, even
+     * for different {@link WebClient}s. The cache is shared by all clients of the process that
+     * enable it; its memory budget is set by
+     * {@link com.gargoylesoftware.htmlunit.javascript.CompiledScriptCache#setMaxWeight(long)}.
+     * By default this is disabled.
+     *
+     * @param enabled {@code true} to enable the compiled script cache
+     */
+    public void setCompiledScriptCacheEnabled(final boolean enabled) {
+        compiledScriptCacheEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if the process wide cache of compiled scripts is used.
+     *
+     * @return {@code true} if the compiled script cache is enabled
+     */
+    public boolean isCompiledScriptCacheEnabled() {
+        return compiledScriptCacheEnabled_;
+    }
+
+    /**
+     * Enables/disables the compilation of JavaScript to Java bytecode.
+     * If enabled, scripts are compiled by the optimizing compiler of Rhino instead of being
+     * interpreted; this is faster for long running scripts but makes the compilation slower.
+     * Script timeouts are still enforced but the interpreter is used anyway if a debugger is set.
+     * The stack depth of compiled scripts is only limited by the stack of the Java thread; if it is exhausted,
+     * the running script is aborted with a {@code RangeError} that can't be caught by the script itself.
+     * By default this is disabled.
+     *
+     * @param enabled {@code true} to enable the compilation to bytecode
+     */
+    public void setJavaScriptCompilationEnabled(final boolean enabled) {
+        javaScriptCompilationEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if JavaScript is compiled to Java bytecode.
+     *
+     * @return {@code true} if the compilation to bytecode is enabled
+     */
+    public boolean isJavaScriptCompilationEnabled() {
+        return javaScriptCompilationEnabled_;
+    }
+
+    /**
+     * Enables/disables the lazy creation of the host class constructors of a window.
+     * If enabled, the prototypes and constructors of the host classes (like {@code HTMLDivElement})
+     * are only created when they are used for the first time; this makes the creation of windows
+     * faster, most pages use only a few of them.
+     * By default this is disabled.
+     *
+     * @param enabled {@code true} to enable the lazy creation of the host classes
+     */
+    public void setLazyHostClassesEnabled(final boolean enabled) {
+        lazyHostClassesEnabled_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if the host class constructors of a window are created on first use.
+     *
+     * @return {@code true} if the lazy creation of the host classes is enabled
+     */
+    public boolean isLazyHostClassesEnabled() {
+        return lazyHostClassesEnabled_;
+    }
+
+    /**
+     * Copies all the options from the given options; the {@link ProxyConfig}, the key stores
+     * and the arrays are shared, not copied.
+     *
+     * @param options the options to copy
+     */
+    void copyFrom(final WebClientOptions options) {
+        javaScriptEnabled_ = options.javaScriptEnabled_;
+        cssEnabled_ = options.cssEnabled_;
+        printContentOnFailingStatusCode_ = options.printContentOnFailingStatusCode_;
+        throwExceptionOnFailingStatusCode_ = options.throwExceptionOnFailingStatusCode_;
+        throwExceptionOnScriptError_ = options.throwExceptionOnScriptError_;
+        appletEnabled_ = options.appletEnabled_;
+        popupBlockerEnabled_ = options.popupBlockerEnabled_;
+        isRedirectEnabled_ = options.isRedirectEnabled_;
+        sslClientCertificateStore_ = options.sslClientCertificateStore_;
+        sslClientCertificatePassword_ = options.sslClientCertificatePassword_;
+        sslTrustStore_ = options.sslTrustStore_;
+        sslClientProtocols_ = options.sslClientProtocols_;
+        sslClientCipherSuites_ = options.sslClientCipherSuites_;
+        geolocationEnabled_ = options.geolocationEnabled_;
+        doNotTrackEnabled_ = options.doNotTrackEnabled_;
+        activeXNative_ = options.activeXNative_;
+        homePage_ = options.homePage_;
+        proxyConfig_ = options.proxyConfig_;
+        timeout_ = options.timeout_;
+        connectionTimeToLive_ = options.connectionTimeToLive_;
+        maxConnectionsTotal_ = options.maxConnectionsTotal_;
+        maxConnectionsPerRoute_ = options.maxConnectionsPerRoute_;
+        connectionIdleTimeout_ = options.connectionIdleTimeout_;
+        connectionKeepAlive_ = options.connectionKeepAlive_;
+        useInsecureSSL_ = options.useInsecureSSL_;
+        sslInsecureProtocol_ = options.sslInsecureProtocol_;
+        maxInMemory_ = options.maxInMemory_;
+        historySizeLimit_ = options.historySizeLimit_;
+        historyPageCacheLimit_ = options.historyPageCacheLimit_;
+        localAddress_ = options.localAddress_;
+        downloadImages_ = options.downloadImages_;
+        screenWidth_ = options.screenWidth_;
+        screenHeight_ = options.screenHeight_;
+        webSocketEnabled_ = options.webSocketEnabled_;
+        webSocketMaxTextMessageSize_ = options.webSocketMaxTextMessageSize_;
+        webSocketMaxTextMessageBufferSize_ = options.webSocketMaxTextMessageBufferSize_;
+        webSocketMaxBinaryMessageSize_ = options.webSocketMaxBinaryMessageSize_;
+        webSocketMaxBinaryMessageBufferSize_ = options.webSocketMaxBinaryMessageBufferSize_;
+        isFetchPolyfillEnabled_ = options.isFetchPolyfillEnabled_;
+        isProxyPolyfillEnabled_ = options.isProxyPolyfillEnabled_;
+        virtualTimeEnabled_ = options.virtualTimeEnabled_;
+        streamingParseEnabled_ = options.streamingParseEnabled_;
+        preloadScannerEnabled_ = options.preloadScannerEnabled_;
+        compiledScriptCacheEnabled_ = options.compiledScriptCacheEnabled_;
+        javaScriptCompilationEnabled_ = options.javaScriptCompilationEnabled_;
+        lazyHostClassesEnabled_ = options.lazyHostClassesEnabled_;
+    }
 }
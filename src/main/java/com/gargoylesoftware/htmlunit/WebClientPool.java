@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A pool of {@link WebClient}s for applications creating and closing many clients, e.g. crawlers
+ * serving many tenants. Creating a client is expensive (the JavaScript engine and its configuration
+ * and the executor); the pool keeps the idle clients and resets them when they are
+ * released:
+ * <ul>
+ *   <li>all windows are closed and a new empty window is opened</li>
+ *   <li>the cookies, the web storage, the additional request headers and the credentials are removed</li>
+ *   <li>the connection is closed; it is reopened by the next request. A connection installed while
+ *   the client was leased is closed and replaced by the connection the client was created with</li>
+ *   <li>the window listeners and the handlers are removed</li>
+ *   <li>the options are restored from {@link #getOptions()} and the JavaScript timeout
+ *   from {@link #getJavaScriptTimeout()}</li>
+ *   <li>the cache is cleared and its limits are restored from {@link #getCache()}</li>
+ * </ul>
+ *
+ * <pre>
+ * try (WebClientPool pool = new WebClientPool(BrowserVersion.CHROME)) {
+ *     pool.getOptions().setThrowExceptionOnScriptError(false);
+ *     pool.setMinIdle(4);
+ *
+ *     final WebClient webClient = pool.lease();
+ *     try {
+ *         webClient.getPage("https://www.htmlunit.org/");
+ *     }
+ *     finally {
+ *         pool.release(webClient);
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>This class is thread safe. The clients are created (pre-warmed) and reset in the calling thread.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class WebClientPool implements AutoCloseable {
+
+    private static final Log LOG = LogFactory.getLog(WebClientPool.class);
+
+    private final BrowserVersion browserVersion_;
+    private final WebClientOptions options_ = new WebClientOptions();
+    private final Cache cache_ = new Cache();
+    private volatile long javaScriptTimeout_;
+
+    private final Deque<WebClient> idle_ = new ArrayDeque<>();
+    private final Set<WebClient> leased_ = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<WebClient, WebConnection> connections_ = new IdentityHashMap<>();
+    private int total_;
+    private int minIdle_;
+    private int maxIdle_ = 8;
+    private int maxTotal_ = Integer.MAX_VALUE;
+    private boolean closed_;
+    private volatile Predicate<WebClient> healthCheck_ = webClient -> webClient.getCurrentWindow() != null;
+
+    private final AtomicLong created_ = new AtomicLong();
+    private final AtomicLong destroyed_ = new AtomicLong();
+    private final AtomicLong leases_ = new AtomicLong();
+    private final AtomicLong leaseWaitTime_ = new AtomicLong();
+    private final AtomicLong maxLeaseWaitTime_ = new AtomicLong();
+    private final AtomicLong resets_ = new AtomicLong();
+    private final AtomicLong resetTime_ = new AtomicLong();
+
+    /**
+     * Creates a pool of clients using the given browser version.
+     * @param browserVersion the browser version of the clients
+     */
+    public WebClientPool(final BrowserVersion browserVersion) {
+        WebAssert.notNull("browserVersion", browserVersion);
+        browserVersion_ = browserVersion;
+        options_.setProxyConfig(new ProxyConfig());
+    }
+
+    /**
+     * Returns the browser version of the clients.
+     * @return the browser version
+     */
+    public BrowserVersion getBrowserVersion() {
+        return browserVersion_;
+    }
+
+    /**
+     * Returns the template of the options; the options of the clients are set to these options
+     * when they are created and when they are released.
+     * @return the template of the options
+     */
+    public WebClientOptions getOptions() {
+        return options_;
+    }
+
+    /**
+     * Returns the template of the cache; the limits and the disk cache of this cache are used for
+     * the cache of the clients when they are created and when they are released. The entries of this
+     * cache are not used.
+     * @return the template of the cache
+     */
+    public Cache getCache() {
+        return cache_;
+    }
+
+    /**
+     * Returns the JavaScript timeout of the clients; the default is {@code 0} (no timeout).
+     * @return the JavaScript timeout in milliseconds
+     * @see WebClient#getJavaScriptTimeout()
+     */
+    public long getJavaScriptTimeout() {
+        return javaScriptTimeout_;
+    }
+
+    /**
+     * Sets the JavaScript timeout of the clients; the timeout of the clients is set to this value when
+     * they are created and when they are released. A value of 0 or less means no timeout.
+     * @param timeout the JavaScript timeout in milliseconds
+     * @see WebClient#setJavaScriptTimeout(long)
+     */
+    public void setJavaScriptTimeout(final long timeout) {
+        javaScriptTimeout_ = timeout;
+    }
+
+    /**
+     * Returns the minimum number of idle clients; the default is {@code 0}.
+     * @return the minimum number of idle clients
+     */
+    public synchronized int getMinIdle() {
+        return minIdle_;
+    }
+
+    /**
+     * Sets the minimum number of idle clients; the missing clients are created (pre-warmed) now
+     * and every time a client is released. The default is {@code 0}.
+     * @param minIdle the minimum number of idle clients
+     */
+    public void setMinIdle(final int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("Illegal value for minIdle: " + minIdle);
+        }
+        synchronized (this) {
+            minIdle_ = minIdle;
+        }
+        ensureMinIdle();
+    }
+
+    /**
+     * Returns the maximum number of idle clients; the default is {@code 8}.
+     * @return the maximum number of idle clients
+     */
+    public synchronized int getMaxIdle() {
+        return maxIdle_;
+    }
+
+    /**
+     * Sets the maximum number of idle clients; clients released while this number of clients
+     * is idle are closed. The default is {@code 8}.
+     * @param maxIdle the maximum number of idle clients
+     */
+    public void setMaxIdle(final int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Illegal value for maxIdle: " + maxIdle);
+        }
+        final List<WebClient> toClose = new ArrayList<>();
+        synchronized (this) {
+            maxIdle_ = maxIdle;
+            while (idle_.size() > maxIdle_) {
+                toClose.add(idle_.pollLast());
+                total_--;
+            }
+            notifyAll();
+        }
+        destroy(toClose);
+    }
+
+    /**
+     * Returns the maximum number of clients (leased and idle); the default is unlimited.
+     * @return the maximum number of clients
+     */
+    public synchronized int getMaxTotal() {
+        return maxTotal_;
+    }
+
+    /**
+     * Sets the maximum number of clients (leased and idle); {@link #lease(long, TimeUnit)} waits
+     * if this number of clients is leased. The default is unlimited.
+     * @param maxTotal the maximum number of clients
+     */
+    public synchronized void setMaxTotal(final int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("Illegal value for maxTotal: " + maxTotal);
+        }
+        maxTotal_ = maxTotal;
+        notifyAll();
+    }
+
+    /**
+     * Sets the health check; idle clients failing the check are closed and replaced
+     * when leased, released clients failing the check are closed.
+     * The default checks that the client has a current window.
+     * @param healthCheck the health check
+     */
+    public void setHealthCheck(final Predicate<WebClient> healthCheck) {
+        WebAssert.notNull("healthCheck", healthCheck);
+        healthCheck_ = healthCheck;
+    }
+
+    /**
+     * Leases a client, waits as long as needed if {@link #getMaxTotal()} clients are leased.
+     * @return the client
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public WebClient lease() throws InterruptedException {
+        return lease(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Leases a client, waits at most the given time if {@link #getMaxTotal()} clients are leased.
+     * The client has to be given back using {@link #release(WebClient)}.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the client or {@code null} if no client was available in time
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public WebClient lease(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        long remaining = unit.toNanos(timeout);
+
+        WebClient webClient = null;
+        synchronized (this) {
+            while (true) {
+                if (closed_) {
+                    throw new IllegalStateException("The pool is closed");
+                }
+                if (!idle_.isEmpty()) {
+                    webClient = idle_.pollFirst();
+                    break;
+                }
+                if (total_ < maxTotal_) {
+                    total_++;
+                    break;
+                }
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = unit.toNanos(timeout) - (System.nanoTime() - start);
+            }
+        }
+
+        try {
+            if (webClient != null && !isHealthy(webClient)) {
+                destroy(Collections.singletonList(webClient));
+                webClient = null;
+            }
+            if (webClient == null) {
+                webClient = create();
+            }
+        }
+        catch (final RuntimeException | Error e) {
+            synchronized (this) {
+                total_--;
+                notifyAll();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            leased_.add(webClient);
+        }
+
+        final long waitTime = System.nanoTime() - start;
+        leases_.incrementAndGet();
+        leaseWaitTime_.addAndGet(waitTime);
+        maxLeaseWaitTime_.accumulateAndGet(waitTime, Math::max);
+        return webClient;
+    }
+
+    /**
+     * Gives back a leased client; the client is reset and kept for the next lease,
+     * or closed if {@link #getMaxIdle()} clients are idle or the pool is closed.
+     * @param webClient the client
+     */
+    public void release(final WebClient webClient) {
+        synchronized (this) {
+            if (!leased_.remove(webClient)) {
+                throw new IllegalArgumentException("The client was not leased from this pool");
+            }
+        }
+
+        final long start = System.nanoTime();
+        boolean reusable;
+        try {
+            reset(webClient);
+            reusable = isHealthy(webClient);
+        }
+        catch (final RuntimeException e) {
+            LOG.warn("Exception while resetting a WebClient, the client is closed", e);
+            reusable = false;
+        }
+        resets_.incrementAndGet();
+        resetTime_.addAndGet(System.nanoTime() - start);
+
+        synchronized (this) {
+            reusable = reusable && !closed_ && idle_.size() < maxIdle_;
+            if (reusable) {
+                idle_.addFirst(webClient);
+            }
+            else {
+                total_--;
+                reusable = false;
+            }
+            notifyAll();
+        }
+
+        if (!reusable) {
+            destroy(Collections.singletonList(webClient));
+        }
+        ensureMinIdle();
+    }
+
+    /**
+     * Creates idle clients until {@link #getMinIdle()} clients are idle.
+     */
+    private void ensureMinIdle() {
+        while (true) {
+            synchronized (this) {
+                if (closed_ || idle_.size() >= minIdle_ || idle_.size() >= maxIdle_ || total_ >= maxTotal_) {
+                    return;
+                }
+                total_++;
+            }
+
+            final WebClient webClient;
+            try {
+                webClient = create();
+            }
+            catch (final RuntimeException | Error e) {
+                synchronized (this) {
+                    total_--;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            final boolean added;
+            synchronized (this) {
+                added = !closed_;
+                if (added) {
+                    idle_.addLast(webClient);
+                }
+                else {
+                    total_--;
+                }
+                notifyAll();
+            }
+            if (!added) {
+                destroy(Collections.singletonList(webClient));
+            }
+        }
+    }
+
+    private boolean isHealthy(final WebClient webClient) {
+        try {
+            return healthCheck_.test(webClient);
+        }
+        catch (final RuntimeException e) {
+            LOG.warn("Exception during the health check of a WebClient", e);
+            return false;
+        }
+    }
+
+    private WebClient create() {
+        final WebClient webClient = createWebClient();
+        synchronized (this) {
+            connections_.put(webClient, webClient.getWebConnection());
+        }
+        applyTemplate(webClient);
+        created_.incrementAndGet();
+        return webClient;
+    }
+
+    /**
+     * Creates a new client; override this to customize the clients.
+     * @return the new client
+     */
+    protected WebClient createWebClient() {
+        return new WebClient(browserVersion_);
+    }
+
+    /**
+     * Resets the given client before it is leased again.
+     * @param webClient the client
+     */
+    protected void reset(final WebClient webClient) {
+        WebConnection webConnection;
+        synchronized (this) {
+            webConnection = connections_.get(webClient);
+        }
+        if (webConnection == null) {
+            webConnection = webClient.getWebConnection();
+        }
+        webClient.reset(webConnection);
+        webClient.getCache().clear();
+        applyTemplate(webClient);
+    }
+
+    private void applyTemplate(final WebClient webClient) {
+        webClient.getOptions().copyFrom(options_);
+        if (webClient.getJavaScriptEngine() != null) {
+            webClient.setJavaScriptTimeout(javaScriptTimeout_);
+        }
+
+        final Cache cache = webClient.getCache();
+        cache.setMaxSize(cache_.getMaxSize());
+        for (final Cache.EntryType type : Cache.EntryType.values()) {
+            cache.setMaxWeight(type, cache_.getMaxWeight(type));
+        }
+        cache.setDiskCache(cache_.getDiskCache());
+    }
+
+    private void destroy(final List<WebClient> webClients) {
+        for (final WebClient webClient : webClients) {
+            synchronized (this) {
+                connections_.remove(webClient);
+            }
+            try {
+                webClient.close();
+            }
+            catch (final RuntimeException e) {
+                LOG.error("Exception while closing a WebClient", e);
+            }
+            destroyed_.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of idle clients.
+     * @return the number of idle clients
+     */
+    public synchronized int getIdleCount() {
+        return idle_.size();
+    }
+
+    /**
+     * Returns the number of leased clients.
+     * @return the number of leased clients
+     */
+    public synchronized int getLeasedCount() {
+        return leased_.size();
+    }
+
+    /**
+     * Returns the number of clients created by this pool.
+     * @return the number of created clients
+     */
+    public long getCreatedCount() {
+        return created_.get();
+    }
+
+    /**
+     * Returns the number of clients closed by this pool.
+     * @return the number of closed clients
+     */
+    public long getDestroyedCount() {
+        return destroyed_.get();
+    }
+
+    /**
+     * Returns the number of leases.
+     * @return the number of leases
+     */
+    public long getLeaseCount() {
+        return leases_.get();
+    }
+
+    /**
+     * Returns the total time spent in {@link #lease(long, TimeUnit)}, including the creation of clients.
+     * @param unit the unit of the result
+     * @return the total lease wait time
+     */
+    public long getLeaseWaitTime(final TimeUnit unit) {
+        return unit.convert(leaseWaitTime_.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time spent in a single {@link #lease(long, TimeUnit)}.
+     * @param unit the unit of the result
+     * @return the maximum lease wait time
+     */
+    public long getMaxLeaseWaitTime(final TimeUnit unit) {
+        return unit.convert(maxLeaseWaitTime_.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of resets of released clients.
+     * @return the number of resets
+     */
+    public long getResetCount() {
+        return resets_.get();
+    }
+
+    /**
+     * Returns the total time spent resetting released clients.
+     * @param unit the unit of the result
+     * @return the total reset time
+     */
+    public long getResetTime(final TimeUnit unit) {
+        return unit.convert(resetTime_.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Closes all idle clients; the clients leased at this time are closed when they are released.
+     */
+    @Override
+    public void close() {
+        final List<WebClient> toClose;
+        synchronized (this) {
+            closed_ = true;
+            toClose = new ArrayList<>(idle_);
+            total_ -= idle_.size();
+            idle_.clear();
+            notifyAll();
+        }
+        destroy(toClose);
+    }
+}
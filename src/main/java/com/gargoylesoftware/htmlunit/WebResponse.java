@@ -29,6 +29,7 @@ import java.util.List;
 import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpStatus;
@@ -65,6 +66,7 @@ public class WebResponse implements Serializable {
         ByteOrderMark.UTF_8,
         ByteOrderMark.UTF_16LE,
         ByteOrderMark.UTF_16BE};
+    private static final int BOM_LENGTH = ByteOrderMark.UTF_8.length();
 
     private final long loadTime_;
     private final WebResponseData responseData_;
@@ -106,6 +108,14 @@ public class WebResponse implements Serializable {
         return request_;
     }
 
+    /**
+     * Returns the response data; {@code null} for wrappers.
+     * @return the response data
+     */
+    WebResponseData getResponseData() {
+        return responseData_;
+    }
+
     /**
      * Returns the response headers as a list of {@link NameValuePair}s.
      * @return the response headers as a list of {@link NameValuePair}s
@@ -177,6 +187,29 @@ public class WebResponse implements Serializable {
         }
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the content charset the parser has to use, or {@code null} if the parser has to
+     * detect it itself. While the content is still downloading, only the headers and the byte order mark
+     * are checked; the parser handles a charset specified in the content. This avoids waiting for
+     * more of the content and gives the same result whatever has been received so far.
+     * @return the content charset the parser has to use, or {@code null}
+     */
+    public Charset getContentCharsetForParsing() {
+        if (responseData_ == null || !responseData_.isStreaming()) {
+            return getContentCharsetOrNull();
+        }
+
+        try (InputStream is = new BoundedInputStream(getContentAsStream(), BOM_LENGTH)) {
+            return EncodingSniffer.sniffEncoding(getResponseHeaders(), is);
+        }
+        catch (final IOException e) {
+            LOG.warn("Error trying to sniff encoding.", e);
+            return null;
+        }
+    }
+
     /**
      * Returns the content charset for this response, even if no charset was specified explicitly.
      * This method always returns a valid charset. This method first checks the {@code Content-Type}
@@ -219,6 +219,22 @@ public class WebResponseData implements Serializable {
         return getStream(downloadedContent_, getResponseHeaders(), bomHeaders);
     }
 
+    /**
+     * Returns the downloaded content without decoding the content encoding.
+     * @return the downloaded content
+     */
+    DownloadedContent getDownloadedContent() {
+        return downloadedContent_;
+    }
+
+    /**
+     * Returns {@code true} if the content is still downloaded while it is read.
+     * @return whether the content is streamed
+     */
+    boolean isStreaming() {
+        return downloadedContent_ instanceof StreamingDownloadedContent;
+    }
+
     /**
      * @return response headers
      */
@@ -25,12 +25,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.css.ComputedCssStyleDeclaration;
 import com.gargoylesoftware.htmlunit.css.ElementCssStyleDeclaration;
+import com.gargoylesoftware.htmlunit.css.StyleElement;
 import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.FrameWindow;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
@@ -41,6 +43,7 @@ import com.gargoylesoftware.htmlunit.javascript.host.Window;
 import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleSheet;
 import com.gargoylesoftware.htmlunit.javascript.host.css.StyleSheetList;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
 
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 
@@ -383,6 +386,21 @@ public abstract class WebWindowImpl implements WebWindow {
      */
     @Override
     public ComputedCssStyleDeclaration getComputedStyle(final DomElement element, final String pseudoElement) {
+        final Object jfrEvent = HtmlUnitEvents.beginComputedStyle();
+        if (jfrEvent == null) {
+            return calculateComputedStyle(element, pseudoElement);
+        }
+
+        try {
+            return calculateComputedStyle(element, pseudoElement);
+        }
+        finally {
+            HtmlUnitEvents.commitComputedStyle(jfrEvent, element.getNodeName(), pseudoElement);
+        }
+    }
+
+    private ComputedCssStyleDeclaration calculateComputedStyle(final DomElement element,
+            final String pseudoElement) {
         String normalizedPseudo = pseudoElement;
         if (normalizedPseudo != null) {
             if (normalizedPseudo.startsWith("::")) {
@@ -404,10 +422,22 @@ public abstract class WebWindowImpl implements WebWindow {
         }
 
         final Element e = element.getScriptableObject();
+        final Object ownerDocument = e.getOwnerDocument();
+        if (ownerDocument instanceof HTMLDocument) {
+            // siblings with the same name and attributes match the same rules
+            final HtmlPage htmlPage = (HtmlPage) element.getPage();
+            final Map<String, StyleElement> sharedStyles = htmlPage.getSharedStyles(element, normalizedPseudo);
+            if (sharedStyles != null) {
+                final ComputedCssStyleDeclaration computedsStyleDeclaration =
+                        new ComputedCssStyleDeclaration(new ElementCssStyleDeclaration(element), sharedStyles);
+                htmlPage.putStyleIntoCache(element, normalizedPseudo, computedsStyleDeclaration);
+                return computedsStyleDeclaration;
+            }
+        }
+
         final ComputedCssStyleDeclaration computedsStyleDeclaration =
                 new ComputedCssStyleDeclaration(new ElementCssStyleDeclaration(element));
 
-        final Object ownerDocument = e.getOwnerDocument();
         if (ownerDocument instanceof HTMLDocument) {
             final StyleSheetList sheets = ((HTMLDocument) ownerDocument).getStyleSheets();
             final boolean trace = LOG.isTraceEnabled();
@@ -421,7 +451,11 @@ public abstract class WebWindowImpl implements WebWindow {
                 }
             }
 
-            ((HtmlPage) element.getPage()).putStyleIntoCache(element, normalizedPseudo, computedsStyleDeclaration);
+            final HtmlPage htmlPage = (HtmlPage) element.getPage();
+            htmlPage.putStyleIntoCache(element, normalizedPseudo, computedsStyleDeclaration);
+            if (computedsStyleDeclaration.isStyleSharingAllowed()) {
+                htmlPage.putSharedStyles(element, normalizedPseudo, computedsStyleDeclaration.getMatchedStyles());
+            }
         }
 
         return computedsStyleDeclaration;
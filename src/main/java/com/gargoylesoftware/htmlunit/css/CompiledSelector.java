@@ -0,0 +1,696 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.css.parser.condition.AttributeCondition;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.condition.NotPseudoClassCondition;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.parser.selector.SimpleSelector;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+
+/**
+ * A {@link Selector} compiled into a tree of matchers; the result is the same as for
+ * {@link CssStyleSheet#selects(BrowserVersion, Selector, DomElement, String, boolean, boolean)}.
+ *
+ * <p>The matchers are evaluated from right to left, the values needed for the comparisons
+ * (unescaped class names, lower case attribute values, the coefficients of the nth-* pseudo classes)
+ * are prepared once. If there is no matching ancestor for a descendant combinator, the
+ * search is stopped instead of retrying with the ancestors of the enclosing combinators.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompiledSelector {
+
+    private static final Log LOG = LogFactory.getLog(CompiledSelector.class);
+
+    private static final int MATCH = 0;
+    private static final int NO_MATCH = 1;
+    /** No match for this element and no match for any of its ancestors. */
+    private static final int NO_MATCH_FOR_ANCESTORS = 2;
+
+    private final Matcher matcher_;
+    private final boolean allowsStyleSharing_;
+
+    private CompiledSelector(final Matcher matcher, final boolean allowsStyleSharing) {
+        matcher_ = matcher;
+        allowsStyleSharing_ = allowsStyleSharing;
+    }
+
+    /**
+     * Compiles the given selector.
+     * @param selector the selector
+     * @return the compiled selector
+     */
+    public static CompiledSelector compile(final Selector selector) {
+        return new CompiledSelector(compileSelector(selector), allowsStyleSharing(selector));
+    }
+
+    /**
+     * Returns whether this selector selects all elements having the same parent, the same name and
+     * the same attributes (but no id) alike. This is not the case if the selector checks the siblings
+     * or the state of the element itself (pseudo classes).
+     * @return whether the computed styles of such elements may be shared
+     */
+    public boolean allowsStyleSharing() {
+        return allowsStyleSharing_;
+    }
+
+    /**
+     * Returns {@code true} if the selector selects the specified element.
+     *
+     * @param browserVersion the browser version
+     * @param element the element to test
+     * @param pseudoElement the pseudo element to match, (can be {@code null})
+     * @param fromQuerySelectorAll whether this is called from {@link DomNode#querySelectorAll(String)}
+     * @param throwOnSyntax throw exception if the selector syntax is incorrect
+     * @return {@code true} if it does apply, {@code false} if it doesn't apply
+     */
+    public boolean selects(final BrowserVersion browserVersion, final DomElement element,
+            final String pseudoElement, final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+        return matcher_.match(browserVersion, element, pseudoElement, fromQuerySelectorAll, throwOnSyntax) == MATCH;
+    }
+
+    private static Matcher compileSelector(final Selector selector) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                return new ElementMatcher((ElementSelector) selector);
+
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                return new ChildMatcher(compileSelector(cs.getSimpleSelector()),
+                        compileSelector(cs.getAncestorSelector()));
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                final SimpleSelector simpleSelector = ds.getSimpleSelector();
+                return new DescendantMatcher(compileSelector(simpleSelector),
+                        compileSelector(ds.getAncestorSelector()),
+                        simpleSelector.getSelectorType() == SelectorType.PSEUDO_ELEMENT_SELECTOR);
+
+            case DIRECT_ADJACENT_SELECTOR:
+                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
+                return new DirectAdjacentMatcher(compileSelector(das.getSimpleSelector()),
+                        compileSelector(das.getSelector()));
+
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
+                return new GeneralAdjacentMatcher(compileSelector(gas.getSimpleSelector()),
+                        compileSelector(gas.getSelector()));
+
+            case PSEUDO_ELEMENT_SELECTOR:
+                return new PseudoElementMatcher(((PseudoElementSelector) selector).getLocalName());
+
+            default:
+                return new UnknownSelectorMatcher(selector.getSelectorType());
+        }
+    }
+
+    private static boolean allowsStyleSharing(final Selector selector) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                final List<Condition> conditions = ((ElementSelector) selector).getConditions();
+                if (conditions != null) {
+                    for (final Condition condition : conditions) {
+                        if (condition.getConditionType() == Condition.ConditionType.PSEUDO_CLASS_CONDITION) {
+                            return false;
+                        }
+                        if (condition.getConditionType() == Condition.ConditionType.NOT_PSEUDO_CLASS_CONDITION) {
+                            for (final Selector notSelector : ((NotPseudoClassCondition) condition).getSelectors()) {
+                                if (!allowsStyleSharing(notSelector)) {
+                                    return false;
+                                }
+                            }
+                        }
+                    }
+                }
+                return true;
+
+            case CHILD_SELECTOR:
+            case DESCENDANT_SELECTOR:
+                // the ancestors are the same
+                return allowsStyleSharing(selector.getSimpleSelector());
+
+            case PSEUDO_ELEMENT_SELECTOR:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private static ConditionMatcher compileCondition(final Condition condition) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                return new IdMatcher(condition.getValue());
+
+            case CLASS_CONDITION:
+                return new ClassMatcher(unescape(condition.getValue()));
+
+            case ATTRIBUTE_CONDITION:
+                final AttributeCondition attributeCondition = (AttributeCondition) condition;
+                final String value = attributeCondition.getValue();
+                if (value == null) {
+                    return new HasAttributeMatcher(condition.getLocalName());
+                }
+                return new AttributeValueMatcher(attributeCondition.getLocalName(), unescape(value),
+                        attributeCondition.isCaseInSensitive());
+
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                return new AttributeOperatorMatcher((AttributeCondition) condition);
+
+            case NOT_PSEUDO_CLASS_CONDITION:
+                final SelectorList selectorList = ((NotPseudoClassCondition) condition).getSelectors();
+                final Matcher[] matchers = new Matcher[selectorList.size()];
+                for (int i = 0; i < matchers.length; i++) {
+                    matchers[i] = compileSelector(selectorList.get(i));
+                }
+                return new NotMatcher(matchers);
+
+            case PSEUDO_CLASS_CONDITION:
+                final ConditionMatcher nthMatcher = NthMatcher.compile(condition.getValue());
+                if (nthMatcher != null) {
+                    return nthMatcher;
+                }
+                return new InterpretedConditionMatcher(condition);
+
+            default:
+                return new InterpretedConditionMatcher(condition);
+        }
+    }
+
+    private static String unescape(final String value) {
+        if (value.indexOf('\\') > -1) {
+            return CssStyleSheet.UNESCAPE_SELECTOR.matcher(value).replaceAll("$1").intern();
+        }
+        return value.intern();
+    }
+
+    /**
+     * Matches an element against a selector.
+     */
+    private abstract static class Matcher {
+        abstract int match(BrowserVersion browserVersion, DomElement element, String pseudoElement,
+                boolean fromQuerySelectorAll, boolean throwOnSyntax);
+    }
+
+    /**
+     * Matches an element against a condition of an element selector.
+     */
+    private abstract static class ConditionMatcher {
+        abstract boolean selects(BrowserVersion browserVersion, DomElement element,
+                boolean fromQuerySelectorAll, boolean throwOnSyntax);
+    }
+
+    private static final class ElementMatcher extends Matcher {
+        private final String localName_;
+        private final String localNameLowerCase_;
+        private final ConditionMatcher[] conditions_;
+
+        ElementMatcher(final ElementSelector selector) {
+            localName_ = selector.getLocalName() == null ? null : selector.getLocalName().intern();
+            localNameLowerCase_ = selector.getLocalNameLowerCase() == null
+                    ? null : selector.getLocalNameLowerCase().intern();
+
+            final List<Condition> conditions = selector.getConditions();
+            if (conditions == null) {
+                conditions_ = new ConditionMatcher[0];
+            }
+            else {
+                conditions_ = new ConditionMatcher[conditions.size()];
+                for (int i = 0; i < conditions_.length; i++) {
+                    conditions_[i] = compileCondition(conditions.get(i));
+                }
+            }
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            final String name;
+            final String elementName;
+            if (element.getPage().hasCaseSensitiveTagNames()) {
+                name = localName_;
+                elementName = element.getLocalName();
+            }
+            else {
+                name = localNameLowerCase_;
+                elementName = element.getLowercaseName();
+            }
+            if (name != null && !name.equals(elementName)) {
+                return NO_MATCH;
+            }
+
+            for (final ConditionMatcher condition : conditions_) {
+                if (!condition.selects(browserVersion, element, fromQuerySelectorAll, throwOnSyntax)) {
+                    return NO_MATCH;
+                }
+            }
+            return MATCH;
+        }
+    }
+
+    private static final class ChildMatcher extends Matcher {
+        private final Matcher simple_;
+        private final Matcher ancestor_;
+
+        ChildMatcher(final Matcher simple, final Matcher ancestor) {
+            simple_ = simple;
+            ancestor_ = ancestor;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            final DomNode parentNode = element.getParentNode();
+            if (parentNode == element.getPage() || !(parentNode instanceof DomElement)) {
+                return NO_MATCH;
+            }
+            if (simple_.match(browserVersion, element, pseudoElement, fromQuerySelectorAll, throwOnSyntax)
+                    != MATCH) {
+                return NO_MATCH;
+            }
+            return ancestor_.match(browserVersion, (DomElement) parentNode, pseudoElement,
+                    fromQuerySelectorAll, throwOnSyntax);
+        }
+    }
+
+    private static final class DescendantMatcher extends Matcher {
+        private final Matcher simple_;
+        private final Matcher ancestor_;
+        private final boolean pseudoElement_;
+
+        DescendantMatcher(final Matcher simple, final Matcher ancestor, final boolean pseudoElement) {
+            simple_ = simple;
+            ancestor_ = ancestor;
+            pseudoElement_ = pseudoElement;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (simple_.match(browserVersion, element, pseudoElement, fromQuerySelectorAll, throwOnSyntax)
+                    != MATCH) {
+                return NO_MATCH;
+            }
+
+            DomNode ancestor = element;
+            if (!pseudoElement_) {
+                ancestor = ancestor.getParentNode();
+            }
+            while (ancestor instanceof DomElement) {
+                final int result = ancestor_.match(browserVersion, (DomElement) ancestor, pseudoElement,
+                        fromQuerySelectorAll, throwOnSyntax);
+                if (result != NO_MATCH) {
+                    return result;
+                }
+                ancestor = ancestor.getParentNode();
+            }
+            // the ancestors of the enclosing selectors are our ancestors
+            return NO_MATCH_FOR_ANCESTORS;
+        }
+    }
+
+    private static final class DirectAdjacentMatcher extends Matcher {
+        private final Matcher simple_;
+        private final Matcher previous_;
+
+        DirectAdjacentMatcher(final Matcher simple, final Matcher previous) {
+            simple_ = simple;
+            previous_ = previous;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (simple_.match(browserVersion, element, pseudoElement, fromQuerySelectorAll, throwOnSyntax)
+                    != MATCH) {
+                return NO_MATCH;
+            }
+
+            DomNode prev = element.getPreviousSibling();
+            while (prev != null && !(prev instanceof DomElement)) {
+                prev = prev.getPreviousSibling();
+            }
+            if (prev == null) {
+                return NO_MATCH;
+            }
+            return previous_.match(browserVersion, (DomElement) prev, pseudoElement,
+                    fromQuerySelectorAll, throwOnSyntax);
+        }
+    }
+
+    private static final class GeneralAdjacentMatcher extends Matcher {
+        private final Matcher simple_;
+        private final Matcher previous_;
+
+        GeneralAdjacentMatcher(final Matcher simple, final Matcher previous) {
+            simple_ = simple;
+            previous_ = previous;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (simple_.match(browserVersion, element, pseudoElement, fromQuerySelectorAll, throwOnSyntax)
+                    != MATCH) {
+                return NO_MATCH;
+            }
+
+            for (DomNode prev = element.getPreviousSibling(); prev != null; prev = prev.getPreviousSibling()) {
+                if (prev instanceof DomElement) {
+                    final int result = previous_.match(browserVersion, (DomElement) prev, pseudoElement,
+                            fromQuerySelectorAll, throwOnSyntax);
+                    // all siblings have the same ancestors
+                    if (result != NO_MATCH) {
+                        return result;
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+    }
+
+    private static final class PseudoElementMatcher extends Matcher {
+        private final String name_;
+
+        PseudoElementMatcher(final String name) {
+            name_ = name;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (pseudoElement != null && pseudoElement.length() != 0 && pseudoElement.charAt(0) == ':'
+                    && name_.equals(pseudoElement.substring(1))) {
+                return MATCH;
+            }
+            return NO_MATCH;
+        }
+    }
+
+    private static final class UnknownSelectorMatcher extends Matcher {
+        private final SelectorType type_;
+
+        UnknownSelectorMatcher(final SelectorType type) {
+            type_ = type;
+        }
+
+        @Override
+        int match(final BrowserVersion browserVersion, final DomElement element, final String pseudoElement,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error("Unknown CSS selector type '" + type_ + "'.");
+            }
+            return NO_MATCH;
+        }
+    }
+
+    private static final class IdMatcher extends ConditionMatcher {
+        private final String id_;
+
+        IdMatcher(final String id) {
+            id_ = id;
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            return id_.equals(element.getId());
+        }
+    }
+
+    private static final class ClassMatcher extends ConditionMatcher {
+        private final String className_;
+
+        ClassMatcher(final String className) {
+            className_ = className;
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            return CssStyleSheet.selectsWhitespaceSeparated(className_, element.getAttributeDirect("class"));
+        }
+    }
+
+    private static final class HasAttributeMatcher extends ConditionMatcher {
+        private final String name_;
+
+        HasAttributeMatcher(final String name) {
+            name_ = name.intern();
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            return element.hasAttribute(name_);
+        }
+    }
+
+    private static final class AttributeValueMatcher extends ConditionMatcher {
+        private final String name_;
+        private final String value_;
+        private final boolean caseInSensitive_;
+
+        AttributeValueMatcher(final String name, final String value, final boolean caseInSensitive) {
+            name_ = name.intern();
+            value_ = value;
+            caseInSensitive_ = caseInSensitive;
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            final String attrValue = element.getAttribute(name_);
+            if (ATTRIBUTE_NOT_DEFINED == attrValue) {
+                return false;
+            }
+            if (caseInSensitive_) {
+                return attrValue.equalsIgnoreCase(value_);
+            }
+            return attrValue.equals(value_);
+        }
+    }
+
+    private static final class AttributeOperatorMatcher extends ConditionMatcher {
+        private final Condition.ConditionType type_;
+        private final String name_;
+        private final String value_;
+        private final boolean caseInSensitive_;
+
+        AttributeOperatorMatcher(final AttributeCondition condition) {
+            type_ = condition.getConditionType();
+            name_ = condition.getLocalName().intern();
+            caseInSensitive_ = condition.isCaseInSensitive();
+
+            final String value = condition.getValue();
+            if (caseInSensitive_
+                    && (type_ == Condition.ConditionType.BEGIN_HYPHEN_ATTRIBUTE_CONDITION
+                        || type_ == Condition.ConditionType.ONE_OF_ATTRIBUTE_CONDITION)) {
+                value_ = StringUtils.toRootLowerCase(value);
+            }
+            else {
+                value_ = value;
+            }
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            final String attrValue = element.getAttribute(name_);
+            switch (type_) {
+                case PREFIX_ATTRIBUTE_CONDITION:
+                    if (caseInSensitive_) {
+                        return !"".equals(value_) && StringUtils.startsWithIgnoreCase(attrValue, value_);
+                    }
+                    return !"".equals(value_) && attrValue.startsWith(value_);
+
+                case SUFFIX_ATTRIBUTE_CONDITION:
+                    if (caseInSensitive_) {
+                        return !"".equals(value_) && StringUtils.endsWithIgnoreCase(attrValue, value_);
+                    }
+                    return !"".equals(value_) && attrValue.endsWith(value_);
+
+                case SUBSTRING_ATTRIBUTE_CONDITION:
+                    if (caseInSensitive_) {
+                        return !"".equals(value_) && StringUtils.containsIgnoreCase(attrValue, value_);
+                    }
+                    return !"".equals(value_) && attrValue.contains(value_);
+
+                case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                    if (caseInSensitive_) {
+                        return CssStyleSheet.selectsHyphenSeparated(value_, StringUtils.toRootLowerCase(attrValue));
+                    }
+                    return CssStyleSheet.selectsHyphenSeparated(value_, attrValue);
+
+                default: // ONE_OF_ATTRIBUTE_CONDITION
+                    if (caseInSensitive_) {
+                        return CssStyleSheet.selectsOneOf(value_, StringUtils.toRootLowerCase(attrValue));
+                    }
+                    return CssStyleSheet.selectsOneOf(value_, attrValue);
+            }
+        }
+    }
+
+    private static final class NotMatcher extends ConditionMatcher {
+        private final Matcher[] matchers_;
+
+        NotMatcher(final Matcher[] matchers) {
+            matchers_ = matchers;
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            for (final Matcher matcher : matchers_) {
+                if (matcher.match(browserVersion, element, null, fromQuerySelectorAll, throwOnSyntax) == MATCH) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The nth-child(), nth-last-child(), nth-of-type() and nth-last-of-type() pseudo classes.
+     * The argument is parsed once into the coefficients of 'an+b'.
+     */
+    private static final class NthMatcher extends ConditionMatcher {
+        private final boolean last_;
+        private final boolean ofType_;
+        private final int factor_;
+        private final int offset_;
+
+        private NthMatcher(final boolean last, final boolean ofType, final int a, final int b) {
+            last_ = last;
+            ofType_ = ofType;
+            factor_ = a;
+            offset_ = b;
+        }
+
+        static NthMatcher compile(final String value) {
+            final boolean last;
+            final boolean ofType;
+            if (value.startsWith("nth-child(")) {
+                last = false;
+                ofType = false;
+            }
+            else if (value.startsWith("nth-last-child(")) {
+                last = true;
+                ofType = false;
+            }
+            else if (value.startsWith("nth-of-type(")) {
+                last = false;
+                ofType = true;
+            }
+            else if (value.startsWith("nth-last-of-type(")) {
+                last = true;
+                ofType = true;
+            }
+            else {
+                return null;
+            }
+
+            final String nth = value.substring(value.indexOf('(') + 1, value.length() - 1);
+            if ("odd".equalsIgnoreCase(nth)) {
+                return new NthMatcher(last, ofType, 2, 1);
+            }
+            if ("even".equalsIgnoreCase(nth)) {
+                return new NthMatcher(last, ofType, 2, 0);
+            }
+
+            final int nIndex = nth.indexOf('n');
+            int a = 0;
+            if (nIndex != -1) {
+                String factor = nth.substring(0, nIndex).trim();
+                if ("-".equals(factor)) {
+                    a = -1;
+                }
+                else {
+                    if (factor.length() > 0 && factor.charAt(0) == '+') {
+                        factor = factor.substring(1);
+                    }
+                    a = NumberUtils.toInt(factor, 1);
+                }
+            }
+
+            String offset = nth.substring(nIndex + 1).trim();
+            if (offset.length() > 0 && offset.charAt(0) == '+') {
+                offset = offset.substring(1);
+            }
+            return new NthMatcher(last, ofType, a, NumberUtils.toInt(offset, 0));
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            if (CssStyleSheet.isPseudoClassDisabled(browserVersion, element)) {
+                return false;
+            }
+
+            final String type = ofType_ ? element.getNodeName() : null;
+            int index = 0;
+            for (DomNode n = element; n != null; n = last_ ? n.getNextSibling() : n.getPreviousSibling()) {
+                if (n instanceof DomElement && (type == null || n.getNodeName().equals(type))) {
+                    index++;
+                }
+            }
+
+            if (factor_ == 0) {
+                return index == offset_ && offset_ > 0;
+            }
+            final int diff = index - offset_;
+            return diff % factor_ == 0 && (diff == 0 || diff > 0 == factor_ > 0);
+        }
+    }
+
+    private static final class InterpretedConditionMatcher extends ConditionMatcher {
+        private final Condition condition_;
+
+        InterpretedConditionMatcher(final Condition condition) {
+            condition_ = condition;
+        }
+
+        @Override
+        boolean selects(final BrowserVersion browserVersion, final DomElement element,
+                final boolean fromQuerySelectorAll, final boolean throwOnSyntax) {
+            return CssStyleSheet.selects(browserVersion, condition_, element, fromQuerySelectorAll, throwOnSyntax);
+        }
+    }
+}
@@ -187,11 +187,55 @@ public class ComputedCssStyleDeclaration extends AbstractCssStyleDeclaration {
     /** The wrapped CSSStyleDeclaration */
     private ElementCssStyleDeclaration elementStyleDeclaration_;
 
+    /** Whether the styles from the style sheets may be shared with similar siblings. */
+    private boolean styleSharingAllowed_ = true;
+
     public ComputedCssStyleDeclaration(final ElementCssStyleDeclaration styleDeclaration) {
         elementStyleDeclaration_ = styleDeclaration;
         getDomElementOrNull().setDefaults(this);
     }
 
+    /**
+     * Creates an instance using the styles already matched for a similar element.
+     * @param styleDeclaration the style declaration of the element
+     * @param matchedStyles the styles from {@link #getMatchedStyles()} of the similar element
+     */
+    public ComputedCssStyleDeclaration(final ElementCssStyleDeclaration styleDeclaration,
+            final Map<String, StyleElement> matchedStyles) {
+        elementStyleDeclaration_ = styleDeclaration;
+        localModifications_.putAll(matchedStyles);
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns a copy of the default styles and the styles from the style sheets.
+     * @return the styles
+     */
+    public Map<String, StyleElement> getMatchedStyles() {
+        return new TreeMap<>(localModifications_);
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns whether the styles from the style sheets may be shared with elements having
+     * the same parent, name and attributes.
+     * @return whether style sharing is allowed
+     */
+    public boolean isStyleSharingAllowed() {
+        return styleSharingAllowed_;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Marks the styles as depending on the siblings or the state of the element.
+     */
+    public void preventStyleSharing() {
+        styleSharingAllowed_ = false;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+
+/**
+ * A LRU cache of parsed and validated {@link SelectorList}s and their {@link CompiledSelector}s, used by
+ * {@link DomNode#querySelectorAll(String)} and friends to avoid parsing and compiling the same
+ * selectors again and again.
+ * There is one cache per {@link BrowserVersion}, because the validation depends on the browser features.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CssSelectorListCache {
+
+    /** The default maximum number of entries. */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final Map<BrowserVersion, CssSelectorListCache> INSTANCES
+            = Collections.synchronizedMap(new WeakHashMap<BrowserVersion, CssSelectorListCache>());
+
+    private volatile int maxSize_ = DEFAULT_MAX_SIZE;
+    private final Map<Key, SelectorList> entries_ = new LinkedHashMap<Key, SelectorList>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, SelectorList> eldest) {
+            if (size() > maxSize_) {
+                compiledSelectors_.remove(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    /** The compiled selectors of the cached lists, guarded by entries_. */
+    private final Map<SelectorList, CompiledSelector[]> compiledSelectors_ = new IdentityHashMap<>();
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+
+    private CssSelectorListCache() {
+        // use getInstance()
+    }
+
+    /**
+     * Returns the cache used for the given {@link BrowserVersion}.
+     * @param browserVersion the browser version
+     * @return the cache
+     */
+    public static CssSelectorListCache getInstance(final BrowserVersion browserVersion) {
+        synchronized (INSTANCES) {
+            CssSelectorListCache cache = INSTANCES.get(browserVersion);
+            if (cache == null) {
+                cache = new CssSelectorListCache();
+                INSTANCES.put(browserVersion, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the cached {@link SelectorList} or {@code null}.
+     * @param selectors the selectors text
+     * @param documentMode the document mode used for the validation
+     * @param detachedLeaf whether the validation was done for a detached node without children
+     * @return the cached {@link SelectorList} or {@code null}
+     */
+    public SelectorList get(final String selectors, final int documentMode, final boolean detachedLeaf) {
+        final SelectorList selectorList;
+        synchronized (entries_) {
+            selectorList = entries_.get(new Key(selectors, documentMode, detachedLeaf));
+        }
+        if (selectorList == null) {
+            misses_.incrementAndGet();
+        }
+        else {
+            hits_.incrementAndGet();
+        }
+        return selectorList;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Caches the given parsed and validated {@link SelectorList}.
+     * @param selectors the selectors text
+     * @param documentMode the document mode used for the validation
+     * @param detachedLeaf whether the validation was done for a detached node without children
+     * @param selectorList the {@link SelectorList}
+     */
+    public void put(final String selectors, final int documentMode, final boolean detachedLeaf,
+            final SelectorList selectorList) {
+        final CompiledSelector[] compiledSelectors = compile(selectorList);
+        synchronized (entries_) {
+            if (maxSize_ > 0) {
+                compiledSelectors_.put(selectorList, compiledSelectors);
+            }
+            final SelectorList previous = entries_.put(new Key(selectors, documentMode, detachedLeaf), selectorList);
+            if (previous != null && previous != selectorList) {
+                compiledSelectors_.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the compiled form of the given {@link SelectorList}; the result is cached together with
+     * the list if the list was returned by {@link #get(String, int, boolean)} or passed to
+     * {@link #put(String, int, boolean, SelectorList)}, otherwise the selectors are compiled again.
+     * @param selectorList the {@link SelectorList}
+     * @return the compiled selectors
+     */
+    public CompiledSelector[] getCompiledSelectors(final SelectorList selectorList) {
+        synchronized (entries_) {
+            final CompiledSelector[] compiledSelectors = compiledSelectors_.get(selectorList);
+            if (compiledSelectors != null) {
+                return compiledSelectors;
+            }
+        }
+        return compile(selectorList);
+    }
+
+    private static CompiledSelector[] compile(final SelectorList selectorList) {
+        final CompiledSelector[] compiledSelectors = new CompiledSelector[selectorList.size()];
+        for (int i = 0; i < compiledSelectors.length; i++) {
+            compiledSelectors[i] = CompiledSelector.compile(selectorList.get(i));
+        }
+        return compiledSelectors;
+    }
+
+    /**
+     * Returns the maximum number of cached entries.
+     * @return the maximum number of cached entries
+     */
+    public int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Sets the maximum number of cached entries.
+     * @param maxSize the maximum number of cached entries
+     */
+    public void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        }
+        synchronized (entries_) {
+            maxSize_ = maxSize;
+            while (entries_.size() > maxSize) {
+                compiledSelectors_.remove(entries_.remove(entries_.keySet().iterator().next()));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     * @return the number of cached entries
+     */
+    public int getSize() {
+        synchronized (entries_) {
+            return entries_.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to parse the selectors.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        synchronized (entries_) {
+            entries_.clear();
+            compiledSelectors_.clear();
+        }
+        hits_.set(0);
+        misses_.set(0);
+    }
+
+    private static final class Key {
+        private final String selectors_;
+        private final int documentMode_;
+        private final boolean detachedLeaf_;
+
+        Key(final String selectors, final int documentMode, final boolean detachedLeaf) {
+            selectors_ = selectors;
+            documentMode_ = documentMode;
+            detachedLeaf_ = detachedLeaf;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = selectors_.hashCode();
+            hash = 31 * hash + documentMode_;
+            return 31 * hash + (detachedLeaf_ ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return documentMode_ == other.documentMode_
+                    && detachedLeaf_ == other.detachedLeaf_
+                    && selectors_.equals(other.selectors_);
+        }
+    }
+}
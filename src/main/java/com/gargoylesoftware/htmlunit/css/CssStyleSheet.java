@@ -37,10 +37,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.ByteOrderMark;
@@ -70,7 +70,6 @@ import com.gargoylesoftware.css.parser.LexicalUnit;
 import com.gargoylesoftware.css.parser.condition.AttributeCondition;
 import com.gargoylesoftware.css.parser.condition.Condition;
 import com.gargoylesoftware.css.parser.condition.NotPseudoClassCondition;
-import com.gargoylesoftware.css.parser.condition.Condition.ConditionType;
 import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
 import com.gargoylesoftware.css.parser.media.MediaQuery;
 import com.gargoylesoftware.css.parser.selector.ChildSelector;
@@ -107,6 +106,10 @@ import com.gargoylesoftware.htmlunit.html.HtmlStyle;
 import com.gargoylesoftware.htmlunit.html.HtmlTextArea;
 import com.gargoylesoftware.htmlunit.javascript.host.css.MediaList;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 import com.gargoylesoftware.htmlunit.util.EncodingSniffer;
 import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
@@ -151,7 +154,7 @@ public class CssStyleSheet implements Serializable {
 
     private static final Pattern NTH_NUMERIC = Pattern.compile("\\d+");
     private static final Pattern NTH_COMPLEX = Pattern.compile("[+-]?\\d*n\\w*([+-]\\w\\d*)?");
-    private static final Pattern UNESCAPE_SELECTOR = Pattern.compile("\\\\([\\[\\].:])");
+    static final Pattern UNESCAPE_SELECTOR = Pattern.compile("\\\\([\\[\\].:])");
 
     /** The parsed stylesheet which this host object wraps. */
     private final CSSStyleSheetImpl wrapped_;
@@ -174,6 +177,10 @@ public class CssStyleSheet implements Serializable {
 
     private boolean enabled_ = true;
 
+    /** The compiled selectors of the rule index they were compiled for. */
+    private transient Map<Selector, CompiledSelector> compiledSelectors_;
+    private transient CSSStyleSheetImpl.CSSStyleSheetRuleIndex compiledSelectorsIndex_;
+
     /**
      * Set of CSS2 pseudo class names.
      */
@@ -217,7 +224,7 @@ public class CssStyleSheet implements Serializable {
         }
         else {
             source.setURI(uri);
-            wrapped_ = parseCSS(source, element.getPage().getWebClient());
+            wrapped_ = parseCSS(source, element.getPage(), -1);
         }
         uri_ = uri;
         owner_ = element;
@@ -233,7 +240,7 @@ public class CssStyleSheet implements Serializable {
         CSSStyleSheetImpl css = null;
         try (InputSource source = new InputSource(new StringReader(styleSheet))) {
             source.setURI(uri);
-            css = parseCSS(source, element.getPage().getWebClient());
+            css = parseCSS(source, element.getPage(), styleSheet.length());
         }
         catch (final IOException e) {
             LOG.error(e.getMessage(), e);
@@ -668,7 +675,7 @@ public class CssStyleSheet implements Serializable {
         }
     }
 
-    private static boolean selectsOneOf(final String condition, final String attribute) {
+    static boolean selectsOneOf(final String condition, final String attribute) {
         // attribute.equals(condition)
         // || attribute.startsWith(condition + " ") || attriubte.endsWith(" " + condition)
         // || attribute.contains(" " + condition + " ");
@@ -701,7 +708,7 @@ public class CssStyleSheet implements Serializable {
         return attribute.equals(condition);
     }
 
-    private static boolean selectsHyphenSeparated(final String condition, final String attribute) {
+    static boolean selectsHyphenSeparated(final String condition, final String attribute) {
         final int conditionLength = condition.length();
         if (conditionLength < 1) {
             if (attribute != ATTRIBUTE_NOT_DEFINED) {
@@ -722,7 +729,7 @@ public class CssStyleSheet implements Serializable {
         return attribute.equals(condition);
     }
 
-    private static boolean selectsWhitespaceSeparated(final String condition, final String attribute) {
+    static boolean selectsWhitespaceSeparated(final String condition, final String attribute) {
         final int conditionLength = condition.length();
         if (conditionLength < 1) {
             return false;
@@ -750,14 +757,27 @@ public class CssStyleSheet implements Serializable {
         return false;
     }
 
-    private static boolean selectsPseudoClass(final BrowserVersion browserVersion,
-            final Condition condition, final DomElement element) {
+    /**
+     * Returns whether pseudo classes are not supported for the document of the given element.
+     * @param browserVersion the browser version
+     * @param element the element
+     * @return {@code true} if no pseudo class selects the element
+     */
+    static boolean isPseudoClassDisabled(final BrowserVersion browserVersion, final DomElement element) {
         if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
             final Object sobj = element.getPage().getScriptableObject();
             if (sobj instanceof HTMLDocument && ((HTMLDocument) sobj).getDocumentMode() < 8) {
-                return false;
+                return true;
             }
         }
+        return false;
+    }
+
+    private static boolean selectsPseudoClass(final BrowserVersion browserVersion,
+            final Condition condition, final DomElement element) {
+        if (isPseudoClassDisabled(browserVersion, element)) {
+            return false;
+        }
 
         final String value = condition.getValue();
         switch (value) {
@@ -997,10 +1017,16 @@ public class CssStyleSheet implements Serializable {
      * returns an empty stylesheet.
      *
      * @param source the source from which to retrieve the CSS to be parsed
-     * @param client the client
+     * @param page the page
+     * @param bytes the size of the source or {@code -1} if not known
      * @return the stylesheet parsed from the specified input source
      */
-    private static CSSStyleSheetImpl parseCSS(final InputSource source, final WebClient client) {
+    private static CSSStyleSheetImpl parseCSS(final InputSource source, final SgmlPage page, final long bytes) {
+        final WebClient client = page.getWebClient();
+        final LoadTimelineListener loadTimelineListener = client.getLoadTimelineListener();
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        final Object jfrEvent = HtmlUnitEvents.beginParse();
+
         CSSStyleSheetImpl ss;
         try {
             final CSSErrorHandler errorHandler = client.getCssErrorHandler();
@@ -1014,6 +1040,13 @@ public class CssStyleSheet implements Serializable {
             }
             ss = new CSSStyleSheetImpl();
         }
+
+        if (loadTimelineListener != null) {
+            LoadTimeline.fire(loadTimelineListener, LoadPhase.CSS_PARSE, source.getURI(), page.getUrl(), bytes, start);
+        }
+        if (jfrEvent != null) {
+            HtmlUnitEvents.commitParse(jfrEvent, "CSS", source.getURI(), bytes);
+        }
         return ss;
     }
 
@@ -1498,29 +1531,31 @@ public class CssStyleSheet implements Serializable {
             final String pseudoElement) {
 
         final BrowserVersion browser = element.getPage().getWebClient().getBrowserVersion();
-        final List<CSSStyleSheetImpl.SelectorEntry> matchingRules =
-                selects(getRuleIndex(), browser, element, pseudoElement, false);
-        for (final CSSStyleSheetImpl.SelectorEntry entry : matchingRules) {
+        final List<CssStyleSheetRuleIndex.SelectorEntry> matchingRules =
+                selects(getRuleIndex(), browser, element, pseudoElement, false, style);
+        for (final CssStyleSheetRuleIndex.SelectorEntry entry : matchingRules) {
             final CSSStyleDeclarationImpl dec = entry.getRule().getStyle();
             style.applyStyleFromSelector(dec, entry.getSelector());
         }
     }
 
-    private CSSStyleSheetImpl.CSSStyleSheetRuleIndex getRuleIndex() {
+    private CssStyleSheetRuleIndex getRuleIndex() {
         final CSSStyleSheetImpl styleSheet = getWrappedSheet();
-        CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = styleSheet.getRuleIndex();
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex ruleIndex = styleSheet.getRuleIndex();
+        if (ruleIndex instanceof CssStyleSheetRuleIndex) {
+            return (CssStyleSheetRuleIndex) ruleIndex;
+        }
 
-        if (index == null) {
-            index = new CSSStyleSheetImpl.CSSStyleSheetRuleIndex();
-            final CSSRuleListImpl ruleList = styleSheet.getCssRules();
-            index(index, ruleList, new HashSet<>());
+        final CssStyleSheetRuleIndex index = new CssStyleSheetRuleIndex();
+        final CSSRuleListImpl ruleList = styleSheet.getCssRules();
+        index(index, ruleList, new HashSet<>());
+        index.build();
 
-            styleSheet.setRuleIndex(index);
-        }
+        styleSheet.setRuleIndex(index);
         return index;
     }
 
-    private void index(final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index, final CSSRuleListImpl ruleList,
+    private void index(final CssStyleSheetRuleIndex index, final CSSRuleListImpl ruleList,
             final Set<String> alreadyProcessing) {
 
         for (final AbstractCSSRuleImpl rule : ruleList.getRules()) {
@@ -1528,25 +1563,7 @@ public class CssStyleSheet implements Serializable {
                 final CSSStyleRuleImpl styleRule = (CSSStyleRuleImpl) rule;
                 final SelectorList selectors = styleRule.getSelectors();
                 for (final Selector selector : selectors) {
-                    final SimpleSelector simpleSel = selector.getSimpleSelector();
-                    if (SelectorType.ELEMENT_NODE_SELECTOR == simpleSel.getSelectorType()) {
-                        final ElementSelector es = (ElementSelector) simpleSel;
-                        boolean wasClass = false;
-                        final List<Condition> conds = es.getConditions();
-                        if (conds != null && conds.size() == 1) {
-                            final Condition c = conds.get(0);
-                            if (ConditionType.CLASS_CONDITION == c.getConditionType()) {
-                                index.addClassSelector(es, c.getValue(), selector, styleRule);
-                                wasClass = true;
-                            }
-                        }
-                        if (!wasClass) {
-                            index.addElementSelector(es, selector, styleRule);
-                        }
-                    }
-                    else {
-                        index.addOtherSelector(selector, styleRule);
-                    }
+                    index.add(selector, styleRule);
                 }
             }
             else if (rule instanceof CSSImportRuleImpl) {
@@ -1580,31 +1597,41 @@ public class CssStyleSheet implements Serializable {
         }
     }
 
-    private List<CSSStyleSheetImpl.SelectorEntry> selects(
-                            final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index,
+    private CompiledSelector getCompiledSelector(final Selector selector) {
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex ruleIndex = getWrappedSheet().getRuleIndex();
+        Map<Selector, CompiledSelector> compiledSelectors = compiledSelectors_;
+        if (compiledSelectors == null || compiledSelectorsIndex_ != ruleIndex) {
+            // the rules have changed, forget the selectors of the old rules
+            compiledSelectors = new ConcurrentHashMap<>();
+            compiledSelectorsIndex_ = ruleIndex;
+            compiledSelectors_ = compiledSelectors;
+        }
+        return compiledSelectors.computeIfAbsent(selector, CompiledSelector::compile);
+    }
+
+    private List<CssStyleSheetRuleIndex.SelectorEntry> selects(
+                            final CssStyleSheetRuleIndex index,
                             final BrowserVersion browserVersion, final DomElement element,
-                            final String pseudoElement, final boolean fromQuerySelectorAll) {
+                            final String pseudoElement, final boolean fromQuerySelectorAll,
+                            final ComputedCssStyleDeclaration style) {
 
-        final List<CSSStyleSheetImpl.SelectorEntry> matchingRules = new ArrayList<>();
+        final List<CssStyleSheetRuleIndex.SelectorEntry> matchingRules = new ArrayList<>();
 
         if (isActive(index.getMediaList(), element.getPage().getEnclosingWindow())) {
-            final String elementName = element.getLowercaseName();
-            final String[] classes = StringUtils.split(element.getAttributeDirect("class"), null, -1);
-            final Iterator<CSSStyleSheetImpl.SelectorEntry> iter =
-                    index.getSelectorEntriesIteratorFor(elementName, classes);
-
-            CSSStyleSheetImpl.SelectorEntry entry = iter.next();
-            while (null != entry) {
-                if (CssStyleSheet.selects(browserVersion, entry.getSelector(),
+            for (final CssStyleSheetRuleIndex.SelectorEntry entry : index.getSelectorEntriesFor(element)) {
+                final CompiledSelector compiledSelector = getCompiledSelector(entry.getSelector());
+                if (!compiledSelector.allowsStyleSharing()) {
+                    style.preventStyleSharing();
+                }
+                if (compiledSelector.selects(browserVersion,
                                             element, pseudoElement, fromQuerySelectorAll, false)) {
                     matchingRules.add(entry);
                 }
-                entry = iter.next();
             }
 
-            for (final CSSStyleSheetImpl.CSSStyleSheetRuleIndex child : index.getChildren()) {
+            for (final CssStyleSheetRuleIndex child : index.getChildIndexes()) {
                 matchingRules.addAll(selects(child, browserVersion,
-                                                    element, pseudoElement, fromQuerySelectorAll));
+                                                    element, pseudoElement, fromQuerySelectorAll, style));
             }
         }
 
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.condition.Condition.ConditionType;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+import com.gargoylesoftware.css.parser.selector.SimpleSelector;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+
+/**
+ * The rule index of a {@link CssStyleSheet}.
+ *
+ * <p>In addition to the element name, every selector is indexed by the id, the rarest of the classes
+ * or the rarest name of an attribute required by its rightmost simple selector; the selectors are
+ * distributed to the buckets by {@link #build()}, after all rules were added. The lookup for an element
+ * returns only the selectors of the buckets matching the name, the id, the classes and the attribute
+ * names of the element, in the order of the rules in the style sheet.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class CssStyleSheetRuleIndex extends CSSStyleSheetImpl.CSSStyleSheetRuleIndex {
+
+    private static final MediaListImpl DEFAULT_MEDIA_LIST = new MediaListImpl(null);
+
+    private final MediaListImpl mediaList_;
+    private final List<CssStyleSheetRuleIndex> children_ = new ArrayList<>();
+
+    private final Map<String, List<SelectorEntry>> idSelectors_ = new HashMap<>();
+    private final Map<String, List<SelectorEntry>> classSelectors_ = new HashMap<>();
+    private final Map<String, List<SelectorEntry>> attributeSelectors_ = new HashMap<>();
+    private final Map<String, List<SelectorEntry>> elementSelectors_ = new HashMap<>();
+    private final List<SelectorEntry> universalSelectors_ = new ArrayList<>();
+    private final List<SelectorEntry> otherSelectors_ = new ArrayList<>();
+
+    private List<SelectorEntry> addedSelectors_ = new ArrayList<>();
+    private Map<String, Integer> classCounts_ = new HashMap<>();
+    private Map<String, Integer> attributeCounts_ = new HashMap<>();
+
+    private volatile CSSStyleSheetImpl.CSSStyleSheetRuleIndex elementAndClassIndex_;
+
+    /**
+     * Creates a new index.
+     */
+    CssStyleSheetRuleIndex() {
+        this(DEFAULT_MEDIA_LIST);
+    }
+
+    private CssStyleSheetRuleIndex(final MediaListImpl mediaList) {
+        mediaList_ = mediaList;
+    }
+
+    /**
+     * Adds the given selector of the given rule to the index.
+     * @param selector the selector
+     * @param rule the rule
+     */
+    void add(final Selector selector, final CSSStyleRuleImpl rule) {
+        addedSelectors_.add(new SelectorEntry(selector, rule, addedSelectors_.size()));
+
+        final List<Condition> conditions = getConditions(selector);
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                if (ConditionType.CLASS_CONDITION == condition.getConditionType()) {
+                    classCounts_.merge(getClassName(condition), 1, Integer::sum);
+                }
+                else if (isAttributeCondition(condition)) {
+                    attributeCounts_.merge(getAttributeName(condition), 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Distributes the added selectors to the buckets; has to be called (once) after all
+     * rules were added.
+     */
+    void build() {
+        for (final SelectorEntry entry : addedSelectors_) {
+            getBucket(entry.getSelector()).add(entry);
+        }
+        addedSelectors_ = null;
+        classCounts_ = null;
+        attributeCounts_ = null;
+
+        for (final CssStyleSheetRuleIndex child : children_) {
+            child.build();
+        }
+    }
+
+    private List<SelectorEntry> getBucket(final Selector selector) {
+        final SimpleSelector simpleSelector = selector.getSimpleSelector();
+        if (SelectorType.ELEMENT_NODE_SELECTOR != simpleSelector.getSelectorType()) {
+            return otherSelectors_;
+        }
+
+        final List<Condition> conditions = getConditions(selector);
+        if (conditions != null) {
+            String className = null;
+            int classCount = Integer.MAX_VALUE;
+            String attributeName = null;
+            int attributeCount = Integer.MAX_VALUE;
+            for (final Condition condition : conditions) {
+                if (ConditionType.ID_CONDITION == condition.getConditionType()) {
+                    return idSelectors_.computeIfAbsent(condition.getValue(), k -> new ArrayList<>());
+                }
+                if (ConditionType.CLASS_CONDITION == condition.getConditionType()) {
+                    final String name = getClassName(condition);
+                    final int count = classCounts_.get(name);
+                    if (count < classCount) {
+                        className = name;
+                        classCount = count;
+                    }
+                }
+                else if (isAttributeCondition(condition)) {
+                    final String name = getAttributeName(condition);
+                    final int count = attributeCounts_.get(name);
+                    if (count < attributeCount) {
+                        attributeName = name;
+                        attributeCount = count;
+                    }
+                }
+            }
+
+            if (className != null) {
+                return classSelectors_.computeIfAbsent(className, k -> new ArrayList<>());
+            }
+            if (attributeName != null) {
+                return attributeSelectors_.computeIfAbsent(attributeName, k -> new ArrayList<>());
+            }
+        }
+
+        final String elementName = ((ElementSelector) simpleSelector).getLocalNameLowerCase();
+        if (elementName == null || "*".equals(elementName)) {
+            return universalSelectors_;
+        }
+        return elementSelectors_.computeIfAbsent(elementName, k -> new ArrayList<>());
+    }
+
+    private static List<Condition> getConditions(final Selector selector) {
+        final SimpleSelector simpleSelector = selector.getSimpleSelector();
+        if (SelectorType.ELEMENT_NODE_SELECTOR != simpleSelector.getSelectorType()) {
+            return null;
+        }
+        return ((ElementSelector) simpleSelector).getConditions();
+    }
+
+    private static String getClassName(final Condition condition) {
+        final String value = condition.getValue();
+        if (value.indexOf('\\') > -1) {
+            return CssStyleSheet.UNESCAPE_SELECTOR.matcher(value).replaceAll("$1");
+        }
+        return value;
+    }
+
+    private static boolean isAttributeCondition(final Condition condition) {
+        switch (condition.getConditionType()) {
+            case ATTRIBUTE_CONDITION:
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String getAttributeName(final Condition condition) {
+        return StringUtils.toRootLowerCase(condition.getLocalName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addElementSelector(final ElementSelector elementSelector, final Selector selector,
+            final CSSStyleRuleImpl rule) {
+        add(selector, rule);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addClassSelector(final ElementSelector elementSelector, final String className,
+            final Selector selector, final CSSStyleRuleImpl rule) {
+        add(selector, rule);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOtherSelector(final Selector selector, final CSSStyleRuleImpl rule) {
+        add(selector, rule);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CssStyleSheetRuleIndex addMedia(final MediaListImpl mediaList) {
+        final CssStyleSheetRuleIndex index = new CssStyleSheetRuleIndex(mediaList);
+        children_.add(index);
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MediaListImpl getMediaList() {
+        return mediaList_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CSSStyleSheetImpl.CSSStyleSheetRuleIndex> getChildren() {
+        return Collections.unmodifiableList(children_);
+    }
+
+    /**
+     * Returns the indexes for the nested media rules and imports.
+     * @return the child indexes
+     */
+    List<CssStyleSheetRuleIndex> getChildIndexes() {
+        return children_;
+    }
+
+    /**
+     * {@inheritDoc}
+     * HtmlUnit itself uses {@link #getSelectorEntriesFor(DomElement)}; for this lookup by element name
+     * and classes the selectors are copied to an index of the base class, on first use.
+     */
+    @Override
+    public Iterator<CSSStyleSheetImpl.SelectorEntry> getSelectorEntriesIteratorFor(final String elementName,
+            final String[] classes) {
+        CSSStyleSheetImpl.CSSStyleSheetRuleIndex elementAndClassIndex = elementAndClassIndex_;
+        if (elementAndClassIndex == null) {
+            elementAndClassIndex = createElementAndClassIndex();
+            elementAndClassIndex_ = elementAndClassIndex;
+        }
+        return elementAndClassIndex.getSelectorEntriesIteratorFor(elementName, classes);
+    }
+
+    private CSSStyleSheetImpl.CSSStyleSheetRuleIndex createElementAndClassIndex() {
+        final List<SelectorEntry> entries;
+        if (addedSelectors_ != null) {
+            entries = addedSelectors_;
+        }
+        else {
+            entries = new ArrayList<>();
+            entries.addAll(universalSelectors_);
+            entries.addAll(otherSelectors_);
+            for (final Map<String, List<SelectorEntry>> buckets
+                    : Arrays.asList(idSelectors_, classSelectors_, attributeSelectors_, elementSelectors_)) {
+                for (final List<SelectorEntry> bucket : buckets.values()) {
+                    entries.addAll(bucket);
+                }
+            }
+            entries.sort(null);
+        }
+
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = new CSSStyleSheetImpl.CSSStyleSheetRuleIndex();
+        for (final SelectorEntry entry : entries) {
+            final Selector selector = entry.getSelector();
+            final SimpleSelector simpleSelector = selector.getSimpleSelector();
+            if (SelectorType.ELEMENT_NODE_SELECTOR == simpleSelector.getSelectorType()) {
+                final ElementSelector elementSelector = (ElementSelector) simpleSelector;
+                final List<Condition> conditions = elementSelector.getConditions();
+                if (conditions != null && conditions.size() == 1
+                        && ConditionType.CLASS_CONDITION == conditions.get(0).getConditionType()) {
+                    index.addClassSelector(elementSelector, conditions.get(0).getValue(), selector, entry.getRule());
+                }
+                else {
+                    index.addElementSelector(elementSelector, selector, entry.getRule());
+                }
+            }
+            else {
+                index.addOtherSelector(selector, entry.getRule());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the entries of this index (but not of the children) that might select the given element,
+     * in the order of the rules.
+     * @param element the element
+     * @return the entries
+     */
+    List<SelectorEntry> getSelectorEntriesFor(final DomElement element) {
+        final List<SelectorEntry> entries = new ArrayList<>();
+        int buckets = addAll(entries, universalSelectors_);
+        buckets += addAll(entries, elementSelectors_.get(element.getLowercaseName()));
+
+        if (!idSelectors_.isEmpty()) {
+            final String id = element.getId();
+            if (ATTRIBUTE_NOT_DEFINED != id) {
+                buckets += addAll(entries, idSelectors_.get(id));
+            }
+        }
+
+        if (!classSelectors_.isEmpty()) {
+            final String classes = element.getAttributeDirect("class");
+            if (ATTRIBUTE_NOT_DEFINED != classes) {
+                for (final String className : StringUtils.split(classes)) {
+                    buckets += addAll(entries, classSelectors_.get(className));
+                }
+            }
+        }
+
+        if (!attributeSelectors_.isEmpty()) {
+            for (final String name : element.getAttributesMap().keySet()) {
+                buckets += addAll(entries, attributeSelectors_.get(StringUtils.toRootLowerCase(name)));
+            }
+        }
+
+        buckets += addAll(entries, otherSelectors_);
+
+        if (buckets > 1) {
+            entries.sort(null);
+
+            // an element might list the same class twice
+            for (int i = entries.size() - 1; i > 0; i--) {
+                if (entries.get(i) == entries.get(i - 1)) {
+                    entries.remove(i);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static int addAll(final List<SelectorEntry> entries, final List<SelectorEntry> bucket) {
+        if (bucket == null || bucket.isEmpty()) {
+            return 0;
+        }
+        entries.addAll(bucket);
+        return 1;
+    }
+
+    /**
+     * A selector of a rule and the position of the selector in the index.
+     */
+    static final class SelectorEntry implements Comparable<SelectorEntry> {
+        private final Selector selector_;
+        private final CSSStyleRuleImpl rule_;
+        private final int position_;
+
+        SelectorEntry(final Selector selector, final CSSStyleRuleImpl rule, final int position) {
+            selector_ = selector;
+            rule_ = rule;
+            position_ = position;
+        }
+
+        Selector getSelector() {
+            return selector_;
+        }
+
+        CSSStyleRuleImpl getRule() {
+            return rule_;
+        }
+
+        @Override
+        public int compareTo(final SelectorEntry other) {
+            return Integer.compare(position_, other.position_);
+        }
+    }
+}
@@ -109,6 +109,27 @@ public class DomAttr extends DomNamespaceNode implements Attr {
      */
     @Override
     public void setValue(final String value) {
+        final DomNode owner = getParentNode();
+        if (owner != null) {
+            final SgmlPage page = owner.getPage();
+            if (page != null) {
+                page.domChanged();
+            }
+        }
+        if (owner instanceof HtmlElement && owner.isAttachedToPage() && owner.getHtmlPageOrNull() != null
+                && ((HtmlElement) owner).getAttributeNode(getName()) == this) {
+            ((HtmlElement) owner).setAttributeNodeValue(this, value);
+            return;
+        }
+        value_ = value;
+        specified_ = true;
+    }
+
+    /**
+     * Sets the value without any notification.
+     * @param value the new value
+     */
+    void setValueDirect(final String value) {
         value_ = value;
         specified_ = true;
     }
@@ -175,13 +196,6 @@ public class DomAttr extends DomNamespaceNode implements Attr {
      */
     @Override
     public void setTextContent(final String textContent) {
-        final boolean mappedElement = HtmlPage.isMappedElement(getOwnerDocument(), getName());
-        if (mappedElement) {
-            ((HtmlPage) getPage()).removeMappedElement((HtmlElement) getOwnerElement());
-        }
         setValue(textContent);
-        if (mappedElement) {
-            ((HtmlPage) getPage()).addMappedElement(getOwnerElement());
-        }
     }
 }
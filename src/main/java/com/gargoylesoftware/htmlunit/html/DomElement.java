@@ -1763,6 +1763,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     public DomAttr put(final String key, final DomAttr value) {
         final String name = fixName(key);
         dirty_ = true;
+        domChanged();
         return map_.put(name, value);
     }
 
@@ -1774,6 +1775,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
         if (key instanceof String) {
             final String name = fixName((String) key);
             dirty_ = true;
+            domChanged();
             return map_.remove(name);
         }
         return null;
@@ -1785,9 +1787,19 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     @Override
     public void clear() {
         dirty_ = true;
+        domChanged();
         map_.clear();
     }
 
+    private void domChanged() {
+        if (domNode_ != null) {
+            final SgmlPage page = domNode_.getPage();
+            if (page != null) {
+                page.domChanged();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
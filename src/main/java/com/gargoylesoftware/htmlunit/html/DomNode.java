@@ -16,6 +16,7 @@ package com.gargoylesoftware.htmlunit.html;
 
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.DOM_NORMALIZE_REMOVE_CHILDREN;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTORALL_NOT_IN_QUIRKS;
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTOR_CSS3_PSEUDO_REQUIRE_ATTACHED_NODE;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.XPATH_SELECTION_NAMESPACES;
 
 import java.io.IOException;
@@ -55,6 +56,8 @@ import com.gargoylesoftware.htmlunit.WebAssert;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.css.ComputedCssStyleDeclaration;
+import com.gargoylesoftware.htmlunit.css.CompiledSelector;
+import com.gargoylesoftware.htmlunit.css.CssSelectorListCache;
 import com.gargoylesoftware.htmlunit.css.CssStyleSheet;
 import com.gargoylesoftware.htmlunit.css.StyleAttributes;
 import com.gargoylesoftware.htmlunit.html.HtmlElement.DisplayStyle;
@@ -65,6 +68,7 @@ import com.gargoylesoftware.htmlunit.javascript.HtmlUnitScriptable;
 import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleSheet;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
 import com.gargoylesoftware.htmlunit.util.SerializableLock;
 import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
@@ -1041,12 +1045,16 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     }
 
     private void fireAddition(final DomNode domNode) {
+        final SgmlPage page = getPage();
+        if (page != null) {
+            page.domChanged();
+        }
+
         final boolean wasAlreadyAttached = domNode.isAttachedToPage();
         domNode.attachedToPage_ = isAttachedToPage();
 
         if (domNode.attachedToPage_) {
             // trigger events
-            final Page page = getPage();
             if (null != page && page.isHtmlPage()) {
                 ((HtmlPage) page).notifyNodeAdded(domNode);
             }
@@ -1173,6 +1181,11 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     }
 
     private void fireRemoval(final DomNode exParent) {
+        final SgmlPage page = getPage();
+        if (page != null) {
+            page.domChanged();
+        }
+
         final HtmlPage htmlPage = getHtmlPageOrNull();
         if (htmlPage != null) {
             // some actions executed on removal need an intact parent relationship (e.g. for the
@@ -1822,21 +1835,28 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return list of all found nodes
      */
     public DomNodeList<DomNode> querySelectorAll(final String selectors) {
+        final Object jfrEvent = HtmlUnitEvents.beginQuery();
         try {
             final BrowserVersion browserVersion = getPage().getWebClient().getBrowserVersion();
             final SelectorList selectorList = getSelectorList(selectors, browserVersion);
 
             final List<DomNode> elements = new ArrayList<>();
             if (selectorList != null) {
-                for (final DomElement child : getDomElementDescendants()) {
-                    for (final Selector selector : selectorList) {
-                        if (CssStyleSheet.selects(browserVersion, selector, child, null, true, true)) {
+                final CompiledSelector[] compiledSelectors =
+                        CssSelectorListCache.getInstance(browserVersion).getCompiledSelectors(selectorList);
+
+                for (final DomElement child : getQuerySelectorCandidates(selectorList)) {
+                    for (final CompiledSelector selector : compiledSelectors) {
+                        if (selector.selects(browserVersion, child, null, true, true)) {
                             elements.add(child);
                             break;
                         }
                     }
                 }
             }
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitQuery(jfrEvent, "CSS", selectors, elements.size());
+            }
             return new StaticDomNodeList(elements);
         }
         catch (final IOException e) {
@@ -1844,6 +1864,23 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         }
     }
 
+    /**
+     * Returns the descendants that have to be checked against the selectors, in document order.
+     * For nodes of a {@link HtmlPage} the candidates are looked up in the page indexes.
+     * @param selectorList the selectors
+     * @return the descendants to check
+     */
+    private Iterable<DomElement> getQuerySelectorCandidates(final SelectorList selectorList) {
+        final HtmlPage htmlPage = getHtmlPageOrNull();
+        if (htmlPage != null && isAttachedToPage()) {
+            final List<DomElement> candidates = htmlPage.getQuerySelectorCandidates(this, selectorList);
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        return getDomElementDescendants();
+    }
+
     /**
      * Returns the {@link SelectorList}.
      * @param selectors the selectors
@@ -1853,26 +1890,36 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     protected SelectorList getSelectorList(final String selectors, final BrowserVersion browserVersion)
             throws IOException {
+        int documentMode = 9;
+        if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
+            final Object sobj = getPage().getScriptableObject();
+            if (sobj instanceof HTMLDocument) {
+                documentMode = ((HTMLDocument) sobj).getDocumentMode();
+            }
+        }
+        // the validation of some pseudo classes depends on the state of the node
+        final boolean detachedLeaf = browserVersion.hasFeature(QUERYSELECTOR_CSS3_PSEUDO_REQUIRE_ATTACHED_NODE)
+                && !isAttachedToPage() && !hasChildNodes();
+
+        final CssSelectorListCache cache = CssSelectorListCache.getInstance(browserVersion);
+        SelectorList selectorList = cache.get(selectors, documentMode, detachedLeaf);
+        if (selectorList != null) {
+            return selectorList;
+        }
+
         final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
         final CheckErrorHandler errorHandler = new CheckErrorHandler();
         parser.setErrorHandler(errorHandler);
 
-        final SelectorList selectorList = parser.parseSelectors(selectors);
+        selectorList = parser.parseSelectors(selectors);
         // in case of error parseSelectors returns null
         if (errorHandler.errorDetected()) {
             throw new CSSException("Invalid selectors: " + selectors);
         }
 
         if (selectorList != null) {
-            int documentMode = 9;
-            if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
-                final Object sobj = getPage().getScriptableObject();
-                if (sobj instanceof HTMLDocument) {
-                    documentMode = ((HTMLDocument) sobj).getDocumentMode();
-                }
-            }
             CSSStyleSheet.validateSelectors(selectorList, documentMode, this);
-
+            cache.put(selectors, documentMode, detachedLeaf, selectorList);
         }
         return selectorList;
     }
@@ -310,6 +310,29 @@ public abstract class HtmlElement extends DomElement {
         return result;
     }
 
+    /**
+     * Changes the value of an attribute node of this element. Like replacing the attribute with
+     * {@link #setAttributeNode(Attr)}, this keeps the id and name maps of the page up to date and
+     * notifies the {@link HtmlAttributeChangeListener}s of this element, its ancestors and the page.
+     * @param attribute the attribute node of this element
+     * @param value the new value
+     */
+    void setAttributeNodeValue(final DomAttr attribute, final String value) {
+        final String qualifiedName = attribute.getName();
+        final String oldAttributeValue = attribute.getValue();
+        final HtmlPage htmlPage = (HtmlPage) getPage();
+        final boolean mappedElement = HtmlPage.isMappedElement(htmlPage, qualifiedName);
+        if (mappedElement) {
+            htmlPage.removeMappedElement(this);
+        }
+
+        final HtmlAttributeChangeEvent event = new HtmlAttributeChangeEvent(this, qualifiedName, oldAttributeValue);
+        attribute.setValueDirect(value);
+        notifyAttributeChangeListeners(event, this, oldAttributeValue, true);
+
+        fireAttributeChangeImpl(event, htmlPage, mappedElement, oldAttributeValue);
+    }
+
     /**
      * Removes an attribute specified by name from this element.
      * @param attributeName the attribute attributeName
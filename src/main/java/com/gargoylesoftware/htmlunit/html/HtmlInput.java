@@ -26,7 +26,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -41,7 +40,7 @@ import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.event.MouseEvent;
-import com.gargoylesoftware.htmlunit.javascript.regexp.RegExpJsToJavaConverter;
+import com.gargoylesoftware.htmlunit.javascript.regexp.RegExpCache;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
 
 /**
@@ -1016,10 +1015,8 @@ public abstract class HtmlInput extends HtmlElement implements DisabledElement,
             return true;
         }
 
-        final RegExpJsToJavaConverter converter = new RegExpJsToJavaConverter();
-        final String javaPattern = converter.convert(pattern);
         try {
-            return Pattern.matches(javaPattern, value);
+            return RegExpCache.getInstance().getPattern(pattern, 0).matcher(value).matches();
         }
         catch (final Exception e) {
             // ignore if regex invalid
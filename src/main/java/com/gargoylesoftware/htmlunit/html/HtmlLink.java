@@ -196,7 +196,13 @@ public class HtmlLink extends HtmlElement {
 
         if (downloadIfNeeded) {
             try {
-                final WebResponse response = webclient.loadWebResponse(request);
+                WebResponse response = null;
+                if (getPage() instanceof HtmlPage) {
+                    response = ((HtmlPage) getPage()).takePreloadedResponse(request);
+                }
+                if (response == null) {
+                    response = webclient.loadWebResponse(request);
+                }
                 if (response.isSuccess()) {
                     executeEvent(Event.TYPE_LOAD);
                 }
@@ -223,7 +229,16 @@ public class HtmlLink extends HtmlElement {
     public WebRequest getWebRequest() throws MalformedURLException {
         final HtmlPage page = (HtmlPage) getPage();
         final URL url = page.getFullyQualifiedUrl(getHrefAttribute());
+        return createWebRequest(page, url);
+    }
 
+    /**
+     * Creates the request for loading the style sheet at the given url.
+     * @param page the page containing the link
+     * @param url the url of the style sheet
+     * @return the request
+     */
+    static WebRequest createWebRequest(final HtmlPage page, final URL url) {
         final BrowserVersion browser = page.getWebClient().getBrowserVersion();
         final WebRequest request = new WebRequest(url, browser.getCssAcceptHeader(), browser.getAcceptEncodingHeader());
         // use the page encoding even if this is a GET requests
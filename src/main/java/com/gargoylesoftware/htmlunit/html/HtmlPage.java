@@ -42,7 +42,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -68,6 +67,7 @@ import org.w3c.dom.EntityReference;
 import org.w3c.dom.ProcessingInstruction;
 import org.w3c.dom.ranges.Range;
 
+import com.gargoylesoftware.css.parser.selector.SelectorList;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.Cache;
 import com.gargoylesoftware.htmlunit.ElementNotFoundException;
@@ -86,6 +86,7 @@ import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.css.ComputedCssStyleDeclaration;
+import com.gargoylesoftware.htmlunit.css.StyleElement;
 import com.gargoylesoftware.htmlunit.html.FrameWindow.PageDenied;
 import com.gargoylesoftware.htmlunit.html.impl.SelectableTextInput;
 import com.gargoylesoftware.htmlunit.html.impl.SimpleRange;
@@ -161,7 +162,7 @@ public class HtmlPage extends SgmlPage {
 
     private static final Log LOG = LogFactory.getLog(HtmlPage.class);
 
-    private static final Comparator<DomElement> documentPositionComparator = new DocumentPositionComparator();
+    static final Comparator<DomElement> documentPositionComparator = new DocumentPositionComparator();
 
     private HTMLParserDOMBuilder domBuilder_;
     private transient Charset originalCharset_;
@@ -187,6 +188,8 @@ public class HtmlPage extends SgmlPage {
     private List<Range> selectionRanges_ = new ArrayList<>(3);
 
     private transient ComputedStylesCache computedStylesCache_;
+    private transient volatile PreloadScanner preloadScanner_;
+    private QuerySelectorIndex querySelectorIndex_;
 
     private static final HashSet<String> TABBABLE_TAGS =
             new HashSet<>(Arrays.asList(HtmlAnchor.TAG_NAME, HtmlArea.TAG_NAME,
@@ -369,6 +372,10 @@ public class HtmlPage extends SgmlPage {
             return;
         }
         cleaning_ = true;
+        if (preloadScanner_ != null) {
+            preloadScanner_.cleanUp();
+            preloadScanner_ = null;
+        }
         super.cleanUp();
         executeEventHandlersIfNeeded(Event.TYPE_UNLOAD);
         deregisterFramesIfNeeded();
@@ -1060,29 +1067,16 @@ public class HtmlPage extends SgmlPage {
     private Object loadJavaScriptFromUrl(final URL url, final Charset scriptCharset) throws IOException,
         FailingHttpStatusCodeException {
 
-        final WebRequest referringRequest = getWebResponse().getWebRequest();
-
         final WebClient client = getWebClient();
-        final WebRequest request = new WebRequest(url);
-        // copy all headers from the referring request
-        request.setAdditionalHeaders(new HashMap<>(referringRequest.getAdditionalHeaders()));
-
-        // at least overwrite this headers
-        final BrowserVersion browserVersion = client.getBrowserVersion();
-        request.setAdditionalHeader(HttpHeader.ACCEPT, client.getBrowserVersion().getScriptAcceptHeader());
-        if (browserVersion.hasFeature(HTTP_HEADER_SEC_FETCH)) {
-            request.setAdditionalHeader(HttpHeader.SEC_FETCH_SITE, "same-origin");
-            request.setAdditionalHeader(HttpHeader.SEC_FETCH_MODE, "no-cors");
-            request.setAdditionalHeader(HttpHeader.SEC_FETCH_DEST, "script");
-        }
-
-        request.setRefererlHeader(referringRequest.getUrl());
-        request.setCharset(scriptCharset);
+        final WebRequest request = createScriptRequest(url, scriptCharset);
 
         // our cache is a bit strange;
         // loadWebResponse check the cache for the web response
         // AND also fixes the request url for the following cache lookups
-        final WebResponse response = client.loadWebResponse(request);
+        WebResponse response = takePreloadedResponse(request);
+        if (response == null) {
+            response = client.loadWebResponse(request);
+        }
 
         // now we can look into the cache with the fixed request for
         // a cached script
@@ -1164,6 +1158,55 @@ public class HtmlPage extends SgmlPage {
         return null;
     }
 
+    /**
+     * Creates the request for loading an external script.
+     * @param url the URL of the script
+     * @param scriptCharset the charset from the script tag
+     * @return the request
+     */
+    WebRequest createScriptRequest(final URL url, final Charset scriptCharset) {
+        final WebRequest referringRequest = getWebResponse().getWebRequest();
+
+        final WebClient client = getWebClient();
+        final WebRequest request = new WebRequest(url);
+        // copy all headers from the referring request
+        request.setAdditionalHeaders(new HashMap<>(referringRequest.getAdditionalHeaders()));
+
+        // at least overwrite this headers
+        final BrowserVersion browserVersion = client.getBrowserVersion();
+        request.setAdditionalHeader(HttpHeader.ACCEPT, client.getBrowserVersion().getScriptAcceptHeader());
+        if (browserVersion.hasFeature(HTTP_HEADER_SEC_FETCH)) {
+            request.setAdditionalHeader(HttpHeader.SEC_FETCH_SITE, "same-origin");
+            request.setAdditionalHeader(HttpHeader.SEC_FETCH_MODE, "no-cors");
+            request.setAdditionalHeader(HttpHeader.SEC_FETCH_DEST, "script");
+        }
+
+        request.setRefererlHeader(referringRequest.getUrl());
+        request.setCharset(scriptCharset);
+        return request;
+    }
+
+    /**
+     * Sets the scanner that preloads the resources of this page.
+     * @param preloadScanner the scanner
+     */
+    void setPreloadScanner(final PreloadScanner preloadScanner) {
+        preloadScanner_ = preloadScanner;
+    }
+
+    /**
+     * Returns the response that was preloaded for the given request by the {@link PreloadScanner}.
+     * @param request the request
+     * @return the response or {@code null} if nothing was preloaded
+     */
+    WebResponse takePreloadedResponse(final WebRequest request) {
+        final PreloadScanner preloadScanner = preloadScanner_;
+        if (preloadScanner == null) {
+            return null;
+        }
+        return preloadScanner.takeResponse(request);
+    }
+
     /**
      * Returns the title of this page or an empty string if the title wasn't specified.
      *
@@ -1909,6 +1952,26 @@ public class HtmlPage extends SgmlPage {
         }
     }
 
+    /**
+     * Returns the descendants of the given node which may be selected by one of the selectors,
+     * in document order; or {@code null} if all the descendants have to be checked.
+     * @param root the node to start the search from, has to be attached to this page
+     * @param selectorList the selectors
+     * @return the candidates in document order or {@code null}
+     */
+    List<DomElement> getQuerySelectorCandidates(final DomNode root, final SelectorList selectorList) {
+        final QuerySelectorIndex index;
+        synchronized (lock_) {
+            if (querySelectorIndex_ == null) {
+                querySelectorIndex_ = new QuerySelectorIndex(this);
+                addDomChangeListener(querySelectorIndex_);
+                addHtmlAttributeChangeListener(querySelectorIndex_);
+            }
+            index = querySelectorIndex_;
+        }
+        return index.getCandidates(root, selectorList);
+    }
+
     /**
      * Indicates if the attribute name indicates that the owning element is mapped.
      * @param document the owning document
@@ -2001,6 +2064,7 @@ public class HtmlPage extends SgmlPage {
 
         result.idMap_ = Collections.synchronizedMap(new HashMap<>());
         result.nameMap_ = Collections.synchronizedMap(new HashMap<>());
+        result.querySelectorIndex_ = null;
 
         return result;
     }
@@ -2711,6 +2775,60 @@ public class HtmlPage extends SgmlPage {
         getCssPropertiesCache().put(element, normalizedPseudo, style);
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the styles matched for a sibling of the given element having the same name and attributes.
+     * @param element the element
+     * @param normalizedPseudo the pseudo attribute
+     * @return the styles (see {@link ComputedCssStyleDeclaration#getMatchedStyles()}) or {@code null}
+     */
+    public Map<String, StyleElement> getSharedStyles(final DomElement element, final String normalizedPseudo) {
+        final String key = getStyleSharingKey(element, normalizedPseudo);
+        if (key == null) {
+            return null;
+        }
+        return getCssPropertiesCache().getShared(element.getParentNode(), key);
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Offers the styles matched for the given element to its siblings having the same name and attributes.
+     * @param element the element
+     * @param normalizedPseudo the pseudo attribute
+     * @param styles the styles (see {@link ComputedCssStyleDeclaration#getMatchedStyles()})
+     */
+    public void putSharedStyles(final DomElement element, final String normalizedPseudo,
+            final Map<String, StyleElement> styles) {
+        final String key = getStyleSharingKey(element, normalizedPseudo);
+        if (key != null) {
+            getCssPropertiesCache().putShared(element.getParentNode(), key, styles);
+        }
+    }
+
+    /**
+     * Returns the key identifying the elements that share the matched styles; elements with an id
+     * are never shared.
+     */
+    private static String getStyleSharingKey(final DomElement element, final String normalizedPseudo) {
+        if (element.getParentNode() == null || ATTRIBUTE_NOT_DEFINED != element.getId()) {
+            return null;
+        }
+
+        final Map<String, DomAttr> attributes = element.getAttributesMap();
+        final String[] names = attributes.keySet().toArray(new String[attributes.size()]);
+        Arrays.sort(names);
+
+        final StringBuilder key = new StringBuilder(element.getClass().getName())
+                .append('\u0000').append(element.getLocalName())
+                .append('\u0000').append(normalizedPseudo);
+        for (final String name : names) {
+            key.append('\u0000').append(name).append('=').append(attributes.get(name).getValue());
+        }
+        return key.toString();
+    }
+
     /**
      * @return the CSSPropertiesCache for this page
      */
@@ -2770,7 +2888,7 @@ public class HtmlPage extends SgmlPage {
          */
         @Override
         public void nodeAdded(final DomChangeEvent event) {
-            nodeChanged(event.getChangedNode(), null);
+            nodeChanged(event.getChangedNode(), event.getParentNode(), null);
         }
 
         /**
@@ -2778,7 +2896,8 @@ public class HtmlPage extends SgmlPage {
          */
         @Override
         public void nodeDeleted(final DomChangeEvent event) {
-            nodeChanged(event.getChangedNode(), null);
+            // the node is already detached, use the former parent
+            nodeChanged(event.getChangedNode(), event.getParentNode(), null);
         }
 
         /**
@@ -2786,7 +2905,8 @@ public class HtmlPage extends SgmlPage {
          */
         @Override
         public void attributeAdded(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            final HtmlElement element = event.getHtmlElement();
+            nodeChanged(element, element.getParentNode(), event.getName());
         }
 
         /**
@@ -2794,7 +2914,8 @@ public class HtmlPage extends SgmlPage {
          */
         @Override
         public void attributeRemoved(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            final HtmlElement element = event.getHtmlElement();
+            nodeChanged(element, element.getParentNode(), event.getName());
         }
 
         /**
@@ -2802,10 +2923,11 @@ public class HtmlPage extends SgmlPage {
          */
         @Override
         public void attributeReplaced(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            final HtmlElement element = event.getHtmlElement();
+            nodeChanged(element, element.getParentNode(), event.getName());
         }
 
-        private void nodeChanged(final DomNode changedNode, final String attribName) {
+        private void nodeChanged(final DomNode changedNode, final DomNode parentNode, final String attribName) {
             // If a stylesheet was changed, all of our calculations could be off; clear the cache.
             if (changedNode instanceof HtmlStyle) {
                 clearComputedStyles();
@@ -2821,7 +2943,7 @@ public class HtmlPage extends SgmlPage {
             // Apparently it wasn't a stylesheet that changed; be semi-smart about what we evict and when.
             final boolean clearParents = ATTRIBUTES_AFFECTING_PARENT.contains(attribName);
             if (computedStylesCache_ != null) {
-                computedStylesCache_.nodeChanged(changedNode, clearParents);
+                computedStylesCache_.nodeChanged(changedNode, parentNode, clearParents);
             }
         }
     }
@@ -2830,85 +2952,133 @@ public class HtmlPage extends SgmlPage {
      * Cache computed styles when possible, because their calculation is very expensive.
      * We use a weak hash map because we don't want this cache to be the only reason
      * nodes are kept around in the JVM, if all other references to them are gone.
+     *
+     * <p>The invalidation work is proportional to the changed part of the tree, not to the size of
+     * the cache: the styles of the changed node and its descendants (and if required of its ancestors)
+     * are removed, the styles of the siblings are invalidated by incrementing the generation of
+     * the children of the parent. Every cached entry remembers the generation of the children of its
+     * parent at the time it was stored.</p>
      */
     private static final class ComputedStylesCache implements Serializable {
-        private transient WeakHashMap<DomElement, Map<String, ComputedCssStyleDeclaration>>
-                    computedStyles_ = new WeakHashMap<>();
+        private transient WeakHashMap<DomElement, Entry> computedStyles_ = new WeakHashMap<>();
+        private transient WeakHashMap<DomNode, int[]> childrenGenerations_ = new WeakHashMap<>();
+        /** The styles shared by the children of a node, by sharing key. */
+        private transient WeakHashMap<DomNode, Map<String, Map<String, StyleElement>>> sharedStyles_
+                = new WeakHashMap<>();
 
         ComputedStylesCache() {
         }
 
         public synchronized ComputedCssStyleDeclaration get(final DomElement element,
                 final String normalizedPseudo) {
-            final Map<String, ComputedCssStyleDeclaration> elementMap = computedStyles_.get(element);
-            if (elementMap != null) {
-                return elementMap.get(normalizedPseudo);
+            final Entry entry = computedStyles_.get(element);
+            if (entry != null) {
+                if (entry.parentGeneration_ != getChildrenGeneration(element.getParentNode())) {
+                    computedStyles_.remove(element);
+                    return null;
+                }
+                return entry.styles_.get(normalizedPseudo);
             }
             return null;
         }
 
         public synchronized void put(final DomElement element,
                 final String normalizedPseudo, final ComputedCssStyleDeclaration style) {
-            final Map<String, ComputedCssStyleDeclaration>
-                    elementMap = computedStyles_.computeIfAbsent(element, k -> new WeakHashMap<>());
-            elementMap.put(normalizedPseudo, style);
-        }
-
-        public synchronized void nodeChanged(final DomNode changed, final boolean clearParents) {
-            final Iterator<Map.Entry<DomElement, Map<String, ComputedCssStyleDeclaration>>>
-                    i = computedStyles_.entrySet().iterator();
-            while (i.hasNext()) {
-                final Map.Entry<DomElement, Map<String, ComputedCssStyleDeclaration>> entry = i.next();
-                final DomElement node = entry.getKey();
-                if (changed == node
-                    || changed.getParentNode() == node.getParentNode()
-                    || changed.isAncestorOf(node)
-                    || clearParents && node.isAncestorOf(changed)) {
-                    i.remove();
+            final int parentGeneration = getChildrenGeneration(element.getParentNode());
+            Entry entry = computedStyles_.get(element);
+            if (entry == null || entry.parentGeneration_ != parentGeneration) {
+                entry = new Entry(parentGeneration);
+                computedStyles_.put(element, entry);
+            }
+            entry.styles_.put(normalizedPseudo, style);
+        }
+
+        public synchronized Map<String, StyleElement> getShared(final DomNode parent, final String key) {
+            final Map<String, Map<String, StyleElement>> shared = sharedStyles_.get(parent);
+            if (shared == null) {
+                return null;
+            }
+            return shared.get(key);
+        }
+
+        public synchronized void putShared(final DomNode parent, final String key,
+                final Map<String, StyleElement> styles) {
+            sharedStyles_.computeIfAbsent(parent, k -> new HashMap<>()).put(key, styles);
+        }
+
+        public synchronized void nodeChanged(final DomNode changed, final DomNode parent,
+                final boolean clearParents) {
+            if (computedStyles_.isEmpty() && sharedStyles_.isEmpty()) {
+                return;
+            }
+
+            // invalidate all siblings
+            if (parent != null) {
+                final int[] generation = childrenGenerations_.get(parent);
+                if (generation != null) {
+                    generation[0]++;
+                }
+                else {
+                    childrenGenerations_.put(parent, new int[] {1});
+                }
+
+                if (clearParents) {
+                    for (DomNode ancestor = parent; ancestor != null; ancestor = ancestor.getParentNode()) {
+                        computedStyles_.remove(ancestor);
+                    }
                 }
             }
 
-            // maybe this is a better solution but i have to think a bit more about this
-            //
-            //            if (computedStyles_.isEmpty()) {
-            //                return;
-            //            }
-            //
-            //            // remove all siblings
-            //            DomNode parent = changed.getParentNode();
-            //            if (parent != null) {
-            //                for (DomNode sibling : parent.getChildNodes()) {
-            //                    computedStyles_.remove(sibling.getScriptableObject());
-            //                }
-            //
-            //                if (clearParents) {
-            //                    // remove all parents
-            //                    while (parent != null) {
-            //                        computedStyles_.remove(parent.getScriptableObject());
-            //                        parent = parent.getParentNode();
-            //                    }
-            //                }
-            //            }
-            //
-            //            // remove changed itself and all descendants
-            //            computedStyles_.remove(changed.getScriptableObject());
-            //            for (DomNode descendant : changed.getDescendants()) {
-            //                computedStyles_.remove(descendant.getScriptableObject());
-            //            }
+            // remove changed itself and all descendants
+            computedStyles_.remove(changed);
+            sharedStyles_.remove(changed);
+            for (final DomElement descendant : changed.getDomElementDescendants()) {
+                computedStyles_.remove(descendant);
+                sharedStyles_.remove(descendant);
+            }
+        }
+
+        private int getChildrenGeneration(final DomNode parent) {
+            if (parent == null) {
+                return 0;
+            }
+            final int[] generation = childrenGenerations_.get(parent);
+            if (generation == null) {
+                return 0;
+            }
+            return generation[0];
         }
 
         public synchronized void clear() {
-            computedStyles_.clear();
+            computedStyles_ = new WeakHashMap<>();
+            childrenGenerations_ = new WeakHashMap<>();
+            sharedStyles_ = new WeakHashMap<>();
         }
 
         public synchronized Map<String, ComputedCssStyleDeclaration> remove(
                 final DomNode element) {
-            return computedStyles_.remove(element);
+            sharedStyles_.remove(element);
+            final Entry entry = computedStyles_.remove(element);
+            if (entry == null) {
+                return null;
+            }
+            return entry.styles_;
         }
 
         private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
             in.defaultReadObject();
             computedStyles_ = new WeakHashMap<>();
+            childrenGenerations_ = new WeakHashMap<>();
+            sharedStyles_ = new WeakHashMap<>();
+        }
+
+        private static final class Entry {
+            private final int parentGeneration_;
+            private final Map<String, ComputedCssStyleDeclaration> styles_ = new WeakHashMap<>();
+
+            Entry(final int parentGeneration) {
+                parentGeneration_ = parentGeneration;
+            }
         }
     }
 }
@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.text.StringEscapeUtils;
+
+import com.gargoylesoftware.htmlunit.HttpHeader;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.EncodingSniffer;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.UrlUtils;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Scans the source of a page for external scripts and style sheets while the page is parsed and
+ * starts loading them in parallel (see {@link WebClientOptions#setPreloadScannerEnabled(boolean)}).
+ * The loaders of the page take the responses from the preload table of the page instead of
+ * loading them one after another.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class PreloadScanner {
+
+    private static final Log LOG = LogFactory.getLog(PreloadScanner.class);
+
+    /** Marks the requests that are already taken by the loaders of the page. */
+    private static final Preload TAKEN = new Preload(null, null);
+
+    /** The time to wait for a preloaded response if the client has no timeout. */
+    private static final long DEFAULT_TIMEOUT = 90_000;
+
+    private final HtmlPage page_;
+    private final Map<String, Preload> preloads_ = new ConcurrentHashMap<>();
+    private volatile boolean cancelled_;
+
+    private URL baseUrl_;
+
+    /**
+     * A response loaded in the background.
+     */
+    private static final class Preload {
+        private final WebRequest request_;
+        private final CompletableFuture<WebResponse> response_;
+
+        Preload(final WebRequest request, final CompletableFuture<WebResponse> response) {
+            request_ = request;
+            response_ = response;
+        }
+    }
+
+    private PreloadScanner(final HtmlPage page) {
+        page_ = page;
+        baseUrl_ = page.getUrl();
+    }
+
+    /**
+     * Starts scanning the given response in the background, if enabled.
+     * @param page the page that is parsed
+     * @param webResponse the response containing the source of the page
+     * @param charset the charset used to parse the page
+     */
+    public static void start(final HtmlPage page, final WebResponse webResponse, final Charset charset) {
+        final WebClient client = page.getWebClient();
+        if (!client.getOptions().isPreloadScannerEnabled()) {
+            return;
+        }
+
+        final PreloadScanner scanner = new PreloadScanner(page);
+        page.setPreloadScanner(scanner);
+        try {
+            client.getExecutor().execute(() -> scanner.scan(webResponse, charset));
+        }
+        catch (final RejectedExecutionException e) {
+            // the client is closing
+            page.setPreloadScanner(null);
+        }
+    }
+
+    private void scan(final WebResponse webResponse, final Charset charset) {
+        try (InputStream is = webResponse.getContentAsStream();
+                Reader reader = new BufferedReader(new InputStreamReader(is, charset))) {
+            final TagReader tags = new TagReader(reader);
+            Map<String, String> attributes;
+            while (!cancelled_ && (attributes = tags.next()) != null) {
+                final String tagName = tags.getTagName();
+                // the content of templates is inert
+                final boolean inert = tags.isInTemplate();
+                switch (tagName) {
+                    case "base":
+                        final String href = attributes.get("href");
+                        final URL baseUrl = href == null ? null : resolve(href);
+                        if (baseUrl != null && !inert) {
+                            baseUrl_ = baseUrl;
+                        }
+                        break;
+
+                    case "script":
+                        if (!inert) {
+                            scanScript(attributes);
+                        }
+                        tags.skipRawText(tagName);
+                        break;
+
+                    case "link":
+                        if (!inert) {
+                            scanLink(attributes);
+                        }
+                        break;
+
+                    case "style":
+                    case "textarea":
+                    case "xmp":
+                    case "iframe":
+                    case "noembed":
+                    case "noframes":
+                        tags.skipRawText(tagName);
+                        break;
+
+                    case "noscript":
+                        if (page_.getWebClient().isJavaScriptEnabled()) {
+                            tags.skipRawText(tagName);
+                        }
+                        break;
+
+                    default:
+                }
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Preload scanner stopped for " + page_.getUrl(), e);
+            }
+        }
+    }
+
+    private void scanScript(final Map<String, String> attributes) {
+        final String src = attributes.get("src");
+        if (StringUtils.isBlank(src) || !page_.getWebClient().isJavaScriptEnabled()) {
+            return;
+        }
+
+        final String type = attributes.get("type");
+        if (StringUtils.isNotBlank(type)) {
+            if (!MimeType.isJavascriptMimeType(type.trim())) {
+                return;
+            }
+        }
+        else {
+            final String language = attributes.get("language");
+            if (StringUtils.isNotEmpty(language) && !StringUtils.startsWithIgnoreCase(language, "javascript")) {
+                return;
+            }
+        }
+
+        final URL url = resolve(src);
+        if (url == null || !isSupportedProtocol(url)) {
+            return;
+        }
+
+        Charset charset = EncodingSniffer.toCharset(attributes.get("charset"));
+        if (charset == null) {
+            charset = page_.getCharset();
+        }
+        preload(page_.createScriptRequest(url, charset));
+    }
+
+    private void scanLink(final Map<String, String> attributes) {
+        final String rel = attributes.get("rel");
+        final String href = attributes.get("href");
+        if (rel == null || !"stylesheet".equals(rel.trim().toLowerCase(Locale.ROOT)) || StringUtils.isBlank(href)) {
+            return;
+        }
+
+        final WebClient client = page_.getWebClient();
+        if (!client.getOptions().isCssEnabled() || !client.isJavaScriptEngineEnabled()) {
+            return;
+        }
+
+        final String type = attributes.get("type");
+        if (StringUtils.isNotBlank(type) && !MimeType.TEXT_CSS.equals(type)) {
+            return;
+        }
+
+        final URL url = resolve(href);
+        if (url == null || !isSupportedProtocol(url)) {
+            return;
+        }
+        preload(HtmlLink.createWebRequest(page_, url));
+    }
+
+    private URL resolve(final String relativeUrl) {
+        try {
+            return UrlUtils.toUrlUnsafe(UrlUtils.resolveUrl(baseUrl_, relativeUrl.trim()));
+        }
+        catch (final MalformedURLException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSupportedProtocol(final URL url) {
+        final String protocol = url.getProtocol();
+        return "http".equals(protocol) || "https".equals(protocol);
+    }
+
+    private void preload(final WebRequest request) {
+        final CompletableFuture<WebResponse> response = new CompletableFuture<>();
+        final String key = key(request);
+        if (preloads_.putIfAbsent(key, new Preload(request, response)) != null) {
+            // already preloaded or already loaded by the page
+            return;
+        }
+
+        final WebClient client = page_.getWebClient();
+        try {
+            client.getExecutor().execute(() -> {
+                try {
+                    response.complete(client.loadWebResponse(request));
+                }
+                catch (final IOException | RuntimeException e) {
+                    response.completeExceptionally(e);
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            preloads_.remove(key);
+            cancelled_ = true;
+        }
+    }
+
+    private static String key(final WebRequest request) {
+        return request.getHttpMethod() + " " + request.getUrl().toExternalForm()
+                + " " + request.getCharset()
+                + " " + request.getAdditionalHeaders().get(HttpHeader.ACCEPT);
+    }
+
+    /**
+     * Returns the preloaded response for the given request and removes it from the preload table;
+     * waits if the response is still loading.
+     * @param request the request of the loader
+     * @return the response or {@code null} if there is no (successfully) preloaded response
+     */
+    WebResponse takeResponse(final WebRequest request) {
+        final Preload preload = preloads_.put(key(request), TAKEN);
+        if (preload == null || preload == TAKEN) {
+            return null;
+        }
+
+        long timeout = page_.getWebClient().getOptions().getTimeout();
+        if (timeout <= 0) {
+            timeout = DEFAULT_TIMEOUT;
+        }
+        try {
+            final WebResponse response = preload.response_.get(timeout, TimeUnit.MILLISECONDS);
+            // loadWebResponse() fixes the url of the request
+            request.setUrl(preload.request_.getUrl());
+            return response;
+        }
+        catch (final ExecutionException e) {
+            // let the loader retry and report the problem
+            return null;
+        }
+        catch (final TimeoutException e) {
+            discard(preload);
+            return null;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(preload);
+            return null;
+        }
+    }
+
+    /**
+     * Stops scanning and cleans up the responses that were not used.
+     */
+    void cleanUp() {
+        cancelled_ = true;
+        for (final Preload preload : preloads_.values()) {
+            if (preload != TAKEN) {
+                discard(preload);
+            }
+        }
+        preloads_.clear();
+    }
+
+    /**
+     * Cleans up the response of the given preload once it is loaded, if it was not cached.
+     */
+    private void discard(final Preload preload) {
+        preload.response_.thenAccept(response -> {
+            if (!page_.getWebClient().getCache().containsResponse(preload.request_)) {
+                response.cleanUp();
+            }
+        });
+    }
+
+    /**
+     * A very simple tokenizer for the start tags of a page.
+     */
+    private static final class TagReader {
+        private final Reader reader_;
+        private String tagName_;
+        private int templateDepth_;
+        private int next_ = -2;
+
+        TagReader(final Reader reader) {
+            reader_ = reader;
+        }
+
+        String getTagName() {
+            return tagName_;
+        }
+
+        /**
+         * @return whether the current tag is inside of a template element
+         */
+        boolean isInTemplate() {
+            return templateDepth_ > ("template".equals(tagName_) ? 1 : 0);
+        }
+
+        private int read() throws IOException {
+            if (next_ != -2) {
+                final int c = next_;
+                next_ = -2;
+                return c;
+            }
+            return reader_.read();
+        }
+
+        private void unread(final int c) {
+            next_ = c;
+        }
+
+        /**
+         * Reads up to the next start tag.
+         * @return the attributes of the tag or {@code null} at the end of the content
+         */
+        Map<String, String> next() throws IOException {
+            int c;
+            while ((c = read()) != -1) {
+                if (c != '<') {
+                    continue;
+                }
+
+                c = read();
+                if (c == '!') {
+                    skipComment();
+                }
+                else if (c == '/') {
+                    if ("template".equals(readTagName(read())) && templateDepth_ > 0) {
+                        templateDepth_--;
+                    }
+                    skipTo('>');
+                }
+                else if (c == '?') {
+                    skipTo('>');
+                }
+                else if (Character.isLetter(c)) {
+                    tagName_ = readTagName(c);
+                    if ("template".equals(tagName_)) {
+                        templateDepth_++;
+                    }
+                    return readAttributes();
+                }
+                else {
+                    unread(c);
+                }
+            }
+            return null;
+        }
+
+        private String readTagName(final int first) throws IOException {
+            final StringBuilder name = new StringBuilder();
+            int c = first;
+            while (c != -1 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+                name.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            unread(c);
+            return name.toString();
+        }
+
+        private Map<String, String> readAttributes() throws IOException {
+            final Map<String, String> attributes = new HashMap<>();
+            int c = read();
+            while (c != -1 && c != '>') {
+                if (Character.isWhitespace(c) || c == '/') {
+                    c = read();
+                    continue;
+                }
+
+                final StringBuilder name = new StringBuilder();
+                while (c != -1 && !Character.isWhitespace(c) && c != '>' && c != '=' && c != '/') {
+                    name.append(Character.toLowerCase((char) c));
+                    c = read();
+                }
+                while (c != -1 && Character.isWhitespace(c)) {
+                    c = read();
+                }
+
+                String value = "";
+                if (c == '=') {
+                    c = read();
+                    while (c != -1 && Character.isWhitespace(c)) {
+                        c = read();
+                    }
+                    final StringBuilder valueBuilder = new StringBuilder();
+                    if (c == '"' || c == '\'') {
+                        final int quote = c;
+                        c = read();
+                        while (c != -1 && c != quote) {
+                            valueBuilder.append((char) c);
+                            c = read();
+                        }
+                        c = read();
+                    }
+                    else {
+                        while (c != -1 && !Character.isWhitespace(c) && c != '>') {
+                            valueBuilder.append((char) c);
+                            c = read();
+                        }
+                    }
+                    value = StringEscapeUtils.unescapeHtml4(valueBuilder.toString());
+                }
+                attributes.putIfAbsent(name.toString(), value);
+            }
+            return attributes;
+        }
+
+        private void skipComment() throws IOException {
+            int c = read();
+            if (c != '-') {
+                unread(c);
+                skipTo('>');
+                return;
+            }
+            c = read();
+            if (c != '-') {
+                unread(c);
+                skipTo('>');
+                return;
+            }
+
+            int dashes = 0;
+            while ((c = read()) != -1) {
+                if (c == '>' && dashes >= 2) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        }
+
+        private void skipTo(final char end) throws IOException {
+            int c;
+            while ((c = read()) != -1 && c != end) {
+                // skip
+            }
+        }
+
+        /**
+         * Skips the content of elements like script or style up to the end tag.
+         */
+        void skipRawText(final String tagName) throws IOException {
+            final String endTag = "</" + tagName;
+            int matched = 0;
+            int c;
+            while ((c = read()) != -1) {
+                if (Character.toLowerCase((char) c) == endTag.charAt(matched)) {
+                    matched++;
+                    if (matched == endTag.length()) {
+                        skipTo('>');
+                        return;
+                    }
+                }
+                else {
+                    matched = c == '<' ? 1 : 0;
+                }
+            }
+        }
+    }
+}
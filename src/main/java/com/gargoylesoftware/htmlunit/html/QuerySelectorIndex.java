@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+
+/**
+ * An index of the elements of a {@link HtmlPage} by tag and class name, used by
+ * {@link DomNode#querySelectorAll(String)} to narrow down the elements that have to be
+ * matched against the selectors. Elements selected by id are looked up in the id map of the page.
+ * The index is kept up to date using the {@link DomChangeListener} and
+ * {@link HtmlAttributeChangeListener} notifications of the page.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class QuerySelectorIndex implements DomChangeListener, HtmlAttributeChangeListener {
+
+    /**
+     * The candidates are sorted if there are much less candidates than elements,
+     * otherwise the page is traversed to get the document order.
+     */
+    private static final int SORT_THRESHOLD_FACTOR = 64;
+
+    private final HtmlPage page_;
+    private final Map<String, Set<DomElement>> tagNames_ = new HashMap<>();
+    private final Map<String, Set<DomElement>> classNames_ = new HashMap<>();
+    private final Map<DomElement, String[]> indexedClassNames_ = new HashMap<>();
+
+    /** Elements that are not {@link HtmlElement}s; changes of their attributes are not reported. */
+    private final Set<DomElement> otherElements_ = new HashSet<>();
+    private int size_;
+
+    /**
+     * Creates the index for all the elements of the given page.
+     * @param page the page
+     */
+    QuerySelectorIndex(final HtmlPage page) {
+        page_ = page;
+        for (final DomElement element : page.getDomElementDescendants()) {
+            add(element);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void nodeAdded(final DomChangeEvent event) {
+        final DomNode node = event.getChangedNode();
+        if (node.getPage() != page_ || !node.isAttachedToPage()) {
+            return;
+        }
+
+        if (node instanceof DomElement) {
+            add((DomElement) node);
+        }
+        for (final DomElement element : node.getDomElementDescendants()) {
+            add(element);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void nodeDeleted(final DomChangeEvent event) {
+        final DomNode node = event.getChangedNode();
+        if (node instanceof DomElement) {
+            remove((DomElement) node);
+        }
+        for (final DomElement element : node.getDomElementDescendants()) {
+            remove(element);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attributeAdded(final HtmlAttributeChangeEvent event) {
+        attributeChanged(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attributeRemoved(final HtmlAttributeChangeEvent event) {
+        attributeChanged(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attributeReplaced(final HtmlAttributeChangeEvent event) {
+        attributeChanged(event);
+    }
+
+    private synchronized void attributeChanged(final HtmlAttributeChangeEvent event) {
+        if ("class".equalsIgnoreCase(event.getName())) {
+            final HtmlElement element = event.getHtmlElement();
+            if (indexedClassNames_.containsKey(element)) {
+                removeClassNames(element);
+                addClassNames(element);
+            }
+        }
+    }
+
+    private void add(final DomElement element) {
+        if (!addTo(tagNames_, element.getLowercaseName(), element)) {
+            // already indexed
+            return;
+        }
+        size_++;
+
+        if (element instanceof HtmlElement) {
+            addClassNames(element);
+        }
+        else {
+            otherElements_.add(element);
+        }
+    }
+
+    private void remove(final DomElement element) {
+        if (!removeFrom(tagNames_, element.getLowercaseName(), element)) {
+            return;
+        }
+        size_--;
+
+        removeClassNames(element);
+        otherElements_.remove(element);
+    }
+
+    private void addClassNames(final DomElement element) {
+        final String classAttribute = element.getAttributeDirect("class");
+        final String[] classNames;
+        if (ATTRIBUTE_NOT_DEFINED == classAttribute) {
+            classNames = ArrayUtils.EMPTY_STRING_ARRAY;
+        }
+        else {
+            classNames = StringUtils.split(classAttribute);
+        }
+
+        for (final String className : classNames) {
+            addTo(classNames_, className, element);
+        }
+        indexedClassNames_.put(element, classNames);
+    }
+
+    private void removeClassNames(final DomElement element) {
+        final String[] classNames = indexedClassNames_.remove(element);
+        if (classNames != null) {
+            for (final String className : classNames) {
+                removeFrom(classNames_, className, element);
+            }
+        }
+    }
+
+    private static boolean addTo(final Map<String, Set<DomElement>> map, final String key,
+            final DomElement element) {
+        return map.computeIfAbsent(key, k -> new HashSet<>()).add(element);
+    }
+
+    private static boolean removeFrom(final Map<String, Set<DomElement>> map, final String key,
+            final DomElement element) {
+        final Set<DomElement> elements = map.get(key);
+        if (elements == null || !elements.remove(element)) {
+            return false;
+        }
+        if (elements.isEmpty()) {
+            map.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the descendants of the given node which may be selected by one of the selectors,
+     * in document order; or {@code null} if the selectors do not allow to narrow down the elements.
+     * @param root the node to start the search from
+     * @param selectorList the selectors
+     * @return the candidates in document order or {@code null}
+     */
+    List<DomElement> getCandidates(final DomNode root, final SelectorList selectorList) {
+        final Set<DomElement> candidates = new HashSet<>();
+        final int size;
+        synchronized (this) {
+            for (final Selector selector : selectorList) {
+                if (!addCandidates(selector, candidates)) {
+                    return null;
+                }
+            }
+            size = size_;
+        }
+
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (candidates.size() * SORT_THRESHOLD_FACTOR < size) {
+            final List<DomElement> result = new ArrayList<>(candidates.size());
+            for (final DomElement candidate : candidates) {
+                // the index may contain elements that were removed quietly
+                if (root != candidate && root.isAncestorOf(candidate)) {
+                    result.add(candidate);
+                }
+            }
+            result.sort(HtmlPage.documentPositionComparator);
+            return result;
+        }
+
+        final List<DomElement> result = new ArrayList<>(candidates.size());
+        for (final DomElement element : root.getDomElementDescendants()) {
+            if (candidates.contains(element)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the elements which may be selected by the given selector to the candidates.
+     * @return {@code false} if there is no way to narrow down the elements for this selector
+     */
+    private boolean addCandidates(final Selector selector, final Set<DomElement> candidates) {
+        // the subject of the selector is the rightmost simple selector
+        Selector subject = selector;
+        Selector ancestors = null;
+        switch (selector.getSelectorType()) {
+            case DESCENDANT_SELECTOR:
+                subject = ((DescendantSelector) selector).getSimpleSelector();
+                ancestors = ((DescendantSelector) selector).getAncestorSelector();
+                break;
+            case CHILD_SELECTOR:
+                subject = ((ChildSelector) selector).getSimpleSelector();
+                ancestors = ((ChildSelector) selector).getAncestorSelector();
+                break;
+            case DIRECT_ADJACENT_SELECTOR:
+                subject = ((DirectAdjacentSelector) selector).getSimpleSelector();
+                break;
+            case GENERAL_ADJACENT_SELECTOR:
+                subject = ((GeneralAdjacentSelector) selector).getSimpleSelector();
+                break;
+            default:
+        }
+
+        if (!(subject instanceof ElementSelector)) {
+            return false;
+        }
+        final ElementSelector elementSelector = (ElementSelector) subject;
+
+        final String id = getIdCondition(elementSelector);
+        if (id != null) {
+            candidates.addAll(getElementsById(id));
+            return true;
+        }
+
+        final Collection<DomElement> byClass = getSmallestClassBucket(elementSelector);
+        if (byClass != null) {
+            candidates.addAll(byClass);
+            // attribute changes of these are not tracked
+            candidates.addAll(otherElements_);
+            return true;
+        }
+
+        final String tagName = elementSelector.getLocalNameLowerCase();
+        if (tagName != null) {
+            final Set<DomElement> byTagName = tagNames_.get(tagName);
+            if (byTagName != null) {
+                candidates.addAll(byTagName);
+            }
+            return true;
+        }
+
+        // id anchored, like '#main *'
+        final String anchorId = ancestors == null ? null : getAnchorId(ancestors);
+        if (anchorId != null) {
+            for (final DomElement anchor : getElementsById(anchorId)) {
+                for (final DomElement descendant : anchor.getDomElementDescendants()) {
+                    candidates.add(descendant);
+                }
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private List<DomElement> getElementsById(final String id) {
+        final List<DomElement> elements = page_.getElementsById(id);
+        if (otherElements_.isEmpty()) {
+            return elements;
+        }
+
+        final List<DomElement> result = new ArrayList<>(elements);
+        for (final DomElement element : otherElements_) {
+            if (id.equals(element.getId())) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    private Collection<DomElement> getSmallestClassBucket(final ElementSelector elementSelector) {
+        final List<Condition> conditions = elementSelector.getConditions();
+        if (conditions == null) {
+            return null;
+        }
+
+        Collection<DomElement> smallest = null;
+        for (final Condition condition : conditions) {
+            if (condition.getConditionType() == Condition.ConditionType.CLASS_CONDITION) {
+                final String className = condition.getValue();
+                if (className.indexOf('\\') > -1) {
+                    // escaped, let the selector decide
+                    continue;
+                }
+                final Set<DomElement> elements = classNames_.get(className);
+                if (elements == null) {
+                    return new ArrayList<>();
+                }
+                if (smallest == null || elements.size() < smallest.size()) {
+                    smallest = elements;
+                }
+            }
+        }
+        return smallest;
+    }
+
+    private static String getIdCondition(final ElementSelector elementSelector) {
+        final List<Condition> conditions = elementSelector.getConditions();
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                if (condition.getConditionType() == Condition.ConditionType.ID_CONDITION) {
+                    return condition.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the id of an element that has to be an ancestor of every element
+     * matched by a selector with the given ancestor part.
+     */
+    private static String getAnchorId(final Selector selector) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                return getIdCondition((ElementSelector) selector);
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                final String dsId = getAnchorId(ds.getSimpleSelector());
+                if (dsId != null) {
+                    return dsId;
+                }
+                return getAnchorId(ds.getAncestorSelector());
+
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                final String csId = getAnchorId(cs.getSimpleSelector());
+                if (csId != null) {
+                    return csId;
+                }
+                return getAnchorId(cs.getAncestorSelector());
+
+            case DIRECT_ADJACENT_SELECTOR:
+                return getAnchorId(((DirectAdjacentSelector) selector).getSimpleSelector());
+
+            case GENERAL_ADJACENT_SELECTOR:
+                return getAnchorId(((GeneralAdjacentSelector) selector).getSimpleSelector());
+
+            default:
+                return null;
+        }
+    }
+}
@@ -46,10 +46,15 @@ import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.ElementFactory;
 import com.gargoylesoftware.htmlunit.html.Html;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.html.PreloadScanner;
 import com.gargoylesoftware.htmlunit.html.UnknownElementFactory;
 import com.gargoylesoftware.htmlunit.html.parser.HTMLParser;
 import com.gargoylesoftware.htmlunit.html.parser.HTMLParserListener;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
 import com.gargoylesoftware.htmlunit.svg.SvgElementFactory;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 
 import net.sourceforge.htmlunit.cyberneko.HTMLScanner;
 import net.sourceforge.htmlunit.cyberneko.HTMLTagBalancer;
@@ -171,11 +176,15 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
     @Override
     public void parse(final WebResponse webResponse, final HtmlPage page,
             final boolean xhtml, final boolean createdByJavascript) throws IOException {
+        final LoadTimelineListener loadTimelineListener = page.getWebClient().getLoadTimelineListener();
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        final Object jfrEvent = HtmlUnitEvents.beginParse();
+
         final URL url = webResponse.getWebRequest().getUrl();
         final HtmlUnitNekoDOMBuilder domBuilder =
                 new HtmlUnitNekoDOMBuilder(this, page, url, null, createdByJavascript);
 
-        Charset charset = webResponse.getContentCharsetOrNull();
+        Charset charset = webResponse.getContentCharsetForParsing();
         try {
             if (charset == null) {
                 charset = StandardCharsets.ISO_8859_1;
@@ -199,6 +208,10 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
             final String encoding = charset.name();
             final XMLInputSource in = new XMLInputSource(null, url.toString(), null, content, encoding);
 
+            if (!xhtml && !createdByJavascript) {
+                PreloadScanner.start(page, webResponse, charset);
+            }
+
             page.registerParsingStart();
             try {
                 domBuilder.parse(in);
@@ -211,6 +224,13 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
         }
         finally {
             page.registerParsingEnd();
+            if (loadTimelineListener != null) {
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.HTML_PARSE, url.toExternalForm(), url,
+                        webResponse.getContentLength(), start);
+            }
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitParse(jfrEvent, "HTML", url.toExternalForm(), webResponse.getContentLength());
+            }
         }
     }
 
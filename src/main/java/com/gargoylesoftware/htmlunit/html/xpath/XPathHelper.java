@@ -15,7 +15,10 @@
 package com.gargoylesoftware.htmlunit.html.xpath;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.transform.TransformerException;
 
@@ -23,7 +26,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
 
 import net.sourceforge.htmlunit.xpath.XPathContext;
 import net.sourceforge.htmlunit.xpath.objects.XBoolean;
@@ -49,6 +54,17 @@ public final class XPathHelper {
         }
     };
 
+    /** The maximum number of compiled expressions kept in the cache. */
+    private static final int MAX_COMPILED_EXPRESSIONS = 256;
+
+    private static final Map<CompiledExpressionKey, XPathAdapter> COMPILED_EXPRESSIONS
+            = Collections.synchronizedMap(new LinkedHashMap<CompiledExpressionKey, XPathAdapter>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<CompiledExpressionKey, XPathAdapter> eldest) {
+                    return size() > MAX_COMPILED_EXPRESSIONS;
+                }
+            });
+
     /**
      * Private to avoid instantiation.
      */
@@ -65,42 +81,26 @@ public final class XPathHelper {
      * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
      * @return the list of objects found
      */
-    @SuppressWarnings("unchecked")
     public static <T> List<T> getByXPath(final DomNode node, final String xpathExpr,
             final PrefixResolver resolver) {
         if (xpathExpr == null) {
             throw new IllegalArgumentException("Null is not a valid XPath expression");
         }
 
+        final Object jfrEvent = HtmlUnitEvents.beginQuery();
         PROCESS_XPATH_.set(Boolean.TRUE);
         final List<T> list = new ArrayList<>();
         try {
-            final XObject result = evaluateXPath(node, xpathExpr, resolver);
-
-            if (result instanceof XNodeSet) {
-                final NodeList nodelist = result.nodelist();
-                for (int i = 0; i < nodelist.getLength(); i++) {
-                    list.add((T) nodelist.item(i));
-                }
-            }
-            else if (result instanceof XNumber) {
-                list.add((T) Double.valueOf(result.num()));
-            }
-            else if (result instanceof XBoolean) {
-                list.add((T) Boolean.valueOf(result.bool()));
-            }
-            else if (result instanceof XString) {
-                list.add((T) result.str());
-            }
-            else {
-                throw new RuntimeException("Unproccessed " + result.getClass().getName());
-            }
+            evaluateXPath(node, xpathExpr, resolver, list);
         }
         catch (final Exception e) {
             throw new RuntimeException("Could not retrieve XPath >" + xpathExpr + "< on " + node, e);
         }
         finally {
             PROCESS_XPATH_.set(Boolean.FALSE);
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitQuery(jfrEvent, "XPath", xpathExpr, list.size());
+            }
         }
         return list;
     }
@@ -114,16 +114,15 @@ public final class XPathHelper {
     }
 
     /**
-     * Evaluates an XPath expression to an XObject.
+     * Evaluates an XPath expression and adds the resultant objects to the given list.
      * @param contextNode the node to start searching from
      * @param str a valid XPath string
      * @param prefixResolver prefix resolver to use for resolving namespace prefixes, or null
-     * @return an XObject, which can be used to obtain a string, number, nodelist, etc (should never be {@code null})
+     * @param list the list receiving the result
      * @throws TransformerException if a syntax or other error occurs
      */
-    private static XObject evaluateXPath(final DomNode contextNode,
-            final String str, final PrefixResolver prefixResolver) throws TransformerException {
-        final XPathContext xpathSupport = new XPathContext();
+    private static <T> void evaluateXPath(final DomNode contextNode,
+            final String str, final PrefixResolver prefixResolver, final List<T> list) throws TransformerException {
         final Node xpathExpressionContext;
         if (contextNode.getNodeType() == Node.DOCUMENT_NODE) {
             xpathExpressionContext = ((Document) contextNode).getDocumentElement();
@@ -132,16 +131,140 @@ public final class XPathHelper {
             xpathExpressionContext = contextNode;
         }
 
-        PrefixResolver resolver = prefixResolver;
-        if (resolver == null) {
-            resolver = new HtmlUnitPrefixResolver(xpathExpressionContext);
-        }
+        final SgmlPage page = contextNode.getPage();
+        final boolean caseSensitive = page.hasCaseSensitiveTagNames();
+        final XPathAdapter xpath = getXPathAdapter(str, prefixResolver, xpathExpressionContext, caseSensitive);
 
-        final boolean caseSensitive = contextNode.getPage().hasCaseSensitiveTagNames();
+        // the DTM of the page can be reused as long as the dom is not changed;
+        // detached nodes are not part of this DTM
+        if (isPartOfPage(contextNode, page)) {
+            final XPathContext xpathSupport = page.getXPathContext();
+            // the node set is evaluated lazily, it has to be iterated while holding the lock
+            synchronized (xpathSupport) {
+                final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+                addToList(xpath.execute(xpathSupport, ctxtNode, prefixResolver), list);
+            }
+            return;
+        }
 
-        final XPathAdapter xpath = new XPathAdapter(str, resolver, null, caseSensitive);
+        final XPathContext xpathSupport = new XPathContext();
         final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
-        return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        addToList(xpath.execute(xpathSupport, ctxtNode, prefixResolver), list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void addToList(final XObject result, final List<T> list) throws TransformerException {
+        if (result instanceof XNodeSet) {
+            final NodeList nodelist = result.nodelist();
+            for (int i = 0; i < nodelist.getLength(); i++) {
+                list.add((T) nodelist.item(i));
+            }
+        }
+        else if (result instanceof XNumber) {
+            list.add((T) Double.valueOf(result.num()));
+        }
+        else if (result instanceof XBoolean) {
+            list.add((T) Boolean.valueOf(result.bool()));
+        }
+        else if (result instanceof XString) {
+            list.add((T) result.str());
+        }
+        else {
+            throw new RuntimeException("Unproccessed " + result.getClass().getName());
+        }
+    }
+
+    private static boolean isPartOfPage(final DomNode node, final SgmlPage page) {
+        DomNode root = node;
+        while (root.getParentNode() != null) {
+            root = root.getParentNode();
+        }
+        return root == page;
+    }
+
+    /**
+     * Returns the compiled form of the given expression, either from the cache or by compiling it.
+     * Only expressions without namespace prefixes are cached; the prefixes are resolved against the
+     * given resolver or the context node while compiling. The resolver is not part of the compiled
+     * expression, therefore the cache does not keep any nodes reachable.
+     */
+    private static XPathAdapter getXPathAdapter(final String str, final PrefixResolver prefixResolver,
+            final Node xpathExpressionContext, final boolean caseSensitive) throws TransformerException {
+        if (prefixResolver != null) {
+            return new XPathAdapter(str, prefixResolver, null, caseSensitive);
+        }
+        if (hasNamespacePrefix(str)) {
+            return new XPathAdapter(str, new HtmlUnitPrefixResolver(xpathExpressionContext), null, caseSensitive);
+        }
+
+        final CompiledExpressionKey key = new CompiledExpressionKey(str, caseSensitive);
+        XPathAdapter xpath = COMPILED_EXPRESSIONS.get(key);
+        if (xpath == null) {
+            xpath = new XPathAdapter(str, new HtmlUnitPrefixResolver(xpathExpressionContext), null, caseSensitive);
+            COMPILED_EXPRESSIONS.put(key, xpath);
+        }
+        return xpath;
     }
 
+    /**
+     * Returns whether the expression contains a qualified name (a single colon outside of a literal).
+     * @param xpath the XPath expression
+     * @return whether the expression contains a namespace prefix
+     */
+    static boolean hasNamespacePrefix(final String xpath) {
+        char quote = 0;
+        final int length = xpath.length();
+        for (int i = 0; i < length; i++) {
+            final char ch = xpath.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            }
+            else if (ch == '"' || ch == '\'') {
+                quote = ch;
+            }
+            else if (ch == ':') {
+                if (i + 1 < length && xpath.charAt(i + 1) == ':') {
+                    // axis specifier
+                    i++;
+                }
+                else {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The key of the compiled expressions cache.
+     */
+    private static final class CompiledExpressionKey {
+        private final String expression_;
+        private final boolean caseSensitive_;
+
+        CompiledExpressionKey(final String expression, final boolean caseSensitive) {
+            expression_ = expression;
+            caseSensitive_ = caseSensitive;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expression_.hashCode() + (caseSensitive_ ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CompiledExpressionKey)) {
+                return false;
+            }
+            final CompiledExpressionKey other = (CompiledExpressionKey) obj;
+            return caseSensitive_ == other.caseSensitive_
+                    && expression_.equals(other.expression_);
+        }
+    }
 }
@@ -27,12 +27,14 @@ import com.gargoylesoftware.htmlunit.CookieManager;
 /**
  * Implementation of {@link CookieStore} like {@link org.apache.http.impl.client.BasicCookieStore}
  * BUT using our own {@link CookieManager} as back end.
+ * The {@link CookieManager} is thread-safe, the reads are done without locking.
  *
  * @author Marc Guillemot
  * @author Ronald Brill
  */
 public final class HtmlUnitCookieStore implements CookieStore, Serializable {
     private final CookieManager manager_;
+    private final String host_;
 
     /**
      * Constructor.
@@ -40,14 +42,35 @@ public final class HtmlUnitCookieStore implements CookieStore, Serializable {
      * @param manager the CookieManager
      */
     public HtmlUnitCookieStore(final CookieManager manager) {
+        this(manager, null);
+    }
+
+    /**
+     * Constructor for a store that only returns the cookies which may be sent to the given host
+     * (see {@link CookieManager#getCookiesForHost(String)}); all other operations work on all cookies.
+     *
+     * @param manager the CookieManager
+     * @param host the host or {@code null} for all cookies
+     */
+    public HtmlUnitCookieStore(final CookieManager manager, final String host) {
         manager_ = manager;
+        host_ = host;
+    }
+
+    /**
+     * Returns a store that only returns the cookies which may be sent to the given host.
+     * @param host the host
+     * @return the new store
+     */
+    public HtmlUnitCookieStore forHost(final String host) {
+        return new HtmlUnitCookieStore(manager_, host);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void addCookie(final Cookie cookie) {
+    public void addCookie(final Cookie cookie) {
         manager_.addCookie(new com.gargoylesoftware.htmlunit.util.Cookie((ClientCookie) cookie));
     }
 
@@ -55,15 +78,18 @@ public final class HtmlUnitCookieStore implements CookieStore, Serializable {
      * {@inheritDoc}
      */
     @Override
-    public synchronized List<Cookie> getCookies() {
-        return com.gargoylesoftware.htmlunit.util.Cookie.toHttpClient(manager_.getCookies());
+    public List<Cookie> getCookies() {
+        if (host_ == null) {
+            return com.gargoylesoftware.htmlunit.util.Cookie.toHttpClient(manager_.getCookies());
+        }
+        return com.gargoylesoftware.htmlunit.util.Cookie.toHttpClient(manager_.getCookiesForHost(host_));
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized boolean clearExpired(final Date date) {
+    public boolean clearExpired(final Date date) {
         return manager_.clearExpired(date);
     }
 
@@ -71,7 +97,7 @@ public final class HtmlUnitCookieStore implements CookieStore, Serializable {
      * {@inheritDoc}
      */
     @Override
-    public synchronized void clear() {
+    public void clear() {
         manager_.clearCookies();
     }
 }
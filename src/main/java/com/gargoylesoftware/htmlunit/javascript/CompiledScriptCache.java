@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+/**
+ * A process wide LRU cache of compiled scripts, shared by all {@link JavaScriptEngine}s.
+ * The scripts are keyed by a hash of the source code, the source name and line, the
+ * {@link BrowserVersion} and the compile options of the {@link Context}; this way inline scripts
+ * and scripts that are not cacheable according to their response headers are compiled only once
+ * for all the {@link com.gargoylesoftware.htmlunit.WebClient}s.
+ * The cache is bounded by the estimated memory used by the compiled scripts.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompiledScriptCache {
+
+    /** The default memory budget in bytes. */
+    public static final long DEFAULT_MAX_WEIGHT = 128 * 1024 * 1024;
+
+    /** The estimated size of a compiled script per char of source code. */
+    private static final int BYTES_PER_CHAR = 8;
+
+    private static final CompiledScriptCache INSTANCE = new CompiledScriptCache();
+
+    private long maxWeight_ = DEFAULT_MAX_WEIGHT;
+    private long weight_;
+    private final Map<Key, CachedScript> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+    private final AtomicLong evictions_ = new AtomicLong();
+
+    private CompiledScriptCache() {
+        // use getInstance()
+    }
+
+    /**
+     * Returns the process wide instance.
+     * @return the cache
+     */
+    public static CompiledScriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the cached script for the given source or compiles and caches it.
+     * Scripts compiled for a debugger are not cached.
+     * @param cx the context used for compiling
+     * @param browserVersion the browser version
+     * @param sourceCode the source code
+     * @param sourceName the source name
+     * @param startLine the line at which the script source starts
+     * @return the compiled script
+     */
+    public Script getOrCompile(final Context cx, final BrowserVersion browserVersion, final String sourceCode,
+            final String sourceName, final int startLine) {
+        if (cx.getDebugger() != null) {
+            return cx.compileString(sourceCode, sourceName, startLine, null);
+        }
+
+        final Key key = new Key(cx, browserVersion, sourceCode, sourceName, startLine);
+        synchronized (entries_) {
+            final CachedScript cached = entries_.get(key);
+            if (cached != null) {
+                hits_.incrementAndGet();
+                return cached.script_;
+            }
+        }
+        misses_.incrementAndGet();
+
+        // compile outside the lock; two threads may compile the same script at the same time
+        final Script script = cx.compileString(sourceCode, sourceName, startLine, null);
+        if (script != null) {
+            final long weight = (long) sourceCode.length() * BYTES_PER_CHAR;
+            synchronized (entries_) {
+                if (weight <= maxWeight_) {
+                    final CachedScript previous = entries_.put(key, new CachedScript(script, weight));
+                    if (previous != null) {
+                        weight_ -= previous.weight_;
+                    }
+                    weight_ += weight;
+                    evict();
+                }
+            }
+        }
+        return script;
+    }
+
+    private void evict() {
+        final Iterator<CachedScript> iterator = entries_.values().iterator();
+        while (weight_ > maxWeight_ && iterator.hasNext()) {
+            weight_ -= iterator.next().weight_;
+            iterator.remove();
+            evictions_.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the memory budget in bytes; the default is {@link #DEFAULT_MAX_WEIGHT}.
+     * @return the memory budget
+     */
+    public long getMaxWeight() {
+        synchronized (entries_) {
+            return maxWeight_;
+        }
+    }
+
+    /**
+     * Sets the memory budget in bytes; the default is {@link #DEFAULT_MAX_WEIGHT}.
+     * Use 0 to disable caching.
+     * @param maxWeight the memory budget
+     */
+    public void setMaxWeight(final long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Illegal max weight: " + maxWeight);
+        }
+        synchronized (entries_) {
+            maxWeight_ = maxWeight;
+            evict();
+        }
+    }
+
+    /**
+     * Returns the estimated memory used by the cached scripts in bytes.
+     * @return the estimated memory used
+     */
+    public long getWeight() {
+        synchronized (entries_) {
+            return weight_;
+        }
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     * @return the number of cached scripts
+     */
+    public int getSize() {
+        synchronized (entries_) {
+            return entries_.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to compile the script.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * Returns the number of scripts removed to stay within the memory budget.
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions_.get();
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        synchronized (entries_) {
+            entries_.clear();
+            weight_ = 0;
+        }
+        hits_.set(0);
+        misses_.set(0);
+        evictions_.set(0);
+    }
+
+    private static final class CachedScript {
+        private final Script script_;
+        private final long weight_;
+
+        CachedScript(final Script script, final long weight) {
+            script_ = script;
+            weight_ = weight;
+        }
+    }
+
+    private static final class Key {
+        private final byte[] sourceHash_;
+        private final String sourceName_;
+        private final int startLine_;
+        private final BrowserVersion browserVersion_;
+        private final int languageVersion_;
+        private final int optimizationLevel_;
+        private final boolean generatingDebug_;
+        private final int hashCode_;
+
+        Key(final Context cx, final BrowserVersion browserVersion, final String sourceCode,
+                final String sourceName, final int startLine) {
+            sourceHash_ = hash(sourceCode);
+            sourceName_ = sourceName;
+            startLine_ = startLine;
+            browserVersion_ = browserVersion;
+            languageVersion_ = cx.getLanguageVersion();
+            optimizationLevel_ = cx.getOptimizationLevel();
+            generatingDebug_ = cx.isGeneratingDebug();
+
+            int hash = Arrays.hashCode(sourceHash_);
+            hash = 31 * hash + (sourceName_ == null ? 0 : sourceName_.hashCode());
+            hash = 31 * hash + startLine_;
+            hash = 31 * hash + System.identityHashCode(browserVersion_);
+            hash = 31 * hash + languageVersion_;
+            hash = 31 * hash + optimizationLevel_;
+            hashCode_ = 31 * hash + (generatingDebug_ ? 1 : 0);
+        }
+
+        private static byte[] hash(final String sourceCode) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(sourceCode.getBytes(UTF_8));
+            }
+            catch (final NoSuchAlgorithmException e) {
+                // every Java platform has to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode_;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return browserVersion_ == other.browserVersion_
+                    && startLine_ == other.startLine_
+                    && languageVersion_ == other.languageVersion_
+                    && optimizationLevel_ == other.optimizationLevel_
+                    && generatingDebug_ == other.generatingDebug_
+                    && Arrays.equals(sourceHash_, other.sourceHash_)
+                    && (sourceName_ == null ? other.sourceName_ == null : sourceName_.equals(other.sourceName_));
+        }
+    }
+}
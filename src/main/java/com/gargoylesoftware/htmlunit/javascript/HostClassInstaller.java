@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.lang.reflect.Member;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
+import com.gargoylesoftware.htmlunit.javascript.configuration.JavaScriptConfiguration;
+import com.gargoylesoftware.htmlunit.javascript.host.Window;
+
+import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.FunctionObject;
+import net.sourceforge.htmlunit.corejs.javascript.LambdaSlot;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.Slot;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Creates the prototypes and the constructors of the host classes of a {@link Window} the first time
+ * they are used (see {@link com.gargoylesoftware.htmlunit.WebClientOptions#setLazyHostClassesEnabled(boolean)}).
+ * During the initialization of the window, every constructor name is defined as a lazy slot; the names
+ * are listed and found like before, but the constructor (together with its prototype and the prototype chain)
+ * is only created when the value is read, e.g. by a script or a property descriptor, or when
+ * {@link Window#getPrototype(Class)} asks for the prototype.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HostClassInstaller {
+
+    private static final Log LOG = LogFactory.getLog(HostClassInstaller.class);
+
+    /** The host classes using the prototype of another class for their constructor. */
+    private static final Map<String, String> CONSTRUCTOR_PROTOTYPES = new HashMap<>();
+
+    static {
+        CONSTRUCTOR_PROTOTYPES.put("Image", "HTMLImageElement");
+        CONSTRUCTOR_PROTOTYPES.put("Option", "HTMLOptionElement");
+        CONSTRUCTOR_PROTOTYPES.put("WebKitMutationObserver", "MutationObserver");
+        CONSTRUCTOR_PROTOTYPES.put("webkitURL", "URL");
+    }
+
+    /** Whether the host classes override {@link HtmlUnitScriptable#getClassName()}. */
+    private static final Map<Class<?>, Boolean> CLASS_NAME_OVERRIDES = new ConcurrentHashMap<>();
+
+    private final Window window_;
+    private final JavaScriptConfiguration jsConfig_;
+    private final BrowserVersion browserVersion_;
+    private final Map<Class<? extends Scriptable>, Scriptable> prototypes_;
+    private final Map<String, Scriptable> prototypesPerJSName_;
+
+    /** The configurations of the constructors per prototype name, in the order of the configuration. */
+    private final Map<String, List<ClassConfiguration>> constructors_ = new HashMap<>();
+    private final Map<Class<?>, ClassConfiguration> configurations_ = new HashMap<>();
+    /** The configurations per name of the lazy slots. */
+    private final Map<String, ClassConfiguration> lazySlots_ = new HashMap<>();
+
+    /** The properties the constructors define on the window while they are created. */
+    private Map<String, Object[]> windowProperties_;
+
+    /**
+     * Ctor.
+     * @param window the window
+     * @param jsConfig the configuration of the host classes
+     * @param browserVersion the browser version
+     * @param prototypes the map of the created prototypes per host class, filled by this installer
+     * @param prototypesPerJSName the map of the created prototypes per name, filled by this installer
+     */
+    public HostClassInstaller(final Window window, final JavaScriptConfiguration jsConfig,
+            final BrowserVersion browserVersion, final Map<Class<? extends Scriptable>, Scriptable> prototypes,
+            final Map<String, Scriptable> prototypesPerJSName) {
+        window_ = window;
+        jsConfig_ = jsConfig;
+        browserVersion_ = browserVersion;
+        prototypes_ = prototypes;
+        prototypesPerJSName_ = prototypesPerJSName;
+
+        final String windowClassName = Window.class.getName();
+        for (final ClassConfiguration config : jsConfig.getAll()) {
+            if (!windowClassName.equals(config.getHostClass().getName())) {
+                configurations_.put(config.getHostClass(), config);
+            }
+            if (config.isJsObject()) {
+                constructors_.computeIfAbsent(getConstructorPrototypeName(config), k -> new ArrayList<>())
+                        .add(config);
+            }
+        }
+    }
+
+    private static String getConstructorPrototypeName(final ClassConfiguration config) {
+        final String name = CONSTRUCTOR_PROTOTYPES.get(config.getHostClassSimpleName());
+        if (name == null) {
+            return config.getClassName();
+        }
+        return name;
+    }
+
+    /**
+     * Defines the lazy slot for the constructor of the given host class. Reading the slot creates
+     * the constructor, assigning a value replaces the slot.
+     * @param config the configuration of the host class
+     */
+    public void defineLazyConstructor(final ClassConfiguration config) {
+        final String name = getWindowName(config);
+        lazySlots_.put(name, config);
+        window_.defineProperty(name,
+            () -> {
+                install(name);
+                return window_.get(name, window_);
+            },
+            value -> replaceLazySlot(name, value, ScriptableObject.DONTENUM),
+            ScriptableObject.DONTENUM);
+    }
+
+    private void replaceLazySlot(final String name, final Object value, final int attributes) {
+        window_.delete(name);
+        window_.defineProperty(name, value, attributes);
+    }
+
+    /**
+     * Returns the name used for the constructor of the given host class in the window scope;
+     * this is the class name of an instance, which may differ from the configured name.
+     */
+    private String getWindowName(final ClassConfiguration config) {
+        final Class<? extends HtmlUnitScriptable> hostClass = config.getHostClass();
+        final boolean overridden = CLASS_NAME_OVERRIDES.computeIfAbsent(hostClass, k -> {
+            try {
+                return k.getMethod("getClassName").getDeclaringClass() != HtmlUnitScriptable.class;
+            }
+            catch (final NoSuchMethodException e) {
+                return Boolean.FALSE;
+            }
+        });
+        if (!overridden) {
+            return config.getClassName();
+        }
+
+        try {
+            final HtmlUnitScriptable obj = hostClass.getDeclaredConstructor().newInstance();
+            obj.setParentScope(window_);
+            obj.setClassName(config.getClassName());
+            return obj.getClassName();
+        }
+        catch (final ReflectiveOperationException e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+    }
+
+    /**
+     * Returns the prototype of the given host class, creates it if needed.
+     * @param hostClass the host class
+     * @return the prototype or {@code null} if the class is not available for the browser
+     */
+    public Scriptable getPrototype(final Class<?> hostClass) {
+        final ClassConfiguration config = configurations_.get(hostClass);
+        if (config == null) {
+            return null;
+        }
+        return getPrototype(config.getClassName());
+    }
+
+    /**
+     * Returns the prototype of the given host class, creates it if needed.
+     * @param className the name of the host class
+     * @return the prototype or {@code null} if the class is not available for the browser
+     */
+    public Scriptable getPrototype(final String className) {
+        final Scriptable prototype = prototypesPerJSName_.get(className);
+        if (prototype != null) {
+            return prototype;
+        }
+
+        final ClassConfiguration config = jsConfig_.getClassConfiguration(className);
+        if (config == null) {
+            return null;
+        }
+        try {
+            return createPrototype(config);
+        }
+        catch (final ReflectiveOperationException e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+    }
+
+    private Scriptable createPrototype(final ClassConfiguration config) throws ReflectiveOperationException {
+        final String className = config.getClassName();
+        final boolean isWindow = Window.class.getName().equals(config.getHostClass().getName());
+
+        final HtmlUnitScriptable prototype = JavaScriptEngine.configureDeferredClass(config, window_);
+        prototypesPerJSName_.put(className, prototype);
+        if (!isWindow) {
+            prototypes_.put(config.getHostClass(), prototype);
+            if (config.isJsObject()) {
+                prototype.defineProperty("__proto__", prototype, ScriptableObject.DONTENUM);
+            }
+        }
+
+        if (StringUtils.isEmpty(config.getExtendedClassName())) {
+            prototype.setPrototype(ScriptableObject.getObjectPrototype(window_));
+        }
+        else {
+            prototype.setPrototype(getPrototype(config.getExtendedClassName()));
+        }
+
+        final List<ClassConfiguration> constructors = constructors_.get(className);
+        if (constructors != null) {
+            final Map<String, Object[]> previous = windowProperties_;
+            final Map<String, Object[]> windowProperties = new LinkedHashMap<>();
+            try {
+                windowProperties_ = windowProperties;
+                for (final ClassConfiguration constructorConfig : constructors) {
+                    defineConstructor(constructorConfig, prototype);
+                }
+                windowProperties_ = null;
+
+                // only replace the lazy slots; the script may already have removed or replaced the names
+                for (final Map.Entry<String, Object[]> entry : windowProperties.entrySet()) {
+                    final String name = entry.getKey();
+                    if (hasLazySlot(name)) {
+                        final Object[] property = entry.getValue();
+                        replaceLazySlot(name, property[0], (Integer) property[1]);
+                    }
+                }
+            }
+            finally {
+                windowProperties_ = previous;
+            }
+        }
+        return prototype;
+    }
+
+    private void defineConstructor(final ClassConfiguration config, final Scriptable prototype)
+            throws ReflectiveOperationException {
+        final Member jsConstructor = config.getJsConstructor();
+        final String jsClassName = config.getClassName();
+        final String hostClassSimpleName = config.getHostClassSimpleName();
+
+        if (jsConstructor == null) {
+            final ScriptableObject constructor;
+            if ("Window".equals(jsClassName)) {
+                constructor = (ScriptableObject) ScriptableObject.getProperty(window_, "constructor");
+            }
+            else {
+                constructor = config.getHostClass().getDeclaredConstructor().newInstance();
+                ((HtmlUnitScriptable) constructor).setClassName(config.getClassName());
+            }
+            JavaScriptEngine.defineConstructor(window_, prototype, constructor);
+            JavaScriptEngine.configureConstantsStaticPropertiesAndStaticFunctions(config, constructor);
+            return;
+        }
+
+        final BaseFunction function;
+        if ("Window".equals(jsClassName)) {
+            function = (BaseFunction) ScriptableObject.getProperty(window_, "constructor");
+        }
+        else {
+            function = new RecursiveFunctionObject(jsClassName, jsConstructor, window_, browserVersion_);
+        }
+
+        if (CONSTRUCTOR_PROTOTYPES.containsKey(hostClassSimpleName)) {
+            final Object[] prototypeProperty = windowProperties_.get(prototype.getClassName());
+
+            addAsConstructor(function, prototype);
+            window_.defineProperty(hostClassSimpleName, function, ScriptableObject.DONTENUM);
+
+            // the constructor is also defined with the name of the prototype
+            // as a side effect of functionObject.addAsConstructor, so we restore its value
+            if (!hostClassSimpleName.equals(prototype.getClassName())) {
+                if (prototypeProperty == null) {
+                    windowProperties_.remove(prototype.getClassName());
+                }
+                else {
+                    windowProperties_.put(prototype.getClassName(), prototypeProperty);
+                }
+            }
+        }
+        else {
+            addAsConstructor(function, prototype);
+        }
+
+        JavaScriptEngine.configureConstantsStaticPropertiesAndStaticFunctions(config, function);
+    }
+
+    private void addAsConstructor(final BaseFunction function, final Scriptable prototype) {
+        if (function instanceof FunctionObject) {
+            try {
+                ((FunctionObject) function).addAsConstructor(window_, prototype, ScriptableObject.DONTENUM);
+            }
+            catch (final Exception e) {
+                // TODO see issue #1897
+                if (LOG.isWarnEnabled()) {
+                    final String newline = System.lineSeparator();
+                    LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
+                            + e.getMessage() + newline
+                            + "prototype: " + prototype.getClassName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the properties defined on the window while a constructor is created.
+     * @param name the name of the property
+     * @param value the value of the property
+     * @param attributes the attributes of the property
+     * @return {@code true} if the property was collected and must not be defined now
+     */
+    public boolean collectWindowProperty(final String name, final Object value, final int attributes) {
+        if (windowProperties_ == null) {
+            return false;
+        }
+        windowProperties_.put(name, new Object[] {value, attributes});
+        return true;
+    }
+
+    /**
+     * Creates the constructor for the given name, if it is still a lazy slot.
+     * @param name the name of the constructor
+     */
+    public void install(final String name) {
+        final ClassConfiguration config = lazySlots_.get(name);
+        if (config == null || !hasLazySlot(name)) {
+            return;
+        }
+
+        getPrototype(getConstructorPrototypeName(config));
+
+        if (hasLazySlot(name)) {
+            // no constructor was created; place the object with prototype property in Window scope
+            try {
+                final HtmlUnitScriptable obj = config.getHostClass().getDeclaredConstructor().newInstance();
+                obj.defineProperty("prototype", getPrototype(config.getClassName()), ScriptableObject.DONTENUM);
+                obj.setParentScope(window_);
+                obj.setClassName(config.getClassName());
+                replaceLazySlot(name, obj, ScriptableObject.DONTENUM);
+                // this obj won't have prototype, constants need to be configured on it again
+                JavaScriptEngine.configureConstants(config, obj);
+            }
+            catch (final ReflectiveOperationException e) {
+                throw Context.throwAsScriptRuntimeEx(e);
+            }
+        }
+    }
+
+    /**
+     * Creates all the prototypes and the constructors that are still missing.
+     */
+    public void installAll() {
+        for (final ClassConfiguration config : jsConfig_.getAll()) {
+            getPrototype(config.getClassName());
+        }
+        for (final String name : new ArrayList<>(lazySlots_.keySet())) {
+            install(name);
+        }
+    }
+
+    private boolean hasLazySlot(final String name) {
+        final Slot slot = window_.querySlot(null, name);
+        return slot instanceof LambdaSlot;
+    }
+}
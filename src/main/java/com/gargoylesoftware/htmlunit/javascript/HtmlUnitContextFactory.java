@@ -21,6 +21,9 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.JS_PROPERTY_D
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.ScriptException;
@@ -57,6 +60,25 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
     private static final int INSTRUCTION_COUNT_THRESHOLD = 10_000;
 
+    /** The optimization level used if the compilation to bytecode is enabled. */
+    private static final int COMPILED_OPTIMIZATION_LEVEL = 9;
+
+    /**
+     * Marks the compiled scripts that have exceeded the timeout; shared by all factories.
+     * The thread terminates if there is nothing to watch.
+     */
+    private static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1, r -> {
+        final Thread thread = new Thread(r, "HtmlUnit JavaScript watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        WATCHDOG.setRemoveOnCancelPolicy(true);
+        WATCHDOG.setKeepAliveTime(10, TimeUnit.SECONDS);
+        WATCHDOG.allowCoreThreadTimeOut(true);
+    }
+
     private final WebClient webClient_;
     private final BrowserVersion browserVersion_;
     private long timeout_;
@@ -135,9 +157,14 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
     /**
      * Custom context to store execution time and handle timeouts.
+     * In interpreted mode the clock is checked every time the instruction observer is called;
+     * in compiled mode a watchdog task sets a flag when the timeout is reached and the
+     * instruction observer (called at loop back-edges and calls of the compiled code) only checks this flag.
      */
     private class TimeoutContext extends Context {
         private long startTime_;
+        private ScheduledFuture<?> watchdog_;
+        private volatile boolean timedOut_;
 
         protected TimeoutContext(final ContextFactory factory) {
             super(factory);
@@ -145,10 +172,30 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
         public void startClock() {
             startTime_ = System.currentTimeMillis();
+            timedOut_ = false;
+            if (timeout_ > 0 && getOptimizationLevel() != -1) {
+                watchdog_ = WATCHDOG.schedule(() -> {
+                    timedOut_ = true;
+                }, timeout_, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        public void stopClock() {
+            if (watchdog_ != null) {
+                watchdog_.cancel(false);
+                watchdog_ = null;
+            }
         }
 
         public void terminateScriptIfNecessary() {
             if (timeout_ > 0) {
+                if (watchdog_ != null) {
+                    if (timedOut_) {
+                        throw new TimeoutError(timeout_, System.currentTimeMillis() - startTime_);
+                    }
+                    return;
+                }
+
                 final long currentTime = System.currentTimeMillis();
                 if (currentTime - startTime_ > timeout_) {
                     // Terminate script by throwing an Error instance to ensure that the
@@ -287,8 +334,11 @@ public class HtmlUnitContextFactory extends ContextFactory {
             return false;
         });
 
-        // Use pure interpreter mode to get observeInstructionCount() callbacks.
-        cx.setOptimizationLevel(-1);
+        // Use pure interpreter mode to get observeInstructionCount() callbacks;
+        // the compiled code calls observeInstructionCount() only at loop back-edges and calls.
+        // The debugger requires the interpreter.
+        final boolean compile = debugger_ == null && webClient_.getOptions().isJavaScriptCompilationEnabled();
+        cx.setOptimizationLevel(compile ? COMPILED_OPTIMIZATION_LEVEL : -1);
 
         // Set threshold on how often we want to receive the callbacks
         cx.setInstructionObserverThreshold(INSTRUCTION_COUNT_THRESHOLD);
@@ -303,7 +353,9 @@ public class HtmlUnitContextFactory extends ContextFactory {
         // register custom RegExp processing
         ScriptRuntime.setRegExpProxy(cx, new HtmlUnitRegExpProxy(ScriptRuntime.getRegExpProxy(cx), browserVersion_));
 
-        cx.setMaximumInterpreterStackDepth(10_000);
+        if (!compile) {
+            cx.setMaximumInterpreterStackDepth(10_000);
+        }
 
         return cx;
     }
@@ -332,7 +384,19 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
         final TimeoutContext tcx = (TimeoutContext) cx;
         tcx.startClock();
-        return super.doTopCall(callable, cx, scope, thisObj, args);
+        try {
+            return super.doTopCall(callable, cx, scope, thisObj, args);
+        }
+        catch (final StackOverflowError e) {
+            if (cx.getOptimizationLevel() < 0) {
+                throw e;
+            }
+            // the compiled code has no limit for the stack depth; report at least a script error
+            throw ScriptRuntime.rangeError("Maximum call stack size exceeded");
+        }
+        finally {
+            tcx.stopClock();
+        }
     }
 
     /**
@@ -17,7 +17,9 @@ package com.gargoylesoftware.htmlunit.javascript;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.HTMLIMAGE_HTMLELEMENT;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.HTMLIMAGE_HTMLUNKNOWNELEMENT;
 
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,6 +30,7 @@ import com.gargoylesoftware.htmlunit.WebAssert;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.HtmlImage;
+import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLUnknownElement;
@@ -35,6 +38,8 @@ import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLUnknownElement;
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.Slot;
+import net.sourceforge.htmlunit.corejs.javascript.Symbol;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
 /**
@@ -55,6 +60,11 @@ public class HtmlUnitScriptable extends ScriptableObject implements Cloneable {
     private DomNode domNode_;
     private String className_;
 
+    /** The configuration of the members not yet defined on this prototype. */
+    private transient ClassConfiguration deferredMembers_;
+    /** The properties defined before the deferred members; they are defined after them. */
+    private transient List<Object[]> deferredProperties_;
+
     /**
      * Returns the JavaScript class name.
      * @return the JavaScript class name
@@ -96,11 +106,209 @@ public class HtmlUnitScriptable extends ScriptableObject implements Cloneable {
         super.setParentScope(m);
     }
 
+    /**
+     * Defers the definition of the constants, properties and functions of this prototype until
+     * it is used for the first time. The configuration is shared by all windows of the same
+     * {@link BrowserVersion}, so each window only pays for the prototypes it really uses.
+     * @param config the configuration of the members
+     */
+    void deferMembers(final ClassConfiguration config) {
+        deferredMembers_ = config;
+    }
+
+    /**
+     * Defines the deferred members of this prototype, if not yet done.
+     */
+    final void initializeMembers() {
+        final ClassConfiguration config = deferredMembers_;
+        if (config != null) {
+            deferredMembers_ = null;
+
+            // the members are defined like before the prototype chains are configured
+            final Scriptable prototype = super.getPrototype();
+            setPrototype(null);
+            try {
+                JavaScriptEngine.configureConstantsPropertiesAndFunctions(config, this);
+
+                final List<Object[]> deferredProperties = deferredProperties_;
+                if (deferredProperties != null) {
+                    deferredProperties_ = null;
+                    for (final Object[] property : deferredProperties) {
+                        super.defineProperty((String) property[0], property[1], (Integer) property[2]);
+                    }
+                }
+            }
+            finally {
+                setPrototype(prototype);
+            }
+        }
+    }
+
+    /**
+     * Makes sure the deferred members of the given object are defined before the object
+     * becomes visible to scripts.
+     * @param value the object
+     */
+    static void initializeMembers(final Object value) {
+        if (value instanceof HtmlUnitScriptable) {
+            ((HtmlUnitScriptable) value).initializeMembers();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void defineProperty(final String propertyName, final Object value, final int attributes) {
+        if (deferredMembers_ != null) {
+            // keep the order of the properties
+            if (deferredProperties_ == null) {
+                deferredProperties_ = new ArrayList<>();
+            }
+            deferredProperties_.add(new Object[] {propertyName, value, attributes});
+            return;
+        }
+        super.defineProperty(propertyName, value, attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Scriptable getPrototype() {
+        final Scriptable prototype = super.getPrototype();
+        initializeMembers(prototype);
+        return prototype;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has(final String name, final Scriptable start) {
+        initializeMembers();
+        return super.has(name, start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has(final Symbol key, final Scriptable start) {
+        initializeMembers();
+        return super.has(key, start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(final Symbol key, final Scriptable start) {
+        initializeMembers();
+        return super.get(key, start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(final Symbol key, final Scriptable start, final Object value) {
+        initializeMembers();
+        super.put(key, start, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(final String name) {
+        initializeMembers();
+        super.delete(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(final Symbol key) {
+        initializeMembers();
+        super.delete(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object[] getIds() {
+        initializeMembers();
+        return super.getIds();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object[] getAllIds() {
+        initializeMembers();
+        return super.getAllIds();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ScriptableObject getOwnPropertyDescriptor(final Context cx, final Object id) {
+        initializeMembers();
+        final ScriptableObject desc = super.getOwnPropertyDescriptor(cx, id);
+        if (desc != null) {
+            initializeMembers(desc.get("value"));
+        }
+        return desc;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void defineOwnProperty(final Context cx, final Object id, final ScriptableObject desc,
+            final boolean checkValid) {
+        initializeMembers();
+        super.defineOwnProperty(cx, id, desc, checkValid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Slot querySlot(final Context cx, final Object id) {
+        initializeMembers();
+        return super.querySlot(cx, id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preventExtensions() {
+        initializeMembers();
+        super.preventExtensions();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sealObject() {
+        initializeMembers();
+        super.sealObject();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void put(final String name, final Scriptable start, final Object value) {
+        initializeMembers();
         try {
             super.put(name, start, value);
         }
@@ -120,9 +328,13 @@ public class HtmlUnitScriptable extends ScriptableObject implements Cloneable {
      */
     @Override
     public Object get(final String name, final Scriptable start) {
+        initializeMembers();
+
         // Try to get property configured on object itself.
         Object response = super.get(name, start);
         if (response != NOT_FOUND) {
+            // e.g. the prototype property of a constructor
+            initializeMembers(response);
             return response;
         }
         if (this == start) {
@@ -395,6 +607,15 @@ public class HtmlUnitScriptable extends ScriptableObject implements Cloneable {
         return super.equivalentValues(value);
     }
 
+    /**
+     * Defines the deferred members before this object gets serialized.
+     * @return this object
+     */
+    protected Object writeReplace() {
+        initializeMembers();
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.net.URL;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -60,6 +61,7 @@ import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.background.BackgroundJavaScriptFactory;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptExecutor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration.ConstantInfo;
@@ -71,10 +73,15 @@ import com.gargoylesoftware.htmlunit.javascript.host.DateCustom;
 import com.gargoylesoftware.htmlunit.javascript.host.NumberCustom;
 import com.gargoylesoftware.htmlunit.javascript.host.Reflect;
 import com.gargoylesoftware.htmlunit.javascript.host.URLSearchParams;
+import com.gargoylesoftware.htmlunit.javascript.host.VirtualTimeDate;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
 import com.gargoylesoftware.htmlunit.javascript.host.intl.Intl;
 import com.gargoylesoftware.htmlunit.javascript.host.xml.FormData;
 import com.gargoylesoftware.htmlunit.javascript.polyfill.Polyfill;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 
 import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Callable;
@@ -84,6 +91,7 @@ import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.FunctionObject;
 import net.sourceforge.htmlunit.corejs.javascript.IdFunctionObject;
 import net.sourceforge.htmlunit.corejs.javascript.NativeConsole;
+import net.sourceforge.htmlunit.corejs.javascript.NativeFunction;
 import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
 import net.sourceforge.htmlunit.corejs.javascript.Script;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
@@ -92,6 +100,7 @@ import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 import net.sourceforge.htmlunit.corejs.javascript.StackStyle;
 import net.sourceforge.htmlunit.corejs.javascript.Symbol;
 import net.sourceforge.htmlunit.corejs.javascript.UniqueTag;
+import net.sourceforge.htmlunit.corejs.javascript.debug.DebuggableScript;
 
 /**
  * A wrapper for the <a href="http://www.mozilla.org/rhino">Rhino JavaScript engine</a>
@@ -130,6 +139,9 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
     /** The JavaScriptExecutor corresponding to all windows of this Web client */
     private transient JavaScriptExecutor javaScriptExecutor_;
 
+    /** The clock used for the jobs and the time related functions of all windows of this Web client */
+    private final JavaScriptClock clock_ = new JavaScriptClock();
+
     /**
      * Key used to place the scope in which the execution of some JavaScript code
      * started as thread local attribute in current context.
@@ -207,6 +219,14 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         return javaScriptExecutor_;
     }
 
+    /**
+     * Returns the clock used for the JavaScript jobs and the time related JavaScript functions.
+     * @return the clock
+     */
+    public JavaScriptClock getClock() {
+        return clock_;
+    }
+
     /**
      * Initializes all the JS stuff for the window.
      * @param webWindow the web window
@@ -292,21 +312,97 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
 
         final Map<Class<? extends Scriptable>, Scriptable> prototypes = new HashMap<>();
         final Map<String, Scriptable> prototypesPerJSName = new HashMap<>();
+        window.setPrototypes(prototypes, prototypesPerJSName);
+
+        if (webClient.getOptions().isLazyHostClassesEnabled()) {
+            final HostClassInstaller hostClassInstaller = new HostClassInstaller(window, jsConfig_, browserVersion,
+                    prototypes, prototypesPerJSName);
+            window.setHostClassInstaller(hostClassInstaller);
+
+            // the prototypes and constructors are created the first time they are used;
+            // the window scope only gets lazy slots for the constructors
+            final String windowClassName = Window.class.getName();
+            for (final ClassConfiguration config : jsConfig_.getAll()) {
+                final boolean isWindow = windowClassName.equals(config.getHostClass().getName());
+                if (isWindow) {
+                    configureConstantsPropertiesAndFunctions(config, window);
+                }
+                else if (config.isJsObject()) {
+                    hostClassInstaller.defineLazyConstructor(config);
+                }
+            }
+            if (windowConfig.isJsObject()) {
+                hostClassInstaller.defineLazyConstructor(windowConfig);
+            }
+        }
+        else {
+            configureHostClasses(window, browserVersion, prototypes, prototypesPerJSName);
+        }
+        window.setPrototype(window.getPrototype(Window.class.getSimpleName()));
+
+        // IE ActiveXObject simulation
+        // see http://msdn.microsoft.com/en-us/library/ie/dn423948%28v=vs.85%29.aspx
+        // DEV Note: this is at the moment the only usage of HiddenFunctionObject
+        //           if we need more in the future, we have to enhance our JSX annotations
+        if (browserVersion.hasFeature(JS_WINDOW_ACTIVEXOBJECT_HIDDEN)) {
+            final Scriptable prototype = window.getPrototype("ActiveXObject");
+            if (null != prototype) {
+                final Method jsConstructor = ActiveXObject.class.getDeclaredMethod("jsConstructor",
+                        Context.class, Object[].class, Function.class, boolean.class);
+                final FunctionObject functionObject = new HiddenFunctionObject("ActiveXObject", jsConstructor, window);
+                try {
+                    functionObject.addAsConstructor(window, prototype, ScriptableObject.DONTENUM);
+                }
+                catch (final Exception e) {
+                    // TODO see issue #1897
+                    if (LOG.isWarnEnabled()) {
+                        final String newline = System.lineSeparator();
+                        LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
+                                + e.getMessage() + newline
+                                + "prototype: " + prototype.getClassName());
+                    }
+                }
+            }
+        }
+
+        configureRhino(webClient, browserVersion, window);
+
+        // only for window / IE
+        if (!browserVersion.hasFeature(JS_CONSOLE_TIMESTAMP)) {
+            final ScriptableObject console = (ScriptableObject) ScriptableObject.getProperty(window, "console");
+            ScriptableObject.defineProperty(window, "Console", console, ScriptableObject.DONTENUM);
+        }
+
+        window.initialize(webWindow, page);
 
+        applyPolyfills(webClient, browserVersion, context, window);
+    }
+
+    /**
+     * Creates all the prototypes and constructors of the host classes of the given window.
+     * @param window the window
+     * @param browserVersion the browser version
+     * @param prototypes the map to fill with the prototypes per class
+     * @param prototypesPerJSName the map to fill with the prototypes per name
+     * @throws ReflectiveOperationException if a host class cannot be instantiated
+     */
+    private void configureHostClasses(final Window window, final BrowserVersion browserVersion,
+            final Map<Class<? extends Scriptable>, Scriptable> prototypes,
+            final Map<String, Scriptable> prototypesPerJSName) throws ReflectiveOperationException {
         final String windowClassName = Window.class.getName();
         for (final ClassConfiguration config : jsConfig_.getAll()) {
             final boolean isWindow = windowClassName.equals(config.getHostClass().getName());
             if (isWindow) {
                 configureConstantsPropertiesAndFunctions(config, window);
 
-                final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
+                final HtmlUnitScriptable prototype = configureDeferredClass(config, window);
                 prototypesPerJSName.put(config.getClassName(), prototype);
             }
             else {
-                final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
+                final HtmlUnitScriptable prototype = configureDeferredClass(config, window);
                 if (config.isJsObject()) {
                     // Place object with prototype property in Window scope
-                    final HtmlUnitScriptable obj = config.getHostClass().newInstance();
+                    final HtmlUnitScriptable obj = config.getHostClass().getDeclaredConstructor().newInstance();
                     prototype.defineProperty("__proto__", prototype, ScriptableObject.DONTENUM);
                     obj.defineProperty("prototype", prototype, ScriptableObject.DONTENUM); // but not setPrototype!
                     obj.setParentScope(window);
@@ -346,7 +442,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                         constructor = (ScriptableObject) ScriptableObject.getProperty(window, "constructor");
                     }
                     else {
-                        constructor = config.getHostClass().newInstance();
+                        constructor = config.getHostClass().getDeclaredConstructor().newInstance();
                         ((HtmlUnitScriptable) constructor).setClassName(config.getClassName());
                     }
                     defineConstructor(window, prototype, constructor);
@@ -418,7 +514,6 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                 }
             }
         }
-        window.setPrototype(prototypesPerJSName.get(Window.class.getSimpleName()));
 
         // once all prototypes have been build, it's possible to configure the chains
         final Scriptable objectPrototype = ScriptableObject.getObjectPrototype(window);
@@ -434,44 +529,6 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                 prototype.setPrototype(objectPrototype);
             }
         }
-
-        // IE ActiveXObject simulation
-        // see http://msdn.microsoft.com/en-us/library/ie/dn423948%28v=vs.85%29.aspx
-        // DEV Note: this is at the moment the only usage of HiddenFunctionObject
-        //           if we need more in the future, we have to enhance our JSX annotations
-        if (browserVersion.hasFeature(JS_WINDOW_ACTIVEXOBJECT_HIDDEN)) {
-            final Scriptable prototype = prototypesPerJSName.get("ActiveXObject");
-            if (null != prototype) {
-                final Method jsConstructor = ActiveXObject.class.getDeclaredMethod("jsConstructor",
-                        Context.class, Object[].class, Function.class, boolean.class);
-                final FunctionObject functionObject = new HiddenFunctionObject("ActiveXObject", jsConstructor, window);
-                try {
-                    functionObject.addAsConstructor(window, prototype, ScriptableObject.DONTENUM);
-                }
-                catch (final Exception e) {
-                    // TODO see issue #1897
-                    if (LOG.isWarnEnabled()) {
-                        final String newline = System.lineSeparator();
-                        LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
-                                + e.getMessage() + newline
-                                + "prototype: " + prototype.getClassName());
-                    }
-                }
-            }
-        }
-
-        configureRhino(webClient, browserVersion, window);
-
-        // only for window / IE
-        if (!browserVersion.hasFeature(JS_CONSOLE_TIMESTAMP)) {
-            final ScriptableObject console = (ScriptableObject) ScriptableObject.getProperty(window, "console");
-            ScriptableObject.defineProperty(window, "Console", console, ScriptableObject.DONTENUM);
-        }
-
-        window.setPrototypes(prototypes, prototypesPerJSName);
-        window.initialize(webWindow, page);
-
-        applyPolyfills(webClient, browserVersion, context, window);
     }
 
     /**
@@ -533,6 +590,11 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
 
         datePrototype.defineFunctionProperties(new String[] {"toLocaleDateString", "toLocaleTimeString"},
                 DateCustom.class, ScriptableObject.DONTENUM);
+        if (webClient.getOptions().isVirtualTimeEnabled()) {
+            final ScriptableObject date = (ScriptableObject) ScriptableObject.getProperty(scriptable, "Date");
+            date.defineFunctionProperties(new String[] {"now"}, DateCustom.class, ScriptableObject.DONTENUM);
+            VirtualTimeDate.install(scriptable);
+        }
 
         if (!browserVersion.hasFeature(JS_OBJECT_GET_OWN_PROPERTY_SYMBOLS)) {
             ((ScriptableObject) ScriptableObject.getProperty(scriptable, "Object")).delete("getOwnPropertySymbols");
@@ -571,7 +633,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         }
     }
 
-    private static void defineConstructor(final Window window,
+    static void defineConstructor(final Window window,
             final Scriptable prototype, final ScriptableObject constructor) {
         constructor.setParentScope(window);
         try {
@@ -635,15 +697,14 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
      * @param config the configuration settings for the class to be configured
      * @param window the scope within which to configure the class
      * @param browserVersion the browser version
-     * @throws InstantiationException if the new class cannot be instantiated
-     * @throws IllegalAccessException if we don't have access to create the new instance
+     * @throws ReflectiveOperationException if the new class cannot be instantiated
      * @return the created prototype
      */
     public static HtmlUnitScriptable configureClass(final ClassConfiguration config, final Scriptable window,
             final BrowserVersion browserVersion)
-        throws InstantiationException, IllegalAccessException {
+        throws ReflectiveOperationException {
 
-        final HtmlUnitScriptable prototype = config.getHostClass().newInstance();
+        final HtmlUnitScriptable prototype = config.getHostClass().getDeclaredConstructor().newInstance();
         prototype.setParentScope(window);
         prototype.setClassName(config.getClassName());
 
@@ -652,12 +713,29 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         return prototype;
     }
 
+    /**
+     * Creates the prototype for the specified class. The members of the prototype are defined
+     * the first time the prototype is used; most of the prototypes of a window are never used.
+     * @param config the configuration settings for the class to be configured
+     * @param window the scope within which to configure the class
+     * @return the created prototype
+     */
+    static HtmlUnitScriptable configureDeferredClass(final ClassConfiguration config, final Scriptable window)
+        throws ReflectiveOperationException {
+
+        final HtmlUnitScriptable prototype = config.getHostClass().getDeclaredConstructor().newInstance();
+        prototype.setParentScope(window);
+        prototype.setClassName(config.getClassName());
+        prototype.deferMembers(config);
+        return prototype;
+    }
+
     /**
      * Configures constants, static properties and static functions on the object.
      * @param config the configuration for the object
      * @param scriptable the object to configure
      */
-    private static void configureConstantsStaticPropertiesAndStaticFunctions(final ClassConfiguration config,
+    static void configureConstantsStaticPropertiesAndStaticFunctions(final ClassConfiguration config,
             final ScriptableObject scriptable) {
         configureConstants(config, scriptable);
         configureStaticProperties(config, scriptable);
@@ -669,7 +747,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
      * @param config the configuration for the object
      * @param scriptable the object to configure
      */
-    private static void configureConstantsPropertiesAndFunctions(final ClassConfiguration config,
+    static void configureConstantsPropertiesAndFunctions(final ClassConfiguration config,
             final ScriptableObject scriptable) {
         configureConstants(config, scriptable);
         configureProperties(config, scriptable);
@@ -691,7 +769,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         }
     }
 
-    private static void configureConstants(final ClassConfiguration config, final ScriptableObject scriptable) {
+    static void configureConstants(final ClassConfiguration config, final ScriptableObject scriptable) {
         final List<ConstantInfo> constants = config.getConstants();
         if (constants != null) {
             for (final ConstantInfo constantInfo : constants) {
@@ -818,6 +896,11 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         final ContextAction<Object> action = new HtmlUnitContextAction(scope, owningPage) {
             @Override
             public Object doRun(final Context cx) {
+                final WebClient webClient = owningPage.getWebClient();
+                if (webClient.getOptions().isCompiledScriptCacheEnabled()) {
+                    return CompiledScriptCache.getInstance().getOrCompile(cx, webClient.getBrowserVersion(),
+                            sourceCode, sourceName, startLine);
+                }
                 return cx.compileString(sourceCode, sourceName, startLine, null);
             }
 
@@ -827,7 +910,25 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
             }
         };
 
-        return (Script) getContextFactory().callSecured(action, owningPage);
+        final LoadTimelineListener loadTimelineListener = getLoadTimelineListener();
+        final Object jfrEvent = HtmlUnitEvents.beginScript();
+        if (loadTimelineListener == null && jfrEvent == null) {
+            return (Script) getContextFactory().callSecured(action, owningPage);
+        }
+
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        try {
+            return (Script) getContextFactory().callSecured(action, owningPage);
+        }
+        finally {
+            if (loadTimelineListener != null) {
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.SCRIPT_COMPILE, sourceName, getUrl(owningPage),
+                        sourceCode.length(), start);
+            }
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitScript(jfrEvent, "compile", sourceName, getPageUrl(owningPage));
+            }
+        }
     }
 
     /**
@@ -876,7 +977,25 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
             }
         };
 
-        return getContextFactory().callSecured(action, page);
+        final LoadTimelineListener loadTimelineListener = getLoadTimelineListener();
+        final Object jfrEvent = HtmlUnitEvents.beginScript();
+        if (loadTimelineListener == null && jfrEvent == null) {
+            return getContextFactory().callSecured(action, page);
+        }
+
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        try {
+            return getContextFactory().callSecured(action, page);
+        }
+        finally {
+            if (loadTimelineListener != null) {
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.SCRIPT_EXECUTE, getSourceName(script), getUrl(page),
+                        -1, start);
+            }
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitScript(jfrEvent, "execute", getSourceName(script), getPageUrl(page));
+            }
+        }
     }
 
     /**
@@ -925,7 +1044,63 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                 return cx.decompileFunction(function, 2);
             }
         };
-        return getContextFactory().callSecured(action, page);
+
+        final LoadTimelineListener loadTimelineListener = getLoadTimelineListener();
+        final Object jfrEvent = HtmlUnitEvents.beginScript();
+        if (loadTimelineListener == null && jfrEvent == null) {
+            return getContextFactory().callSecured(action, page);
+        }
+
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        try {
+            return getContextFactory().callSecured(action, page);
+        }
+        finally {
+            if (loadTimelineListener != null) {
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.FUNCTION_CALL, getSourceName(function), getUrl(page),
+                        -1, start);
+            }
+            if (jfrEvent != null) {
+                HtmlUnitEvents.commitScript(jfrEvent, "call", getSourceName(function), getPageUrl(page));
+            }
+        }
+    }
+
+    private LoadTimelineListener getLoadTimelineListener() {
+        final WebClient webClient = webClient_;
+        if (webClient == null) {
+            return null;
+        }
+        return webClient.getLoadTimelineListener();
+    }
+
+    private static URL getUrl(final HtmlPage page) {
+        if (page == null) {
+            return null;
+        }
+        return page.getUrl();
+    }
+
+    private static String getPageUrl(final HtmlPage page) {
+        final URL url = getUrl(page);
+        if (url == null) {
+            return null;
+        }
+        return url.toExternalForm();
+    }
+
+    private static String getSourceName(final Object script) {
+        if (script instanceof NativeFunction) {
+            final DebuggableScript debuggableScript = ((NativeFunction) script).getDebuggableView();
+            if (debuggableScript != null) {
+                final String functionName = debuggableScript.getFunctionName();
+                if (functionName == null || functionName.isEmpty()) {
+                    return debuggableScript.getSourceName();
+                }
+                return debuggableScript.getSourceName() + "#" + functionName;
+            }
+        }
+        return script.getClass().getSimpleName();
     }
 
     private static Scriptable getScope(final HtmlPage page, final DomNode node) {
@@ -88,6 +88,16 @@ public class RecursiveFunctionObject extends FunctionObject {
         return objects.toArray(new Object[0]);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Object getPrototypeProperty() {
+        final Object prototype = super.getPrototypeProperty();
+        HtmlUnitScriptable.initializeMembers(prototype);
+        return prototype;
+    }
+
     /**
      * {@inheritDoc}
      */
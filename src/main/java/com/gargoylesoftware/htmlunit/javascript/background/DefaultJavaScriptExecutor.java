@@ -39,11 +39,21 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
 
     private final transient AtomicBoolean shutdown_;
 
+    /** Guards {@link #jobsChanged_}; the event loop parks on this until the earliest job is due. */
+    private final transient Object wakeUpLock_ = new Object();
+    private transient boolean jobsChanged_;
+
     private transient Thread eventLoopThread_;
 
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(DefaultJavaScriptExecutor.class);
 
+    /**
+     * The maximum time the event loop parks without checking again; only relevant
+     * to detect a garbage collected web client.
+     */
+    private static final long MAX_PARK_TIME = 1000;
+
     /** Creates an EventLoop for the webClient.
      *
      * @param webClient the provided webClient
@@ -131,16 +141,24 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     @Override
     public void run() {
         final boolean trace = LOG.isTraceEnabled();
-        // this has to be a multiple of 10ms
-        // otherwise the VM has to fight with the OS to get such small periods
-        final long sleepInterval = 10;
         while (!shutdown_.get() && !Thread.currentThread().isInterrupted() && webClient_.get() != null) {
-            final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
+            // changes made from now on will wake us up again
+            synchronized (wakeUpLock_) {
+                jobsChanged_ = false;
+            }
 
+            long waitTime = MAX_PARK_TIME;
+            final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
             if (jobManager != null) {
                 final JavaScriptJob earliestJob = jobManager.getEarliestJob();
                 if (earliestJob != null) {
-                    final long waitTime = earliestJob.getTargetExecutionTime() - System.currentTimeMillis();
+                    final WebClient webClient = webClient_.get();
+                    final JavaScriptClock clock = JavaScriptClock.getClock(webClient);
+                    if (webClient != null && webClient.getOptions().isVirtualTimeEnabled()) {
+                        // don't wait, let the time pass; only while someone waits for the jobs
+                        clock.advanceTo(earliestJob.getTargetExecutionTime());
+                    }
+                    waitTime = earliestJob.getTargetExecutionTime() - clock.currentTimeMillis();
 
                     // do we have to execute the earliest job
                     if (waitTime < 1) {
@@ -164,16 +182,35 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
                 break;
             }
 
-            // nothing to do, let's sleep a bit
-            try {
-                Thread.sleep(sleepInterval);
-            }
-            catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
+            // nothing to do, park until the earliest job is due or the jobs have changed
+            park(Math.min(waitTime, MAX_PARK_TIME));
+        }
+    }
+
+    private void park(final long millis) {
+        synchronized (wakeUpLock_) {
+            if (!jobsChanged_) {
+                try {
+                    wakeUpLock_.wait(millis);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void jobsChanged() {
+        synchronized (wakeUpLock_) {
+            jobsChanged_ = true;
+            wakeUpLock_.notifyAll();
+        }
+    }
+
     /**
      * Register a window with the eventLoop.
      * @param newWindow the new web window
@@ -183,7 +220,11 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
         final JavaScriptJobManager jobManager = newWindow.getJobManager();
         if (jobManager != null) {
             updateJobMangerList(jobManager);
+            if (jobManager instanceof JavaScriptJobManagerImpl) {
+                ((JavaScriptJobManagerImpl) jobManager).addExecutor(this);
+            }
             startThreadIfNeeded();
+            jobsChanged();
         }
     }
 
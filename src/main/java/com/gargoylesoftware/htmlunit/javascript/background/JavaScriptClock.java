@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+
+/**
+ * The clock used for the JavaScript jobs and the time related JavaScript functions
+ * ({@code Date.now()}, {@code new Date()}, {@code performance.now()}) of a {@link WebClient}.
+ *
+ * <p>The clock follows the system time. If virtual time is enabled
+ * (see {@link com.gargoylesoftware.htmlunit.WebClientOptions#setVirtualTimeEnabled(boolean)}),
+ * the {@link JavaScriptExecutor} advances the clock to the target execution time of the next job
+ * instead of waiting for it, but only while someone waits for the jobs (see
+ * {@link JavaScriptJobManager#waitForJobs(long)}) and not beyond the end of that wait; otherwise the
+ * jobs are executed in real time.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class JavaScriptClock {
+
+    /** The clock used if there is no JavaScript engine; never advanced. */
+    private static final JavaScriptClock SYSTEM_CLOCK = new JavaScriptClock();
+
+    private volatile long offset_;
+
+    /** The times the clock may be advanced to, one per waiting caller; guarded by this. */
+    private final List<Long> advanceLimits_ = new ArrayList<>();
+
+    /**
+     * Returns the clock of the given client.
+     * @param webClient the client (maybe {@code null})
+     * @return the clock
+     */
+    public static JavaScriptClock getClock(final WebClient webClient) {
+        if (webClient != null) {
+            final AbstractJavaScriptEngine<?> engine = webClient.getJavaScriptEngine();
+            if (engine instanceof JavaScriptEngine) {
+                return ((JavaScriptEngine) engine).getClock();
+            }
+        }
+        return SYSTEM_CLOCK;
+    }
+
+    /**
+     * Returns the current time in milliseconds.
+     * @return the current time in milliseconds
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + offset_;
+    }
+
+    /**
+     * Returns the value of the high resolution time source in nanoseconds; only useful to measure
+     * elapsed time, like {@link System#nanoTime()}.
+     * @return the value of the high resolution time source
+     */
+    public long nanoTime() {
+        return System.nanoTime() + offset_ * 1_000_000L;
+    }
+
+    /**
+     * Returns the amount of milliseconds this clock was advanced ahead of the system time.
+     * @return the offset in milliseconds
+     */
+    public long getOffset() {
+        return offset_;
+    }
+
+    /**
+     * Advances this clock to the given time, but not beyond the latest limit added by
+     * {@link #addAdvanceLimit(long)}; does nothing if the time is already reached or if there is no limit.
+     * @param time the time in milliseconds
+     */
+    synchronized void advanceTo(final long time) {
+        long limit = Long.MIN_VALUE;
+        for (final Long advanceLimit : advanceLimits_) {
+            limit = Math.max(limit, advanceLimit);
+        }
+
+        final long diff = Math.min(time, limit) - currentTimeMillis();
+        if (diff > 0) {
+            offset_ += diff;
+        }
+    }
+
+    /**
+     * Allows to advance this clock up to the given time until the limit is removed again.
+     * @param time the time in milliseconds
+     * @return the limit to pass to {@link #removeAdvanceLimit(Long)}
+     */
+    synchronized Long addAdvanceLimit(final long time) {
+        final Long limit = Long.valueOf(time);
+        advanceLimits_.add(limit);
+        return limit;
+    }
+
+    /**
+     * Removes a limit added by {@link #addAdvanceLimit(long)}.
+     * @param limit the limit
+     */
+    synchronized void removeAdvanceLimit(final Long limit) {
+        advanceLimits_.removeIf(l -> l == limit);
+    }
+}
@@ -31,6 +31,15 @@ public interface JavaScriptExecutor extends Runnable {
      */
     void addWindow(WebWindow newWindow);
 
+    /**
+     * Notifies the executor that the jobs of one of the registered windows have changed
+     * (a job was added, removed or became ready), so that it can reconsider the earliest job.
+     * The default job manager notifies the {@link DefaultJavaScriptExecutor}s registered with it.
+     */
+    default void jobsChanged() {
+        // nothing by default
+    }
+
     /**
      * Notes that this thread has been shutdown.
      */
@@ -15,6 +15,7 @@
 package com.gargoylesoftware.htmlunit.javascript.background;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletionStage;
 
 import com.gargoylesoftware.htmlunit.Page;
 
@@ -64,6 +65,23 @@ public interface JavaScriptJobManager extends Serializable {
      */
     int addJob(JavaScriptJob job, Page page);
 
+    /**
+     * Adds the specified job to this job manager, assigning it an ID. The job is not executed before the
+     * given prerequisite is completed (e.g. the response of a request has been loaded by another thread);
+     * until then the job is counted as waiting to execute.
+     * If the specified page is not currently loaded in the window which owns this job manager,
+     * the operation fails and this method returns <code>0</code>.
+     * The default implementation ignores the prerequisite and adds the job right away; the job has to wait
+     * for the prerequisite itself.
+     * @param job the job to add to the job manager
+     * @param page the page which is trying to add the job
+     * @param prerequisite the stage that has to be completed before the job is executed
+     * @return the ID assigned to the job
+     */
+    default int addJob(final JavaScriptJob job, final Page page, final CompletionStage<?> prerequisite) {
+        return addJob(job, page);
+    }
+
     /**
      * Removes the specified job from the execution queue. This doesn't interrupt the job if it is currently running.
      * @param id the ID of the job to be removed from the execution queue
@@ -18,7 +18,10 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
@@ -26,6 +29,10 @@ import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.jfr.HtmlUnitEvents;
+import com.gargoylesoftware.htmlunit.timeline.LoadPhase;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimeline;
+import com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener;
 
 /**
  * <p>Default implementation of {@link JavaScriptJobManager}.</p>
@@ -54,10 +61,19 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
      */
     private transient PriorityQueue<JavaScriptJob> scheduledJobsQ_ = new PriorityQueue<>();
 
+    /** The maximum time to wait for a notification about changed jobs, before checking again. */
+    private static final long SAFETY_WAIT_INTERVAL = 1000;
+
     private transient ArrayList<Integer> cancelledJobs_ = new ArrayList<>();
 
+    /** Jobs waiting for the completion of their prerequisite before they get scheduled. */
+    private transient ArrayList<JavaScriptJob> waitingJobs_ = new ArrayList<>();
+
     private transient JavaScriptJob currentlyRunningJob_;
 
+    /** The executors to wake up, if the jobs have changed (weakly referenced, like the window). */
+    private transient List<WeakReference<JavaScriptExecutor>> executors_ = new CopyOnWriteArrayList<>();
+
     /** A counter used to generate the IDs assigned to {@link JavaScriptJob}s. */
     private static final AtomicInteger NEXT_JOB_ID_ = new AtomicInteger(1);
 
@@ -76,14 +92,14 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     /** {@inheritDoc} */
     @Override
     public synchronized int getJobCount() {
-        return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
+        return scheduledJobsQ_.size() + waitingJobs_.size() + (currentlyRunningJob_ != null ? 1 : 0);
     }
 
     /** {@inheritDoc} */
     @Override
     public synchronized int getJobCount(final JavaScriptJobFilter filter) {
         if (filter == null) {
-            return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
+            return scheduledJobsQ_.size() + waitingJobs_.size() + (currentlyRunningJob_ != null ? 1 : 0);
         }
 
         int count = 0;
@@ -95,12 +111,23 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                 count++;
             }
         }
+        for (final JavaScriptJob job : waitingJobs_) {
+            if (filter.passes(job)) {
+                count++;
+            }
+        }
         return count;
     }
 
     /** {@inheritDoc} */
     @Override
     public int addJob(final JavaScriptJob job, final Page page) {
+        return addJob(job, page, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int addJob(final JavaScriptJob job, final Page page, final CompletionStage<?> prerequisite) {
         final WebWindow w = getWindow();
         if (w == null) {
             /*
@@ -119,8 +146,19 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         final int id = NEXT_JOB_ID_.getAndIncrement();
         job.setId(Integer.valueOf(id));
 
+        // the target execution time is based on the system time
+        final long offset = JavaScriptClock.getClock(w.getWebClient()).getOffset();
+        if (offset != 0) {
+            job.setTargetExecutionTime(job.getTargetExecutionTime() + offset);
+        }
+
         synchronized (this) {
-            scheduledJobsQ_.add(job);
+            if (prerequisite != null) {
+                waitingJobs_.add(job);
+            }
+            else {
+                scheduledJobsQ_.add(job);
+            }
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("job added to queue");
@@ -132,10 +170,32 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
             notify();
         }
+        notifyExecutor();
 
+        if (prerequisite != null) {
+            prerequisite.whenComplete((result, throwable) -> scheduleWaitingJob(job));
+        }
         return id;
     }
 
+    /**
+     * Moves the given job from the waiting jobs into the execution queue; cancelled jobs
+     * are dropped. Like running jobs, cancelled waiting jobs are counted until this happens.
+     * @param job the job
+     */
+    private synchronized void scheduleWaitingJob(final JavaScriptJob job) {
+        if (waitingJobs_.remove(job)) {
+            if (!cancelledJobs_.contains(job.getId())) {
+                scheduledJobsQ_.add(job);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("waiting job scheduled: " + job);
+                }
+                notifyExecutor();
+            }
+            notify();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public synchronized void removeJob(final int id) {
@@ -148,6 +208,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         }
         cancelledJobs_.add(Integer.valueOf(id));
         notify();
+        notifyExecutor();
     }
 
     /** {@inheritDoc} */
@@ -163,6 +224,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         }
         cancelledJobs_.add(Integer.valueOf(id));
         notify();
+        notifyExecutor();
     }
 
     /** {@inheritDoc} */
@@ -174,8 +236,12 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         for (final JavaScriptJob job : scheduledJobsQ_) {
             cancelledJobs_.add(job.getId());
         }
+        for (final JavaScriptJob job : waitingJobs_) {
+            cancelledJobs_.add(job.getId());
+        }
         scheduledJobsQ_.clear();
         notify();
+        notifyExecutor();
     }
 
     /** {@inheritDoc} */
@@ -189,17 +255,31 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             long now = System.currentTimeMillis();
             final long end = now + timeoutMillis;
 
-            synchronized (this) {
-                while (getJobCount() > 0 && now < end) {
-                    try {
-                        wait(end - now);
-                    }
-                    catch (final InterruptedException e) {
-                        LOG.error("InterruptedException while in waitForJobs", e);
+            // with virtual time the jobs due within the timeout are executed without waiting
+            final JavaScriptClock clock = getClock();
+            final Long advanceLimit = allowAdvance(clock, clock.currentTimeMillis() + timeoutMillis);
+            try {
+                synchronized (this) {
+                    while (getJobCount() > 0 && now < end) {
+                        if (advanceLimit != null && !hasJobStartingBefore(advanceLimit, null)) {
+                            // the remaining jobs are due after the timeout
+                            break;
+                        }
+                        try {
+                            wait(end - now);
+                        }
+                        catch (final InterruptedException e) {
+                            LOG.error("InterruptedException while in waitForJobs", e);
+                        }
+                        // maybe a change triggers the wakup; we have to recalculate the
+                        // wait time
+                        now = System.currentTimeMillis();
                     }
-                    // maybe a change triggers the wakup; we have to recalculate the
-                    // wait time
-                    now = System.currentTimeMillis();
+                }
+            }
+            finally {
+                if (advanceLimit != null) {
+                    clock.removeAdvanceLimit(advanceLimit);
                 }
             }
         }
@@ -221,39 +301,30 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     public int waitForJobsStartingBefore(final long delayMillis, final JavaScriptJobFilter filter) {
         final boolean debug = LOG.isDebugEnabled();
 
-        final long latestExecutionTime = System.currentTimeMillis() + delayMillis;
+        final JavaScriptClock clock = getClock();
+        final long latestExecutionTime = clock.currentTimeMillis() + delayMillis;
         if (debug) {
             LOG.debug("Waiting for all jobs that have execution time before "
                   + delayMillis + " (" + latestExecutionTime + ") to finish");
         }
 
-        final long interval = Math.max(40, delayMillis);
-        synchronized (this) {
-            JavaScriptJob earliestJob = getEarliestJob(filter);
-            boolean pending = earliestJob != null && earliestJob.getTargetExecutionTime() < latestExecutionTime;
-            pending = pending
-                    || (
-                            currentlyRunningJob_ != null
-                            && (filter == null || filter.passes(currentlyRunningJob_))
-                            && currentlyRunningJob_.getTargetExecutionTime() < latestExecutionTime
-                       );
-
-            while (pending) {
-                try {
-                    wait(interval);
-                }
-                catch (final InterruptedException e) {
-                    LOG.error("InterruptedException while in waitForJobsStartingBefore", e);
+        final Long advanceLimit = allowAdvance(clock, latestExecutionTime);
+        try {
+            synchronized (this) {
+                while (hasJobStartingBefore(latestExecutionTime, filter)) {
+                    try {
+                        // every change of the jobs notifies, the timeout is only a safety net
+                        wait(SAFETY_WAIT_INTERVAL);
+                    }
+                    catch (final InterruptedException e) {
+                        LOG.error("InterruptedException while in waitForJobsStartingBefore", e);
+                    }
                 }
-
-                earliestJob = getEarliestJob(filter);
-                pending = earliestJob != null && earliestJob.getTargetExecutionTime() < latestExecutionTime;
-                pending = pending
-                        || (
-                                currentlyRunningJob_ != null
-                                && (filter == null || filter.passes(currentlyRunningJob_))
-                                && currentlyRunningJob_.getTargetExecutionTime() < latestExecutionTime
-                           );
+            }
+        }
+        finally {
+            if (advanceLimit != null) {
+                clock.removeAdvanceLimit(advanceLimit);
             }
         }
 
@@ -265,10 +336,31 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         return jobs;
     }
 
+    private synchronized boolean hasJobStartingBefore(final long latestExecutionTime,
+            final JavaScriptJobFilter filter) {
+        final JavaScriptJob earliestJob = getEarliestJob(filter);
+        if (earliestJob != null && earliestJob.getTargetExecutionTime() < latestExecutionTime) {
+            return true;
+        }
+        if (currentlyRunningJob_ != null
+                && (filter == null || filter.passes(currentlyRunningJob_))
+                && currentlyRunningJob_.getTargetExecutionTime() < latestExecutionTime) {
+            return true;
+        }
+        for (final JavaScriptJob job : waitingJobs_) {
+            if ((filter == null || filter.passes(job)) && job.getTargetExecutionTime() < latestExecutionTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** {@inheritDoc} */
     @Override
     public synchronized void shutdown() {
         scheduledJobsQ_.clear();
+        waitingJobs_.clear();
+        executors_.clear();
         notify();
     }
 
@@ -283,6 +375,60 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         return window_.get();
     }
 
+    private JavaScriptClock getClock() {
+        final WebWindow w = getWindow();
+        return JavaScriptClock.getClock(w == null ? null : w.getWebClient());
+    }
+
+    /**
+     * If virtual time is enabled, allows the executor to advance the clock up to the given time
+     * while the caller waits for the jobs.
+     * @param clock the clock
+     * @param time the end of the wait
+     * @return the limit to remove at the end of the wait or {@code null} if virtual time is not enabled
+     */
+    private Long allowAdvance(final JavaScriptClock clock, final long time) {
+        final WebWindow w = getWindow();
+        if (w == null || !w.getWebClient().getOptions().isVirtualTimeEnabled()) {
+            return null;
+        }
+        final Long advanceLimit = clock.addAdvanceLimit(time);
+        notifyExecutor();
+        return advanceLimit;
+    }
+
+    /**
+     * Registers an executor to be notified, if the jobs have changed.
+     * @param executor the executor
+     */
+    synchronized void addExecutor(final JavaScriptExecutor executor) {
+        for (final WeakReference<JavaScriptExecutor> reference : executors_) {
+            final JavaScriptExecutor registered = reference.get();
+            if (registered == null) {
+                executors_.remove(reference);
+            }
+            else if (registered == executor) {
+                return;
+            }
+        }
+        executors_.add(new WeakReference<>(executor));
+    }
+
+    /**
+     * Wakes up the registered {@link JavaScriptExecutor}s, because the jobs have changed.
+     */
+    private void notifyExecutor() {
+        for (final WeakReference<JavaScriptExecutor> reference : executors_) {
+            final JavaScriptExecutor executor = reference.get();
+            if (executor == null) {
+                executors_.remove(reference);
+            }
+            else {
+                executor.jobsChanged();
+            }
+        }
+    }
+
     /**
      * Utility method to print current queue.
      */
@@ -329,7 +475,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         int count = 1;
         for (final JavaScriptJob job : scheduledJobsQ_) {
             if (filter == null || filter.passes(job)) {
-                final long now = System.currentTimeMillis();
+                final long now = getClock().currentTimeMillis();
                 final long execTime = job.getTargetExecutionTime();
                 status.append("  ").append(count).append(")  Job target execution time: ")
                         .append(execTime).append(" (should start in ")
@@ -346,6 +492,13 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                 count++;
             }
         }
+        for (final JavaScriptJob job : waitingJobs_) {
+            if (filter == null || filter.passes(job)) {
+                status.append("  waiting job: ").append(job)
+                        .append(lineSeparator).append("      job id: ").append(job.getId())
+                    .append(lineSeparator);
+            }
+        }
         status.append("------------------------------------------")
             .append(lineSeparator);
 
@@ -388,7 +541,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             return false;
         }
 
-        final long currentTime = System.currentTimeMillis();
+        final long currentTime = getClock().currentTimeMillis();
         if (job.getTargetExecutionTime() > currentTime) {
             return false;
         }
@@ -424,6 +577,11 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             final String periodicJob = isPeriodicJob ? "interval " : "";
             LOG.debug("Starting " + periodicJob + "job " + job);
         }
+        final WebWindow window = getWindow();
+        final LoadTimelineListener loadTimelineListener =
+                window == null ? null : window.getWebClient().getLoadTimelineListener();
+        final long start = loadTimelineListener == null ? 0 : System.nanoTime();
+        final Object jfrEvent = HtmlUnitEvents.beginJob();
         try {
             job.run();
         }
@@ -431,6 +589,17 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             LOG.error("Job run failed with unexpected RuntimeException: " + e.getMessage(), e);
         }
         finally {
+            // before the job is marked as finished, waitForJobs() may return afterwards
+            if (loadTimelineListener != null) {
+                final Page page = window.getEnclosedPage();
+                LoadTimeline.fire(loadTimelineListener, LoadPhase.BACKGROUND_JOB, job.toString(),
+                        page == null ? null : page.getUrl(), -1, start);
+            }
+            if (jfrEvent != null) {
+                final Page page = window == null ? null : window.getEnclosedPage();
+                HtmlUnitEvents.commitJob(jfrEvent, job.toString(), isPeriodicJob,
+                        page == null ? null : page.getUrl().toExternalForm());
+            }
             synchronized (this) {
                 if (job == currentlyRunningJob_) {
                     currentlyRunningJob_ = null;
@@ -457,6 +626,8 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         // we do not store the jobs (at the moment)
         scheduledJobsQ_ = new PriorityQueue<>();
         cancelledJobs_ = new ArrayList<>();
+        waitingJobs_ = new ArrayList<>();
         currentlyRunningJob_ = null;
+        executors_ = new CopyOnWriteArrayList<>();
     }
 }
@@ -22,10 +22,12 @@ import java.util.Date;
 import org.apache.commons.lang3.time.FastDateFormat;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 
 /**
  * Contains some missing features of Rhino NativeDate.
@@ -90,6 +92,24 @@ public final class DateCustom {
         return format.format(getDateValue(thisObj));
     }
 
+    /**
+     * Returns the current time of the {@link JavaScriptClock}; used instead of
+     * the Rhino implementation if virtual time is enabled.
+     * @param context the JavaScript context
+     * @param thisObj the scriptable
+     * @param args the arguments passed into the method
+     * @param function the function
+     * @return the number of milliseconds elapsed since 1 January 1970 00:00:00 UTC
+     */
+    public static double now(
+            final Context context, final Scriptable thisObj, final Object[] args, final Function function) {
+        final Scriptable scope = ScriptableObject.getTopLevelScope(function);
+        if (scope instanceof Window) {
+            return JavaScriptClock.getClock(((Window) scope).getWebWindow().getWebClient()).currentTimeMillis();
+        }
+        return System.currentTimeMillis();
+    }
+
     private static long getDateValue(final Scriptable thisObj) {
         final Date date = (Date) Context.jsToJava(thisObj, Date.class);
         return date.getTime();
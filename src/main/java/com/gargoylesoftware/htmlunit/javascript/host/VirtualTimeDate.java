@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host;
+
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
+
+import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * The {@code Date} constructor used if virtual time is enabled: {@code new Date()} and {@code Date()}
+ * return the current time of the {@link JavaScriptClock} instead of the system time.
+ * Everything else is delegated to the Rhino implementation; the own properties of the Rhino constructor
+ * (like {@code now}, {@code parse} and {@code UTC}) are copied with their attributes, therefore
+ * the replacement looks like the original to scripts, also when using reflection like
+ * {@code Object.getOwnPropertyDescriptor()}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class VirtualTimeDate extends BaseFunction {
+
+    private final Function date_;
+
+    /**
+     * Constructs a new instance.
+     * @param date the Rhino {@code Date} constructor
+     */
+    public VirtualTimeDate(final Function date) {
+        date_ = date;
+    }
+
+    /**
+     * Replaces the {@code Date} constructor of the given scope.
+     * @param scope the window
+     */
+    public static void install(final ScriptableObject scope) {
+        final ScriptableObject date = (ScriptableObject) ScriptableObject.getProperty(scope, "Date");
+        final VirtualTimeDate virtualTimeDate = new VirtualTimeDate((Function) date);
+        virtualTimeDate.setParentScope(scope);
+        virtualTimeDate.setPrototype(date.getPrototype());
+
+        final Scriptable datePrototype = (Scriptable) ScriptableObject.getProperty(date, "prototype");
+        virtualTimeDate.setImmunePrototypeProperty(datePrototype);
+        for (final Object id : date.getAllIds()) {
+            if (id instanceof String && !virtualTimeDate.has((String) id, virtualTimeDate)) {
+                final String name = (String) id;
+                virtualTimeDate.defineProperty(name, date.get(name, date), date.getAttributes(name));
+            }
+        }
+
+        ScriptableObject.putProperty(scope, "Date", virtualTimeDate);
+        ScriptableObject.putProperty(datePrototype, "constructor", virtualTimeDate);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj, final Object[] args) {
+        // like Date(), the arguments are ignored
+        return Context.toString(construct(cx, scope, ScriptRuntime.emptyArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Scriptable construct(final Context cx, final Scriptable scope, final Object[] args) {
+        if (args.length == 0) {
+            return date_.construct(cx, scope, new Object[] {currentTimeMillis(scope)});
+        }
+        return date_.construct(cx, scope, args);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFunctionName() {
+        return "Date";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getArity() {
+        return ScriptRuntime.toInt32(ScriptableObject.getProperty(date_, "length"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLength() {
+        return getArity();
+    }
+
+    private static double currentTimeMillis(final Scriptable scope) {
+        final Scriptable topLevelScope = ScriptableObject.getTopLevelScope(scope);
+        if (topLevelScope instanceof Window) {
+            return JavaScriptClock.getClock(((Window) topLevelScope).getWebWindow().getWebClient())
+                    .currentTimeMillis();
+        }
+        return System.currentTimeMillis();
+    }
+}
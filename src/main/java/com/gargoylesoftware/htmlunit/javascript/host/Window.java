@@ -81,9 +81,11 @@ import com.gargoylesoftware.htmlunit.html.HtmlObject;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.html.HtmlSelect;
 import com.gargoylesoftware.htmlunit.html.HtmlTextArea;
+import com.gargoylesoftware.htmlunit.javascript.HostClassInstaller;
 import com.gargoylesoftware.htmlunit.javascript.HtmlUnitScriptable;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.PostponedAction;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstant;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
@@ -176,6 +178,7 @@ public class Window extends EventTarget implements WindowOrWorkerGlobalScope, Au
     private String status_ = "";
     private Map<Class<? extends Scriptable>, Scriptable> prototypes_ = new HashMap<>();
     private Map<String, Scriptable> prototypesPerJSName_ = new HashMap<>();
+    private transient HostClassInstaller hostClassInstaller_;
     private Object controllers_;
     private Object opener_;
     private Object top_ = NOT_FOUND; // top can be set from JS to any value!
@@ -234,7 +237,11 @@ public class Window extends EventTarget implements WindowOrWorkerGlobalScope, Au
      */
     @Override
     public Scriptable getPrototype(final Class<? extends HtmlUnitScriptable> jsClass) {
-        return prototypes_.get(jsClass);
+        final Scriptable prototype = prototypes_.get(jsClass);
+        if (prototype == null && hostClassInstaller_ != null) {
+            return hostClassInstaller_.getPrototype(jsClass);
+        }
+        return prototype;
     }
 
     /**
@@ -243,7 +250,11 @@ public class Window extends EventTarget implements WindowOrWorkerGlobalScope, Au
      * @return the prototype object corresponding to the specified class inside the specified scope
      */
     public Scriptable getPrototype(final String className) {
-        return prototypesPerJSName_.get(className);
+        final Scriptable prototype = prototypesPerJSName_.get(className);
+        if (prototype == null && hostClassInstaller_ != null) {
+            return hostClassInstaller_.getPrototype(className);
+        }
+        return prototype;
     }
 
     /**
@@ -257,6 +268,53 @@ public class Window extends EventTarget implements WindowOrWorkerGlobalScope, Au
         prototypesPerJSName_ = prototypesPerJSName;
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Sets the installer creating the prototypes and constructors of the host classes on first use.
+     * @param hostClassInstaller the installer
+     */
+    public void setHostClassInstaller(final HostClassInstaller hostClassInstaller) {
+        hostClassInstaller_ = hostClassInstaller;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void defineProperty(final String propertyName, final Object value, final int attributes) {
+        if (hostClassInstaller_ != null
+                && hostClassInstaller_.collectWindowProperty(propertyName, value, attributes)) {
+            return;
+        }
+        super.defineProperty(propertyName, value, attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Creates the constructor first, the descriptor of a lazy slot does not reflect its attributes.
+     */
+    @Override
+    protected ScriptableObject getOwnPropertyDescriptor(final Context cx, final Object id) {
+        if (hostClassInstaller_ != null && id instanceof CharSequence) {
+            hostClassInstaller_.install(id.toString());
+        }
+        return super.getOwnPropertyDescriptor(cx, id);
+    }
+
+    /**
+     * Creates the missing prototypes and constructors before this window gets serialized.
+     * @return this object
+     */
+    @Override
+    protected Object writeReplace() {
+        if (hostClassInstaller_ != null) {
+            hostClassInstaller_.installAll();
+            hostClassInstaller_ = null;
+        }
+        return super.writeReplace();
+    }
+
     /**
      * The JavaScript function {@code alert()}.
      * @param message the message
@@ -693,10 +751,10 @@ public class Window extends EventTarget implements WindowOrWorkerGlobalScope, Au
         final List<AnimationFrame> animationFrames = new ArrayList<>(animationFrames_);
         animationFrames_.clear();
 
-        final double now = System.nanoTime() / 1_000_000d;
+        final WebWindow ww = getWindow().getWebWindow();
+        final double now = JavaScriptClock.getClock(ww.getWebClient()).nanoTime() / 1_000_000d;
         final Object[] args = {now};
 
-        final WebWindow ww = getWindow().getWebWindow();
         final JavaScriptEngine jsEngine = (JavaScriptEngine) ww.getWebClient().getJavaScriptEngine();
 
         for (final AnimationFrame animationFrame : animationFrames) {
@@ -46,11 +46,13 @@ import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLHtmlElement;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.EvaluatorException;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.Interpreter;
 import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
 import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptStackElement;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
@@ -254,10 +256,8 @@ public class Node extends EventTarget {
         exception.setParentScope(w);
 
         // get current line and file name
-        // this method can only be used in interpreted mode. If one day we choose to use compiled mode,
-        // then we'll have to find an other way here.
-        final String fileName;
-        final int lineNumber;
+        String fileName = null;
+        int lineNumber = 0;
         if (Context.getCurrentContext().getOptimizationLevel() == -1) {
             final int[] linep = new int[1];
             final String sourceName = new Interpreter().getSourcePositionFromStack(Context.getCurrentContext(), linep);
@@ -265,7 +265,12 @@ public class Node extends EventTarget {
             lineNumber = linep[0];
         }
         else {
-            throw new Error("HtmlUnit not ready to run in compiled mode");
+            // compiled mode; the position is taken from the java stack of the generated classes
+            final ScriptStackElement[] stack = new EvaluatorException("").getScriptStack();
+            if (stack.length > 0) {
+                fileName = stack[0].fileName.replaceFirst("script in (.*) from .*", "$1");
+                lineNumber = stack[0].lineNumber;
+            }
         }
 
         exception.setLocation(fileName, lineNumber);
@@ -19,6 +19,7 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.FF;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.FF_ESR;
 
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxFunction;
@@ -78,7 +79,7 @@ public class Performance extends EventTarget {
      */
     @JsxFunction
     public double now() {
-        return System.nanoTime() / 1_000_000d;
+        return JavaScriptClock.getClock(getWindow().getWebWindow().getWebClient()).nanoTime() / 1_000_000d;
     }
 
     /**
@@ -43,14 +43,19 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
@@ -802,41 +807,20 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
             doSend();
         }
         else {
-            // Create and start a thread in which to execute the request.
+            // Create a job which fires the events as soon as the response(s)
+            // are loaded by another thread.
+            final CompletableFuture<LoadedResponses> loading = new CompletableFuture<>();
             final ContextFactory cf = ((JavaScriptEngine) client.getJavaScriptEngine()).getContextFactory();
-            final ContextAction<Object> action = new ContextAction<Object>() {
-                @Override
-                public Object run(final Context cx) {
-                    // KEY_STARTING_SCOPE maintains a stack of scopes
-                    @SuppressWarnings("unchecked")
-                    Deque<Scriptable> stack =
-                            (Deque<Scriptable>) cx.getThreadLocal(JavaScriptEngine.KEY_STARTING_SCOPE);
-                    if (null == stack) {
-                        stack = new ArrayDeque<>();
-                        cx.putThreadLocal(JavaScriptEngine.KEY_STARTING_SCOPE, stack);
-                    }
-                    stack.push(w);
-
-                    try {
-                        doSend();
-                    }
-                    finally {
-                        stack.pop();
-                    }
-                    return null;
-                }
-
-                @Override
-                public String toString() {
-                    return "XMLHttpRequest " + webRequest_.getHttpMethod() + " '" + webRequest_.getUrl() + "'";
-                }
-            };
+            final ContextAction<Object> action = createSendAction(w, page, loading);
             final JavaScriptJob job = BackgroundJavaScriptFactory.theFactory().
                     createJavascriptXMLHttpRequestJob(cf, action);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Starting XMLHttpRequest thread for asynchronous request");
             }
-            jobID_ = ww.getJobManager().addJob(job, page);
+            jobID_ = ww.getJobManager().addJob(job, page, loading);
+            if (jobID_ != 0) {
+                startLoading(client, loading);
+            }
 
             if (getBrowserVersion().hasFeature(XHR_FIRE_STATE_OPENED_AGAIN_IN_ASYNC_MODE)) {
                 // quite strange but IE seems to fire state loading twice
@@ -849,6 +833,118 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
         }
     }
 
+    /**
+     * Starts loading the response(s) of an asynchronous request outside of the JavaScript thread.
+     * The loading thread works on a copy of the request and of the state it depends on, the script
+     * might change (or reopen) this object in the meantime.
+     * @param client the web client
+     * @param loading completed with the loaded responses or with {@code null}
+     *        if the client does not accept new tasks
+     */
+    private void startLoading(final WebClient client, final CompletableFuture<LoadedResponses> loading) {
+        final WebRequest request = copy(webRequest_);
+        final boolean sameOrigin = isSameOrigin_;
+        final int timeout = timeout_;
+        try {
+            CompletableFuture.supplyAsync(() -> loadResponses(client, request, sameOrigin, timeout),
+                    client.getExecutor())
+                .whenComplete((loaded, e) -> {
+                    if (e == null) {
+                        loading.complete(loaded);
+                    }
+                    else {
+                        loading.completeExceptionally(e);
+                    }
+                });
+        }
+        catch (final RejectedExecutionException e) {
+            // the client is closing, load the responses from the job
+            loading.complete(null);
+        }
+    }
+
+    /**
+     * Waits for the loading of the response(s).
+     * @param loading the loading
+     * @return the loaded responses or {@code null} if they have to be loaded by the caller
+     */
+    private static LoadedResponses getLoadedResponses(final CompletableFuture<LoadedResponses> loading) {
+        try {
+            return loading.join();
+        }
+        catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            final LoadedResponses loaded = new LoadedResponses();
+            loaded.exception_ = cause instanceof IOException || cause instanceof RuntimeException
+                    ? (Exception) cause : e;
+            return loaded;
+        }
+    }
+
+    private static WebRequest copy(final WebRequest request) {
+        final WebRequest copy = new WebRequest(request.getUrl(), request.getHttpMethod());
+        copy.setProxyHost(request.getProxyHost());
+        copy.setProxyPort(request.getProxyPort());
+        copy.setProxyScheme(request.getProxyScheme());
+        copy.setSocksProxy(request.isSocksProxy());
+        copy.setEncodingType(request.getEncodingType());
+        copy.setAdditionalHeaders(new HashMap<>(request.getAdditionalHeaders()));
+        copy.setCredentials(request.getCredentials());
+        copy.setTimeout(request.getTimeout());
+        copy.setCharset(request.getCharset());
+        for (final HttpHint hint : HttpHint.values()) {
+            if (request.hasHint(hint)) {
+                copy.addHint(hint);
+            }
+        }
+        if (request.getRequestBody() != null) {
+            copy.setRequestBody(request.getRequestBody());
+        }
+        else {
+            copy.setRequestParameters(new ArrayList<>(request.getRequestParameters()));
+        }
+        return copy;
+    }
+
+    private ContextAction<Object> createSendAction(final Window w, final HtmlPage page,
+            final CompletableFuture<LoadedResponses> loading) {
+        return new ContextAction<Object>() {
+            @Override
+            public Object run(final Context cx) {
+                final LoadedResponses loaded = getLoadedResponses(loading);
+
+                // KEY_STARTING_SCOPE maintains a stack of scopes
+                @SuppressWarnings("unchecked")
+                Deque<Scriptable> stack =
+                        (Deque<Scriptable>) cx.getThreadLocal(JavaScriptEngine.KEY_STARTING_SCOPE);
+                if (null == stack) {
+                    stack = new ArrayDeque<>();
+                    cx.putThreadLocal(JavaScriptEngine.KEY_STARTING_SCOPE, stack);
+                }
+                stack.push(w);
+
+                try {
+                    // the events must not be fired while the script calling send() is still running
+                    synchronized (page) {
+                        doSend(loaded);
+                    }
+                }
+                finally {
+                    stack.pop();
+                }
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "XMLHttpRequest " + webRequest_.getHttpMethod() + " '" + webRequest_.getUrl() + "'";
+            }
+        };
+    }
+
     /**
      * Prepares the WebRequest that will be sent.
      * @param content the content to send
@@ -936,6 +1032,44 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
      * The real send job.
      */
     void doSend() {
+        doSend(null);
+    }
+
+    /**
+     * Loads the response(s) for an asynchronous request; does not touch the state of this object
+     * and does not fire events, because this is not done from the JavaScript thread.
+     * @param wc the web client
+     * @param request the copy of the request
+     * @param sameOrigin whether the request is a same origin request
+     * @param timeout the timeout of the request
+     * @return the loaded responses
+     */
+    private static LoadedResponses loadResponses(final WebClient wc, final WebRequest request,
+            final boolean sameOrigin, final int timeout) {
+        final LoadedResponses loaded = new LoadedResponses();
+        try {
+            if (!sameOrigin && isPreflight(request)) {
+                loaded.preflight_ = true;
+                loaded.preflightResponse_ = wc.loadWebResponse(createPreflightRequest(request, timeout));
+                loaded.preflightAuthorized_ = isPreflightAuthorized(request, loaded.preflightResponse_);
+                if (!loaded.preflightAuthorized_) {
+                    return loaded;
+                }
+            }
+            loaded.response_ = wc.loadWebResponse(request);
+        }
+        catch (final IOException | RuntimeException e) {
+            loaded.exception_ = e;
+        }
+        return loaded;
+    }
+
+    /**
+     * The real send job.
+     * @param loaded the responses already loaded by {@link #loadResponses(WebClient)}
+     *        or {@code null} to load them now
+     */
+    private void doSend(final LoadedResponses loaded) {
         final BrowserVersion browserVersion = getBrowserVersion();
         if (async_ && browserVersion.hasFeature(XHR_LOAD_START_ASYNC)) {
             fireJavascriptEvent(Event.TYPE_LOAD_START);
@@ -944,40 +1078,25 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
         final WebClient wc = getWindow().getWebWindow().getWebClient();
         boolean preflighted = false;
         try {
-            if (!isSameOrigin_ && isPreflight()) {
+            // loading the response might add headers to the request, the decision has to be
+            // the one made before loading
+            final boolean preflight = loaded == null ? !isSameOrigin_ && isPreflight(webRequest_) : loaded.preflight_;
+            if (preflight) {
                 preflighted = true;
-                final WebRequest preflightRequest = new WebRequest(webRequest_.getUrl(), HttpMethod.OPTIONS);
-
-                // header origin
-                final String originHeaderValue = webRequest_.getAdditionalHeaders().get(HttpHeader.ORIGIN);
-                preflightRequest.setAdditionalHeader(HttpHeader.ORIGIN, originHeaderValue);
-
-                // header request-method
-                preflightRequest.setAdditionalHeader(
-                        HttpHeader.ACCESS_CONTROL_REQUEST_METHOD,
-                        webRequest_.getHttpMethod().name());
-
-                // header request-headers
-                final StringBuilder builder = new StringBuilder();
-                for (final Entry<String, String> header
-                        : new TreeMap<>(webRequest_.getAdditionalHeaders()).entrySet()) {
-                    final String name = header.getKey().toLowerCase(Locale.ROOT);
-                    if (isPreflightHeader(name, header.getValue())) {
-                        if (builder.length() != 0) {
-                            builder.append(',');
-                        }
-                        builder.append(name);
-                    }
-                }
-                preflightRequest.setAdditionalHeader(HttpHeader.ACCESS_CONTROL_REQUEST_HEADERS, builder.toString());
-                if (timeout_ > 0) {
-                    preflightRequest.setTimeout(timeout_);
-                }
 
                 // do the preflight request
-                final WebResponse preflightResponse = wc.loadWebResponse(preflightRequest);
-                if (!preflightResponse.isSuccessOrUseProxyOrNotModified()
-                        || !isPreflightAuthorized(preflightResponse)) {
+                final boolean authorized;
+                if (loaded == null) {
+                    final WebResponse preflightResponse =
+                            wc.loadWebResponse(createPreflightRequest(webRequest_, timeout_));
+                    authorized = isPreflightAuthorized(webRequest_, preflightResponse);
+                }
+                else {
+                    // rethrows the exception of the preflight request, if any
+                    loaded.getPreflightResponse();
+                    authorized = loaded.preflightAuthorized_;
+                }
+                if (!authorized) {
                     setState(DONE);
                     if (async_ || browserVersion.hasFeature(XHR_HANDLE_SYNC_NETWORK_ERRORS)) {
                         fireJavascriptEvent(Event.TYPE_READY_STATE_CHANGE);
@@ -994,7 +1113,7 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
                 }
             }
 
-            webResponse_ = wc.loadWebResponse(webRequest_);
+            webResponse_ = loaded == null ? wc.loadWebResponse(webRequest_) : loaded.getResponse();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Web response loaded successfully.");
             }
@@ -1131,12 +1250,43 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
         }
     }
 
-    private boolean isPreflight() {
-        final HttpMethod method = webRequest_.getHttpMethod();
+    private static WebRequest createPreflightRequest(final WebRequest request, final int timeout) {
+        final WebRequest preflightRequest = new WebRequest(request.getUrl(), HttpMethod.OPTIONS);
+
+        // header origin
+        final String originHeaderValue = request.getAdditionalHeaders().get(HttpHeader.ORIGIN);
+        preflightRequest.setAdditionalHeader(HttpHeader.ORIGIN, originHeaderValue);
+
+        // header request-method
+        preflightRequest.setAdditionalHeader(
+                HttpHeader.ACCESS_CONTROL_REQUEST_METHOD,
+                request.getHttpMethod().name());
+
+        // header request-headers
+        final StringBuilder builder = new StringBuilder();
+        for (final Entry<String, String> header
+                : new TreeMap<>(request.getAdditionalHeaders()).entrySet()) {
+            final String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (isPreflightHeader(name, header.getValue())) {
+                if (builder.length() != 0) {
+                    builder.append(',');
+                }
+                builder.append(name);
+            }
+        }
+        preflightRequest.setAdditionalHeader(HttpHeader.ACCESS_CONTROL_REQUEST_HEADERS, builder.toString());
+        if (timeout > 0) {
+            preflightRequest.setTimeout(timeout);
+        }
+        return preflightRequest;
+    }
+
+    private static boolean isPreflight(final WebRequest request) {
+        final HttpMethod method = request.getHttpMethod();
         if (method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.POST) {
             return true;
         }
-        for (final Entry<String, String> header : webRequest_.getAdditionalHeaders().entrySet()) {
+        for (final Entry<String, String> header : request.getAdditionalHeaders().entrySet()) {
             if (isPreflightHeader(header.getKey().toLowerCase(Locale.ROOT), header.getValue())) {
                 return true;
             }
@@ -1144,10 +1294,15 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
         return false;
     }
 
-    private boolean isPreflightAuthorized(final WebResponse preflightResponse) {
+    private static boolean isPreflightAuthorized(final WebRequest request,
+            final WebResponse preflightResponse) {
+        if (!preflightResponse.isSuccessOrUseProxyOrNotModified()) {
+            return false;
+        }
+
         final String originHeader = preflightResponse.getResponseHeaderValue(HttpHeader.ACCESS_CONTROL_ALLOW_ORIGIN);
         if (!ALLOW_ORIGIN_ALL.equals(originHeader)
-                && !webRequest_.getAdditionalHeaders().get(HttpHeader.ORIGIN).equals(originHeader)) {
+                && !request.getAdditionalHeaders().get(HttpHeader.ORIGIN).equals(originHeader)) {
             return false;
         }
         String headersHeader = preflightResponse.getResponseHeaderValue(HttpHeader.ACCESS_CONTROL_ALLOW_HEADERS);
@@ -1157,7 +1312,7 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
         else {
             headersHeader = headersHeader.toLowerCase(Locale.ROOT);
         }
-        for (final Entry<String, String> header : webRequest_.getAdditionalHeaders().entrySet()) {
+        for (final Entry<String, String> header : request.getAdditionalHeaders().entrySet()) {
             final String key = header.getKey().toLowerCase(Locale.ROOT);
             if (isPreflightHeader(key, header.getValue())
                     && !headersHeader.contains(key)) {
@@ -1545,4 +1700,36 @@ public class XMLHttpRequest extends XMLHttpRequestEventTarget {
             return error_;
         }
     }
+
+    /**
+     * The responses of an asynchronous request, loaded by another thread.
+     */
+    private static final class LoadedResponses {
+        private boolean preflight_;
+        private WebResponse preflightResponse_;
+        private boolean preflightAuthorized_;
+        private WebResponse response_;
+        private Exception exception_;
+
+        WebResponse getPreflightResponse() throws IOException {
+            if (preflightResponse_ == null) {
+                throwException();
+            }
+            return preflightResponse_;
+        }
+
+        WebResponse getResponse() throws IOException {
+            if (response_ == null) {
+                throwException();
+            }
+            return response_;
+        }
+
+        private void throwException() throws IOException {
+            if (exception_ instanceof IOException) {
+                throw (IOException) exception_;
+            }
+            throw (RuntimeException) exception_;
+        }
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.regexp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A process wide LRU cache of the JavaScript regular expressions translated to Java
+ * (see {@link RegExpJsToJavaConverter}) and of the compiled {@link Pattern}s, shared by all
+ * {@link com.gargoylesoftware.htmlunit.WebClient}s. The cache is thread safe and bounded by the
+ * number of entries; scripts building many different expressions at runtime only evict the least
+ * recently used ones.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class RegExpCache {
+
+    /** The default maximum number of cached patterns. */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final RegExpCache INSTANCE = new RegExpCache();
+
+    private int maxSize_ = DEFAULT_MAX_SIZE;
+    private final Map<String, String> conversions_ = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Pattern> patterns_ = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+
+    private RegExpCache() {
+        // use getInstance()
+    }
+
+    /**
+     * Returns the process wide instance.
+     * @return the cache
+     */
+    public static RegExpCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the Java translation of the given JavaScript regular expression.
+     * @param jsRegExp the source of the JavaScript regular expression (without slashes and flags)
+     * @return the Java regular expression
+     */
+    public String convert(final String jsRegExp) {
+        synchronized (this) {
+            final String javaRegExp = conversions_.get(jsRegExp);
+            if (javaRegExp != null) {
+                return javaRegExp;
+            }
+        }
+
+        final String javaRegExp = new RegExpJsToJavaConverter().convert(jsRegExp);
+        synchronized (this) {
+            if (maxSize_ > 0) {
+                conversions_.put(jsRegExp, javaRegExp);
+                evict(conversions_);
+            }
+        }
+        return javaRegExp;
+    }
+
+    /**
+     * Returns the compiled pattern for the given JavaScript regular expression.
+     * @param jsRegExp the source of the JavaScript regular expression (without slashes and flags)
+     * @param javaFlags the flags of the Java {@link Pattern}
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the translated expression is invalid
+     */
+    public Pattern getPattern(final String jsRegExp, final int javaFlags) {
+        final String key = javaFlags + "/" + jsRegExp;
+        synchronized (this) {
+            final Pattern pattern = patterns_.get(key);
+            if (pattern != null) {
+                hits_.incrementAndGet();
+                return pattern;
+            }
+        }
+        misses_.incrementAndGet();
+
+        // compile outside the lock; two threads may compile the same expression at the same time
+        final Pattern pattern = Pattern.compile(convert(jsRegExp), javaFlags);
+        synchronized (this) {
+            if (maxSize_ > 0) {
+                patterns_.put(key, pattern);
+                evict(patterns_);
+            }
+        }
+        return pattern;
+    }
+
+    private void evict(final Map<String, ?> entries) {
+        final Iterator<?> iterator = entries.values().iterator();
+        while (entries.size() > maxSize_ && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached patterns; the default is {@link #DEFAULT_MAX_SIZE}.
+     * @return the maximum number of cached patterns
+     */
+    public synchronized int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Sets the maximum number of cached patterns (and of cached translations);
+     * the default is {@link #DEFAULT_MAX_SIZE}. Use 0 to disable caching.
+     * @param maxSize the maximum number of cached patterns
+     */
+    public synchronized void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        }
+        maxSize_ = maxSize;
+        evict(conversions_);
+        evict(patterns_);
+    }
+
+    /**
+     * Returns the number of cached patterns.
+     * @return the number of cached patterns
+     */
+    public synchronized int getSize() {
+        return patterns_.size();
+    }
+
+    /**
+     * Returns the number of pattern lookups answered from the cache.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * Returns the number of pattern lookups that had to compile the pattern.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        synchronized (this) {
+            conversions_.clear();
+            patterns_.clear();
+        }
+        hits_.set(0);
+        misses_.set(0);
+    }
+}
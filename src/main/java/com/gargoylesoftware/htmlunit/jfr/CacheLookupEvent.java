@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Lookup of a response in the cache.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.CacheLookup")
+@Label("Cache Lookup")
+@Category("HtmlUnit")
+@Description("Lookup of a response in the cache.")
+@StackTrace(false)
+final class CacheLookupEvent extends Event {
+
+    @Name("url")
+    @Label("URL")
+    @Description("The normalized URL; the source of inline style sheets")
+    private String url_;
+
+    @Name("hit")
+    @Label("Hit")
+    private boolean hit_;
+
+    void setUrl(final String url) {
+        url_ = url;
+    }
+
+    void setHit(final boolean hit) {
+        hit_ = hit;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Calculation of the computed style of an element.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.ComputedStyle")
+@Label("Computed Style")
+@Category("HtmlUnit")
+@Description("Calculation of the computed style of an element.")
+@StackTrace(false)
+final class ComputedStyleEvent extends Event {
+
+    @Name("element")
+    @Label("Element")
+    private String element_;
+
+    @Name("pseudoElement")
+    @Label("Pseudo Element")
+    private String pseudoElement_;
+
+    void setElement(final String element) {
+        element_ = element;
+    }
+
+    void setPseudoElement(final String pseudoElement) {
+        pseudoElement_ = pseudoElement;
+    }
+}
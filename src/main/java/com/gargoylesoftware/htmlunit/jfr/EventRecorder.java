@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+/**
+ * Creates and commits the events, see {@link HtmlUnitEvents}; the {@code begin} methods return
+ * {@code null} if the event is disabled.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+interface EventRecorder {
+
+    /**
+     * Starts tracking the state of the recordings.
+     */
+    void register();
+
+    Object beginHttpRequest();
+
+    void commitHttpRequest(Object event, String url, String method, int statusCode, long bytes);
+
+    Object beginParse();
+
+    void commitParse(Object event, String language, String url, long bytes);
+
+    Object beginScript();
+
+    void commitScript(Object event, String operation, String sourceName, String pageUrl);
+
+    Object beginJob();
+
+    void commitJob(Object event, String job, boolean periodic, String pageUrl);
+
+    Object beginComputedStyle();
+
+    void commitComputedStyle(Object event, String element, String pseudoElement);
+
+    Object beginQuery();
+
+    void commitQuery(Object event, String language, String expression, int results);
+
+    void cacheLookup(String url, boolean hit);
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Entry point of the instrumented code for the JDK Flight Recorder events. This class does not depend on
+ * the {@code jdk.jfr} module; the events are created by {@code JfrEventRecorder}, which is only loaded
+ * if the JVM supports JFR.
+ *
+ * <p>The {@code begin} methods return {@code null} if no recording is running (a volatile read);
+ * the instrumented code only collects the event data and calls the {@code commit} method if the
+ * event is not {@code null}:</p>
+ * <pre>
+ * final Object jfrEvent = HtmlUnitEvents.beginQuery();
+ * ...
+ * if (jfrEvent != null) {
+ *     HtmlUnitEvents.commitQuery(jfrEvent, "XPath", xpathExpr, list.size());
+ * }
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HtmlUnitEvents {
+
+    private static final Log LOG = LogFactory.getLog(HtmlUnitEvents.class);
+
+    private static volatile boolean Recording_;
+    private static final EventRecorder RECORDER = createRecorder();
+
+    private HtmlUnitEvents() {
+        // util class
+    }
+
+    private static EventRecorder createRecorder() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorderListener");
+        }
+        catch (final ClassNotFoundException | LinkageError e) {
+            // no JFR (e.g. Java 8 before update 262)
+            return null;
+        }
+
+        try {
+            final Class<?> recorderClass = Class.forName(HtmlUnitEvents.class.getPackage().getName()
+                    + ".JfrEventRecorder");
+            final EventRecorder recorder = (EventRecorder) recorderClass.getDeclaredConstructor().newInstance();
+            recorder.register();
+            return recorder;
+        }
+        catch (final Exception | LinkageError e) {
+            LOG.warn("JDK Flight Recorder events are not available: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Called by the recorder if a recording was started or stopped.
+     * @param recording whether a recording is running
+     */
+    static void setRecording(final boolean recording) {
+        Recording_ = recording;
+    }
+
+    /**
+     * Returns whether a JFR recording is running.
+     * @return whether a JFR recording is running
+     */
+    public static boolean isRecording() {
+        return Recording_ && RECORDER != null;
+    }
+
+    /**
+     * Starts a HTTP request event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginHttpRequest() {
+        return isRecording() ? RECORDER.beginHttpRequest() : null;
+    }
+
+    /**
+     * Commits a HTTP request event.
+     * @param event the event returned by {@link #beginHttpRequest()}
+     * @param url the URL
+     * @param method the HTTP method
+     * @param statusCode the status code of the response or {@code 0} if the request failed
+     * @param bytes the size of the response body (the declared size for streamed bodies) or {@code -1} if not known
+     */
+    public static void commitHttpRequest(final Object event, final String url, final String method,
+            final int statusCode, final long bytes) {
+        RECORDER.commitHttpRequest(event, url, method, statusCode, bytes);
+    }
+
+    /**
+     * Starts a parse event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginParse() {
+        return isRecording() ? RECORDER.beginParse() : null;
+    }
+
+    /**
+     * Commits a parse event.
+     * @param event the event returned by {@link #beginParse()}
+     * @param language the parsed language ("HTML", "CSS")
+     * @param url the URL of the parsed content
+     * @param bytes the size of the parsed content or {@code -1} if not known
+     */
+    public static void commitParse(final Object event, final String language, final String url, final long bytes) {
+        RECORDER.commitParse(event, language, url, bytes);
+    }
+
+    /**
+     * Starts a script event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginScript() {
+        return isRecording() ? RECORDER.beginScript() : null;
+    }
+
+    /**
+     * Commits a script event.
+     * @param event the event returned by {@link #beginScript()}
+     * @param operation the operation ("compile", "execute", "call")
+     * @param sourceName the source name of the script or function
+     * @param pageUrl the URL of the page
+     */
+    public static void commitScript(final Object event, final String operation, final String sourceName,
+            final String pageUrl) {
+        RECORDER.commitScript(event, operation, sourceName, pageUrl);
+    }
+
+    /**
+     * Starts a timer job event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginJob() {
+        return isRecording() ? RECORDER.beginJob() : null;
+    }
+
+    /**
+     * Commits a timer job event.
+     * @param event the event returned by {@link #beginJob()}
+     * @param job the job description
+     * @param periodic whether the job is periodic
+     * @param pageUrl the URL of the page
+     */
+    public static void commitJob(final Object event, final String job, final boolean periodic,
+            final String pageUrl) {
+        RECORDER.commitJob(event, job, periodic, pageUrl);
+    }
+
+    /**
+     * Starts a computed style event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginComputedStyle() {
+        return isRecording() ? RECORDER.beginComputedStyle() : null;
+    }
+
+    /**
+     * Commits a computed style event.
+     * @param event the event returned by {@link #beginComputedStyle()}
+     * @param element the tag name of the element
+     * @param pseudoElement the pseudo element or {@code null}
+     */
+    public static void commitComputedStyle(final Object event, final String element, final String pseudoElement) {
+        RECORDER.commitComputedStyle(event, element, pseudoElement);
+    }
+
+    /**
+     * Starts a query event.
+     * @return the event or {@code null} if no recording is running
+     */
+    public static Object beginQuery() {
+        return isRecording() ? RECORDER.beginQuery() : null;
+    }
+
+    /**
+     * Commits a query event.
+     * @param event the event returned by {@link #beginQuery()}
+     * @param language the query language ("XPath", "CSS")
+     * @param expression the expression
+     * @param results the number of results
+     */
+    public static void commitQuery(final Object event, final String language, final String expression,
+            final int results) {
+        RECORDER.commitQuery(event, language, expression, results);
+    }
+
+    /**
+     * Records a cache lookup if a recording is running.
+     * @param url the URL
+     * @param hit whether the entry was found
+     */
+    public static void cacheLookup(final String url, final boolean hit) {
+        if (isRecording()) {
+            RECORDER.cacheLookup(url, hit);
+        }
+    }
+}
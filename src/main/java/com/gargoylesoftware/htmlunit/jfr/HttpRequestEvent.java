@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request sent by the HttpWebConnection, including the download of the response body.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.HttpRequest")
+@Label("HTTP Request")
+@Category("HtmlUnit")
+@Description("A request sent by the HttpWebConnection, including the download of the response body.")
+@StackTrace(false)
+final class HttpRequestEvent extends Event {
+
+    @Name("url")
+    @Label("URL")
+    private String url_;
+
+    @Name("method")
+    @Label("Method")
+    private String method_;
+
+    @Name("statusCode")
+    @Label("Status Code")
+    private int statusCode_;
+
+    @Name("bytes")
+    @Label("Response Size")
+    @DataAmount
+    private long bytes_;
+
+    void setUrl(final String url) {
+        url_ = url;
+    }
+
+    void setMethod(final String method) {
+        method_ = method;
+    }
+
+    void setStatusCode(final int statusCode) {
+        statusCode_ = statusCode;
+    }
+
+    void setBytes(final long bytes) {
+        bytes_ = bytes;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * The {@link EventRecorder} creating the JFR events. This is the only class (besides the events)
+ * referencing the {@code jdk.jfr} module; it is loaded by reflection.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class JfrEventRecorder implements EventRecorder, FlightRecorderListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void register() {
+        FlightRecorder.addListener(this);
+        if (FlightRecorder.isInitialized()) {
+            updateRecording();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordingStateChanged(final Recording recording) {
+        updateRecording();
+    }
+
+    private static void updateRecording() {
+        boolean running = false;
+        for (final Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+            if (recording.getState() == RecordingState.RUNNING) {
+                running = true;
+                break;
+            }
+        }
+        HtmlUnitEvents.setRecording(running);
+    }
+
+    private static <E extends Event> E begin(final E event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginHttpRequest() {
+        return begin(new HttpRequestEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitHttpRequest(final Object event, final String url, final String method,
+            final int statusCode, final long bytes) {
+        final HttpRequestEvent httpRequestEvent = (HttpRequestEvent) event;
+        httpRequestEvent.end();
+        if (httpRequestEvent.shouldCommit()) {
+            httpRequestEvent.setUrl(url);
+            httpRequestEvent.setMethod(method);
+            httpRequestEvent.setStatusCode(statusCode);
+            httpRequestEvent.setBytes(bytes);
+            httpRequestEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginParse() {
+        return begin(new ParseEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitParse(final Object event, final String language, final String url, final long bytes) {
+        final ParseEvent parseEvent = (ParseEvent) event;
+        parseEvent.end();
+        if (parseEvent.shouldCommit()) {
+            parseEvent.setLanguage(language);
+            parseEvent.setUrl(url);
+            parseEvent.setBytes(bytes);
+            parseEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginScript() {
+        return begin(new ScriptEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitScript(final Object event, final String operation, final String sourceName,
+            final String pageUrl) {
+        final ScriptEvent scriptEvent = (ScriptEvent) event;
+        scriptEvent.end();
+        if (scriptEvent.shouldCommit()) {
+            scriptEvent.setOperation(operation);
+            scriptEvent.setSourceName(sourceName);
+            scriptEvent.setPageUrl(pageUrl);
+            scriptEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginJob() {
+        return begin(new JobEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitJob(final Object event, final String job, final boolean periodic, final String pageUrl) {
+        final JobEvent jobEvent = (JobEvent) event;
+        jobEvent.end();
+        if (jobEvent.shouldCommit()) {
+            jobEvent.setJob(job);
+            jobEvent.setPeriodic(periodic);
+            jobEvent.setPageUrl(pageUrl);
+            jobEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginComputedStyle() {
+        return begin(new ComputedStyleEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitComputedStyle(final Object event, final String element, final String pseudoElement) {
+        final ComputedStyleEvent computedStyleEvent = (ComputedStyleEvent) event;
+        computedStyleEvent.end();
+        if (computedStyleEvent.shouldCommit()) {
+            computedStyleEvent.setElement(element);
+            computedStyleEvent.setPseudoElement(pseudoElement);
+            computedStyleEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object beginQuery() {
+        return begin(new QueryEvent());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitQuery(final Object event, final String language, final String expression,
+            final int results) {
+        final QueryEvent queryEvent = (QueryEvent) event;
+        queryEvent.end();
+        if (queryEvent.shouldCommit()) {
+            queryEvent.setLanguage(language);
+            queryEvent.setExpression(expression);
+            queryEvent.setResults(results);
+            queryEvent.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cacheLookup(final String url, final boolean hit) {
+        final CacheLookupEvent event = new CacheLookupEvent();
+        if (event.isEnabled()) {
+            event.setUrl(url);
+            event.setHit(hit);
+            event.commit();
+        }
+    }
+}
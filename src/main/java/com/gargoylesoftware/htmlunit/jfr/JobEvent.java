@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Run of a background JavaScript job (setTimeout(), setInterval(), ...).
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.Job")
+@Label("Timer Job")
+@Category("HtmlUnit")
+@Description("Run of a background JavaScript job (setTimeout(), setInterval(), ...).")
+@StackTrace(false)
+final class JobEvent extends Event {
+
+    @Name("job")
+    @Label("Job")
+    private String job_;
+
+    @Name("periodic")
+    @Label("Periodic")
+    private boolean periodic_;
+
+    @Name("pageUrl")
+    @Label("Page URL")
+    private String pageUrl_;
+
+    void setJob(final String job) {
+        job_ = job;
+    }
+
+    void setPeriodic(final boolean periodic) {
+        periodic_ = periodic;
+    }
+
+    void setPageUrl(final String pageUrl) {
+        pageUrl_ = pageUrl;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Parsing of a HTML document or a CSS style sheet.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.Parse")
+@Label("Parse")
+@Category("HtmlUnit")
+@Description("Parsing of a HTML document or a CSS style sheet.")
+@StackTrace(false)
+final class ParseEvent extends Event {
+
+    @Name("language")
+    @Label("Language")
+    @Description("HTML or CSS")
+    private String language_;
+
+    @Name("url")
+    @Label("URL")
+    private String url_;
+
+    @Name("bytes")
+    @Label("Size")
+    @Description("The size of the source; -1 if not known")
+    @DataAmount
+    private long bytes_;
+
+    void setLanguage(final String language) {
+        language_ = language;
+    }
+
+    void setUrl(final String url) {
+        url_ = url;
+    }
+
+    void setBytes(final long bytes) {
+        bytes_ = bytes;
+    }
+}
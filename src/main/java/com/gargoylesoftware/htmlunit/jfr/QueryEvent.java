@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evaluation of an XPath expression or of CSS selectors.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.Query")
+@Label("Query")
+@Category("HtmlUnit")
+@Description("Evaluation of an XPath expression or of CSS selectors.")
+@StackTrace(false)
+final class QueryEvent extends Event {
+
+    @Name("language")
+    @Label("Language")
+    @Description("XPath or CSS")
+    private String language_;
+
+    @Name("expression")
+    @Label("Expression")
+    private String expression_;
+
+    @Name("results")
+    @Label("Results")
+    private int results_;
+
+    void setLanguage(final String language) {
+        language_ = language;
+    }
+
+    void setExpression(final String expression) {
+        expression_ = expression;
+    }
+
+    void setResults(final int results) {
+        results_ = results;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Compilation or execution of a script or the call of a JavaScript function.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@Name("com.gargoylesoftware.htmlunit.Script")
+@Label("Script")
+@Category("HtmlUnit")
+@Description("Compilation or execution of a script or the call of a JavaScript function.")
+@StackTrace(false)
+final class ScriptEvent extends Event {
+
+    @Name("operation")
+    @Label("Operation")
+    @Description("compile, execute or call")
+    private String operation_;
+
+    @Name("sourceName")
+    @Label("Source Name")
+    private String sourceName_;
+
+    @Name("pageUrl")
+    @Label("Page URL")
+    private String pageUrl_;
+
+    void setOperation(final String operation) {
+        operation_ = operation;
+    }
+
+    void setSourceName(final String sourceName) {
+        sourceName_ = sourceName;
+    }
+
+    void setPageUrl(final String pageUrl) {
+        pageUrl_ = pageUrl;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A finished phase of loading a page, see {@link LoadTimelineListener}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LoadEvent implements Serializable {
+
+    private final LoadPhase phase_;
+    private final String name_;
+    private final URL pageUrl_;
+    private final long bytes_;
+    private final long startTime_;
+    private final long duration_;
+
+    /**
+     * Ctor.
+     * @param phase the phase
+     * @param name the URL or the source name
+     * @param pageUrl the URL of the page or {@code null} if not known
+     * @param bytes the number of bytes (or chars) processed or {@code -1} if not known
+     * @param startTime the start time in milliseconds since the epoch
+     * @param duration the duration in nanoseconds
+     */
+    public LoadEvent(final LoadPhase phase, final String name, final URL pageUrl, final long bytes,
+            final long startTime, final long duration) {
+        phase_ = phase;
+        name_ = name;
+        pageUrl_ = pageUrl;
+        bytes_ = bytes;
+        startTime_ = startTime;
+        duration_ = duration;
+    }
+
+    /**
+     * Returns the phase.
+     * @return the phase
+     */
+    public LoadPhase getPhase() {
+        return phase_;
+    }
+
+    /**
+     * Returns the URL of the request or of the document, or the source name of the script.
+     * @return the name
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Returns the URL of the page this phase belongs to.
+     * @return the URL of the page or {@code null} if not known
+     */
+    public URL getPageUrl() {
+        return pageUrl_;
+    }
+
+    /**
+     * Returns the number of bytes (or chars for sources given as string) processed.
+     * @return the number of bytes or {@code -1} if not known
+     */
+    public long getBytes() {
+        return bytes_;
+    }
+
+    /**
+     * Returns the start time.
+     * @return the start time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime_;
+    }
+
+    /**
+     * Returns the duration.
+     * @param unit the unit of the result
+     * @return the duration
+     */
+    public long getDuration(final TimeUnit unit) {
+        return unit.convert(duration_, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return phase_ + " " + name_ + " " + getDuration(TimeUnit.MILLISECONDS) + "ms"
+                + (bytes_ < 0 ? "" : " " + bytes_ + " bytes");
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+/**
+ * The phases of loading a page reported to a {@link LoadTimelineListener}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public enum LoadPhase {
+
+    /** The whole {@link com.gargoylesoftware.htmlunit.WebClient#getPage(java.net.URL)} call. */
+    PAGE,
+
+    /**
+     * A request sent by the {@link com.gargoylesoftware.htmlunit.HttpWebConnection};
+     * the bytes of a streamed response are its declared content length.
+     */
+    NETWORK,
+
+    /** The parsing of an HTML document. */
+    HTML_PARSE,
+
+    /** The compilation of a script. */
+    SCRIPT_COMPILE,
+
+    /** The execution of a script. */
+    SCRIPT_EXECUTE,
+
+    /** The call of a JavaScript function, e.g. an event handler. */
+    FUNCTION_CALL,
+
+    /** The parsing of a style sheet. */
+    CSS_PARSE,
+
+    /** A background job, e.g. a timer or an asynchronous XMLHttpRequest callback. */
+    BACKGROUND_JOB
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Helper for the instrumented code. The callers only take the time (and call this class) if
+ * a {@link LoadTimelineListener} is registered.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class LoadTimeline {
+
+    private static final Log LOG = LogFactory.getLog(LoadTimeline.class);
+
+    /** The page loaded by the current thread. */
+    private static final ThreadLocal<URL> CURRENT_PAGE = new ThreadLocal<>();
+
+    private LoadTimeline() {
+        // util class
+    }
+
+    /**
+     * Marks the start of loading the given page in the current thread; the events without page
+     * fired by this thread are assigned to this page until {@link #exitPage(URL)} is called.
+     * @param pageUrl the URL of the page
+     * @return the previous page, to be passed to {@link #exitPage(URL)}
+     */
+    public static URL enterPage(final URL pageUrl) {
+        final URL previous = CURRENT_PAGE.get();
+        CURRENT_PAGE.set(pageUrl);
+        return previous;
+    }
+
+    /**
+     * Marks the end of loading a page in the current thread.
+     * @param previous the value returned by {@link #enterPage(URL)}
+     */
+    public static void exitPage(final URL previous) {
+        if (previous == null) {
+            CURRENT_PAGE.remove();
+        }
+        else {
+            CURRENT_PAGE.set(previous);
+        }
+    }
+
+    /**
+     * Informs the listener about a finished phase.
+     * @param listener the listener
+     * @param phase the phase
+     * @param name the URL or the source name
+     * @param pageUrl the URL of the page or {@code null} to use the page loaded by the current thread
+     * @param bytes the number of bytes processed or {@code -1} if not known
+     * @param start the start of the phase as returned by {@link System#nanoTime()}
+     */
+    public static void fire(final LoadTimelineListener listener, final LoadPhase phase, final String name,
+            final URL pageUrl, final long bytes, final long start) {
+        final long duration = System.nanoTime() - start;
+        final long startTime = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(duration);
+        final URL page = pageUrl == null ? CURRENT_PAGE.get() : pageUrl;
+        try {
+            listener.phaseFinished(new LoadEvent(phase, name, page, bytes, startTime, duration));
+        }
+        catch (final RuntimeException e) {
+            LOG.error("Exception in LoadTimelineListener", e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link LoadTimelineListener} collecting the events per page and a histogram of the durations per
+ * {@link LoadPhase}; {@link #getReport()} returns both as text.
+ * The events are kept until {@link #clear()} is called.
+ *
+ * <pre>
+ * final LoadTimelineAggregator aggregator = new LoadTimelineAggregator();
+ * webClient.setLoadTimelineListener(aggregator);
+ * webClient.getPage(url);
+ * final String report = aggregator.getReport();
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LoadTimelineAggregator implements LoadTimelineListener {
+
+    /** The number of buckets of the histograms; bucket i counts the durations below 2^i ms. */
+    public static final int BUCKETS = 16;
+
+    private final Map<String, List<LoadEvent>> timelines_ = new LinkedHashMap<>();
+    private final Map<LoadPhase, long[]> histograms_ = new EnumMap<>(LoadPhase.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void phaseFinished(final LoadEvent event) {
+        timelines_.computeIfAbsent(getKey(event.getPageUrl()), k -> new ArrayList<>()).add(event);
+        histograms_.computeIfAbsent(event.getPhase(), k -> new long[BUCKETS])[getBucket(event)]++;
+    }
+
+    private static String getKey(final URL pageUrl) {
+        // don't use URL as key, URL.equals() resolves the host
+        return pageUrl == null ? null : pageUrl.toExternalForm();
+    }
+
+    private static int getBucket(final LoadEvent event) {
+        final long millis = event.getDuration(TimeUnit.MILLISECONDS);
+        final int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Returns the URLs of the pages with events, in the order of their first event;
+     * the events without page are listed with {@code null}.
+     * @return the URLs of the pages
+     */
+    public synchronized List<String> getPages() {
+        return new ArrayList<>(timelines_.keySet());
+    }
+
+    /**
+     * Returns the events of the given page, ordered by start time.
+     * @param pageUrl the URL of the page or {@code null} for the events without page
+     * @return the events
+     */
+    public synchronized List<LoadEvent> getTimeline(final String pageUrl) {
+        final List<LoadEvent> events = timelines_.get(pageUrl);
+        if (events == null) {
+            return new ArrayList<>();
+        }
+        final List<LoadEvent> timeline = new ArrayList<>(events);
+        timeline.sort(Comparator.comparingLong(LoadEvent::getStartTime));
+        return timeline;
+    }
+
+    /**
+     * Returns the histogram of the durations of the given phase; the element i is the number of
+     * events with a duration below 2^i milliseconds (and not below 2^(i-1)), the last element
+     * counts all longer events.
+     * @param phase the phase
+     * @return the histogram
+     */
+    public synchronized long[] getHistogram(final LoadPhase phase) {
+        final long[] histogram = histograms_.get(phase);
+        if (histogram == null) {
+            return new long[BUCKETS];
+        }
+        return histogram.clone();
+    }
+
+    /**
+     * Returns the timelines and the histograms as text.
+     * @return the report
+     */
+    public synchronized String getReport() {
+        final String newline = System.lineSeparator();
+        final StringBuilder report = new StringBuilder();
+        for (final String page : timelines_.keySet()) {
+            report.append("Page ").append(page == null ? "(unknown)" : page).append(newline);
+
+            final List<LoadEvent> timeline = getTimeline(page);
+            final long start = timeline.get(0).getStartTime();
+            for (final LoadEvent event : timeline) {
+                report.append("  +").append(event.getStartTime() - start).append("ms ")
+                    .append(event).append(newline);
+            }
+        }
+
+        for (final Map.Entry<LoadPhase, long[]> entry : histograms_.entrySet()) {
+            report.append(entry.getKey()).append(':');
+            final long[] histogram = entry.getValue();
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] > 0) {
+                    report.append(' ').append(i == BUCKETS - 1 ? ">=" + (1L << (i - 1)) : "<" + (1L << i))
+                        .append("ms=").append(histogram[i]);
+                }
+            }
+            report.append(newline);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Removes all events.
+     */
+    public synchronized void clear() {
+        timelines_.clear();
+        histograms_.clear();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+/**
+ * A listener informed about the phases of loading pages, see
+ * {@link com.gargoylesoftware.htmlunit.WebClient#setLoadTimelineListener(LoadTimelineListener)}.
+ * The listener is called in the thread that did the work (e.g. the thread of the background jobs),
+ * the implementations have to be thread safe and fast.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@FunctionalInterface
+public interface LoadTimelineListener {
+
+    /**
+     * Informs about a finished phase. Phases may be nested (e.g. the execution of a script
+     * during the parsing of the page); the duration of the outer phase includes the inner one.
+     * @param event the event
+     */
+    void phaseFinished(LoadEvent event);
+}
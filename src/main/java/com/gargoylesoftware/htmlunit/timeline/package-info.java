@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Instrumentation of the page loading; a {@link com.gargoylesoftware.htmlunit.timeline.LoadTimelineListener}
+ * registered on the {@link com.gargoylesoftware.htmlunit.WebClient} is informed about the time spent in the
+ * network, the HTML parser, the JavaScript engine, the CSS parser and the background jobs.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
@@ -17,21 +17,28 @@ package com.gargoylesoftware.htmlunit;
 import static com.gargoylesoftware.htmlunit.HttpHeader.CACHE_CONTROL;
 import static com.gargoylesoftware.htmlunit.HttpHeader.EXPIRES;
 import static com.gargoylesoftware.htmlunit.HttpHeader.LAST_MODIFIED;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static org.apache.http.client.utils.DateUtils.formatDate;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.junit.BrowserRunner.Alerts;
@@ -719,7 +726,8 @@ public class CacheTest extends SimpleWebTestCase {
         // wait for expires
         Thread.sleep(2 * 1000);
         client.getPage(pageUrl);
-        assertEquals(0, client.getCache().getSize());
+        // the expired responses are loaded again but kept for revalidation because of the Last-Modified header
+        assertEquals(2, client.getCache().getSize());
         assertEquals(4, connection.getRequestCount());
     }
 
@@ -811,4 +819,169 @@ public class CacheTest extends SimpleWebTestCase {
         assertEquals(1, response1.getCallCount("cleanUp"));
         assertEquals(6, response1.getCallCount("getResponseHeaderValue"));
     }
+
+    /**
+     * Ensures hits, misses and evictions are counted.
+     */
+    @Test
+    public void statistics() {
+        final Cache cache = new Cache();
+        cache.setMaxSize(1);
+
+        cache.cache(".a { color: red; }", new CSSStyleSheetImpl());
+        assertNotNull(cache.getCachedStyleSheet(".a { color: red; }"));
+        assertNull(cache.getCachedStyleSheet(".b { color: red; }"));
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(0L, cache.getEvictionCount());
+
+        cache.cache(".b { color: red; }", new CSSStyleSheetImpl());
+        assertEquals(1, cache.getSize());
+        assertEquals(1L, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(0L, cache.getMissCount());
+        assertEquals(0L, cache.getEvictionCount());
+    }
+
+    /**
+     * Ensures the memory budget of every entry type is maintained.
+     */
+    @Test
+    public void maxWeight() {
+        final Cache cache = new Cache();
+        cache.setMaxWeight(Cache.EntryType.STYLESHEET, 2000);
+
+        for (int i = 0; i < 10; i++) {
+            cache.cache(".a" + i + " { color: red; }", new CSSStyleSheetImpl());
+        }
+        assertTrue(cache.getWeight(Cache.EntryType.STYLESHEET) <= 2000);
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(0L, cache.getWeight(Cache.EntryType.RESPONSE));
+
+        // too large to be cached at all
+        final String css = StringUtils.repeat(".a { color: red; }", 100);
+        cache.cache(css, new CSSStyleSheetImpl());
+        assertNull(cache.getCachedStyleSheet(css));
+
+        cache.setMaxWeight(Cache.EntryType.STYLESHEET, 0);
+        assertEquals(0, cache.getSize());
+        assertEquals(0L, cache.getWeight(Cache.EntryType.STYLESHEET));
+    }
+
+    /**
+     * Ensures a few large script bundles are kept using the default memory budget.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void largeScriptsWithDefaultMaxWeight() throws Exception {
+        final Cache cache = new Cache();
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(EXPIRES, formatDate(DateUtils.addHours(new Date(), 1))));
+        final byte[] bundle = new byte[2 * 1024 * 1024];
+
+        final List<WebRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final WebRequest request = new WebRequest(new URL(URL_FIRST, "bundle" + i + ".js"));
+            final WebResponse response = new WebResponse(
+                    new WebResponseData(bundle, 200, "OK", headers), request, 100);
+            assertTrue(cache.cacheIfPossible(request, response, "compiled" + i));
+            requests.add(request);
+        }
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals("compiled" + i, cache.getCachedObject(requests.get(i)));
+        }
+        assertEquals(0L, cache.getEvictionCount());
+    }
+
+    /**
+     * Ensures frequently used entries are not evicted by entries used only once.
+     */
+    @Test
+    public void frequentlyUsedEntriesAreKept() {
+        final Cache cache = new Cache();
+        cache.setMaxSize(2);
+
+        cache.cache(".frequent { color: red; }", new CSSStyleSheetImpl());
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.getCachedStyleSheet(".frequent { color: red; }"));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            cache.cache(".a" + i + " { color: red; }", new CSSStyleSheetImpl());
+        }
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.getCachedStyleSheet(".frequent { color: red; }"));
+        assertNotNull(cache.getCachedStyleSheet(".a9 { color: red; }"));
+    }
+
+    /**
+     * Ensures stale responses with an ETag are revalidated and reused after a 304 response.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateStaleResponse() throws Exception {
+        final List<String> conditionalHeaders = new ArrayList<>();
+        final MockWebConnection connection = new MockWebConnection() {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                conditionalHeaders.add(request.getAdditionalHeaders().get(HttpHeader.IF_NONE_MATCH));
+                return super.getResponse(request);
+            }
+        };
+        final WebClient client = getWebClient();
+        client.setWebConnection(connection);
+
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.ETAG, "\"v1\""));
+        headers.add(new NameValuePair(CACHE_CONTROL, "no-cache"));
+        connection.setResponse(URL_FIRST, "<html><body>v1</body></html>", 200, "OK", MimeType.TEXT_HTML, headers);
+
+        HtmlPage page = client.getPage(URL_FIRST);
+        assertEquals("v1", page.asNormalizedText());
+        assertEquals(1, client.getCache().getSize());
+
+        connection.setResponse(URL_FIRST, "", 304, "Not Modified", MimeType.TEXT_HTML, headers);
+        page = client.getPage(URL_FIRST);
+        assertEquals("v1", page.asNormalizedText());
+        assertEquals(200, page.getWebResponse().getStatusCode());
+
+        assertEquals(2, connection.getRequestCount());
+        assertEquals(Arrays.asList(null, "\"v1\""), conditionalHeaders);
+    }
+
+    /**
+     * The revalidated response shares the memory-mapped content of the stale response;
+     * cleaning up one of them must not delete the content of the other one.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidatedSharesContent() throws Exception {
+        final byte[] bytes = "Hello HtmlUnit".getBytes(ISO_8859_1);
+        final DownloadedContent content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 5);
+        assertTrue(content instanceof DownloadedContent.MemoryMapped);
+
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.ETAG, "\"v1\""));
+        final WebRequest request = new WebRequest(URL_FIRST);
+        final WebResponse staleResponse = new WebResponse(
+                new WebResponseData(content, 200, "OK", headers), request, 0);
+        final WebResponse notModifiedResponse = new WebResponse(
+                new WebResponseData(new byte[0], 304, "Not Modified", headers), request, 0);
+
+        final WebResponse revalidated = new Cache().revalidated(request, staleResponse, notModifiedResponse);
+        staleResponse.cleanUp();
+        assertEquals("Hello HtmlUnit", revalidated.getContentAsString());
+
+        revalidated.cleanUp();
+        try {
+            content.getInputStream();
+            fail("IOException expected");
+        }
+        catch (final IOException e) {
+            // expected
+        }
+    }
 }
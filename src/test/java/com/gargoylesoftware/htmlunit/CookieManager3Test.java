@@ -18,7 +18,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -91,4 +94,157 @@ public class CookieManager3Test {
         assertTrue(mgr.clearExpired(new Date(System.currentTimeMillis() + 10_000)));
         assertEquals(1, mgr.getCookies().size());
     }
+
+    /**
+     * Verifies the preselection of the cookies per host.
+     */
+    @Test
+    public void getCookiesForHost() {
+        final CookieManager mgr = new CookieManager();
+        final Cookie root = new Cookie(".example.com", "root", "1");
+        final Cookie www = new Cookie("www.example.com", "www", "2");
+        final Cookie other = new Cookie("example.org", "other", "3");
+        final Cookie local = new Cookie("localhost", "local", "4");
+        final Cookie upper = new Cookie("Sub.Example.COM", "upper", "5");
+        mgr.addCookie(root);
+        mgr.addCookie(local);
+        mgr.addCookie(www);
+        mgr.addCookie(other);
+        mgr.addCookie(upper);
+
+        assertEquals(Arrays.asList(root, www, upper), Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+        assertEquals(Arrays.asList(root, www, upper), Arrays.asList(toArray(mgr.getCookiesForHost("EXAMPLE.com"))));
+        assertEquals(Arrays.asList(other), Arrays.asList(toArray(mgr.getCookiesForHost("a.b.example.org"))));
+        assertEquals(Arrays.asList(local), Arrays.asList(toArray(mgr.getCookiesForHost("localhost"))));
+        assertEquals(Arrays.asList(local), Arrays.asList(toArray(mgr.getCookiesForHost("my.localhost"))));
+        assertTrue(mgr.getCookiesForHost("example.net").isEmpty());
+
+        // keep the order of all cookies, also if the single label domain bucket is involved
+        final Cookie com = new Cookie("com", "com", "6");
+        mgr.addCookie(com);
+        assertEquals(Arrays.asList(root, www, upper, com),
+                Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+
+        mgr.removeCookie(www);
+        assertEquals(Arrays.asList(root, upper, com),
+                Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+
+        mgr.setCookiesEnabled(false);
+        assertTrue(mgr.getCookiesForHost("www.example.com").isEmpty());
+    }
+
+    /**
+     * Verifies that the preselection of the cookies per host uses the registrable domain
+     * and not only the last two labels of the domain.
+     */
+    @Test
+    public void getCookiesForHostPublicSuffix() {
+        final CookieManager mgr = new CookieManager();
+        final Cookie first = new Cookie(".first.co.uk", "first", "1");
+        final Cookie second = new Cookie("www.second.co.uk", "second", "2");
+        final Cookie suffix = new Cookie("co.uk", "suffix", "3");
+        final Cookie ip = new Cookie("192.168.0.1", "ip", "4");
+        final Cookie pages = new Cookie("user.github.io", "pages", "5");
+        mgr.addCookie(first);
+        mgr.addCookie(second);
+        mgr.addCookie(suffix);
+        mgr.addCookie(ip);
+        mgr.addCookie(pages);
+
+        assertEquals(Arrays.asList(first, suffix), Arrays.asList(toArray(mgr.getCookiesForHost("www.first.co.uk"))));
+        assertEquals(Arrays.asList(second, suffix), Arrays.asList(toArray(mgr.getCookiesForHost("www.second.co.uk"))));
+        assertEquals(Arrays.asList(suffix), Arrays.asList(toArray(mgr.getCookiesForHost("third.co.uk"))));
+        assertEquals(Arrays.asList(ip), Arrays.asList(toArray(mgr.getCookiesForHost("192.168.0.1"))));
+        assertTrue(mgr.getCookiesForHost("10.168.0.1").isEmpty());
+        assertEquals(Arrays.asList(pages), Arrays.asList(toArray(mgr.getCookiesForHost("user.github.io"))));
+        assertTrue(mgr.getCookiesForHost("other.github.io").isEmpty());
+    }
+
+    /**
+     * Verifies that the preselection of the cookies per host follows the changes of the cookies
+     * once the index is built.
+     */
+    @Test
+    public void getCookiesForHostAfterChanges() {
+        final CookieManager mgr = new CookieManager();
+        final Cookie first = new Cookie(".example.com", "first", "1");
+        final Cookie second = new Cookie("www.example.com", "second", "2");
+        mgr.addCookie(first);
+        mgr.addCookie(second);
+        assertEquals(Arrays.asList(first, second), Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+
+        // replacing a cookie moves it to the end
+        final Cookie replaced = new Cookie(".example.com", "first", "3");
+        mgr.addCookie(replaced);
+        final Cookie[] cookies = toArray(mgr.getCookiesForHost("www.example.com"));
+        assertEquals(2, cookies.length);
+        assertEquals(second, cookies[0]);
+        assertEquals("3", cookies[1].getValue());
+
+        final Cookie expiring = new Cookie("example.com", "expiring", "4", "/",
+                new Date(System.currentTimeMillis() + 1000), false);
+        mgr.addCookie(expiring);
+        assertEquals(3, mgr.getCookiesForHost("example.com").size());
+        assertTrue(mgr.clearExpired(new Date(System.currentTimeMillis() + 2000)));
+        assertEquals(Arrays.asList(second, replaced), Arrays.asList(toArray(mgr.getCookiesForHost("example.com"))));
+
+        mgr.removeCookie(second);
+        mgr.removeCookie(replaced);
+        assertTrue(mgr.getCookiesForHost("example.com").isEmpty());
+
+        mgr.addCookie(first);
+        mgr.clearCookies();
+        assertTrue(mgr.getCookiesForHost("example.com").isEmpty());
+        mgr.addCookie(second);
+        assertEquals(Arrays.asList(second), Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+    }
+
+    /**
+     * Verifies that the preselection of the cookies per host uses an overridden {@link CookieManager#getCookies()}.
+     */
+    @Test
+    public void getCookiesForHostOverriddenGetCookies() {
+        final Cookie root = new Cookie(".example.com", "root", "1");
+        final Cookie other = new Cookie("example.org", "other", "2");
+        final CookieManager mgr = new CookieManager() {
+            @Override
+            public Set<Cookie> getCookies() {
+                return new LinkedHashSet<>(Arrays.asList(root, other));
+            }
+        };
+
+        assertEquals(Arrays.asList(root), Arrays.asList(toArray(mgr.getCookiesForHost("www.example.com"))));
+        assertEquals(Arrays.asList(other), Arrays.asList(toArray(mgr.getCookiesForHost("example.org"))));
+        assertTrue(mgr.getCookiesForHost("example.net").isEmpty());
+    }
+
+    /**
+     * Verifies that replaced and removed cookies do not influence the expiration of the others.
+     */
+    @Test
+    public void clearExpiredAfterReplace() {
+        final long now = System.currentTimeMillis();
+        final CookieManager mgr = new CookieManager();
+        mgr.addCookie(new Cookie("example.com", "a", "1", "/", new Date(now + 1_000), false));
+        mgr.addCookie(new Cookie("example.com", "b", "1", "/", new Date(now + 2_000), false));
+        mgr.addCookie(new Cookie("example.com", "c", "1", "/", null, false));
+
+        // replace 'a' with a later expiration
+        mgr.addCookie(new Cookie("example.com", "a", "2", "/", new Date(now + 10_000), false));
+        assertFalse(mgr.clearExpired(new Date(now + 1_500)));
+        assertEquals(3, mgr.getCookies().size());
+
+        assertTrue(mgr.clearExpired(new Date(now + 5_000)));
+        assertEquals(2, mgr.getCookies().size());
+        assertEquals("2", mgr.getCookie("a").getValue());
+
+        mgr.removeCookie(mgr.getCookie("a"));
+        assertFalse(mgr.clearExpired(new Date(now + 20_000)));
+        assertEquals(1, mgr.getCookies().size());
+        assertEquals("c", mgr.getCookies().iterator().next().getName());
+    }
+
+    private static Cookie[] toArray(final Set<Cookie> cookies) {
+        return cookies.toArray(new Cookie[0]);
+    }
 }
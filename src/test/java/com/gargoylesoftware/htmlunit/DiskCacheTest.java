@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static com.gargoylesoftware.htmlunit.HttpHeader.EXPIRES;
+import static org.apache.http.client.utils.DateUtils.formatDate;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Tests for {@link DiskCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class DiskCacheTest extends SimpleWebTestCase {
+
+    /** Provides the cache directory. */
+    @Rule
+    public final TemporaryFolder tmpFolderProvider_ = new TemporaryFolder();
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void responsesSurviveRestart() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            final MockWebConnection connection = createConnection(URL_FIRST);
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(diskCache);
+
+            client.getPage(URL_FIRST);
+            assertEquals(1, connection.getRequestCount());
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            final MockWebConnection connection = new MockWebConnection();
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(diskCache);
+
+            final HtmlPage page = client.getPage(URL_FIRST);
+            assertEquals("cached", page.asNormalizedText());
+            assertEquals(0, connection.getRequestCount());
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sharedDirectory() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+
+        try (DiskCache reader = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            final MockWebConnection connection = new MockWebConnection();
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(reader);
+
+            try (DiskCache writer = new DiskCache(folder);
+                    WebClient writingClient = new WebClient(getBrowserVersion())) {
+                writingClient.setWebConnection(createConnection(URL_FIRST));
+                writingClient.getCache().setDiskCache(writer);
+                writingClient.getPage(URL_FIRST);
+            }
+
+            reader.refresh();
+            final HtmlPage page = client.getPage(URL_FIRST);
+            assertEquals("cached", page.asNormalizedText());
+            assertEquals(0, connection.getRequestCount());
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxSize() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            diskCache.setSegmentSize(100);
+            diskCache.setMaxSize(1000);
+            client.getCache().setDiskCache(diskCache);
+
+            final MockWebConnection connection = createConnection(URL_FIRST);
+            client.setWebConnection(connection);
+            client.getPage(URL_FIRST);
+            for (int i = 0; i < 20; i++) {
+                final URL url = new URL(URL_FIRST, "page" + i + ".html");
+                connection.setResponse(url, "<html><body>page</body></html>", 200, "OK",
+                        MimeType.TEXT_HTML, createHeaders());
+                client.getPage(url);
+            }
+            diskCache.close();
+
+            assertTrue(diskCache.getSize() <= 1000);
+            assertNull(diskCache.get(URL_FIRST.toExternalForm()));
+            assertNotNull(diskCache.get(new URL(URL_FIRST, "page19.html").toExternalForm()));
+
+            // the index contains the entries of the remaining segments only
+            assertTrue(new File(folder, "index").length() < 1000);
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder)) {
+            assertNull(diskCache.get(URL_FIRST.toExternalForm()));
+            assertNotNull(diskCache.get(new URL(URL_FIRST, "page19.html").toExternalForm()));
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void longHeader() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+        final String value = StringUtils.repeat('x', 100_000);
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            final List<NameValuePair> headers = createHeaders();
+            headers.add(new NameValuePair("X-Long", value));
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setResponse(URL_FIRST, "<html><body>cached</body></html>", 200, "OK",
+                    MimeType.TEXT_HTML, headers);
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(diskCache);
+            client.getPage(URL_FIRST);
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder)) {
+            final DiskCache.StoredResponse stored = diskCache.get(URL_FIRST.toExternalForm());
+            assertNotNull(stored);
+            assertTrue(stored.getResponseData().getResponseHeaders().contains(new NameValuePair("X-Long", value)));
+        }
+    }
+
+    /**
+     * Bodies larger than a segment are not stored.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void largeBodyNotStored() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+        final URL largeUrl = new URL(URL_FIRST, "large.html");
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            diskCache.setSegmentSize(1000);
+            final MockWebConnection connection = createConnection(URL_FIRST);
+            connection.setResponse(largeUrl, "<html><body>" + StringUtils.repeat('x', 2000) + "</body></html>",
+                    200, "OK", MimeType.TEXT_HTML, createHeaders());
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(diskCache);
+
+            client.getPage(URL_FIRST);
+            client.getPage(largeUrl);
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder)) {
+            assertNotNull(diskCache.get(URL_FIRST.toExternalForm()));
+            assertNull(diskCache.get(largeUrl.toExternalForm()));
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void privateNotStored() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            final List<NameValuePair> headers = createHeaders();
+            headers.add(new NameValuePair(HttpHeader.CACHE_CONTROL, "private, max-age=3600"));
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setResponse(URL_FIRST, "<html><body>private</body></html>", 200, "OK",
+                    MimeType.TEXT_HTML, headers);
+            client.setWebConnection(connection);
+            client.getCache().setDiskCache(diskCache);
+
+            client.getPage(URL_FIRST);
+            assertEquals(1, client.getCache().getSize());
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder)) {
+            assertNull(diskCache.get(URL_FIRST.toExternalForm()));
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void authorizationNotStored() throws Exception {
+        final File folder = tmpFolderProvider_.newFolder("cache");
+
+        try (DiskCache diskCache = new DiskCache(folder);
+                WebClient client = new WebClient(getBrowserVersion())) {
+            client.setWebConnection(createConnection(URL_FIRST));
+            client.getCache().setDiskCache(diskCache);
+
+            final WebRequest request = new WebRequest(URL_FIRST);
+            request.setAdditionalHeader(HttpHeader.AUTHORIZATION, "Basic dXNlcjpwYXNz");
+            client.getPage(request);
+        }
+
+        try (DiskCache diskCache = new DiskCache(folder)) {
+            assertNull(diskCache.get(URL_FIRST.toExternalForm()));
+        }
+    }
+
+    private static MockWebConnection createConnection(final URL url) {
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "<html><body>cached</body></html>", 200, "OK",
+                MimeType.TEXT_HTML, createHeaders());
+        return connection;
+    }
+
+    private static List<NameValuePair> createHeaders() {
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(EXPIRES, formatDate(DateUtils.addHours(new Date(), 1))));
+        return headers;
+    }
+}
@@ -14,6 +14,9 @@
  */
 package com.gargoylesoftware.htmlunit;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedInputStream;
@@ -22,14 +25,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -43,11 +51,13 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
+import org.apache.http.pool.PoolStats;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -259,6 +269,88 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         }
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void downloadContentInMemory() throws Exception {
+        final byte[] bytes = "Hello HtmlUnit".getBytes(ISO_8859_1);
+
+        DownloadedContent content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 100);
+        assertTrue(content instanceof DownloadedContent.InMemory);
+        assertEquals((long) bytes.length, content.length());
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+
+        content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 100, bytes.length);
+        assertTrue(content instanceof DownloadedContent.InMemory);
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+
+        // wrong content length
+        content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 100, 4);
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+        content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 100, 50);
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void downloadContentMemoryMapped() throws Exception {
+        final byte[] bytes = "Hello HtmlUnit".getBytes(ISO_8859_1);
+
+        final DownloadedContent content = HttpWebConnection.downloadContent(new ByteArrayInputStream(bytes), 5);
+        assertTrue(content instanceof DownloadedContent.MemoryMapped);
+        assertEquals((long) bytes.length, content.length());
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+
+        ((DownloadedContent.MemoryMapped) content).retain();
+        content.cleanUp();
+        assertEquals("Hello HtmlUnit", IOUtils.toString(content.getInputStream(), ISO_8859_1));
+
+        content.cleanUp();
+        try {
+            content.getInputStream();
+            fail("IOException expected");
+        }
+        catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that the connections are pooled and shared by all requests.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void connectionPoolStats() throws Exception {
+        startWebServer("./");
+
+        final WebClient webClient = getWebClient();
+        webClient.getOptions().setMaxConnectionsTotal(7);
+        webClient.getOptions().setMaxConnectionsPerRoute(3);
+        try (HttpWebConnection webConnection = new HttpWebConnection(webClient)) {
+            webClient.setWebConnection(webConnection);
+            assertEquals(0, webConnection.getConnectionPoolStats().getAvailable());
+
+            webClient.getPage(URL_FIRST + "LICENSE.txt");
+            webClient.getPage(URL_FIRST + "pom.xml");
+
+            final PoolStats stats = webConnection.getConnectionPoolStats();
+            assertEquals(0, stats.getLeased());
+            assertEquals(0, stats.getPending());
+            assertEquals(1, stats.getAvailable());
+            assertEquals(7, stats.getMax());
+
+            final Map<HttpRoute, PoolStats> perRoute = webConnection.getConnectionPoolStatsPerRoute();
+            assertEquals(1, perRoute.size());
+            final PoolStats routeStats = perRoute.values().iterator().next();
+            assertEquals(1, routeStats.getAvailable());
+            assertEquals(3, routeStats.getMax());
+        }
+    }
+
     /**
      * Test that the right file part is built for a file that doesn't exist.
      * @throws Exception if the test fails
@@ -367,6 +459,149 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         assertTrue(page.asNormalizedText().contains("key1=value1"));
     }
 
+    /**
+     * The parser has to process the first part of the page while the server still waits for the alert.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void streamingParse() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/test", StreamingServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient client = getWebClient();
+        client.getOptions().setStreamingParseEnabled(true);
+
+        StreamingServlet.ALERTED_ = new CountDownLatch(1);
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler((page, message) -> {
+            collectedAlerts.add(message);
+            StreamingServlet.ALERTED_.countDown();
+        });
+
+        final HtmlPage page = client.getPage(URL_FIRST + "test");
+        assertEquals(Arrays.asList("first", "true"), collectedAlerts);
+        assertEquals("\u00e4 \u00f6 \u00fc", page.getTitleText());
+        assertEquals("done", page.getBody().asNormalizedText());
+    }
+
+    /**
+     * Caching a response must not wait for the end of a streamed body.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void streamingParseCacheable() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/test", StreamingCacheableServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient client = getWebClient();
+        client.getOptions().setStreamingParseEnabled(true);
+
+        StreamingServlet.ALERTED_ = new CountDownLatch(1);
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler((page, message) -> {
+            collectedAlerts.add(message);
+            StreamingServlet.ALERTED_.countDown();
+        });
+
+        final HtmlPage page = client.getPage(URL_FIRST + "test");
+        assertEquals(Arrays.asList("first", "true"), collectedAlerts);
+        assertEquals("done", page.getBody().asNormalizedText());
+        assertEquals(1, client.getCache().getSize());
+    }
+
+    /**
+     * Servlet for {@link #streamingParseCacheable()}.
+     */
+    public static class StreamingCacheableServlet extends StreamingServlet {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            response.setHeader(HttpHeader.ETAG, "\"1\"");
+            super.doGet(request, response);
+        }
+    }
+
+    /**
+     * A streamed body larger than {@link WebClientOptions#getMaxInMemory()} is moved to a file.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void streamingParseLargeContent() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/test", StreamingLargeServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient client = getWebClient();
+        client.getOptions().setStreamingParseEnabled(true);
+        client.getOptions().setMaxInMemory(1000);
+
+        final HtmlPage page = client.getPage(URL_FIRST + "test");
+        assertEquals(StreamingLargeServlet.LENGTH, page.getBody().asNormalizedText().length());
+        assertEquals(StreamingLargeServlet.LENGTH + 26L, page.getWebResponse().getContentLength());
+    }
+
+    /**
+     * Servlet for {@link #streamingParseLargeContent()}.
+     */
+    public static class StreamingLargeServlet extends HttpServlet {
+        private static final int LENGTH = 100_000;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            response.setContentType(MimeType.TEXT_HTML);
+            final OutputStream out = response.getOutputStream();
+            out.write("<html><body>".getBytes(UTF_8));
+            for (int i = 0; i < LENGTH / 100; i++) {
+                out.write(StringUtils.repeat('x', 100).getBytes(UTF_8));
+                out.flush();
+            }
+            out.write("</body></html>".getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * Servlet for {@link #streamingParse()}.
+     */
+    public static class StreamingServlet extends HttpServlet {
+        private static CountDownLatch ALERTED_;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            response.setContentType(MimeType.TEXT_HTML);
+            final OutputStream out = response.getOutputStream();
+            out.write(("<html><head>\n"
+                    + "<meta charset='UTF-8'>\n"
+                    + "<title>\u00e4 \u00f6 \u00fc</title>\n"
+                    + "<script>alert('first');</script>\n").getBytes(UTF_8));
+            out.flush();
+
+            boolean alerted;
+            try {
+                alerted = ALERTED_.await(10, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException e) {
+                alerted = false;
+            }
+
+            out.write(("<script>alert('" + alerted + "');</script>\n"
+                    + "</head><body>done</body></html>").getBytes(UTF_8));
+        }
+    }
+
     /**
      * Servlet for {@link #cookiesEnabledAfterDisable()}.
      */
@@ -430,6 +665,58 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         }
     }
 
+    /**
+     * The shared http client is rebuilt if the options used to build it are changed after the first request.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void optionsChangedAfterFirstRequest() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/test", RemotePortServlet.class);
+        servlets.put("/slow", SlowServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient client = getWebClient();
+        final String firstPort = ((HtmlPage) client.getPage(URL_FIRST + "test")).asNormalizedText();
+        assertEquals(firstPort, ((HtmlPage) client.getPage(URL_FIRST + "test")).asNormalizedText());
+
+        // new SSL settings need a new connection manager, the next request uses a new connection
+        client.getOptions().setUseInsecureSSL(true);
+        assertNotEquals(firstPort, ((HtmlPage) client.getPage(URL_FIRST + "test")).asNormalizedText());
+
+        client.getPage(URL_FIRST + "slow");
+        client.getOptions().setTimeout(SlowServlet.DELAY / 5);
+        try {
+            client.getPage(URL_FIRST + "slow");
+            fail("SocketTimeoutException expected");
+        }
+        catch (final SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Servlet for {@link #optionsChangedAfterFirstRequest()}.
+     */
+    public static class SlowServlet extends HttpServlet {
+        static final int DELAY = 1_000;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            try {
+                Thread.sleep(DELAY);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setContentType(MimeType.TEXT_HTML);
+            response.getWriter().write("slow");
+        }
+    }
+
     /**
      * Servlet for {@link #remotePort()}.
      */
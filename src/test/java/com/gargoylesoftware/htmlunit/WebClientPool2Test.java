@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Tests for {@link WebClientPool} using a real {@link HttpWebConnection}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class WebClientPool2Test extends WebServerTestCase {
+
+    /**
+     * Verifies that the cookies set by the server for one lease are not sent for the next one.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resetCookiesOfConnection() throws Exception {
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair("Set-Cookie", "tenant=a"));
+        getMockWebConnection().setResponse(URL_FIRST, "<html></html>", 200, "OK", MimeType.TEXT_HTML, headers);
+        getMockWebConnection().setDefaultResponse("<html></html>");
+        startWebServer(getMockWebConnection());
+
+        try (WebClientPool pool = new WebClientPool(getBrowserVersion())) {
+            final WebClient webClient = pool.lease();
+            webClient.getPage(URL_FIRST);
+            webClient.getPage(URL_SECOND);
+            assertEquals("tenant=a",
+                    getMockWebConnection().getLastWebRequest().getAdditionalHeaders().get(HttpHeader.COOKIE));
+            pool.release(webClient);
+
+            assertSame(webClient, pool.lease());
+            webClient.getPage(URL_SECOND);
+            assertNull(getMockWebConnection().getLastWebRequest().getAdditionalHeaders().get(HttpHeader.COOKIE));
+            pool.release(webClient);
+        }
+    }
+}
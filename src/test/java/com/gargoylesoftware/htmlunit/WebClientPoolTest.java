@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Tests for {@link WebClientPool}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class WebClientPoolTest {
+
+    private static final URL URL_FIRST = WebTestCase.URL_FIRST;
+
+    private static final String HTML = "<html><head><script>\n"
+            + "  document.cookie = 'tenant=a';\n"
+            + "  localStorage.setItem('tenant', 'a');\n"
+            + "  alert(localStorage.length);\n"
+            + "</script></head><body></body></html>";
+
+    /**
+     * Verifies that the state of a released client is reset.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void reset() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.getOptions().setCssEnabled(false);
+            pool.getCache().setMaxSize(7);
+
+            final WebClient webClient = pool.lease();
+            assertFalse(webClient.getOptions().isCssEnabled());
+            assertEquals(7, webClient.getCache().getMaxSize());
+
+            final List<String> alerts = new ArrayList<>();
+            webClient.setAlertHandler(new CollectingAlertHandler(alerts));
+            webClient.addRequestHeader("X-Tenant", "a");
+            webClient.getOptions().setCssEnabled(true);
+            webClient.getCache().setMaxSize(3);
+            final HtmlPage page = webClient.getPage(URL_FIRST);
+            assertEquals("1", alerts.get(0));
+            assertEquals(1, webClient.getCookieManager().getCookies().size());
+            webClient.openWindow(URL_FIRST, "second");
+            assertEquals(2, webClient.getTopLevelWindows().size());
+            pool.release(webClient);
+
+            assertSame(webClient, pool.lease());
+            assertEquals(1, webClient.getTopLevelWindows().size());
+            assertNull(webClient.getCurrentWindow().getEnclosedPage());
+            assertNotSame(page.getEnclosingWindow(), webClient.getCurrentWindow());
+            assertTrue(webClient.getCookieManager().getCookies().isEmpty());
+            assertNull(webClient.getAlertHandler());
+            assertFalse(webClient.getOptions().isCssEnabled());
+            assertEquals(7, webClient.getCache().getMaxSize());
+            assertEquals(0, webClient.getCache().getSize());
+
+            // the local storage and the request header are gone
+            final List<String> collectedAlerts = new ArrayList<>();
+            webClient.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+            webClient.getPage(URL_FIRST);
+            assertEquals("1", collectedAlerts.get(0));
+            final MockWebConnection connection = (MockWebConnection) webClient.getWebConnection();
+            assertNull(connection.getLastAdditionalHeaders().get("X-Tenant"));
+            pool.release(webClient);
+
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(2, pool.getLeaseCount());
+            assertEquals(2, pool.getResetCount());
+            assertTrue(pool.getResetTime(TimeUnit.NANOSECONDS) > 0);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void minIdle() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.setMinIdle(2);
+            assertEquals(2, pool.getIdleCount());
+            assertEquals(2, pool.getCreatedCount());
+
+            final WebClient webClient = pool.lease();
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(1, pool.getLeasedCount());
+
+            pool.release(webClient);
+            assertEquals(2, pool.getIdleCount());
+            assertEquals(2, pool.getCreatedCount());
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxIdle() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.setMaxIdle(1);
+            final WebClient webClient1 = pool.lease();
+            final WebClient webClient2 = pool.lease();
+            pool.release(webClient1);
+            pool.release(webClient2);
+
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(1, pool.getDestroyedCount());
+        }
+    }
+
+    /**
+     * Verifies that lowering the maximum number of idle clients frees the capacity for new clients.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxIdleFreesCapacity() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.setMaxTotal(1);
+            final WebClient webClient = pool.lease();
+            pool.release(webClient);
+            assertEquals(1, pool.getIdleCount());
+
+            pool.setMaxIdle(0);
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(1, pool.getDestroyedCount());
+
+            final WebClient webClient2 = pool.lease(10, TimeUnit.MILLISECONDS);
+            assertNotNull(webClient2);
+            assertNotSame(webClient, webClient2);
+            pool.release(webClient2);
+        }
+    }
+
+    /**
+     * Verifies that the connection the client was created with and the JavaScript timeout
+     * of the pool are restored when a client is released.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resetConnectionAndJavaScriptTimeout() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.setJavaScriptTimeout(5_000);
+
+            final WebClient webClient = pool.lease();
+            assertEquals(5_000, webClient.getJavaScriptTimeout());
+            final WebConnection connection = webClient.getWebConnection();
+
+            final MockWebConnection tenantConnection = new MockWebConnection();
+            tenantConnection.setDefaultResponse("<html><body></body></html>");
+            webClient.setWebConnection(tenantConnection);
+            webClient.setJavaScriptTimeout(10);
+            webClient.getPage(URL_FIRST);
+            assertEquals(1, tenantConnection.getRequestCount());
+            pool.release(webClient);
+
+            assertSame(webClient, pool.lease());
+            assertSame(connection, webClient.getWebConnection());
+            assertEquals(5_000, webClient.getJavaScriptTimeout());
+            pool.release(webClient);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxTotal() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            pool.setMaxTotal(1);
+            final WebClient webClient = pool.lease();
+            assertNull(pool.lease(10, TimeUnit.MILLISECONDS));
+
+            final Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                }
+                catch (final InterruptedException e) {
+                    // ignore
+                }
+                pool.release(webClient);
+            });
+            releaser.start();
+            assertSame(webClient, pool.lease(10, TimeUnit.SECONDS));
+            releaser.join();
+
+            assertTrue(pool.getMaxLeaseWaitTime(TimeUnit.MILLISECONDS) >= 50);
+            pool.release(webClient);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void healthCheck() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool()) {
+            final WebClient webClient = pool.lease();
+            pool.release(webClient);
+
+            pool.setHealthCheck(client -> client != webClient);
+            final WebClient webClient2 = pool.lease();
+            assertNotSame(webClient, webClient2);
+            assertEquals(1, pool.getDestroyedCount());
+            pool.release(webClient2);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseUnknownClient() throws Exception {
+        try (WebClientPool pool = new MockWebClientPool();
+                WebClient webClient = new WebClient()) {
+            pool.release(webClient);
+        }
+    }
+
+    private static final class MockWebClientPool extends WebClientPool {
+        MockWebClientPool() {
+            super(BrowserVersion.BEST_SUPPORTED);
+        }
+
+        @Override
+        protected WebClient createWebClient() {
+            final WebClient webClient = super.createWebClient();
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setDefaultResponse(HTML);
+            webClient.setWebConnection(connection);
+            return webClient;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+/**
+ * Tests for {@link CompiledSelector}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CompiledSelectorTest extends SimpleWebTestCase {
+
+    private static final String[] SELECTORS = {
+        "*", "div", "DIV", "#d1", ".a", ".b.c", "div.a", "span.b", ".x\\:y",
+        "[title]", "[title=t1]", "[title='T1' i]", "[title^=t]", "[title$='1']", "[title*=t]",
+        "[lang|=en]", "[lang|=EN i]", "[title~=w2]", "[title~=W2 i]", "[title^='']",
+        "div span", "div > span", "div div span", "#d1 span", "ul li + li", "li ~ li", "li + li + li",
+        ":first-child", ":last-child", ":only-child", ":empty", ":root",
+        "li:nth-child(2)", "li:nth-child(odd)", "li:nth-child(even)", "li:nth-child(2n+1)",
+        "li:nth-child(-n+2)", "li:nth-child(n+2)", "li:nth-child(- n + 3)", "li:nth-child(3n-1)",
+        "li:nth-child(0n+1)", "li:nth-child(0)", "li:nth-last-child(1)", "li:nth-last-child(2n)",
+        "li:nth-of-type(2)", "li:nth-last-of-type(odd)", "p:first-of-type", "p:last-of-type",
+        ":not(div)", "li:not(:first-child)", "div:not(.a) span", ":lang(en)", "input:checked",
+        "input:disabled", "input:enabled", "ul > li:nth-child(2) ~ li", "div :not(p) > span"
+    };
+
+    private static final String HTML = "<html><head></head>\n"
+            + "<body>\n"
+            + "<div id='d1' class='a' lang='en-US' title='t1'>\n"
+            + "  <div class='b c' title='w1 w2'>\n"
+            + "    <span class='b x:y'>text</span><p></p><p>p</p>\n"
+            + "    <div><div><span title='T1'></span></div></div>\n"
+            + "  </div>\n"
+            + "  <span lang='EN'></span>\n"
+            + "</div>\n"
+            + "<ul>\n"
+            + "  <li>1</li><li class='a'>2</li><li>3</li><li>4</li><li>5</li>\n"
+            + "</ul>\n"
+            + "<input type='checkbox' checked><input disabled>\n"
+            + "</body></html>";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameResultAsInterpreter() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+
+        for (final String selectorText : SELECTORS) {
+            final SelectorList selectorList = parse(selectorText);
+            for (final Selector selector : selectorList) {
+                final CompiledSelector compiled = CompiledSelector.compile(selector);
+                for (final DomElement element : page.getDomElementDescendants()) {
+                    final boolean expected = CssStyleSheet.selects(getBrowserVersion(), selector, element,
+                            null, true, true);
+                    assertEquals(selectorText + " - " + element.asXml(), expected,
+                            compiled.selects(getBrowserVersion(), element, null, true, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void pseudoElement() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement span = page.getElementById("d1").getElementsByTagName("span").get(0);
+
+        for (final String selectorText : new String[] {"div span::before", "span::before", "::after"}) {
+            final Selector selector = parse(selectorText).get(0);
+            final CompiledSelector compiled = CompiledSelector.compile(selector);
+            for (final String pseudoElement : new String[] {"::before", ":before", "::after", null}) {
+                assertEquals(selectorText + " - " + pseudoElement,
+                        CssStyleSheet.selects(getBrowserVersion(), selector, span, pseudoElement, false, false),
+                        compiled.selects(getBrowserVersion(), span, pseudoElement, false, false));
+            }
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void deepDescendants() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 200; i++) {
+            html.append("<div>");
+        }
+        html.append("<span id='leaf'></span>");
+        for (int i = 0; i < 200; i++) {
+            html.append("</div>");
+        }
+        html.append("</body></html>");
+
+        final HtmlPage page = loadPage(html.toString());
+        final DomElement leaf = page.getElementById("leaf");
+
+        // without stopping at the first failed ancestor search this takes ages
+        final CompiledSelector compiled = CompiledSelector.compile(parse("p div div div div span").get(0));
+        assertFalse(compiled.selects(getBrowserVersion(), leaf, null, true, true));
+
+        assertTrue(CompiledSelector.compile(parse("body div div div div span").get(0))
+                .selects(getBrowserVersion(), leaf, null, true, true));
+    }
+
+    private static SelectorList parse(final String selectors) throws Exception {
+        final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
+        return parser.parseSelectors(selectors);
+    }
+}
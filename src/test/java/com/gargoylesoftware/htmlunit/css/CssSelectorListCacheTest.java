@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTORALL_NOT_IN_QUIRKS;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.css.parser.CSSException;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+/**
+ * Tests for {@link CssSelectorListCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CssSelectorListCacheTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void hitsAndMisses() throws Exception {
+        final String html = "<html><head></head>\n"
+            + "<body>\n"
+            + "  <div class='item'>1</div>\n"
+            + "  <div class='item'>2</div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+
+        final CssSelectorListCache cache = CssSelectorListCache.getInstance(getBrowserVersion());
+        cache.clear();
+
+        assertEquals(2, page.querySelectorAll("div.item").size());
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, page.querySelectorAll("div.item").size());
+        }
+        assertEquals(10L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+
+        assertEquals(1, page.querySelectorAll("div.item:first-child").size());
+        assertEquals(2L, cache.getMissCount());
+        assertEquals(2, cache.getSize());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void invalidSelectorsAreNotCached() throws Exception {
+        final HtmlPage page = loadPage("<html><body><div></div></body></html>");
+
+        final CssSelectorListCache cache = CssSelectorListCache.getInstance(getBrowserVersion());
+        cache.clear();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                page.querySelectorAll("div[");
+                fail("CSSException expected");
+            }
+            catch (final CSSException e) {
+                // expected
+            }
+        }
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxSize() throws Exception {
+        final HtmlPage page = loadPage("<html><body><div></div></body></html>");
+
+        final CssSelectorListCache cache = CssSelectorListCache.getInstance(getBrowserVersion());
+        cache.clear();
+        try {
+            cache.setMaxSize(2);
+            page.querySelectorAll("div");
+            page.querySelectorAll("p");
+            page.querySelectorAll("span");
+            assertEquals(2, cache.getSize());
+
+            // 'div' was evicted
+            page.querySelectorAll("div");
+            assertEquals(4L, cache.getMissCount());
+        }
+        finally {
+            cache.setMaxSize(CssSelectorListCache.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    /**
+     * The compiled selectors are cached together with the parsed list.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void compiledSelectors() throws Exception {
+        final HtmlPage page = loadPage("<html><body><div class='item'></div></body></html>");
+
+        final CssSelectorListCache cache = CssSelectorListCache.getInstance(getBrowserVersion());
+        cache.clear();
+
+        assertEquals(1, page.querySelectorAll("div.item").size());
+        int documentMode = 9;
+        if (getBrowserVersion().hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
+            documentMode = ((HTMLDocument) page.getScriptableObject()).getDocumentMode();
+        }
+        final SelectorList selectorList = cache.get("div.item", documentMode, false);
+        assertNotNull(selectorList);
+        final CompiledSelector[] compiledSelectors = cache.getCompiledSelectors(selectorList);
+        assertEquals(1, compiledSelectors.length);
+        assertSame(compiledSelectors, cache.getCompiledSelectors(selectorList));
+
+        cache.clear();
+        assertNotSame(compiledSelectors, cache.getCompiledSelectors(selectorList));
+    }
+}
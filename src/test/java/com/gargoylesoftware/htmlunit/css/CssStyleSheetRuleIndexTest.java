@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+/**
+ * Tests for {@link CssStyleSheetRuleIndex}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CssStyleSheetRuleIndexTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void buckets() throws Exception {
+        final HtmlPage page = loadPage("<html><body>\n"
+                + "<div id='d1' class='btn btn-primary' data-toggle='x'></div>\n"
+                + "<div class='other x:y'></div>\n"
+                + "</body></html>");
+        final DomElement d1 = page.getElementById("d1");
+        final DomElement d2 = (DomElement) d1.getNextElementSibling();
+
+        final CssStyleSheetRuleIndex index = new CssStyleSheetRuleIndex();
+        build(index, "*", "div", "span", "#d1", "div#d2", ".btn", ".btn.btn-primary", "a.btn.btn-primary",
+                ".x\\:y", "[data-toggle]", "[DATA-TOGGLE=x]", "[title]", ".btn span", "div::before");
+
+        assertEquals("*, div, *#d1, *.btn, *.btn.btn-primary, a.btn.btn-primary, *[data-toggle],"
+                + " *[DATA-TOGGLE=\"x\"], div::before", selectors(index, d1));
+        assertEquals("*, div, *.x:y, div::before", selectors(index, d2));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void frameworkSizedStyleSheet() throws Exception {
+        final HtmlPage page = loadPage("<html><body>\n"
+                + "<div id='d1' class='btn btn-primary' data-toggle='x'></div>\n"
+                + "</body></html>");
+        final DomElement d1 = page.getElementById("d1");
+
+        // roughly the size and the shape of the bootstrap style sheet
+        final CssStyleSheetRuleIndex index = new CssStyleSheetRuleIndex();
+        for (int i = 0; i < 1000; i++) {
+            add(index, ".btn.btn-" + i, ".col-md-" + i + " > .row", "#id" + i, "[data-x" + i + "]");
+        }
+        build(index, ".btn");
+
+        final List<CssStyleSheetRuleIndex.SelectorEntry> entries = index.getSelectorEntriesFor(d1);
+        assertEquals(1, entries.size());
+        assertEquals("*.btn", entries.get(0).getSelector().toString());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void selectorEntriesIterator() throws Exception {
+        final CssStyleSheetRuleIndex index = new CssStyleSheetRuleIndex();
+        build(index, "*", "div", "span", "#d1", ".btn", ".other", "div.btn", "[title]", ".btn span");
+
+        final StringBuilder result = new StringBuilder();
+        final Iterator<CSSStyleSheetImpl.SelectorEntry> iterator =
+                index.getSelectorEntriesIteratorFor("div", new String[] {"btn"});
+        while (iterator.hasNext()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(iterator.next().getSelector());
+        }
+        assertEquals("*, *#d1, *[title], div, *.btn, div.btn", result.toString());
+    }
+
+    /**
+     * Rules with the same specificity are applied in the order of the style sheet,
+     * even if they are stored in different buckets.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void cascadeOrder() throws Exception {
+        final String html = "<html><head><style>\n"
+                + "  [title] { color: red; }\n"
+                + "  .a { color: green; }\n"
+                + "  #d2 { color: red; }\n"
+                + "  div#d2 { color: blue; }\n"
+                + "  .b { color: red; }\n"
+                + "  [lang] { color: green; }\n"
+                + "</style></head><body>\n"
+                + "<div id='d1' class='a' title='t'></div>\n"
+                + "<div id='d2'></div>\n"
+                + "<div id='d3' class='b' lang='en'></div>\n"
+                + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final WebWindow window = page.getEnclosingWindow();
+        assertEquals("green", window.getComputedStyle(page.getElementById("d1"), null).getStyleAttribute("color"));
+        assertEquals("blue", window.getComputedStyle(page.getElementById("d2"), null).getStyleAttribute("color"));
+        assertEquals("green", window.getComputedStyle(page.getElementById("d3"), null).getStyleAttribute("color"));
+    }
+
+    private static void add(final CssStyleSheetRuleIndex index, final String... selectors) throws Exception {
+        final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
+        for (final String selectorText : selectors) {
+            for (final Selector selector : parser.parseSelectors(selectorText)) {
+                index.add(selector, null);
+            }
+        }
+    }
+
+    private static void build(final CssStyleSheetRuleIndex index, final String... selectors) throws Exception {
+        add(index, selectors);
+        index.build();
+    }
+
+    private static String selectors(final CssStyleSheetRuleIndex index, final DomElement element) {
+        final StringBuilder result = new StringBuilder();
+        for (final CssStyleSheetRuleIndex.SelectorEntry entry : index.getSelectorEntriesFor(element)) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(entry.getSelector());
+        }
+        return result.toString();
+    }
+}
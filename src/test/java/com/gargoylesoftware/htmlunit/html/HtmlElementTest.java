@@ -622,6 +622,44 @@ public class HtmlElementTest extends SimpleWebTestCase {
         assertEquals("myTitle" + 'a', p1.getAttribute("title"));
     }
 
+    /**
+     * Changing the value of an attribute node notifies the listeners like replacing the attribute.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void htmlAttributeChangeListener_ReplaceAttributeNodeValue() throws Exception {
+        final String htmlContent
+            = "<html><head><title>foo</title>\n"
+            + "<script>\n"
+            + "  function clickMe() {\n"
+            + "    var p1 = document.getElementById('p1');\n"
+            + "    p1.getAttributeNode('title').value = 'newTitle';\n"
+            + "  }\n"
+            + "</script>\n"
+            + "</head>\n"
+            + "<body id='myBody'>\n"
+            + "<p id='p1' title='myTitle'></p>\n"
+            + "<input id='myButton' type='button' onclick='clickMe()'>\n"
+            + "</body></html>";
+
+        final String[] expectedValues =
+        {"attributeReplaced: p,title,myTitle",
+            "attributeReplaced: p,title,myTitle",
+            "attributeReplaced: p,title,myTitle"};
+        final HtmlPage page = loadPage(htmlContent);
+        final HtmlBody body = page.getHtmlElementById("myBody");
+        final HtmlElement p1 = page.getHtmlElementById("p1");
+        final HtmlAttributeChangeListenerTestImpl listenerImpl = new HtmlAttributeChangeListenerTestImpl();
+        page.addHtmlAttributeChangeListener(listenerImpl);
+        body.addHtmlAttributeChangeListener(listenerImpl);
+        p1.addHtmlAttributeChangeListener(listenerImpl);
+        final HtmlButtonInput myButton = page.getHtmlElementById("myButton");
+
+        myButton.click();
+        assertEquals(expectedValues, listenerImpl.getCollectedValues());
+        assertEquals("newTitle", p1.getAttribute("title"));
+    }
+
     /**
      * @throws Exception if the test fails
      */
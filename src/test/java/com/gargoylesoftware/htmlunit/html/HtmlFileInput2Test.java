@@ -44,7 +44,7 @@ import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -347,16 +347,13 @@ public class HtmlFileInput2Test extends WebServerTestCase {
             throws NoSuchMethodException, IllegalAccessException,
             InvocationTargetException {
         final Method makeHttpMethod = HttpWebConnection.class.getDeclaredMethod("makeHttpMethod",
-                WebRequest.class, HttpClientBuilder.class);
+                WebRequest.class, HttpClientContext.class);
         makeHttpMethod.setAccessible(true);
 
         final HttpWebConnection con = new HttpWebConnection(client);
 
-        final Method getHttpClientBuilderMethod = HttpWebConnection.class.getDeclaredMethod("getHttpClientBuilder");
-        getHttpClientBuilderMethod.setAccessible(true);
-        final HttpClientBuilder builder = (HttpClientBuilder) getHttpClientBuilderMethod.invoke(con);
-
-        final HttpPost httpPost = (HttpPost) makeHttpMethod.invoke(con, webConnection.getLastWebRequest(), builder);
+        final HttpPost httpPost = (HttpPost) makeHttpMethod.invoke(con, webConnection.getLastWebRequest(),
+                HttpClientContext.create());
         final HttpEntity httpEntity = httpPost.getEntity();
         return httpEntity;
     }
@@ -21,6 +21,9 @@ import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServlet;
@@ -195,6 +198,80 @@ public class HtmlPage4Test extends WebServerTestCase {
         }
     }
 
+    /**
+     * The external scripts are loaded in parallel; every script waits for the requests of the others.
+     * Scripts in comments, inline scripts and templates are not preloaded; IE has no templates
+     * and executes the last script afterwards.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts(DEFAULT = {"true", "true", "true"},
+            IE = {"true", "true", "true", "true"})
+    public void preloadScanner() throws Exception {
+        PreloadScriptServlet.REQUESTS_ = new CountDownLatch(3);
+        PreloadScriptServlet.COUNT_.set(0);
+
+        final Map<String, Class<? extends Servlet>> map = new HashMap<>();
+        map.put("/one.html", PreloadPageServlet.class);
+        map.put("/script.js", PreloadScriptServlet.class);
+        startWebServer(".", null, map);
+
+        try (WebClient client = getWebClient()) {
+            client.getOptions().setPreloadScannerEnabled(true);
+            final CollectingAlertHandler alertHandler = new CollectingAlertHandler();
+            client.setAlertHandler(alertHandler);
+
+            client.getPage(URL_FIRST + "one.html");
+            assertEquals(getExpectedAlerts(), alertHandler.getCollectedAlerts());
+            assertEquals(getExpectedAlerts().length, PreloadScriptServlet.COUNT_.get());
+        }
+    }
+
+    /**
+     * Servlet for {@link #preloadScanner()}.
+     */
+    public static class PreloadPageServlet extends ServletContentWrapper {
+        /** Constructor. */
+        public PreloadPageServlet() {
+            super("<html><head>\n"
+                    + "<script src='script.js?1'></script>\n"
+                    + "<!-- <script src='script.js?commented'></script> -->\n"
+                    + "<script src='script.js?2'></script>\n"
+                    + "<script>var x = '<script src=\"script.js?inline\"></' + 'script>';</script>\n"
+                    + "<script src='script.js?3&amp;x'></script>\n"
+                    + "</head><body>\n"
+                    + "<template><script src='script.js?template'></script></template>\n"
+                    + "</body></html>");
+        }
+    }
+
+    /**
+     * Servlet for {@link #preloadScanner()}.
+     */
+    public static class PreloadScriptServlet extends HttpServlet {
+        private static CountDownLatch REQUESTS_;
+        private static final AtomicInteger COUNT_ = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            COUNT_.incrementAndGet();
+            REQUESTS_.countDown();
+            boolean parallel;
+            try {
+                parallel = REQUESTS_.await(5, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException e) {
+                parallel = false;
+            }
+            response.setContentType(MimeType.APPLICATION_JAVASCRIPT);
+            response.getWriter().write("alert('" + parallel + "');");
+        }
+    }
+
     private static int getTempFiles() {
         final File file = new File(System.getProperty("java.io.tmpdir"));
         final String[] list = file.list(new FilenameFilter() {
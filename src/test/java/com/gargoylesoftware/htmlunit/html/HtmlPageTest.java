@@ -53,6 +53,7 @@ import com.gargoylesoftware.htmlunit.StringWebResponse;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.HtmlElementTest.HtmlAttributeChangeListenerTestImpl;
 import com.gargoylesoftware.htmlunit.javascript.host.WebSocket;
 import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
@@ -1972,4 +1973,92 @@ public class HtmlPageTest extends SimpleWebTestCase {
         page = loadPage(getBrowserVersion(), html, null, new URL(URL_FIRST.toString() + path));
         assertEquals(URL_FIRST.toExternalForm() + path, page.getBaseURL().toExternalForm());
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void computedStylesCacheInvalidation() throws Exception {
+        final String html = "<html><head>\n"
+            + "<style>\n"
+            + "  li:first-child { display: none; }\n"
+            + "  li.x + li { display: none; }\n"
+            + "  .hide span { display: none; }\n"
+            + "</style>\n"
+            + "</head><body>\n"
+            + "<ul id='list'><li id='l1'>1</li><li id='l2'>2</li><li id='l3'>3</li></ul>\n"
+            + "<div id='d1'><p><span id='s1'>s</span></p></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final HtmlElement l1 = page.getHtmlElementById("l1");
+        final HtmlElement l2 = page.getHtmlElementById("l2");
+        final HtmlElement l3 = page.getHtmlElementById("l3");
+        final HtmlElement s1 = page.getHtmlElementById("s1");
+
+        assertFalse(l1.isDisplayed());
+        assertTrue(l2.isDisplayed());
+        assertTrue(l3.isDisplayed());
+        assertTrue(s1.isDisplayed());
+
+        // sibling changes
+        l2.setAttribute("class", "x");
+        assertFalse(l3.isDisplayed());
+        l1.remove();
+        assertFalse(l2.isDisplayed());
+        assertFalse(l3.isDisplayed());
+        l2.removeAttribute("class");
+        assertTrue(l3.isDisplayed());
+
+        // ancestor changes
+        page.getHtmlElementById("d1").setAttribute("class", "hide");
+        assertFalse(s1.isDisplayed());
+        page.getHtmlElementById("d1").removeAttribute("class");
+        assertTrue(s1.isDisplayed());
+
+        // stylesheet changes
+        page.executeJavaScript("var s = document.createElement('style');\n"
+                + "s.textContent = '#l3 { display: none; }';\n"
+                + "document.head.appendChild(s);");
+        assertFalse(l3.isDisplayed());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void computedStylesSharedBySiblings() throws Exception {
+        final String html = "<html><head>\n"
+            + "<style>\n"
+            + "  li { color: red; }\n"
+            + "  li.x { color: green; }\n"
+            + "  li:last-child { color: blue; }\n"
+            + "  p[title=t] { color: green; }\n"
+            + "  p + p { display: none; }\n"
+            + "</style>\n"
+            + "</head><body>\n"
+            + "<ul><li>1</li><li>2</li><li class='x'>3</li><li>4</li></ul>\n"
+            + "<div><p>1</p><p>2</p><p title='t'>3</p></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final WebWindow window = page.getEnclosingWindow();
+        final DomNodeList<DomElement> items = page.getElementsByTagName("li");
+        final DomNodeList<DomElement> paragraphs = page.getElementsByTagName("p");
+
+        assertEquals("red", window.getComputedStyle(items.get(0), null).getStyleAttribute("color"));
+        assertEquals("red", window.getComputedStyle(items.get(1), null).getStyleAttribute("color"));
+        assertEquals("green", window.getComputedStyle(items.get(2), null).getStyleAttribute("color"));
+        assertEquals("blue", window.getComputedStyle(items.get(3), null).getStyleAttribute("color"));
+
+        assertEquals("block", window.getComputedStyle(paragraphs.get(0), null).getDisplay());
+        assertEquals("none", window.getComputedStyle(paragraphs.get(1), null).getDisplay());
+        assertEquals("green", window.getComputedStyle(paragraphs.get(2), null).getStyleAttribute("color"));
+
+        // sharing is disabled for pseudo-classes and sibling combinators (li:last-child, p + p);
+        // changing the attributes of one sibling does not affect the styles of the others
+        items.get(1).setAttribute("class", "x");
+        assertEquals("green", window.getComputedStyle(items.get(1), null).getStyleAttribute("color"));
+        assertEquals("red", window.getComputedStyle(items.get(0), null).getStyleAttribute("color"));
+    }
 }
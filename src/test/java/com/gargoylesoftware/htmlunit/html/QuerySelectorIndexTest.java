@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+/**
+ * Tests for {@link QuerySelectorIndex}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class QuerySelectorIndexTest extends SimpleWebTestCase {
+
+    private static final String HTML = "<html><head></head>\n"
+            + "<body>\n"
+            + "  <div id='d1' class='a b'>\n"
+            + "    <span id='s1' class='b'></span>\n"
+            + "    <p id='p1' class='c'></p>\n"
+            + "  </div>\n"
+            + "  <div id='d2' class='b'>\n"
+            + "    <span id='s2'></span>\n"
+            + "  </div>\n"
+            + "  <svg id='svg'><circle id='c1' class='b'></circle></svg>\n"
+            + "</body></html>";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void documentOrder() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+
+        assertEquals("d1 s1 d2 c1", ids(page, ".b"));
+        assertEquals("s1 s2", ids(page, "#s2, #s1"));
+        assertEquals("d1 s1 d2 s2", ids(page, "span, div"));
+        assertEquals("s1 p1", ids(page, "#d1 *"));
+        assertEquals("s1", ids(page, "#d1 > span.b"));
+        assertEquals("c1", ids(page, "circle"));
+        assertEquals("", ids(page, ".unknown"));
+        assertEquals("s2", ids(page.getHtmlElementById("d2"), "span"));
+        assertEquals("", ids(page.getHtmlElementById("d2"), "#d2"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void attributeChanges() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        assertEquals("d1 s1 d2 c1", ids(page, ".b"));
+
+        page.getHtmlElementById("s2").setAttribute("class", "b");
+        page.getHtmlElementById("d1").removeAttribute("class");
+        assertEquals("s1 d2 s2 c1", ids(page, ".b"));
+
+        page.executeJavaScript("document.getElementById('p1').className = 'x b';\n"
+                + "document.getElementById('s1').classList.remove('b');\n"
+                + "document.getElementById('c1').setAttribute('class', 'x');\n"
+                + "document.getElementById('d2').getAttributeNode('class').value = 'x';\n"
+                + "document.getElementById('s2').getAttributeNode('id').value = 'renamed';");
+        assertEquals("p1 d2 c1", ids(page, ".x"));
+        assertEquals("p1 renamed", ids(page, ".b"));
+        assertEquals("renamed", ids(page, "#renamed"));
+        assertEquals("", ids(page, "#s2"));
+        assertEquals("renamed", page.getElementById("renamed").getId());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void treeChanges() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        assertEquals("s1 s2", ids(page, "span"));
+
+        page.executeJavaScript("var s = document.createElement('span');\n"
+                + "s.id = 's0';\n"
+                + "s.className = 'b';\n"
+                + "document.body.insertBefore(s, document.body.firstChild);\n"
+                + "var d = document.getElementById('d1');\n"
+                + "d.parentNode.removeChild(d);\n"
+                + "document.getElementById('d2').appendChild(d);");
+        assertEquals("s0 s2 s1", ids(page, "span"));
+        assertEquals("s0 d2 d1 s1 c1", ids(page, ".b"));
+        assertEquals("d1 s1 p1", ids(page, "#d2 > div, #d1 *"));
+
+        page.getHtmlElementById("d1").remove();
+        assertEquals("s0 s2", ids(page, "span"));
+        assertEquals("", ids(page, "#d1"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void clonedAndSerializedPage() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        assertEquals("s1 s2", ids(page, "span"));
+
+        final HtmlPage clone = page.cloneNode(true);
+        assertEquals("s1 s2", ids(clone, "span"));
+        clone.getElementById("s1").remove();
+        assertEquals("s2", ids(clone, "span"));
+        assertEquals("s1 s2", ids(page, "span"));
+
+        final HtmlPage copy = (HtmlPage) SerializationUtils.deserialize(SerializationUtils.serialize(page));
+        copy.getElementById("s2").remove();
+        assertEquals("s1", ids(copy, "span"));
+    }
+
+    private static String ids(final DomNode root, final String selectors) {
+        final StringBuilder result = new StringBuilder();
+        for (final DomNode node : root.querySelectorAll(selectors)) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(((DomElement) node).getId());
+        }
+        return result.toString();
+    }
+}
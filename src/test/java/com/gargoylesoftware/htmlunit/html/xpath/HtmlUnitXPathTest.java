@@ -24,6 +24,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.DomText;
 import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
@@ -342,4 +343,59 @@ public class HtmlUnitXPathTest extends SimpleWebTestCase {
         assertNull(page.getFirstByXPath("//td[text()='[x]']"));
         assertSame(cell, page.getFirstByXPath("//td[text()='[X]']"));
     }
+
+    /**
+     * The DTM of the page is reused; make sure it reflects changes of the dom.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void reuseAfterDomChanges() throws Exception {
+        final String content = "<html><head></head>\n"
+            + "<body>\n"
+            + "  <div id='d1' class='foo'>hello</div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(content);
+        final HtmlDivision div = page.getHtmlElementById("d1");
+
+        assertEquals(1, page.getByXPath("//div[@class='foo']").size());
+        assertEquals(0, page.getByXPath("//div[@class='bar']").size());
+
+        div.setAttribute("class", "bar");
+        assertEquals(0, page.getByXPath("//div[@class='foo']").size());
+        assertSame(div, page.getFirstByXPath("//div[@class='bar']"));
+
+        div.removeAttribute("class");
+        assertEquals(0, page.getByXPath("//div[@class]").size());
+
+        assertSame(div, page.getFirstByXPath("//div[text()='hello']"));
+        ((DomText) div.getFirstChild()).setData("world");
+        assertNull(page.getFirstByXPath("//div[text()='hello']"));
+        assertSame(div, page.getFirstByXPath("//div[text()='world']"));
+
+        final DomElement span = page.createElement("span");
+        div.appendChild(span);
+        assertSame(span, page.getFirstByXPath("//div/span"));
+        assertSame(span, div.getFirstByXPath("./span"));
+
+        span.remove();
+        assertNull(page.getFirstByXPath("//div/span"));
+
+        // detached nodes
+        span.appendChild(page.createElement("b"));
+        assertNotNull(span.getFirstByXPath("./b"));
+        assertNull(page.getFirstByXPath("//b"));
+    }
+
+    /**
+     * @throws Exception if test fails
+     */
+    @Test
+    public void hasNamespacePrefix() throws Exception {
+        assertFalse(XPathHelper.hasNamespacePrefix("//div[@id='a:b']"));
+        assertFalse(XPathHelper.hasNamespacePrefix("//div/ancestor::body"));
+        assertFalse(XPathHelper.hasNamespacePrefix("//div[text()=\"x:y\"]"));
+        assertTrue(XPathHelper.hasNamespacePrefix("//svg:svg"));
+        assertTrue(XPathHelper.hasNamespacePrefix("//div/child::svg:svg"));
+    }
 }
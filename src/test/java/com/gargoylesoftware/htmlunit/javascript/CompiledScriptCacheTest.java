@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+/**
+ * Tests for {@link CompiledScriptCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CompiledScriptCacheTest extends SimpleWebTestCase {
+
+    private static final String HTML = "<html><head><script>\n"
+            + "  alert('compiled ' + (40 + 2));\n"
+            + "</script></head><body></body></html>";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sharedBetweenClients() throws Exception {
+        final CompiledScriptCache cache = CompiledScriptCache.getInstance();
+
+        final List<String> alerts = new ArrayList<>();
+        loadPage(alerts, true);
+        final long hits = cache.getHitCount();
+        final long misses = cache.getMissCount();
+
+        loadPage(alerts, true);
+        assertEquals(hits + 1, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(Arrays.asList("compiled 42", "compiled 42"), alerts);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void disabled() throws Exception {
+        final CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        final long hits = cache.getHitCount();
+        final long misses = cache.getMissCount();
+
+        final List<String> alerts = new ArrayList<>();
+        loadPage(alerts, false);
+        assertEquals(hits, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(Arrays.asList("compiled 42"), alerts);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxWeight() throws Exception {
+        final CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        final long maxWeight = cache.getMaxWeight();
+        try {
+            cache.setMaxWeight(0);
+            assertEquals(0, cache.getSize());
+            assertEquals(0L, cache.getWeight());
+
+            final long misses = cache.getMissCount();
+            final List<String> alerts = new ArrayList<>();
+            loadPage(alerts, true);
+            loadPage(alerts, true);
+            assertEquals(misses + 2, cache.getMissCount());
+            assertEquals(0, cache.getSize());
+        }
+        finally {
+            cache.setMaxWeight(maxWeight);
+        }
+    }
+
+    private void loadPage(final List<String> alerts, final boolean cacheEnabled) throws Exception {
+        try (WebClient client = new WebClient(getBrowserVersion())) {
+            client.getOptions().setCompiledScriptCacheEnabled(cacheEnabled);
+            client.setAlertHandler(new CollectingAlertHandler(alerts));
+
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setResponse(URL_FIRST, HTML);
+            client.setWebConnection(connection);
+            client.getPage(URL_FIRST);
+        }
+    }
+}
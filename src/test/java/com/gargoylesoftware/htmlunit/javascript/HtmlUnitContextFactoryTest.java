@@ -14,21 +14,36 @@
  */
 package com.gargoylesoftware.htmlunit.javascript;
 
+import static org.junit.Assert.fail;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.ScriptException;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
 import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner.Alerts;
 
 /**
  * Tests for {@link HtmlUnitContextFactory}.
  *
  * @author Ahmed Ashour
+ * @author Ronald Brill
  */
 @RunWith(BrowserRunner.class)
 public class HtmlUnitContextFactoryTest extends SimpleWebTestCase {
 
+    private static final String DEEP_RECURSION = "<html><head><script>\n"
+            + "  function f(n) { return f(n + 1) + 1; }\n"
+            + "  try {\n"
+            + "    f(0);\n"
+            + "  } catch(e) {\n"
+            + "    alert('caught');\n"
+            + "  }\n"
+            + "  alert('done');\n"
+            + "</script></head><body></body></html>";
+
     /**
      * @throws Exception if the test fails
      */
@@ -45,4 +60,59 @@ public class HtmlUnitContextFactoryTest extends SimpleWebTestCase {
 
         loadPage(browserVersion, html, null, URL_FIRST);
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"4950", "3"})
+    public void javaScriptCompilationEnabled() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  function sum(n) {\n"
+            + "    var result = 0;\n"
+            + "    for (var i = 0; i < n; i++) {\n"
+            + "      result += i;\n"
+            + "    }\n"
+            + "    return result;\n"
+            + "  }\n"
+            + "  function test() {\n"
+            + "    alert(sum(100));\n"
+            + "    try {\n"
+            + "      document.body.appendChild(document.documentElement);\n"
+            + "    } catch(e) {\n"
+            + "      alert(e.code);\n"
+            + "    }\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'></body></html>";
+
+        getWebClientWithMockWebConnection().getOptions().setJavaScriptCompilationEnabled(true);
+        loadPageWithAlerts(html);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"caught", "done"})
+    public void deepRecursion() throws Exception {
+        getWebClientWithMockWebConnection().getOptions().setJavaScriptCompilationEnabled(false);
+        loadPageWithAlerts(DEEP_RECURSION);
+    }
+
+    /**
+     * Compiled scripts can't catch the exhausted stack, but it is reported as script error.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void deepRecursionCompiled() throws Exception {
+        getWebClientWithMockWebConnection().getOptions().setJavaScriptCompilationEnabled(true);
+        try {
+            loadPageWithAlerts(DEEP_RECURSION);
+            fail("ScriptException expected");
+        }
+        catch (final ScriptException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("RangeError: Maximum call stack size exceeded"));
+        }
+    }
 }
@@ -410,4 +410,33 @@ public class HtmlUnitScriptable2Test extends WebDriverTestCase {
 
         loadPageVerifyTitle2(html);
     }
+
+    /**
+     * The members of the prototypes are defined the first time a prototype is used;
+     * every way to reach a prototype has to see all the members.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"true", "true", "true", "true", "1", "1", "true"})
+    public void prototypeMembers() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>\n"
+            + LOG_TITLE_FUNCTION
+            + "  function test() {\n"
+            + "    log(Object.getOwnPropertyNames(HTMLBRElement.prototype).indexOf('clear') != -1);\n"
+            + "    var desc = Object.getOwnPropertyDescriptor(HTMLHRElement, 'prototype');\n"
+            + "    log(Object.getOwnPropertyNames(desc.value).indexOf('align') != -1);\n"
+            + "    var proto = Object.getPrototypeOf(document.createElement('ul'));\n"
+            + "    log(Object.getOwnPropertyNames(proto).indexOf('type') != -1);\n"
+            + "    log(HTMLBRElement.prototype.hasOwnProperty('constructor'));\n"
+            + "    log(Node.ELEMENT_NODE);\n"
+            + "    log(Node.prototype.ELEMENT_NODE);\n"
+            + "    log(document.body.childNodes.length > 0);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "</body></html>";
+
+        loadPageVerifyTitle2(html);
+    }
 }
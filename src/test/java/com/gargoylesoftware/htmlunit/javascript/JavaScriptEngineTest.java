@@ -872,6 +872,18 @@ public class JavaScriptEngineTest extends SimpleWebTestCase {
      */
     @Test
     public void timeout() throws Exception {
+        timeout(false);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void timeoutCompiled() throws Exception {
+        timeout(true);
+    }
+
+    private void timeout(final boolean compiled) throws Exception {
         final WebClient client = getWebClient();
         final long timeout = 2000;
         final long oldTimeout = client.getJavaScriptTimeout();
@@ -879,6 +891,7 @@ public class JavaScriptEngineTest extends SimpleWebTestCase {
 
         try {
             client.getOptions().setThrowExceptionOnScriptError(false);
+            client.getOptions().setJavaScriptCompilationEnabled(compiled);
 
             final String content = "<html><body><script>while(1) {}</script></body></html>";
             final MockWebConnection webConnection = new MockWebConnection();
@@ -1387,4 +1400,49 @@ public class JavaScriptEngineTest extends SimpleWebTestCase {
         engine.registerWindowAndMaybeStartEventLoop(window);
         assertTrue(getJavaScriptThreads().isEmpty());
     }
+
+    /**
+     * The lazy creation of the host class constructors must not be visible to scripts
+     * and must survive the serialization of the window.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"true", "true", "true", "true", "true", "function", "false",
+                "false", "undefined", "P", "7", "true"})
+    public void lazyHostClasses() throws Exception {
+        final String html = "<html><head>\n"
+                + "<script>\n"
+                + "  function test() {\n"
+                + "    alert('HTMLDivElement' in window);\n"
+                + "    alert(Object.getOwnPropertyNames(window).indexOf('HTMLSpanElement') != -1);\n"
+                + "    alert(window.hasOwnProperty('HTMLUListElement'));\n"
+                + "    alert(Object.getOwnPropertyDescriptor(window, 'HTMLTableElement').value === HTMLTableElement);\n"
+                + "    alert(Object.getPrototypeOf(document.createElement('div')) === HTMLDivElement.prototype);\n"
+                + "    alert(typeof Object.getOwnPropertyDescriptor(window, 'HTMLHeadingElement').value);\n"
+                + "    var enumerated = false;\n"
+                + "    for (var p in window) { enumerated = enumerated || p == 'HTMLLabelElement'; }\n"
+                + "    alert(enumerated);\n"
+
+                + "    delete window.HTMLParagraphElement;\n"
+                + "    alert('HTMLParagraphElement' in window);\n"
+                + "    alert(typeof HTMLParagraphElement);\n"
+                + "    alert(document.createElement('p').tagName);\n"
+
+                + "    window.HTMLPreElement = 7;\n"
+                + "    document.createElement('pre');\n"
+                + "    alert(HTMLPreElement);\n"
+                + "    alert(document.createElement('pre') instanceof HTMLElement);\n"
+                + "  }\n"
+                + "</script></head>\n"
+                + "<body onload='test()'></body>\n"
+                + "</html>";
+
+        getWebClientWithMockWebConnection().getOptions().setLazyHostClassesEnabled(true);
+        final HtmlPage page = loadPageWithAlerts(html);
+
+        final WebWindow window = clone(page.getEnclosingWindow());
+        final HtmlPage clonedPage = (HtmlPage) window.getEnclosedPage();
+        assertEquals("function", clonedPage.executeJavaScript("typeof HTMLSpanElement").getJavaScriptResult());
+        assertEquals("7", Context.toString(clonedPage.executeJavaScript("HTMLPreElement").getJavaScriptResult()));
+    }
 }
@@ -15,6 +15,7 @@
 package com.gargoylesoftware.htmlunit.javascript.background;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -216,4 +217,185 @@ public class JavaScriptJobManagerTest extends SimpleWebTestCase {
 
         assertEquals("No new alerts should have happened", finalValue, collectedAlerts.size());
     }
+
+    /**
+     * The executor parks until the next job is due instead of polling.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void chainedTimeoutsRunWithoutPollingDelay() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <title>test</title>\n"
+            + "  <script>\n"
+            + "    var count = 0;\n"
+            + "    function test() {\n"
+            + "      if (++count < 100) {\n"
+            + "        setTimeout(test, 1);\n"
+            + "      }\n"
+            + "      else {\n"
+            + "        alert('done');\n"
+            + "      }\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='setTimeout(test, 1)'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        final HtmlPage page = loadPage(content, collectedAlerts);
+        startTimedTest();
+
+        final JavaScriptJobManager jobManager = page.getEnclosingWindow().getJobManager();
+        jobManager.waitForJobs(DEFAULT_WAIT_TIME);
+        assertEquals(Collections.singletonList("done"), collectedAlerts);
+
+        // polling every 10ms would need at least one second
+        assertMaxTestRunTime(800);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTime() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <title>test</title>\n"
+            + "  <script>\n"
+            + "    var start = Date.now();\n"
+            + "    var perfStart = performance.now();\n"
+            + "    var count = 0;\n"
+            + "    function test() {\n"
+            + "      var id = setInterval(function() {\n"
+            + "        if (++count == 3) {\n"
+            + "          clearInterval(id);\n"
+            + "          alert(Date.now() - start >= 3000);\n"
+            + "          alert(performance.now() - perfStart > 2990);\n"
+            + "        }\n"
+            + "      }, 1000);\n"
+            + "      setTimeout(function() { alert('timeout'); }, 5000);\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='test()'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        getWebClient().getOptions().setVirtualTimeEnabled(true);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        startTimedTest();
+        loadPage(content, collectedAlerts);
+
+        assertEquals(0, getWebClient().waitForBackgroundJavaScript(10_000));
+        assertEquals(Arrays.asList("true", "true", "timeout"), collectedAlerts);
+        assertMaxTestRunTime(3000);
+    }
+
+    /**
+     * The virtual time only passes while someone waits for the jobs, and only up to the end of the wait.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTimeOnlyWhileWaiting() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    var count = 0;\n"
+            + "    setInterval(function() { count++; }, 100);\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body>\n"
+            + "</body>\n"
+            + "</html>";
+
+        getWebClient().getOptions().setVirtualTimeEnabled(true);
+        final HtmlPage page = loadPage(content);
+        final JavaScriptClock clock = JavaScriptClock.getClock(getWebClient());
+
+        Thread.sleep(500);
+        assertEquals(Long.valueOf(0), Long.valueOf(clock.getOffset()));
+        assertTrue(((Number) page.executeJavaScript("count").getJavaScriptResult()).intValue() < 20);
+
+        startTimedTest();
+        assertEquals(1, getWebClient().waitForBackgroundJavaScriptStartingBefore(10_000));
+        assertMaxTestRunTime(3000);
+        final long offset = clock.getOffset();
+        assertTrue("offset " + offset, offset > 8_000 && offset <= 10_000);
+        assertTrue(((Number) page.executeJavaScript("count").getJavaScriptResult()).intValue() >= 90);
+
+        Thread.sleep(500);
+        assertEquals(Long.valueOf(offset), Long.valueOf(clock.getOffset()));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTimeDateConstructor() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    var start = new Date().getTime();\n"
+            + "    function test() {\n"
+            + "      var now = new Date();\n"
+            + "      alert(now.getTime() - start >= 5000);\n"
+            + "      alert(Date.parse(Date()) - start >= 4000);\n"
+            + "      alert(now instanceof Date);\n"
+            + "      alert(now.constructor === Date);\n"
+            + "      alert(new Date(0).getTime());\n"
+            + "      alert(typeof Date.UTC);\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='setTimeout(test, 5000)'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        getWebClient().getOptions().setVirtualTimeEnabled(true);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        startTimedTest();
+        loadPage(content, collectedAlerts);
+
+        assertEquals(0, getWebClient().waitForBackgroundJavaScript(10_000));
+        assertEquals(Arrays.asList("true", "true", "true", "true", "0", "function"), collectedAlerts);
+        assertMaxTestRunTime(3000);
+    }
+
+    /**
+     * The replaced Date constructor has to support reflection like the original one.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTimeDateReflection() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    function test() {\n"
+            + "      var now = Object.getOwnPropertyDescriptor(Date, 'now');\n"
+            + "      alert(typeof now.value);\n"
+            + "      alert(now.enumerable);\n"
+            + "      alert(Object.getOwnPropertyDescriptor(Date, 'prototype').writable);\n"
+            + "      var names = Object.getOwnPropertyNames(Date);\n"
+            + "      alert(names.indexOf('now') != -1 && names.indexOf('parse') != -1 && names.indexOf('UTC') != -1);\n"
+            + "      Object.defineProperty(Date, 'foo', { value: 42 });\n"
+            + "      alert(Date.foo);\n"
+            + "      alert(Date.length);\n"
+            + "      alert(Date.name);\n"
+            + "      alert(Object.getPrototypeOf(Date) === Function.prototype);\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='test()'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        getWebClient().getOptions().setVirtualTimeEnabled(true);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        loadPage(content, collectedAlerts);
+
+        assertEquals(Arrays.asList("function", "false", "false", "true", "42", "7", "Date", "true"),
+                collectedAlerts);
+    }
 }
@@ -2637,4 +2637,39 @@ public class Window2Test extends WebDriverTestCase {
 
         loadPageVerifyTitle2(html);
     }
+
+    /**
+     * The constructors of the host classes are own properties of the window
+     * that can be deleted and replaced by scripts.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"true", "true", "true", "true", "true", "false", "undefined", "P", "7", "true"})
+    public void hostClassConstructors() throws Exception {
+        final String html = "<html><head>\n"
+                + "<script>\n"
+                + LOG_TITLE_FUNCTION
+                + "  function test() {\n"
+                + "    log('HTMLDivElement' in window);\n"
+                + "    log(Object.getOwnPropertyNames(window).indexOf('HTMLSpanElement') != -1);\n"
+                + "    log(window.hasOwnProperty('HTMLUListElement'));\n"
+                + "    log(Object.getOwnPropertyDescriptor(window, 'HTMLTableElement').value === HTMLTableElement);\n"
+                + "    log(Object.getPrototypeOf(document.createElement('div')) === HTMLDivElement.prototype);\n"
+
+                + "    delete window.HTMLParagraphElement;\n"
+                + "    log('HTMLParagraphElement' in window);\n"
+                + "    log(typeof HTMLParagraphElement);\n"
+                + "    log(document.createElement('p').tagName);\n"
+
+                + "    window.HTMLPreElement = 7;\n"
+                + "    document.createElement('pre');\n"
+                + "    log(HTMLPreElement);\n"
+                + "    log(document.createElement('pre') instanceof HTMLElement);\n"
+                + "  }\n"
+                + "</script></head>\n"
+                + "<body onload='test()'></body>\n"
+                + "</html>";
+
+        loadPageVerifyTitle2(html);
+    }
 }
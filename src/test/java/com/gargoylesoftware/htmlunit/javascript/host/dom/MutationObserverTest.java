@@ -280,6 +280,37 @@ public class MutationObserverTest extends WebDriverTestCase {
         loadPageVerifyTitle2(html);
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"attributes", "title", "old", "new"})
+    public void attributeNodeValue() throws Exception {
+        final String html
+            = "<html><head><script>\n"
+            + LOG_TITLE_FUNCTION
+            + "function test() {\n"
+            + "  var div = document.getElementById('myDiv');\n"
+            + "  var observer = new MutationObserver(function(mutations) {\n"
+            + "    mutations.forEach(function(mutation) {\n"
+            + "      log(mutation.type);\n"
+            + "      log(mutation.attributeName);\n"
+            + "      log(mutation.oldValue);\n"
+            + "      log(mutation.target.getAttribute('title'));\n"
+            + "    });\n"
+            + "  });\n"
+            + "\n"
+            + "  observer.observe(div, { attributes: true, attributeOldValue: true });\n"
+            + "  div.getAttributeNode('title').value = 'new';\n"
+            + "}\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "  <div id='myDiv' title='old'></div>\n"
+            + "</body></html>";
+
+        loadPageVerifyTitle2(html);
+    }
+
     /**
      * Test case for issue #1811.
      * @throws Exception if the test fails
@@ -478,17 +478,10 @@ public class XMLHttpRequest2Test extends WebDriverTestCase {
 
     /**
      * Ensures that XHR download is performed without altering other JS jobs.
-     * Currently HtmlUnit doesn't behave correctly here because download and callback execution
-     * are executed within the same synchronize block on the HtmlPage.
      * @throws Exception if an error occurs
      */
     @Test
     @Alerts({"in timeout", "hello"})
-    @HtmlUnitNYI(CHROME = {"hello", "in timeout"},
-            EDGE = {"hello", "in timeout"},
-            FF = {"hello", "in timeout"},
-            FF_ESR = {"hello", "in timeout"},
-            IE = {"hello", "in timeout"})
     // TODO [IE]SINGLE-VS-BULK test runs when executed as single but breaks as bulk
     public void xhrDownloadInBackground() throws Exception {
         final String html = "<html><head>\n"
@@ -185,8 +185,10 @@ public class XMLHttpRequest3Test extends WebServerTestCase {
 
         assertEquals(0, client.waitForBackgroundJavaScriptStartingBefore(1000));
 
+        // the request itself is sent in the background, only the order of the alerts is defined
+        assertTrue(collectedAlerts.remove(urlPage2.toExternalForm()));
         final String[] alerts = {URL_FIRST.toExternalForm(), "before long loop", "after long loop",
-            urlPage2.toExternalForm(), "ready state handler, content loaded: j=5000" };
+            "ready state handler, content loaded: j=5000" };
         assertEquals(alerts, collectedAlerts);
     }
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.regexp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RegExpCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class RegExpCacheTest {
+
+    /**
+     * Verifies that the patterns are cached per source and flags.
+     */
+    @Test
+    public void getPattern() {
+        final RegExpCache cache = RegExpCache.getInstance();
+        final long hits = cache.getHitCount();
+        final long misses = cache.getMissCount();
+
+        final Pattern pattern = cache.getPattern("RegExpCacheTest\\a\\d+", 0);
+        assertEquals("RegExpCacheTesta\\d+", pattern.pattern());
+        assertSame(pattern, cache.getPattern("RegExpCacheTest\\a\\d+", 0));
+
+        final Pattern insensitive = cache.getPattern("RegExpCacheTest\\a\\d+", Pattern.CASE_INSENSITIVE);
+        assertNotSame(pattern, insensitive);
+        assertTrue(insensitive.matcher("regexpcachetesta42").matches());
+
+        assertTrue(cache.getHitCount() >= hits + 1);
+        assertTrue(cache.getMissCount() >= misses + 2);
+    }
+
+    /**
+     * Verifies that the cache is bounded.
+     */
+    @Test
+    public void maxSize() {
+        final RegExpCache cache = RegExpCache.getInstance();
+        try {
+            cache.setMaxSize(10);
+            for (int i = 0; i < 50; i++) {
+                cache.getPattern("maxSize" + i, 0);
+            }
+            assertTrue(cache.getSize() <= 10);
+
+            cache.setMaxSize(0);
+            assertEquals(0, cache.getSize());
+            final Pattern pattern = cache.getPattern("maxSize", 0);
+            assertNotSame(pattern, cache.getPattern("maxSize", 0));
+            assertEquals(0, cache.getSize());
+        }
+        finally {
+            cache.setMaxSize(RegExpCache.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    /**
+     * Verifies that a negative size is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxSize() {
+        RegExpCache.getInstance().setMaxSize(-1);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.jfr;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebServerTestCase;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for {@link HtmlUnitEvents}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class HtmlUnitEventsTest extends WebServerTestCase {
+
+    private static final String PREFIX = "com.gargoylesoftware.htmlunit.";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void events() throws Exception {
+        final String html = "<html><head>\n"
+                + "<style>div { color: red; }</style>\n"
+                + "<script>\n"
+                + "  function test() {\n"
+                + "    document.title = getComputedStyle(document.getElementById('d')).color;\n"
+                + "    document.querySelectorAll('div');\n"
+                + "  }\n"
+                + "  setTimeout(test, 10);\n"
+                + "</script>\n"
+                + "</head><body><div id='d'></div></body></html>";
+        getMockWebConnection().setResponse(URL_FIRST, html);
+        startWebServer(getMockWebConnection());
+
+        final File file = File.createTempFile("htmlunit", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                for (final String name : new String[] {"HttpRequest", "Parse", "Script", "Job",
+                    "ComputedStyle", "Query", "CacheLookup"}) {
+                    recording.enable(PREFIX + name).withoutThreshold();
+                }
+                recording.start();
+                assertTrue(HtmlUnitEvents.isRecording());
+
+                final WebClient webClient = getWebClient();
+                final HtmlPage page = webClient.getPage(URL_FIRST);
+                webClient.waitForBackgroundJavaScript(1000);
+                page.getByXPath("//div");
+
+                recording.stop();
+                recording.dump(file.toPath());
+            }
+            if (FlightRecorder.getFlightRecorder().getRecordings().isEmpty()) {
+                assertFalse(HtmlUnitEvents.isRecording());
+            }
+
+            final Set<String> names = new TreeSet<>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                final String name = event.getEventType().getName();
+                names.add(name);
+                if ((PREFIX + "HttpRequest").equals(name)) {
+                    assertEquals(URL_FIRST.toExternalForm(), event.getString("url"));
+                    assertEquals(200, event.getInt("statusCode"));
+                }
+            }
+            assertEquals("[" + PREFIX + "CacheLookup, " + PREFIX + "ComputedStyle, " + PREFIX + "HttpRequest, "
+                    + PREFIX + "Job, " + PREFIX + "Parse, " + PREFIX + "Query, " + PREFIX + "Script]",
+                    names.toString());
+        }
+        finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Without recording no events are created.
+     */
+    @Test
+    public void notRecording() {
+        // e.g. started with -XX:StartFlightRecording
+        assumeTrue("a recording is running", FlightRecorder.getFlightRecorder().getRecordings().isEmpty());
+
+        assertFalse(HtmlUnitEvents.isRecording());
+        assertNull(HtmlUnitEvents.beginHttpRequest());
+        assertNull(HtmlUnitEvents.beginScript());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+
+/**
+ * Compares the throughput of the interpreter and of the compilation to bytecode
+ * (see {@link com.gargoylesoftware.htmlunit.WebClientOptions#setJavaScriptCompilationEnabled(boolean)})
+ * using some of the libraries used for testing.
+ * The shared compiled script cache is not enabled, every client compiles the library itself.
+ * The results are logged; the test checks that both modes compute the same results.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class JavaScriptCompilationBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(JavaScriptCompilationBenchmarkTest.class);
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    private static final URL URL_PAGE;
+    private static final URL URL_LIBRARY;
+
+    static {
+        try {
+            URL_PAGE = new URL("http://localhost:22222/");
+            URL_LIBRARY = new URL("http://localhost:22222/library.js");
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void jQuery() throws Exception {
+        final String work = "function work() {\n"
+            + "  var result = 0;\n"
+            + "  for (var i = 0; i < 100; i++) {\n"
+            + "    var o = jQuery.extend(true, {}, { a: [1, 2, 3], b: { c: i } });\n"
+            + "    result += jQuery.map([1, 2, 3, 4, 5, 6, 7, 8, 9, 10], function(v) { return v * o.b.c; }).length;\n"
+            + "    result += jQuery.grep([1, 2, 3, 4, 5, 6, 7, 8, 9, 10], function(v) { return v % 2; }).length;\n"
+            + "    result += jQuery.trim('  x' + i + '  ').length;\n"
+            + "    result += jQuery('<div><span>a</span><span>b</span></div>').find('span').length;\n"
+            + "    result += jQuery.parseJSON(JSON.stringify(o)).b.c;\n"
+            + "  }\n"
+            + "  return result;\n"
+            + "}\n";
+        benchmark("libraries/jQuery/1.11.3/jquery/dist/jquery.js", work);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void prototype() throws Exception {
+        final String work = "function work() {\n"
+            + "  var result = 0;\n"
+            + "  for (var i = 0; i < 100; i++) {\n"
+            + "    result += $R(1, 50).map(function(v) { return v * i; })\n"
+            + "        .inject(0, function(a, v) { return a + v; });\n"
+            + "    result += ('background-color-' + i).camelize().length;\n"
+            + "    result += $A([i, i + 1, i + 2]).without(i).size();\n"
+            + "    result += Object.toJSON({ a: [1, 2, 3], b: 'x' + i }).evalJSON().a.length;\n"
+            + "  }\n"
+            + "  return result;\n"
+            + "}\n";
+        benchmark("libraries/prototype/1.7.1/dist/prototype.js", work);
+    }
+
+    private void benchmark(final String library, final String work) throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='" + URL_LIBRARY + "'></script>\n"
+            + "<script>\n" + work + "</script>\n"
+            + "</head><body></body></html>";
+        final String libraryContent = getContent(library);
+
+        final Object interpreted = run(library, html, libraryContent, false);
+        final Object compiled = run(library, html, libraryContent, true);
+        assertNotNull(interpreted);
+        assertEquals(interpreted, compiled);
+    }
+
+    private static Object run(final String library, final String html, final String libraryContent,
+            final boolean compiled) throws Exception {
+        try (WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED)) {
+            client.getOptions().setJavaScriptCompilationEnabled(compiled);
+
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(URL_PAGE, html);
+            webConnection.setResponse(URL_LIBRARY, libraryContent, MimeType.APPLICATION_JAVASCRIPT);
+            client.setWebConnection(webConnection);
+
+            final long loadStart = System.nanoTime();
+            final HtmlPage page = client.getPage(URL_PAGE);
+            final long loadTime = System.nanoTime() - loadStart;
+
+            Object result = null;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                result = page.executeJavaScript("work()").getJavaScriptResult();
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                result = page.executeJavaScript("work()").getJavaScriptResult();
+            }
+            final long time = System.nanoTime() - start;
+
+            LOG.info(library + (compiled ? " compiled" : " interpreted")
+                    + ": load " + loadTime / 1_000_000 + "ms, "
+                    + (ITERATIONS * 1_000_000_000L / time) + " iterations/s");
+            return result;
+        }
+    }
+
+    private static String getContent(final String resourceName) throws IOException {
+        try (InputStream in = JavaScriptCompilationBenchmarkTest.class.getClassLoader()
+                .getResourceAsStream(resourceName)) {
+            assertNotNull(resourceName, in);
+            return IOUtils.toString(in, ISO_8859_1);
+        }
+    }
+}
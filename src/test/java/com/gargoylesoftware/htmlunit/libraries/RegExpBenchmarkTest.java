@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.regexp.RegExpCache;
+import com.gargoylesoftware.htmlunit.javascript.regexp.RegExpJsToJavaConverter;
+
+/**
+ * Measures the throughput of {@code String.prototype.replace()}, {@code match()} and {@code split()}
+ * heavy scripts using the {@link RegExpCache} and compares it with the time needed to translate and compile
+ * the same expressions without the cache. The process wide cache is used as configured.
+ * The results are logged; the test checks that the measured runs are served from the cache.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class RegExpBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(RegExpBenchmarkTest.class);
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+    private static final int LOOPS = 200;
+
+    private static final String WORK = "function work() {\n"
+            + "  var result = 0;\n"
+            + "  var text = 'The quick brown fox jumps over the lazy dog 0123456789 foo@example.com';\n"
+            + "  for (var i = 0; i < " + LOOPS + "; i++) {\n"
+            + "    result += text.replace(/\\s+/g, '-').length;\n"
+            + "    result += text.replace(/(\\w+)@(\\w+)\\.com/, '$2 at $1').length;\n"
+            + "    result += text.match(/[aeiou]/gi).length;\n"
+            + "    result += text.split(/\\W+/).length;\n"
+            + "    result += text.replace(new RegExp('o' + (i % 10), 'g'), 'x').length;\n"
+            + "    result += (/^the/i).test(text) ? 1 : 0;\n"
+            + "    result += text.replace('fox', 'cat').length;\n"
+            + "  }\n"
+            + "  return result;\n"
+            + "}\n";
+
+    /** The expressions used by one loop of {@link #WORK}. */
+    private static final String[] EXPRESSIONS = {"\\s+", "(\\w+)@(\\w+)\\.com", "[aeiou]", "\\W+", "o5", "^the"};
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void replaceAndMatch() throws Exception {
+        final URL url = new URL("http://localhost:22222/");
+        final String html = "<html><head><script>\n" + WORK + "</script></head><body></body></html>";
+        final RegExpCache cache = RegExpCache.getInstance();
+        assertTrue("the cache is disabled", cache.getMaxSize() > 0);
+
+        try (WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED)) {
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(url, html);
+            client.setWebConnection(webConnection);
+
+            final HtmlPage page = client.getPage(url);
+            Object result = null;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                result = page.executeJavaScript("work()").getJavaScriptResult();
+            }
+            assertNotNull(result);
+
+            final long hits = cache.getHitCount();
+            final long misses = cache.getMissCount();
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                assertEquals(result, page.executeJavaScript("work()").getJavaScriptResult());
+            }
+            final long time = System.nanoTime() - start;
+
+            // all expressions were seen during the warm up
+            assertEquals(misses, cache.getMissCount());
+            assertTrue(cache.getHitCount() > hits);
+
+            // the work the cache saves
+            final long uncachedStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS * LOOPS; i++) {
+                for (final String expression : EXPRESSIONS) {
+                    Pattern.compile(new RegExpJsToJavaConverter().convert(expression));
+                }
+            }
+            final long uncachedTime = System.nanoTime() - uncachedStart;
+
+            LOG.info("RegExp: " + (ITERATIONS * 1_000_000_000L / time) + " iterations/s, "
+                    + "translating the expressions without the cache would add "
+                    + (uncachedTime / ITERATIONS / 1_000) + "us per iteration ("
+                    + (time / ITERATIONS / 1_000) + "us)");
+        }
+    }
+}
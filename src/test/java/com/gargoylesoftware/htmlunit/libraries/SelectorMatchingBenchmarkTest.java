@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.css.CompiledSelector;
+import com.gargoylesoftware.htmlunit.css.CssStyleSheet;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Compares the throughput of the {@link CompiledSelector}s with the matching of the parsed selectors
+ * done by {@link CssStyleSheet#selects(BrowserVersion, Selector, DomElement, String, boolean, boolean)},
+ * matching some typical selectors against every element of a deeply nested page.
+ * The results are logged; the test checks that both compute the same matches.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class SelectorMatchingBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(SelectorMatchingBenchmarkTest.class);
+
+    private static final int SECTIONS = 100;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    private static final String SELECTORS = "div.content p a, #main .item > span, ul li:nth-child(2n+1),"
+            + " .nav a[href^='http'], section div div p, li:not(.active) span, p + ul, *";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void selects() throws Exception {
+        final URL url = new URL("http://localhost:22222/");
+
+        final StringBuilder html = new StringBuilder("<html><head><title>selectors</title></head><body>\n"
+                + "<div id='main' class='nav'>\n");
+        for (int i = 0; i < SECTIONS; i++) {
+            html.append("<section><div class='content'><div>")
+                .append("<p>text <a href='http://localhost/").append(i).append("'>link</a></p>")
+                .append("<ul><li class='item'><span>1</span></li><li class='item active'><span>2</span></li>")
+                .append("<li class='item'><span>3</span></li></ul>")
+                .append("</div></div></section>\n");
+        }
+        html.append("</div></body></html>");
+
+        final BrowserVersion browserVersion = BrowserVersion.BEST_SUPPORTED;
+        try (WebClient client = new WebClient(browserVersion)) {
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(url, html.toString());
+            client.setWebConnection(webConnection);
+
+            final HtmlPage page = client.getPage(url);
+            final List<DomElement> elements = new ArrayList<>();
+            for (final DomElement element : page.getDocumentElement().getDomElementDescendants()) {
+                elements.add(element);
+            }
+
+            final SelectorList selectorList = new CSSOMParser(new CSS3Parser()).parseSelectors(SELECTORS);
+            final List<Selector> selectors = new ArrayList<>();
+            final List<CompiledSelector> compiledSelectors = new ArrayList<>();
+            for (final Selector selector : selectorList) {
+                selectors.add(selector);
+                compiledSelectors.add(CompiledSelector.compile(selector));
+            }
+
+            int matches = 0;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                matches = matchParsed(browserVersion, selectors, elements);
+                assertEquals(matches, matchCompiled(browserVersion, compiledSelectors, elements));
+            }
+            assertTrue(matches > elements.size());
+
+            final long parsedStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                assertEquals(matches, matchParsed(browserVersion, selectors, elements));
+            }
+            final long parsedTime = System.nanoTime() - parsedStart;
+
+            final long compiledStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                assertEquals(matches, matchCompiled(browserVersion, compiledSelectors, elements));
+            }
+            final long compiledTime = System.nanoTime() - compiledStart;
+
+            final long checks = (long) ITERATIONS * selectors.size() * elements.size();
+            LOG.info("Selectors: " + (checks * 1_000_000_000L / parsedTime) + " matches/s parsed, "
+                    + (checks * 1_000_000_000L / compiledTime) + " matches/s compiled");
+        }
+    }
+
+    private static int matchParsed(final BrowserVersion browserVersion, final List<Selector> selectors,
+            final List<DomElement> elements) {
+        int matches = 0;
+        for (final Selector selector : selectors) {
+            for (final DomElement element : elements) {
+                if (CssStyleSheet.selects(browserVersion, selector, element, null, false, false)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static int matchCompiled(final BrowserVersion browserVersion, final List<CompiledSelector> selectors,
+            final List<DomElement> elements) {
+        int matches = 0;
+        for (final CompiledSelector selector : selectors) {
+            for (final DomElement element : elements) {
+                if (selector.selects(browserVersion, element, null, false, false)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Measures how many computed styles can be calculated per second, once with a style sheet of the size
+ * and the shape of a css framework (id, class, attribute and combinator rules) and once with only
+ * the rules used by the page. With the rule index the lookup should not slow down much with the size of the
+ * style sheet. All elements have an id, the computed styles are not shared.
+ * The results are logged; the test checks the computed colors.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class StyleRuleIndexBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(StyleRuleIndexBenchmarkTest.class);
+
+    private static final int RULES = 1000;
+    private static final int ELEMENTS = 500;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    private static final String USED_RULES = ".btn { color: red; }\n"
+            + ".btn.btn-primary { color: blue; }\n"
+            + "div > .btn-primary[data-toggle] { color: green; }\n";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void computedStyles() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < RULES; i++) {
+            css.append(".btn.btn-").append(i).append(" { color: black; }\n")
+                .append(".col-md-").append(i).append(" > .row { color: black; }\n")
+                .append("#id").append(i).append(" { color: black; }\n")
+                .append("[data-x").append(i).append("] { color: black; }\n");
+        }
+        css.append(USED_RULES);
+
+        final long usedRulesTime = benchmark(USED_RULES);
+        final long frameworkTime = benchmark(css.toString());
+
+        final long styles = (long) ITERATIONS * ELEMENTS;
+        LOG.info("Rule index: " + (styles * 1_000_000_000L / usedRulesTime) + " styles/s with "
+                + "the used rules only, " + (styles * 1_000_000_000L / frameworkTime) + " styles/s with "
+                + (RULES * 4 + 3) + " rules");
+    }
+
+    private static long benchmark(final String css) throws Exception {
+        final URL url = new URL("http://localhost:22222/");
+
+        final StringBuilder html = new StringBuilder("<html><head><style>\n").append(css)
+                .append("</style></head><body>\n<div>\n");
+        for (int i = 0; i < ELEMENTS; i++) {
+            html.append("<span id='e").append(i).append("' class='btn")
+                .append(i % 2 == 0 ? " btn-primary" : "").append("'")
+                .append(i % 4 == 0 ? " data-toggle='x'" : "").append(">").append(i).append("</span>\n");
+        }
+        html.append("</div>\n</body></html>");
+
+        try (WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED)) {
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(url, html.toString());
+            client.setWebConnection(webConnection);
+
+            final HtmlPage page = client.getPage(url);
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                computeStyles(page);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                computeStyles(page);
+            }
+            return System.nanoTime() - start;
+        }
+    }
+
+    private static void computeStyles(final HtmlPage page) {
+        page.clearComputedStyles();
+        final WebWindow window = page.getEnclosingWindow();
+        for (int i = 0; i < ELEMENTS; i++) {
+            final DomElement element = page.getElementById("e" + i);
+            final String expected = i % 4 == 0 ? "green" : i % 2 == 0 ? "blue" : "red";
+            assertEquals(expected, window.getComputedStyle(element, null).getStyleAttribute("color"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Measures how many windows (including frames and iframes) can be initialized per second.
+ * Every browser is measured with eager and with lazy creation of the host classes
+ * (see {@link com.gargoylesoftware.htmlunit.WebClientOptions#setLazyHostClassesEnabled(boolean)}).
+ * The results are logged; the test checks that all frames were loaded.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class WindowStartupBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(WindowStartupBenchmarkTest.class);
+
+    private static final int FRAMES = 20;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void chrome() throws Exception {
+        benchmark(BrowserVersion.CHROME, false);
+        benchmark(BrowserVersion.CHROME, true);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void firefox() throws Exception {
+        benchmark(BrowserVersion.FIREFOX, false);
+        benchmark(BrowserVersion.FIREFOX, true);
+    }
+
+    private static void benchmark(final BrowserVersion browserVersion, final boolean lazyHostClasses)
+            throws Exception {
+        final URL url = new URL("http://localhost:22222/");
+        final URL frameUrl = new URL("http://localhost:22222/frame.html");
+
+        final StringBuilder html = new StringBuilder("<html><head><title>frames</title></head><body>\n");
+        for (int i = 0; i < FRAMES; i++) {
+            html.append("<iframe src='").append(frameUrl).append("'></iframe>\n");
+        }
+        html.append("<script>var x = document.body.firstChild;</script>\n</body></html>");
+
+        try (WebClient client = new WebClient(browserVersion)) {
+            client.getOptions().setLazyHostClassesEnabled(lazyHostClasses);
+
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(url, html.toString());
+            webConnection.setResponse(frameUrl, "<html><body><div>frame</div></body></html>");
+            client.setWebConnection(webConnection);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                client.getPage(url);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                final HtmlPage page = client.getPage(url);
+                assertEquals(FRAMES, page.getFrames().size());
+            }
+            final long time = System.nanoTime() - start;
+
+            final long windows = ITERATIONS * (FRAMES + 1L);
+            LOG.info(browserVersion.getNickname() + (lazyHostClasses ? " lazy" : " eager") + ": "
+                    + (windows * 1_000_000_000L / time) + " windows/s");
+        }
+    }
+}
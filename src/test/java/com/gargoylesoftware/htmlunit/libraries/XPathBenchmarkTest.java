@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.libraries;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Measures the throughput of {@link HtmlPage#getByXPath(String)} on a table heavy page, once with the
+ * compiled expressions and the DTM of the page reused between the queries and once with the DOM changed
+ * before every query, forcing the DTM to be rebuilt.
+ * The results are logged; the test checks the number of nodes found.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class XPathBenchmarkTest {
+
+    private static final Log LOG = LogFactory.getLog(XPathBenchmarkTest.class);
+
+    private static final int ROWS = 500;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 100;
+
+    private static final String[] EXPRESSIONS = {
+        "//tr[@class='odd']",
+        "//table[@id='data']/tbody/tr/td[2]",
+        "//a[contains(@href, 'item')]",
+        "//td[text()='cell 42']/.."
+    };
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getByXPath() throws Exception {
+        final URL url = new URL("http://localhost:22222/");
+
+        final StringBuilder html = new StringBuilder("<html><head><title>xpath</title></head><body>\n"
+                + "<table id='data'><tbody>\n");
+        for (int i = 0; i < ROWS; i++) {
+            html.append("<tr class='").append(i % 2 == 0 ? "even" : "odd").append("'>")
+                .append("<td>cell ").append(i).append("</td>")
+                .append("<td><a href='item").append(i).append(".html'>item ").append(i).append("</a></td>")
+                .append("</tr>\n");
+        }
+        html.append("</tbody></table>\n</body></html>");
+
+        try (WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED)) {
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setResponse(url, html.toString());
+            client.setWebConnection(webConnection);
+
+            final HtmlPage page = client.getPage(url);
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                query(page, false);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                query(page, false);
+            }
+            final long time = System.nanoTime() - start;
+
+            final long changedStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                query(page, true);
+            }
+            final long changedTime = System.nanoTime() - changedStart;
+
+            // the expressions and the count
+            final long queries = ITERATIONS * (EXPRESSIONS.length + 1L);
+            LOG.info("XPath: " + (queries * 1_000_000_000L / time) + " queries/s with the DTM reused, "
+                    + (queries * 1_000_000_000L / changedTime) + " queries/s with the DOM changed before "
+                    + "every query");
+        }
+    }
+
+    private static void query(final HtmlPage page, final boolean changeDom) {
+        final int[] expected = {ROWS / 2, ROWS, ROWS, 1};
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            if (changeDom) {
+                page.domChanged();
+            }
+            assertEquals(expected[i], page.getByXPath(EXPRESSIONS[i]).size());
+        }
+        if (changeDom) {
+            page.domChanged();
+        }
+        assertEquals(Double.valueOf(ROWS * 2), page.getFirstByXPath("count(//td)"));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2002-2023 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.timeline;
+
+import java.net.URL;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebServerTestCase;
+import com.gargoylesoftware.htmlunit.junit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+
+/**
+ * Tests for {@link LoadTimelineAggregator}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class LoadTimelineAggregatorTest extends WebServerTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void timeline() throws Exception {
+        final String html = "<html><head>\n"
+                + "<link rel='stylesheet' href='style.css'>\n"
+                + "<script src='script.js'></script>\n"
+                + "<script>\n"
+                + "  function later() { document.title = 'done'; }\n"
+                + "  setTimeout(later, 10);\n"
+                + "</script>\n"
+                + "</head><body onload='document.title = getComputedStyle(document.body).color'></body></html>";
+        getMockWebConnection().setResponse(URL_FIRST, html);
+        getMockWebConnection().setResponse(new URL(URL_FIRST, "style.css"),
+                "body { color: red; }", MimeType.TEXT_CSS);
+        getMockWebConnection().setResponse(new URL(URL_FIRST, "script.js"),
+                "var x = 1;", MimeType.APPLICATION_JAVASCRIPT);
+        startWebServer(getMockWebConnection());
+
+        final LoadTimelineAggregator aggregator = new LoadTimelineAggregator();
+        final WebClient webClient = getWebClient();
+        webClient.setLoadTimelineListener(aggregator);
+        webClient.getPage(URL_FIRST);
+        webClient.waitForBackgroundJavaScript(1000);
+
+        final String pageUrl = URL_FIRST.toExternalForm();
+        assertEquals(pageUrl, aggregator.getPages().get(0));
+
+        final List<LoadEvent> timeline = aggregator.getTimeline(pageUrl);
+        final Set<LoadPhase> phases = EnumSet.noneOf(LoadPhase.class);
+        boolean scriptDownload = false;
+        for (final LoadEvent event : timeline) {
+            phases.add(event.getPhase());
+            assertTrue(event.getDuration(TimeUnit.NANOSECONDS) >= 0);
+            if (event.getPhase() == LoadPhase.NETWORK && event.getName().endsWith("script.js")) {
+                scriptDownload = true;
+                assertEquals(10L, event.getBytes());
+            }
+        }
+        assertTrue(scriptDownload);
+        assertEquals(aggregator.getReport(), EnumSet.allOf(LoadPhase.class), phases);
+
+        for (final LoadPhase phase : LoadPhase.values()) {
+            assertTrue(phase.name(), LongStream.of(aggregator.getHistogram(phase)).sum() > 0);
+        }
+        assertTrue(aggregator.getReport(), aggregator.getReport().contains("Page " + pageUrl));
+
+        aggregator.clear();
+        assertTrue(aggregator.getPages().isEmpty());
+    }
+
+    /**
+     * Exceptions thrown by the listener are logged but don't break the page.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void failingListener() throws Exception {
+        getMockWebConnection().setResponse(URL_FIRST, "<html><body><script>var x = 1;</script></body></html>");
+        startWebServer(getMockWebConnection());
+
+        final WebClient webClient = getWebClient();
+        webClient.setLoadTimelineListener(event -> {
+            throw new IllegalStateException("failing listener");
+        });
+        webClient.getPage(URL_FIRST);
+    }
+}